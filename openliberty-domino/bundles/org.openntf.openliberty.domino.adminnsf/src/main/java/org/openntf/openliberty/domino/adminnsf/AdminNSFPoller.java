@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.adminnsf;
+
+import static java.text.MessageFormat.format;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.Histogram;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+
+/**
+ * Periodically runs the admin NSF refresh task with an adaptive interval.
+ * 
+ * <p>After a poll that finds changes, the interval drops to a quarter of the base interval,
+ * since related edits tend to arrive together. Each subsequent idle poll doubles the interval,
+ * up to eight times the base interval. Each delay is randomized by up to
+ * {@link #JITTER_FRACTION} so that servers sharing a replicated admin NSF do not poll in
+ * lockstep.</p>
+ * 
+ * <p>Only one poll runs at a time. An explicit refresh requested while a poll is running is
+ * counted as skipped and causes another poll immediately after the current one.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class AdminNSFPoller implements AutoCloseable {
+	private static final Logger log = OpenLibertyLog.instance.log;
+	
+	public static final long MIN_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+	public static final double JITTER_FRACTION = 0.2;
+	
+	private static final String METRICS_KEY = MetricsRegistry.PREFIX + "adminnsf"; //$NON-NLS-1$
+	private static final Histogram POLL_DURATION = MetricsRegistry.instance.histogram(MetricsRegistry.PREFIX + "adminnsf_poll_duration_seconds", "Time taken to poll the admin NSF for changes"); //$NON-NLS-1$ //$NON-NLS-2$
+	
+	private final BooleanSupplier task;
+	private final long baseInterval;
+	private final long fastInterval;
+	private final long slowInterval;
+	
+	private long currentInterval;
+	private ScheduledFuture<?> next;
+	private boolean running;
+	private boolean rerunRequested;
+	private boolean closed;
+	
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong changes = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong totalDuration = new AtomicLong();
+	private final AtomicLong maxDuration = new AtomicLong();
+	private volatile long lastDuration;
+	
+	/**
+	 * @param task the refresh task, which returns {@code true} if it found changes
+	 * @param baseInterval the base interval between polls, in milliseconds
+	 */
+	public AdminNSFPoller(BooleanSupplier task, long baseInterval) {
+		this.task = task;
+		this.baseInterval = Math.max(MIN_INTERVAL, baseInterval);
+		this.fastInterval = Math.max(MIN_INTERVAL, this.baseInterval / 4);
+		this.slowInterval = this.baseInterval * 8;
+		this.currentInterval = this.baseInterval;
+	}
+	
+	/**
+	 * Performs an initial poll immediately and schedules subsequent ones.
+	 */
+	public void start() {
+		MetricsRegistry.instance.register(METRICS_KEY, this::collectMetrics);
+		requestRefresh();
+	}
+	
+	/**
+	 * Requests a poll as soon as possible, such as in response to an explicit refresh command.
+	 */
+	public synchronized void requestRefresh() {
+		if(closed) {
+			return;
+		}
+		if(running) {
+			skipped.incrementAndGet();
+			rerunRequested = true;
+			return;
+		}
+		schedule(0);
+	}
+	
+	@Override
+	public synchronized void close() {
+		closed = true;
+		MetricsRegistry.instance.unregister(METRICS_KEY);
+		if(next != null) {
+			next.cancel(false);
+			next = null;
+		}
+	}
+	
+	/**
+	 * @return the number of polls performed
+	 */
+	public long getPolls() {
+		return polls.get();
+	}
+	
+	/**
+	 * @return the number of polls that found changes
+	 */
+	public long getChanges() {
+		return changes.get();
+	}
+	
+	/**
+	 * @return the number of refresh requests that arrived while a poll was already running
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+	
+	/**
+	 * @return the duration of the most recent poll, in milliseconds
+	 */
+	public long getLastDuration() {
+		return lastDuration;
+	}
+	
+	/**
+	 * @return the longest duration of a poll, in milliseconds
+	 */
+	public long getMaxDuration() {
+		return maxDuration.get();
+	}
+	
+	/**
+	 * @return the average duration of a poll, in milliseconds
+	 */
+	public long getAverageDuration() {
+		long count = polls.get();
+		return count == 0 ? 0 : totalDuration.get() / count;
+	}
+	
+	/**
+	 * @return the current interval between polls before jitter, in milliseconds
+	 */
+	public synchronized long getCurrentInterval() {
+		return currentInterval;
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private void schedule(long delay) {
+		if(next != null) {
+			next.cancel(false);
+		}
+		next = DominoThreadFactory.getScheduler().schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void poll() {
+		synchronized(this) {
+			if(closed || running) {
+				return;
+			}
+			running = true;
+			next = null;
+		}
+		
+		long start = System.nanoTime();
+		boolean changed = false;
+		try {
+			changed = task.getAsBoolean();
+		} catch(Throwable t) {
+			if(log.isLoggable(Level.SEVERE)) {
+				log.log(Level.SEVERE, format(Messages.getString("AdminNSFService.encounteredExceptionIn"), getClass().getSimpleName()), t); //$NON-NLS-1$
+			}
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			POLL_DURATION.record(elapsed);
+			long duration = TimeUnit.NANOSECONDS.toMillis(elapsed);
+			polls.incrementAndGet();
+			totalDuration.addAndGet(duration);
+			maxDuration.accumulateAndGet(duration, Math::max);
+			lastDuration = duration;
+			if(changed) {
+				changes.incrementAndGet();
+			}
+			
+			synchronized(this) {
+				running = false;
+				currentInterval = changed ? fastInterval : Math.min(slowInterval, currentInterval * 2);
+				if(!closed) {
+					long delay;
+					if(rerunRequested) {
+						rerunRequested = false;
+						delay = 0;
+					} else {
+						delay = jitter(currentInterval);
+					}
+					schedule(delay);
+					
+					if(log.isLoggable(Level.FINE)) {
+						log.fine(format(Messages.getString("AdminNSFPoller.pollCompleted"), duration, changed, TimeUnit.MILLISECONDS.toSeconds(delay))); //$NON-NLS-1$
+					}
+				}
+			}
+		}
+	}
+	
+	private void collectMetrics(MetricsWriter writer) {
+		String prefix = MetricsRegistry.PREFIX + "adminnsf_"; //$NON-NLS-1$
+		writer.family(prefix + "polls", MetricsWriter.Type.COUNTER, "Admin NSF polls performed"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.counter(prefix + "polls", getPolls()); //$NON-NLS-1$
+		writer.family(prefix + "poll_changes", MetricsWriter.Type.COUNTER, "Admin NSF polls that found changes"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.counter(prefix + "poll_changes", getChanges()); //$NON-NLS-1$
+		writer.family(prefix + "poll_skipped", MetricsWriter.Type.COUNTER, "Refresh requests that arrived while a poll was running"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.counter(prefix + "poll_skipped", getSkipped()); //$NON-NLS-1$
+		writer.family(prefix + "poll_interval_seconds", MetricsWriter.Type.GAUGE, "Current interval between admin NSF polls, before jitter"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.gauge(prefix + "poll_interval_seconds", getCurrentInterval() / 1000d); //$NON-NLS-1$
+	}
+	
+	private static long jitter(long interval) {
+		double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER_FRACTION, JITTER_FRACTION);
+		return (long)(interval * factor);
+	}
+	
+	@Override
+	public String toString() {
+		return format("AdminNSFPoller [polls={0}, changes={1}, skipped={2}, lastDuration={3}, averageDuration={4}, maxDuration={5}, currentInterval={6}]", //$NON-NLS-1$
+			getPolls(), getChanges(), getSkipped(), getLastDuration(), getAverageDuration(), getMaxDuration(), getCurrentInterval());
+	}
+}
@@ -21,19 +21,26 @@ import java.nio.file.Paths;
 import org.openntf.openliberty.domino.adminnsf.util.AdminNSFUtil;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
-import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoEnvironment;
+import org.openntf.openliberty.domino.util.NotesSessionWorker;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
 import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
 
 import lotus.domino.Database;
 import lotus.domino.Document;
-import lotus.domino.NotesFactory;
-import lotus.domino.Session;
 import lotus.domino.View;
 
 public class AdminNSFRuntimeConfigurationProvider implements RuntimeConfigurationProvider {
 	
 	public static final String ITEM_BASEDIRECTORY = "BaseDirectory"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_ARTIFACTSTOREDIRECTORY = "ArtifactStoreDirectory"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_ARTIFACTSTOREMAXSIZE = "ArtifactStoreMaxSize"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_ARTIFACTMIRRORDIRECTORY = "ArtifactMirrorDirectory"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_ARTIFACTOFFLINEMODE = "ArtifactOfflineMode"; //$NON-NLS-1$
 	
 	private Path baseDirectory;
 	private String dominoHostName;
@@ -42,6 +49,10 @@ public class AdminNSFRuntimeConfigurationProvider implements RuntimeConfiguratio
 	private boolean dominoConnectorHeaders;
 	private String dominoVersion;
 	private Path dominoProgramDirectory;
+	private Path artifactStoreDirectory;
+	private long artifactStoreMaxSize;
+	private Path artifactMirrorDirectory;
+	private boolean artifactOfflineMode;
 
 	@Override
 	public Path getBaseDirectory() {
@@ -85,16 +96,41 @@ public class AdminNSFRuntimeConfigurationProvider implements RuntimeConfiguratio
 		return this.dominoProgramDirectory;
 	}
 
+	@Override
+	public Path getArtifactStoreDirectory() {
+		if(this.baseDirectory == null) { loadData(); }
+		return this.artifactStoreDirectory;
+	}
+	
+	@Override
+	public long getArtifactStoreMaxSize() {
+		if(this.baseDirectory == null) { loadData(); }
+		return this.artifactStoreMaxSize;
+	}
+	
+	@Override
+	public Path getArtifactMirrorDirectory() {
+		if(this.baseDirectory == null) { loadData(); }
+		return this.artifactMirrorDirectory;
+	}
+	
+	@Override
+	public boolean isArtifactOfflineMode() {
+		if(this.baseDirectory == null) { loadData(); }
+		return this.artifactOfflineMode;
+	}
+
 	private synchronized void loadData() {
 		try {
-			DominoThreadFactory.getExecutor().submit(() -> {
-				Session session = NotesFactory.createSession();
+			NotesSessionWorker.instance.call(session -> {
+				Database adminNsf = null;
+				Database names = null;
 				try {
-					this.dominoVersion = StringUtil.toString(session.evaluate(" @Version ").get(0)); //$NON-NLS-1$
+					this.dominoVersion = DominoEnvironment.instance.getDominoVersion();
 					this.dominoProgramDirectory = Paths.get(OpenLibertyUtil.getDominoProgramDirectory());
 					
 					// Read configuration from the Runtime configuration NSF
-					Database adminNsf = AdminNSFUtil.getAdminDatabase(session);
+					adminNsf = AdminNSFUtil.getAdminDatabase(session);
 					Document config = AdminNSFUtil.getConfigurationDocument(adminNsf);
 					String execDirName = config.getItemValueString(ITEM_BASEDIRECTORY);
 					Path execDir;
@@ -109,10 +145,28 @@ public class AdminNSFRuntimeConfigurationProvider implements RuntimeConfiguratio
 					}
 					this.baseDirectory = execDir;
 					
+					String storeDirName = config.getItemValueString(ITEM_ARTIFACTSTOREDIRECTORY);
+					if(StringUtil.isEmpty(storeDirName)) {
+						this.artifactStoreDirectory = execDir.resolve("artifacts"); //$NON-NLS-1$
+					} else {
+						this.artifactStoreDirectory = Paths.get(storeDirName);
+					}
+					if(config.hasItem(ITEM_ARTIFACTSTOREMAXSIZE)) {
+						// Stored in MB
+						this.artifactStoreMaxSize = config.getItemValueInteger(ITEM_ARTIFACTSTOREMAXSIZE) * 1024L * 1024L;
+					} else {
+						this.artifactStoreMaxSize = DEFAULT_ARTIFACT_STORE_MAX_SIZE;
+					}
+					String mirrorDirName = config.getItemValueString(ITEM_ARTIFACTMIRRORDIRECTORY);
+					if(StringUtil.isNotEmpty(mirrorDirName)) {
+						this.artifactMirrorDirectory = Paths.get(mirrorDirName);
+					}
+					this.artifactOfflineMode = "Y".equals(config.getItemValueString(ITEM_ARTIFACTOFFLINEMODE)); //$NON-NLS-1$
+					
 					// Read Domino server config from names.nsf
-					Database names = session.getDatabase("", "names.nsf"); //$NON-NLS-1$ //$NON-NLS-2$
+					names = session.getDatabase("", "names.nsf"); //$NON-NLS-1$ //$NON-NLS-2$
 					View servers = names.getView("$Servers"); //$NON-NLS-1$
-					Document serverDoc = servers.getDocumentByKey(session.getUserName());
+					Document serverDoc = servers.getDocumentByKey(DominoEnvironment.instance.getServerName());
 					
 					boolean httpEnabled = "1".equals(serverDoc.getItemValueString("HTTP_NormalMode")); //$NON-NLS-1$ //$NON-NLS-2$
 					boolean httpsEnabled = "1".equals(serverDoc.getItemValueString("HTTP_SSLMode")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -143,11 +197,17 @@ public class AdminNSFRuntimeConfigurationProvider implements RuntimeConfiguratio
 					String connectorHeadersParam = session.getEnvironmentString("HTTPEnableConnectorHeaders", true); //$NON-NLS-1$
 					this.dominoConnectorHeaders = "1".equals(connectorHeadersParam); //$NON-NLS-1$
 				} finally {
-					session.recycle();
+					// The session is shared, so release the databases and their children explicitly
+					if(adminNsf != null) {
+						adminNsf.recycle();
+					}
+					if(names != null) {
+						names.recycle();
+					}
 				}
 				
 				return null;
-			}).get();
+			});
 		} catch(RuntimeException e) {
 			throw e;
 		} catch(Exception e) {
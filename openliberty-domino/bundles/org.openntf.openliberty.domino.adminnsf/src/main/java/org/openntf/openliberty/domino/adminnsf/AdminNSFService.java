@@ -18,10 +18,16 @@ package org.openntf.openliberty.domino.adminnsf;
 import static java.text.MessageFormat.format;
 
 import java.io.IOException;
-import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -29,6 +35,8 @@ import java.util.stream.Collectors;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.openntf.openliberty.domino.adminnsf.util.AdminNSFUtil;
+import org.openntf.openliberty.domino.adminnsf.wlp.BlueGreenDeployer;
+import org.openntf.openliberty.domino.artifact.AppStore;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigProvider;
@@ -41,16 +49,19 @@ import org.xml.sax.SAXException;
 import lotus.domino.Database;
 import lotus.domino.DateTime;
 import lotus.domino.Document;
+import lotus.domino.DocumentCollection;
 import lotus.domino.NotesException;
 import lotus.domino.NotesFactory;
 import lotus.domino.Session;
-import lotus.domino.View;
-import lotus.domino.ViewEntry;
-import lotus.domino.ViewNavigator;
 
 /**
  * This task searches the active admin NSF for server documents and deploys them as needed.
  * 
+ * <p>After an initial full scan, each run asks the database for the documents modified since the
+ * previous run, including deletion stubs, so that the work done is proportional to the number of
+ * changed documents. Servers whose documents are deleted, or which no longer apply to this Domino
+ * server, are removed from the runtime.</p>
+ * 
  * @author Jesse Gallagher
  * @since 1.18004.0
  */
@@ -69,19 +80,31 @@ public enum AdminNSFService implements Runnable {
 	/** @since 2.0.0 */
 	public static final String ITEM_DOMINOSERVERS = "DominoServers"; //$NON-NLS-1$
 	
+	/**
+	 * The interval after which a full scan is performed even when incremental change detection
+	 * is available, to guard against deletion stubs that have been purged in the meantime.
+	 * 
+	 * @since 4.0.0
+	 */
+	public static final long FULL_SCAN_INTERVAL = TimeUnit.HOURS.toMillis(24);
+	
 	private long lastRun = -1;
 	/**
-	 * Contains the modification time of the main configuration document from the last run
+	 * Contains the database time up to which changes have been processed, or {@code null} if
+	 * the next run must perform a full scan
+	 * @since 4.0.0
 	 */
-	private long lastRunConfigMod;
+	private Date lastScanUntil;
 	/**
-	 * Contains the latest modification time of server and app config documents from the last run
+	 * Contains the time of the last full scan
+	 * @since 4.0.0
 	 */
-	private long lastRunServerConfigMod;
+	private long lastFullScan;
 	/**
-	 * Contains the count of server and app config documents from the last run
+	 * Maps the UNIDs of deployed server documents to their server names
+	 * @since 4.0.0
 	 */
-	private int lastRunServerConfigCount;
+	private final Map<String, String> deployedServers = new HashMap<>();
 	/**
 	 * @since 4.0.0
 	 */
@@ -89,6 +112,16 @@ public enum AdminNSFService implements Runnable {
 
 	@Override
 	public void run() {
+		refresh();
+	}
+	
+	/**
+	 * Checks the admin NSF for changes and applies them.
+	 * 
+	 * @return {@code true} if any server or configuration changes were found
+	 * @since 4.0.0
+	 */
+	public synchronized boolean refresh() {
 		try {
 			Session session = NotesFactory.createSession();
 			try {
@@ -98,7 +131,7 @@ public enum AdminNSFService implements Runnable {
 					if(log.isLoggable(Level.FINER)) {
 						log.finer(format(Messages.getString("AdminNSFService.adminNSFUnchanged"), getClass().getSimpleName())); //$NON-NLS-1$
 					}
-					return;
+					return false;
 				}
 				if(log.isLoggable(Level.FINE)) {
 					log.fine(format(Messages.getString("AdminNSFService.adminNSFChanged"), getClass().getSimpleName())); //$NON-NLS-1$
@@ -106,75 +139,36 @@ public enum AdminNSFService implements Runnable {
 				
 				Collection<String> namesList = AdminNSFUtil.getCurrentServerNamesList();
 				
-				long configurationModTime = getConfigurationModTime(adminNsf);
-				boolean configChanged = configurationModTime != this.lastRunConfigMod;
-				this.lastRunConfigMod = configurationModTime;
-				
-				// TODO also see if this can check for deleted docs
-				// Check the last-mod time for server docs and their count
-				long serverConfigModTime;
-				int serverConfigCount;
-				{
-					View serversModView = adminNsf.getView(VIEW_SERVERSMODIFIED);
+				ScanResult result = null;
+				if(this.lastScanUntil != null && System.currentTimeMillis() - this.lastFullScan < FULL_SCAN_INTERVAL) {
 					try {
-						serversModView.setAutoUpdate(false);
-						
-						ViewNavigator nav = serversModView.createViewNav();
-						serverConfigCount = nav.getCount();
-						ViewEntry latestEntry = nav.getFirst();
-						if(latestEntry != null) {
-							Vector<?> columnValues = latestEntry.getColumnValues();
-							try {
-								DateTime mod = (DateTime)columnValues.get(0);
-								serverConfigModTime = mod.toJavaDate().getTime();
-							} finally {
-								latestEntry.recycle(columnValues);
-								latestEntry.recycle();
-							}
-						} else {
-							serverConfigModTime = 0;
+						result = scanModified(session, adminNsf, namesList);
+					} catch(NotesException e) {
+						if(log.isLoggable(Level.WARNING)) {
+							log.log(Level.WARNING, format(Messages.getString("AdminNSFService.incrementalScanFailed"), getClass().getSimpleName()), e); //$NON-NLS-1$
 						}
-					} finally {
-						serversModView.recycle();
 					}
 				}
-				boolean serverConfigChanged = serverConfigModTime != this.lastRunServerConfigMod || serverConfigCount != this.lastRunServerConfigCount;
-				this.lastRunConfigMod = serverConfigModTime;
-				this.lastRunServerConfigCount = serverConfigCount;
-				
+				boolean fullScan = result == null;
+				if(fullScan) {
+					result = scanAll(adminNsf, namesList);
+				}
 				
-				if(serverConfigChanged) {
-					// Update the servers themselves
-					if(log.isLoggable(Level.INFO)) {
-						log.info("Server/app configuration changed; refreshing");
-					}
-					
-					View servers = adminNsf.getView(VIEW_SERVERS);
-					servers.setAutoUpdate(false);
-					servers.refresh();
-					
-					ViewNavigator nav = servers.createViewNav();
-					ViewEntry entry = nav.getFirst();
-					while(entry != null) {
-						processServerDocEntry(entry, namesList);
-						
-						ViewEntry tempEntry = entry;
-						entry = nav.getNextSibling(entry);
-						tempEntry.recycle();
-					}
+				if(result.serversChanged || fullScan) {
+					// Remove app versions superseded by earlier scans once servers have had time to switch
+					AppStore.instance.collectGarbage(new HashSet<>(this.deployedServers.values()));
 				}
 				
-				if(configChanged || serverConfigChanged) {
+				if(result.configChanged || result.serversChanged) {
 					if(log.isLoggable(Level.INFO)) {
-						log.info("Configuration changed; refreshing reverse proxy");
+						log.info(format(Messages.getString("AdminNSFService.refreshingReverseProxy"), getClass().getSimpleName())); //$NON-NLS-1$
 					}
-					// Update the reverse proxy config
-					ReverseProxyConfigProvider configProvider = OpenLibertyUtil.findRequiredExtension(ReverseProxyConfigProvider.class);
-					ReverseProxyConfig reverseProxyConfig = configProvider.createConfiguration();
-					OpenLibertyRuntime.instance.broadcastMessage(new ReverseProxyConfigChangedEvent(reverseProxyConfig));
+					refreshReverseProxy();
+					return true;
 				}
-				
+				return false;
 			} finally {
+				lastRun = System.currentTimeMillis();
 				session.recycle();
 			}
 		} catch(Throwable t) {
@@ -182,8 +176,10 @@ public enum AdminNSFService implements Runnable {
 				log.log(Level.SEVERE, format(Messages.getString("AdminNSFService.encounteredExceptionIn"), getClass().getSimpleName()), t); //$NON-NLS-1$
 				t.printStackTrace();
 			}
-		} finally {
-			lastRun = System.currentTimeMillis();
+			// Start from a clean slate next time, re-checking documents modified before this run
+			this.lastScanUntil = null;
+			this.lastRun = -1;
+			return false;
 		}
 	}
 	
@@ -194,12 +190,23 @@ public enum AdminNSFService implements Runnable {
 	 */
 	public void reset() {
 		this.lastRun = -1;
-		this.lastRunConfigMod = 0;
-		this.lastRunServerConfigCount = 0;
-		this.lastRunServerConfigMod = 0;
+		this.lastScanUntil = null;
+		this.lastFullScan = 0;
+		this.deployedServers.clear();
 		this.serverDocumentHandlers = null;
 	}
 	
+	/**
+	 * Rebuilds the reverse proxy configuration and notifies the proxies of the result.
+	 * 
+	 * @since 4.0.0
+	 */
+	public void refreshReverseProxy() {
+		ReverseProxyConfigProvider configProvider = OpenLibertyUtil.findRequiredExtension(ReverseProxyConfigProvider.class);
+		ReverseProxyConfig reverseProxyConfig = configProvider.createConfiguration();
+		OpenLibertyRuntime.instance.broadcastMessage(new ReverseProxyConfigChangedEvent(reverseProxyConfig));
+	}
+	
 	// *******************************************************************************
 	// * Internal implementation methods
 	// *******************************************************************************
@@ -211,73 +218,204 @@ public enum AdminNSFService implements Runnable {
 		return this.serverDocumentHandlers;
 	}
 	
-	private long getConfigurationModTime(Database adminNsf) throws NotesException {
-		View configuration = adminNsf.getView(VIEW_CONFIGURATION);
+	/**
+	 * Processes all documents in the admin NSF, deploying changed servers and removing
+	 * deployed servers whose documents no longer exist.
+	 */
+	private ScanResult scanAll(Database adminNsf, Collection<String> namesList) throws NotesException, IOException, SAXException, ParserConfigurationException {
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("AdminNSFService.performingFullScan"), getClass().getSimpleName())); //$NON-NLS-1$
+		}
+		
+		ScanResult result = new ScanResult();
+		// A full scan happens on first run or after a failure, so refresh the proxy regardless
+		result.configChanged = true;
+		
+		Set<String> seen = new HashSet<>();
+		DocumentCollection docs = adminNsf.getModifiedDocuments();
 		try {
-			configuration.setAutoUpdate(false);
-			configuration.refresh();
-			ViewEntry configEntry = configuration.getEntryByKey(adminNsf.getParent().getUserName(), true);
-			if(configEntry == null) {
-				configuration.getEntryByKey("", true); //$NON-NLS-1$
-			}
-			if(configEntry == null) {
-				return 0;
-			}
-			Vector<?> columnValues = configEntry.getColumnValues();
-			try {
-				DateTime mod = (DateTime)columnValues.get(1);
-				return mod.toJavaDate().getTime();
-			} finally {
-				configEntry.recycle(columnValues);
-				configEntry.recycle();
+			this.lastScanUntil = toJavaDate(docs.getUntilTime());
+			this.lastFullScan = System.currentTimeMillis();
+			
+			Document doc = docs.getFirstDocument();
+			while(doc != null) {
+				if(doc.isValid() && !doc.isDeleted() && findHandler(doc) != null) {
+					seen.add(doc.getUniversalID());
+					result.serversChanged |= processServerDoc(doc, namesList, true);
+				}
+				
+				Document tempDoc = doc;
+				doc = docs.getNextDocument(doc);
+				tempDoc.recycle();
 			}
 		} finally {
-			if(configuration != null) {
-				configuration.recycle();
+			docs.recycle();
+		}
+		
+		for(String unid : new ArrayList<>(this.deployedServers.keySet())) {
+			if(!seen.contains(unid)) {
+				removeServer(unid);
+				result.serversChanged = true;
 			}
 		}
+		return result;
 	}
 	
-	private void processServerDocEntry(ViewEntry entry, Collection<String> namesList) throws NotesException, IOException, SAXException, ParserConfigurationException {
-		Document serverDoc = entry.getDocument();
+	/**
+	 * Processes only the documents modified since the last scan, including deletion stubs.
+	 */
+	private ScanResult scanModified(Session session, Database adminNsf, Collection<String> namesList) throws NotesException, IOException, SAXException, ParserConfigurationException {
+		ScanResult result = new ScanResult();
+		
+		Set<String> serverUnids = new LinkedHashSet<>();
+		DateTime since = session.createDateTime(this.lastScanUntil);
+		DocumentCollection docs;
 		try {
-			
-			@SuppressWarnings("unchecked")
-			Collection<String> serverNames = serverDoc.getItemValue(ITEM_DOMINOSERVERS);
-			boolean shouldRun = AdminNSFUtil.isNamesListMatch(namesList, serverNames);
-			if(!shouldRun) {
-				return;
+			docs = adminNsf.getModifiedDocuments(since, Database.DBMOD_DOC_DATA);
+		} finally {
+			since.recycle();
+		}
+		Date until;
+		try {
+			until = toJavaDate(docs.getUntilTime());
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("AdminNSFService.modifiedDocuments"), getClass().getSimpleName(), docs.getCount())); //$NON-NLS-1$
 			}
 			
-			String serverName = serverDoc.getItemValueString(ITEM_SERVERNAME);
-			if(StringUtil.isNotEmpty(serverName)) {
-				if(needsUpdate(serverDoc)) {
-					for(ServerDocumentHandler handler : getHandlers()) {
-						if(handler.canHandle(serverDoc)) {
-							handler.handle(serverDoc);
-							return;
-						} else {
-							if(log.isLoggable(Level.WARNING)) {
-								log.warning(MessageFormat.format("No handler found for server document UNID {0}", serverDoc.getUniversalID()));
-							}
-						}
+			Document doc = docs.getFirstDocument();
+			while(doc != null) {
+				String unid = doc.getUniversalID();
+				if(!doc.isValid() || doc.isDeleted()) {
+					if(this.deployedServers.containsKey(unid)) {
+						removeServer(unid);
+						result.serversChanged = true;
+					} else {
+						// Could have been a proxy target or other configuration document
+						result.configChanged = true;
 					}
+				} else if(findHandler(doc) != null) {
+					serverUnids.add(unid);
+				} else if(doc.isResponse() && this.deployedServers.containsKey(doc.getParentDocumentUNID())) {
+					// Supporting documents for a server are deployed via their parent
+					serverUnids.add(doc.getParentDocumentUNID());
 				} else {
-					if(log.isLoggable(Level.FINER)) {
-						log.finer(format(Messages.getString("AdminNSFService.skippingUnchangedServer"), getClass().getSimpleName(), serverName)); //$NON-NLS-1$
-					}
+					result.configChanged = true;
 				}
+				
+				Document tempDoc = doc;
+				doc = docs.getNextDocument(doc);
+				tempDoc.recycle();
 			}
 		} finally {
-			serverDoc.recycle();
+			docs.recycle();
+		}
+		
+		for(String unid : serverUnids) {
+			Document serverDoc = getDocumentByUNID(adminNsf, unid);
+			if(serverDoc == null) {
+				if(this.deployedServers.containsKey(unid)) {
+					removeServer(unid);
+					result.serversChanged = true;
+				}
+				continue;
+			}
+			try {
+				result.serversChanged |= processServerDoc(serverDoc, namesList, false);
+			} finally {
+				serverDoc.recycle();
+			}
 		}
+		
+		this.lastScanUntil = until;
+		return result;
 	}
 	
-	// *******************************************************************************
-	// * Internal implementation methods
-	// *******************************************************************************
+	/**
+	 * Deploys the provided server document if it applies to this Domino server, or removes its
+	 * server if it no longer does.
+	 * 
+	 * @param checkModified whether to skip documents that have not been modified since the last run
+	 * @return whether the set of deployed servers or their configuration changed
+	 */
+	private boolean processServerDoc(Document serverDoc, Collection<String> namesList, boolean checkModified) throws NotesException, IOException, SAXException, ParserConfigurationException {
+		String unid = serverDoc.getUniversalID();
+		
+		@SuppressWarnings("unchecked")
+		Collection<String> serverNames = serverDoc.getItemValue(ITEM_DOMINOSERVERS);
+		boolean shouldRun = AdminNSFUtil.isNamesListMatch(namesList, serverNames);
+		String serverName = serverDoc.getItemValueString(ITEM_SERVERNAME);
+		
+		String previousName = this.deployedServers.get(unid);
+		if(previousName != null && (!shouldRun || !previousName.equals(serverName))) {
+			// The server moved elsewhere or was renamed
+			removeServer(unid);
+			if(!shouldRun) {
+				return true;
+			}
+		}
+		if(!shouldRun || StringUtil.isEmpty(serverName)) {
+			return previousName != null;
+		}
+		
+		if(checkModified && this.deployedServers.containsKey(unid) && !needsUpdate(serverDoc)) {
+			if(log.isLoggable(Level.FINER)) {
+				log.finer(format(Messages.getString("AdminNSFService.skippingUnchangedServer"), getClass().getSimpleName(), serverName)); //$NON-NLS-1$
+			}
+			return false;
+		}
+		
+		ServerDocumentHandler handler = findHandler(serverDoc);
+		if(handler == null) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.warning(format(Messages.getString("AdminNSFService.noHandlerForDocument"), getClass().getSimpleName(), unid)); //$NON-NLS-1$
+			}
+			return false;
+		}
+		handler.handle(serverDoc);
+		this.deployedServers.put(unid, serverName);
+		return true;
+	}
 	
+	private ServerDocumentHandler findHandler(Document doc) throws NotesException {
+		for(ServerDocumentHandler handler : getHandlers()) {
+			if(handler.canHandle(doc)) {
+				return handler;
+			}
+		}
+		return null;
+	}
 	
+	private void removeServer(String unid) {
+		String serverName = this.deployedServers.remove(unid);
+		if(serverName != null) {
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("AdminNSFService.removingServer"), getClass().getSimpleName(), serverName)); //$NON-NLS-1$
+			}
+			BlueGreenDeployer.instance.remove(serverName);
+			OpenLibertyRuntime.instance.removeServer(serverName);
+		}
+	}
+	
+	private static Document getDocumentByUNID(Database database, String unid) {
+		try {
+			Document doc = database.getDocumentByUNID(unid);
+			if(doc == null || !doc.isValid() || doc.isDeleted()) {
+				return null;
+			}
+			return doc;
+		} catch(NotesException e) {
+			// Thrown when the document does not exist
+			return null;
+		}
+	}
+	
+	private static Date toJavaDate(DateTime dateTime) throws NotesException {
+		try {
+			return dateTime.toJavaDate();
+		} finally {
+			dateTime.recycle();
+		}
+	}
 	
 	private boolean needsUpdate(Database adminNsf) throws NotesException {
 		if(lastRun > -1) {
@@ -312,5 +450,11 @@ public enum AdminNSFService implements Runnable {
 		}
 		return true;
 	}
-
+	
+	private static class ScanResult {
+		/** Whether non-server configuration, such as proxy settings, may have changed */
+		private boolean configChanged;
+		/** Whether any server was deployed, updated or removed */
+		private boolean serversChanged;
+	}
 }
@@ -15,29 +15,89 @@
  */
 package org.openntf.openliberty.domino.adminnsf;
 
-import java.util.EventObject;
+import static java.text.MessageFormat.format;
 
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.openntf.openliberty.domino.adminnsf.config.AdminNSFProperties;
+import org.openntf.openliberty.domino.adminnsf.proxy.AdminNSFProxyConfigProvider;
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.event.RefreshDeploymentConfigEvent;
+import org.openntf.openliberty.domino.event.ServerReadyEvent;
+import org.openntf.openliberty.domino.event.ServerWarmupEvent;
 import org.openntf.openliberty.domino.ext.RuntimeService;
-import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.util.NotesSessionWorker;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
 
 public class AdminNSFServiceProvider implements RuntimeService {
+	/**
+	 * The notes.ini variable that can be used to override the base admin NSF poll interval,
+	 * in seconds.
+	 * 
+	 * @since 4.0.0
+	 */
+	public static final String INI_POLLINTERVAL = "OpenLibertyAdminPollInterval"; //$NON-NLS-1$
+	
+	private AdminNSFPoller poller;
 
 	@Override
-	public void run() {
-		DominoThreadFactory.getScheduler().submit(AdminNSFService.instance);
+	public synchronized void run() {
+		if(this.poller == null) {
+			this.poller = new AdminNSFPoller(AdminNSFService.instance::refresh, TimeUnit.SECONDS.toMillis(getPollInterval()));
+			this.poller.start();
+		}
 	}
 	
 	@Override
-	public void notifyMessage(EventObject event) {
-		if(event instanceof RefreshDeploymentConfigEvent) {
-			DominoThreadFactory.getScheduler().submit(AdminNSFService.instance);
-		}
+	public void subscribe(EventBus bus) {
+		bus.subscribe(this, RefreshDeploymentConfigEvent.class, event -> refresh());
+		// Hold proxied requests back from servers while they warm up
+		bus.subscribe(this, ServerWarmupEvent.class, event -> AdminNSFService.instance.refreshReverseProxy());
+		bus.subscribe(this, ServerReadyEvent.class, event -> AdminNSFService.instance.refreshReverseProxy());
 	}
 	
 	@Override
-	public void close() {
+	public synchronized void close() {
+		if(this.poller != null) {
+			this.poller.close();
+			this.poller = null;
+		}
 		AdminNSFService.instance.reset();
+		AdminNSFProxyConfigProvider.clearCache();
+	}
+	
+	/**
+	 * @return the poller for the admin NSF, or {@code null} if the service has not started
+	 * @since 4.0.0
+	 */
+	public synchronized AdminNSFPoller getPoller() {
+		return poller;
+	}
+	
+	private synchronized void refresh() {
+		if(this.poller != null) {
+			this.poller.requestRefresh();
+		}
+	}
+	
+	private static int getPollInterval() {
+		int defaultInterval = AdminNSFProperties.instance.getPollInterval();
+		try {
+			String value = NotesSessionWorker.instance.call(session -> session.getEnvironmentString(INI_POLLINTERVAL, true));
+			if(StringUtil.isNotEmpty(value)) {
+				try {
+					return Integer.parseInt(value.trim());
+				} catch(NumberFormatException e) {
+					if(OpenLibertyLog.instance.log.isLoggable(Level.WARNING)) {
+						OpenLibertyLog.instance.log.warning(format(Messages.getString("AdminNSFServiceProvider.invalidPollInterval"), value)); //$NON-NLS-1$
+					}
+				}
+			}
+		} catch(Exception e) {
+			// Fall back to the default
+		}
+		return defaultInterval;
 	}
-
 }
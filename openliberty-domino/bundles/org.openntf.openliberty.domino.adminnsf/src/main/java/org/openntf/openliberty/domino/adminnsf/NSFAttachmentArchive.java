@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.adminnsf;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.adminnsf.util.AdminNSFUtil;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.server.DeploymentArchive;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.EmbeddedObject;
+import lotus.domino.NotesException;
+import lotus.domino.NotesFactory;
+import lotus.domino.Session;
+
+/**
+ * A {@link DeploymentArchive} attached to a document in the admin NSF. The attachment is
+ * only read when it is deployed, at which point it is streamed directly to the consumer from
+ * a provisioning thread with its own short-lived session, so that large deployments neither
+ * hold up the shared Notes session worker nor require a temporary copy.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class NSFAttachmentArchive implements DeploymentArchive {
+	private static final Logger log = OpenLibertyLog.instance.log;
+	
+	private final String unid;
+	private final String attachmentName;
+	private final String key;
+	
+	/**
+	 * @param doc the document holding the attachment
+	 * @param attachment the attachment to deploy
+	 * @throws NotesException if there is a problem reading the attachment's properties
+	 */
+	public NSFAttachmentArchive(Document doc, EmbeddedObject attachment) throws NotesException {
+		this.unid = doc.getUniversalID();
+		this.attachmentName = attachment.getName();
+		DateTime lastModified = doc.getLastModified();
+		long modified;
+		try {
+			modified = lastModified.toJavaDate().getTime();
+		} finally {
+			lastModified.recycle();
+		}
+		this.key = format("nsf:{0}/{1}:{2,number,#}:{3,number,#}", unid, attachmentName, attachment.getFileSize(), modified); //$NON-NLS-1$
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String getName() {
+		return attachmentName;
+	}
+
+	@Override
+	public void read(ContentConsumer consumer) throws IOException {
+		Future<Void> result;
+		try {
+			result = DominoThreadFactory.getExecutor(Pool.PROVISIONING).submit(() -> {
+				readWithSession(consumer);
+				return null;
+			});
+		} catch(RejectedExecutionException e) {
+			// The pool is saturated - read on this thread, which is also a NotesThread
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("NSFAttachmentArchive.readingOnCallingThread"), attachmentName, unid)); //$NON-NLS-1$
+			}
+			readWithSession(consumer);
+			return;
+		}
+		
+		try {
+			result.get();
+		} catch(InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Streams the attachment to {@code consumer} using a session private to the current thread,
+	 * so that the shared Notes session worker is not held for the duration of the read.
+	 */
+	private void readWithSession(ContentConsumer consumer) throws IOException {
+		try {
+			Session session = NotesFactory.createSession();
+			try {
+				Database adminNsf = AdminNSFUtil.getAdminDatabase(session);
+				Document doc = adminNsf.getDocumentByUNID(unid);
+				EmbeddedObject attachment = doc == null ? null : doc.getAttachment(attachmentName);
+				if(attachment == null) {
+					throw new IOException(format(Messages.getString("NSFAttachmentArchive.attachmentNotFound"), attachmentName, unid)); //$NON-NLS-1$
+				}
+				try(InputStream is = attachment.getInputStream()) {
+					consumer.accept(is);
+				}
+			} finally {
+				session.recycle();
+			}
+		} catch(NotesException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof DeploymentArchive)) {
+			return false;
+		}
+		return key.equals(((DeploymentArchive)obj).getKey());
+	}
+
+	@Override
+	public String toString() {
+		return "NSFAttachmentArchive [unid=" + unid + ", attachmentName=" + attachmentName + ", key=" + key + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
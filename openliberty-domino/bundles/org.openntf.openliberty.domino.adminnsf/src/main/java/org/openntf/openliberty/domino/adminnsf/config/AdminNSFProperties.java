@@ -41,4 +41,12 @@ public enum AdminNSFProperties {
 	public String getDefaultMavenRepo() {
 		return bundle.getString("defaultMavenRepo"); //$NON-NLS-1$
 	}
+	
+	/**
+	 * @return the default base interval, in seconds, between polls of the admin NSF
+	 * @since 4.0.0
+	 */
+	public int getPollInterval() {
+		return Integer.parseInt(bundle.getString("pollInterval")); //$NON-NLS-1$
+	}
 }
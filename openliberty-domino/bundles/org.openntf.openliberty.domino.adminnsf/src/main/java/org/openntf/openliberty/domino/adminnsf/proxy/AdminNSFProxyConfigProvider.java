@@ -15,15 +15,20 @@
  */
 package org.openntf.openliberty.domino.adminnsf.proxy;
 
+import static java.text.MessageFormat.format;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
@@ -32,12 +37,23 @@ import java.security.cert.CertificateFactory;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.crypto.NoSuchPaddingException;
 import javax.net.ssl.KeyManager;
@@ -46,25 +62,44 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
+import org.openntf.openliberty.domino.adminnsf.Messages;
 import org.openntf.openliberty.domino.adminnsf.util.AdminNSFUtil;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigProvider;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyTarget;
-import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.server.ServerWarmup;
+import org.openntf.openliberty.domino.util.DominoEnvironment;
+import org.openntf.openliberty.domino.util.NotesSessionWorker;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
 
 import lotus.domino.Database;
+import lotus.domino.DateTime;
 import lotus.domino.Document;
+import lotus.domino.DocumentCollection;
 import lotus.domino.NotesException;
-import lotus.domino.NotesFactory;
 import lotus.domino.Session;
 import lotus.domino.View;
 import lotus.domino.ViewEntry;
 import lotus.domino.ViewNavigator;
 
+/**
+ * Builds the reverse proxy configuration from the admin NSF.
+ * 
+ * <p>Since the configuration is rebuilt whenever the admin NSF changes, the expensive parts
+ * of a build are cached between calls: the compiled {@link SSLContext} is reused while the
+ * PEM key and certificate material are unchanged, the values read from the Domino server
+ * document are reused while it is unmodified, and proxy targets are only re-read from the
+ * {@value #VIEW_REVERSEPROXYTARGETS} view for documents modified since the previous build.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
 public class AdminNSFProxyConfigProvider implements ReverseProxyConfigProvider {
+	private static final Logger log = OpenLibertyLog.instance.log;
+	
 	public static final String ITEM_REVERSEPROXYENABLE = "ReverseProxyEnable"; //$NON-NLS-1$
 	public static final String ITEM_REVERSEPROXYTYPES = "ReverseProxyTypes"; //$NON-NLS-1$
 	public static final String ITEM_REVERSEPROXYHOST = "ReverseProxyHostName"; //$NON-NLS-1$
@@ -75,122 +110,156 @@ public class AdminNSFProxyConfigProvider implements ReverseProxyConfigProvider {
 	public static final String ITEM_REVERSEPROXYHTTPSPORT = "ReverseProxyHTTPSPort"; //$NON-NLS-1$
 	public static final String ITEM_REVERSEPROXYHTTPSKEY = "ReverseProxyHTTPSKey"; //$NON-NLS-1$
 	public static final String ITEM_REVERSEPROXYHTTPSCERT = "ReverseProxyHTTPSChain"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_REVERSEPROXYACCESSLOG = "ReverseProxyAccessLog"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_REVERSEPROXYACCESSLOGFORMAT = "ReverseProxyAccessLogFormat"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_REVERSEPROXYACCESSLOGMAXSIZE = "ReverseProxyAccessLogMaxSize"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_REVERSEPROXYACCESSLOGMAXFILES = "ReverseProxyAccessLogMaxFiles"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_REVERSEPROXYMETRICSPATH = "ReverseProxyMetricsPath"; //$NON-NLS-1$
 	
 	public static final String VIEW_REVERSEPROXYTARGETS = "ReverseProxyTargets"; //$NON-NLS-1$
+	
+	/** @since 4.0.0 */
+	public static final String PHASE_CONFIGURATION = "configuration"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String PHASE_TARGETS = "targets"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String PHASE_SERVERDOC = "serverDocument"; //$NON-NLS-1$
+	
+	/**
+	 * State retained between builds, since a new provider instance is loaded for each one.
+	 * Guarded by its own monitor.
+	 */
+	private static final BuildCache cache = new BuildCache();
+	
+	/**
+	 * Maps target context paths to the paths on their app servers that requests are currently
+	 * routed to, when those differ from the context path.
+	 */
+	private static final Map<String, String> targetPaths = new ConcurrentHashMap<>();
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public ReverseProxyConfig createConfiguration() {
-		ReverseProxyConfig result = new ReverseProxyConfig();
+		ReverseProxyConfig.Builder result = ReverseProxyConfig.builder();
 		
 		RuntimeConfigurationProvider runtimeConfig = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
-		result.dominoHostName = runtimeConfig.getDominoHostName();
-		result.dominoHttpPort = runtimeConfig.getDominoPort();
-		result.dominoHttps = runtimeConfig.isDominoHttps();
+		result.dominoHostName(runtimeConfig.getDominoHostName())
+			.dominoHttpPort(runtimeConfig.getDominoPort())
+			.dominoHttps(runtimeConfig.isDominoHttps());
 		
 		try {
-			DominoThreadFactory.getExecutor().submit(() -> {
-				try {
-					Session session = NotesFactory.createSession();
+			NotesSessionWorker.instance.call(session -> {
+				synchronized(cache) {
+					Map<String, Long> timings = new LinkedHashMap<>();
+					long buildStart = System.nanoTime();
+					
+					Database adminNsf = AdminNSFUtil.getAdminDatabase(session);
 					try {
-						Database adminNsf = AdminNSFUtil.getAdminDatabase(session);
+						long phaseStart = System.nanoTime();
 						Document config = AdminNSFUtil.getConfigurationDocument(adminNsf);
 
 						// Load the main config
 						boolean connectorHeaders = runtimeConfig.isUseDominoConnectorHeaders();
 						readConfigurationDocument(result, config, connectorHeaders);
+						timings.put(PHASE_CONFIGURATION, elapsedMillis(phaseStart));
 						if(!result.isGlobalEnabled()) {
-							return;
+							return null;
 						}
 						
-						Collection<String> namesList = AdminNSFUtil.getCurrentServerNamesList();
-						
 						// Look for proxy-enabled webapps
-						View targetsView = adminNsf.getView(VIEW_REVERSEPROXYTARGETS);
-						targetsView.setAutoUpdate(false);
-						targetsView.refresh();
-						ViewNavigator nav = targetsView.createViewNav();
-						nav.setEntryOptions(ViewNavigator.VN_ENTRYOPT_NOCOUNTDATA);
-						ViewEntry entry = nav.getFirst();
-						
-						while(entry != null) {
-							Vector<?> columnValues = entry.getColumnValues();
-							List<String> dominoServers;
-							Object dominoServersObj = columnValues.get(4);
-							if(dominoServersObj instanceof String) {
-								dominoServers = Arrays.asList((String)dominoServersObj);
-							} else {
-								dominoServers = (List<String>)dominoServersObj;
-							}
-							boolean shouldRun = AdminNSFUtil.isNamesListMatch(namesList, dominoServers);
-							if(shouldRun) {
-								// Format: http://localhost:80
-								String baseUri = (String)columnValues.get(0);
-								String contextPath = (String)columnValues.get(1);
-								boolean useXForwardedFor = "Y".equals(columnValues.get(2)); //$NON-NLS-1$
-								boolean useWsHeaders = "Y".equals(columnValues.get(3)); //$NON-NLS-1$
-								
-								URI uri = URI.create(baseUri + "/" + contextPath); //$NON-NLS-1$
-								ReverseProxyTarget target = new ReverseProxyTarget(uri, useXForwardedFor, useWsHeaders);
-								result.addTarget(contextPath, target);
+						phaseStart = System.nanoTime();
+						Collection<String> namesList = AdminNSFUtil.getCurrentServerNamesList();
+						updateTargets(session, adminNsf);
+						for(CachedTarget target : cache.targets.values()) {
+							if(AdminNSFUtil.isNamesListMatch(namesList, target.dominoServers)) {
+								result.addTarget(target.contextPath, routeTarget(target));
 							}
-							
-							entry.recycle(columnValues);
-							ViewEntry tempEntry = entry;
-							entry = nav.getNextSibling(entry);
-							tempEntry.recycle();
 						}
-						
+						timings.put(PHASE_TARGETS, elapsedMillis(phaseStart));
 					} finally {
-						session.recycle();
+						// The session is shared, so release the database and its children explicitly
+						adminNsf.recycle();
 					}
-					return;
-				} catch(Throwable e) {
-					e.printStackTrace(OpenLibertyLog.instance.out);
-					throw new RuntimeException(e);
-				}
-			}).get();
-			
-			if(result.isGlobalEnabled()) {
-				// Determine the local server port from the server doc
-				DominoThreadFactory.getExecutor().submit(() -> {
-					try {
-						Session session = NotesFactory.createSession();
-						try {
-							String serverName = session.getUserName();
-							
-							Database names = session.getDatabase("", "names.nsf"); //$NON-NLS-1$ //$NON-NLS-2$
-							View servers = names.getView("$Servers"); //$NON-NLS-1$
-							Document serverDoc = servers.getDocumentByKey(serverName);
-							
-							// Mirror Domino's maximum entity size
-							long maxEntitySize = serverDoc.getItemValueInteger("HTTP_MaxContentLength"); //$NON-NLS-1$
-							if(maxEntitySize == 0) {
-								maxEntitySize = Long.MAX_VALUE;
-							}
-							result.maxEntitySize = maxEntitySize;
-							
-						} finally {
-							session.recycle();
-						}
-					} catch(Exception e) {
-						e.printStackTrace(OpenLibertyLog.instance.out);
-						throw new RuntimeException(e);
+					
+					// Determine the local server port from the server doc
+					long phaseStart = System.nanoTime();
+					result.maxEntitySize(readMaxEntitySize(session));
+					timings.put(PHASE_SERVERDOC, elapsedMillis(phaseStart));
+					
+					cache.lastTimings = timings;
+					timings.forEach((phase, millis) ->
+						MetricsRegistry.instance.histogram(MetricsRegistry.PREFIX + "proxy_config_build_duration_seconds", "Time taken by each phase of building the reverse proxy configuration", "phase", phase) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							.record(TimeUnit.MILLISECONDS.toNanos(millis))
+					);
+					if(log.isLoggable(Level.FINE)) {
+						log.fine(format(Messages.getString("AdminNSFProxyConfigProvider.builtConfiguration"), AdminNSFProxyConfigProvider.class.getSimpleName(), //$NON-NLS-1$
+							elapsedMillis(buildStart), timings, cache.lastTargetsRead, cache.targets.size() - cache.lastTargetsRead));
 					}
-				}).get();
-			}
+					return null;
+				}
+			});
 		} catch (InterruptedException | ExecutionException e) {
 			e.printStackTrace(OpenLibertyLog.instance.out);
 			throw new RuntimeException(e);
 		}
 		
-		return result;
+		return result.build();
+	}
+	
+	/**
+	 * @return a {@link Map} of build phase names to the time in milliseconds they took during
+	 * 		the most recent configuration build
+	 * @since 4.0.0
+	 */
+	public static Map<String, Long> getLastBuildTimings() {
+		synchronized(cache) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(cache.lastTimings));
+		}
+	}
+	
+	/**
+	 * Discards all cached configuration state, so that the next build reads everything again.
+	 * 
+	 * @since 4.0.0
+	 */
+	public static void clearCache() {
+		synchronized(cache) {
+			cache.targetsUntil = null;
+			cache.targets.clear();
+			cache.serverDocUnid = null;
+			cache.sslMaterialHash = null;
+			cache.sslContext = null;
+		}
 	}
 	
-	public static void readConfigurationDocument(ReverseProxyConfig result, Document config, boolean useDominoConnectorHeaders) {
+	/**
+	 * Routes requests for the given context path to a different path on the same app server,
+	 * such as an app version deployed under a temporary context root. This takes effect for
+	 * configurations created after the call.
+	 * 
+	 * @param contextPath the proxied context path, with or without a leading {@code /}
+	 * @param targetPath the context root on the app server to route requests to, or {@code null}
+	 * 		to route requests to the context path itself
+	 * @since 4.0.0
+	 */
+	public static void setTargetPath(String contextPath, String targetPath) {
+		String key = trimSlashes(contextPath);
+		String value = trimSlashes(targetPath);
+		if(value.isEmpty() || value.equals(key)) {
+			targetPaths.remove(key);
+		} else {
+			targetPaths.put(key, value);
+		}
+	}
+	
+	public static void readConfigurationDocument(ReverseProxyConfig.Builder result, Document config, boolean useDominoConnectorHeaders) {
 		try {
 			boolean enable = "Y".equals(config.getItemValueString(ITEM_REVERSEPROXYENABLE)); //$NON-NLS-1$
-			result.setGlobalEnabled(enable);
+			result.globalEnabled(enable);
 			if(!enable) {
 				return;
 			}
@@ -203,35 +272,70 @@ public class AdminNSFProxyConfigProvider implements ReverseProxyConfigProvider {
 			if(hostName == null || hostName.isEmpty()) {
 				hostName = "0.0.0.0"; //$NON-NLS-1$
 			}
-			result.proxyHostName = hostName;
+			result.proxyHostName(hostName);
 			if(useDominoConnectorHeaders) {
-				result.useDominoConnectorHeaders = true;
 				String secret = config.getParentDatabase().getParent().getEnvironmentString("HTTPConnectorHeadersSecret", true); //$NON-NLS-1$
-				result.dominoConnectorHeadersSecret = secret;
+				result.useDominoConnectorHeaders(true)
+					.dominoConnectorHeadersSecret(secret);
+			}
+			result.accessLogEnabled("Y".equals(config.getItemValueString(ITEM_REVERSEPROXYACCESSLOG))); //$NON-NLS-1$
+			result.accessLogFormat(config.getItemValueString(ITEM_REVERSEPROXYACCESSLOGFORMAT));
+			// Blank fields keep the defaults, while 0 explicitly disables rotation
+			Number maxSize = getNumberItem(config, ITEM_REVERSEPROXYACCESSLOGMAXSIZE);
+			if(maxSize != null) {
+				result.accessLogMaxSize((long)(maxSize.doubleValue() * 1024 * 1024));
 			}
+			Number maxFiles = getNumberItem(config, ITEM_REVERSEPROXYACCESSLOGMAXFILES);
+			if(maxFiles != null) {
+				result.accessLogMaxFiles(maxFiles.intValue());
+			}
+			result.metricsPath(config.getItemValueString(ITEM_REVERSEPROXYMETRICSPATH));
 			
 			// Check for HTTP
 			String httpVal = config.getItemValueString(ITEM_REVERSEPROXYHTTP);
 			boolean enableHttp = "Y".equals(httpVal) || "Redirect".equals(httpVal); //$NON-NLS-1$ //$NON-NLS-2$
 			if(enableHttp) {
 				int port = config.getItemValueInteger(ITEM_REVERSEPROXYHTTPPORT);
-				result.proxyHttpPort = port;
+				result.proxyHttpPort(port);
 			}
 			if("Redirect".equals(httpVal)) { //$NON-NLS-1$
-				result.redirectHttpToHttps = true;
+				result.redirectHttpToHttps(true);
 			}
 			
 			// Check for HTTPS
 			boolean enableHttps = "Y".equals(config.getItemValueString(ITEM_REVERSEPROXYHTTPS)); //$NON-NLS-1$
 			if(enableHttps) {
 				int port = config.getItemValueInteger(ITEM_REVERSEPROXYHTTPSPORT);
-				result.proxyHttpsPort = port;
+				result.proxyHttpsPort(port);
 				
 				String privateKeyPem = config.getItemValueString(ITEM_REVERSEPROXYHTTPSKEY);
+				String certsPem = config.getItemValueString(ITEM_REVERSEPROXYHTTPSCERT);
+				result.proxyHttpsContext(getSslContext(privateKeyPem, certsPem));
+			}
+		} catch(NotesException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	/**
+	 * Retrieves an {@link SSLContext} for the provided PEM material, reusing the previous
+	 * context when the material is unchanged.
+	 */
+	private static SSLContext getSslContext(String privateKeyPem, String certsPem) {
+		synchronized(cache) {
+			String materialHash = hash(privateKeyPem + '\0' + certsPem);
+			if(cache.sslContext != null && materialHash.equals(cache.sslMaterialHash)) {
+				return cache.sslContext;
+			}
+			
+			try {
 				char[] password = Long.toString(System.currentTimeMillis()).toCharArray();
 				RSAPrivateKey privateKey = readPrivateKey(privateKeyPem);
 				
-				String certsPem = config.getItemValueString(ITEM_REVERSEPROXYHTTPSCERT);
 				CertificateFactory fac = CertificateFactory.getInstance("X.509"); //$NON-NLS-1$
 				Collection<? extends Certificate> certs;
 				try(ByteArrayInputStream bais = new ByteArrayInputStream(certsPem.getBytes())) {
@@ -246,16 +350,199 @@ public class AdminNSFProxyConfigProvider implements ReverseProxyConfigProvider {
 				
 				SSLContext sslContext = SSLContext.getInstance("TLS"); //$NON-NLS-1$
 				sslContext.init(keyManagers, trustManagers, null);
-				result.proxyHttpsContext = sslContext;
+				
+				cache.sslMaterialHash = materialHash;
+				cache.sslContext = sslContext;
+				return sslContext;
+			} catch(CertificateException | NoSuchAlgorithmException | KeyManagementException | KeyStoreException | IOException | InvalidKeyException | InvalidKeySpecException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
+				throw new RuntimeException(e);
 			}
-		} catch(NotesException | CertificateException | NoSuchAlgorithmException | KeyManagementException | KeyStoreException | IOException | InvalidKeyException | InvalidKeySpecException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
-			throw new RuntimeException(e);
 		}
 	}
 	
-	// *******************************************************************************
-	// * Internal implementation methods
-	// *******************************************************************************
+	/**
+	 * Brings the cached targets up to date with the {@value #VIEW_REVERSEPROXYTARGETS} view,
+	 * re-reading only the entries for documents modified since the previous build.
+	 */
+	private static void updateTargets(Session session, Database adminNsf) throws NotesException {
+		Set<String> modified = null;
+		Date until;
+		DocumentCollection docs;
+		if(cache.targetsUntil == null) {
+			docs = adminNsf.getModifiedDocuments();
+		} else {
+			DateTime since = session.createDateTime(cache.targetsUntil);
+			try {
+				docs = adminNsf.getModifiedDocuments(since, Database.DBMOD_DOC_DATA);
+			} finally {
+				since.recycle();
+			}
+		}
+		try {
+			DateTime untilTime = docs.getUntilTime();
+			try {
+				until = untilTime.toJavaDate();
+			} finally {
+				untilTime.recycle();
+			}
+			if(cache.targetsUntil != null) {
+				modified = new HashSet<>();
+				Document doc = docs.getFirstDocument();
+				while(doc != null) {
+					modified.add(doc.getUniversalID());
+					Document tempDoc = doc;
+					doc = docs.getNextDocument(doc);
+					tempDoc.recycle();
+				}
+			}
+		} finally {
+			docs.recycle();
+		}
+		
+		if(modified != null && modified.isEmpty()) {
+			cache.targetsUntil = until;
+			cache.lastTargetsRead = 0;
+			return;
+		}
+		
+		View targetsView = adminNsf.getView(VIEW_REVERSEPROXYTARGETS);
+		targetsView.setAutoUpdate(false);
+		targetsView.refresh();
+		ViewNavigator nav = targetsView.createViewNav();
+		// Column values are only needed for changed entries, which are read from their documents
+		nav.setEntryOptions(ViewNavigator.VN_ENTRYOPT_NOCOUNTDATA | (modified == null ? 0 : ViewNavigator.VN_ENTRYOPT_NOCOLUMNVALUES));
+		
+		Map<String, CachedTarget> targets = new LinkedHashMap<>();
+		int read = 0;
+		ViewEntry entry = nav.getFirst();
+		while(entry != null) {
+			String unid = entry.getUniversalID();
+			CachedTarget target = cache.targets.get(unid);
+			if(target == null || modified == null || modified.contains(unid)) {
+				Vector<?> columnValues;
+				if(modified == null) {
+					columnValues = entry.getColumnValues();
+				} else {
+					Document doc = entry.getDocument();
+					columnValues = doc.getColumnValues();
+				}
+				target = readTarget(columnValues);
+				read++;
+				if(modified == null) {
+					entry.recycle(columnValues);
+				}
+			}
+			targets.put(unid, target);
+			
+			ViewEntry tempEntry = entry;
+			entry = nav.getNextSibling(entry);
+			tempEntry.recycle();
+		}
+		
+		cache.targets.clear();
+		cache.targets.putAll(targets);
+		cache.targetsUntil = until;
+		cache.lastTargetsRead = read;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static CachedTarget readTarget(Vector<?> columnValues) {
+		List<String> dominoServers;
+		Object dominoServersObj = columnValues.get(4);
+		if(dominoServersObj instanceof String) {
+			dominoServers = Arrays.asList((String)dominoServersObj);
+		} else {
+			dominoServers = new ArrayList<>((List<String>)dominoServersObj);
+		}
+		
+		// Format: http://localhost:80
+		String baseUri = (String)columnValues.get(0);
+		String contextPath = (String)columnValues.get(1);
+		boolean useXForwardedFor = "Y".equals(columnValues.get(2)); //$NON-NLS-1$
+		boolean useWsHeaders = "Y".equals(columnValues.get(3)); //$NON-NLS-1$
+		
+		URI uri = URI.create(baseUri + "/" + contextPath); //$NON-NLS-1$
+		return new CachedTarget(baseUri, contextPath, dominoServers, new ReverseProxyTarget(uri, useXForwardedFor, useWsHeaders));
+	}
+	
+	/**
+	 * Reads Domino's maximum entity size from the current server's document in names.nsf,
+	 * reusing the previous value while the document is unmodified.
+	 */
+	private static long readMaxEntitySize(Session session) throws NotesException {
+		Database names = session.getDatabase("", "names.nsf"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			Document serverDoc = null;
+			if(cache.serverDocUnid != null) {
+				try {
+					serverDoc = names.getDocumentByUNID(cache.serverDocUnid);
+				} catch(NotesException e) {
+					// Thrown when the document does not exist
+				}
+			}
+			if(serverDoc == null || !serverDoc.isValid() || serverDoc.isDeleted()) {
+				String serverName = DominoEnvironment.instance.getServerName();
+				View servers = names.getView("$Servers"); //$NON-NLS-1$
+				serverDoc = servers.getDocumentByKey(serverName);
+				cache.serverDocUnid = null;
+			}
+			
+			long modified = serverDoc.getLastModified().toJavaDate().getTime();
+			if(!serverDoc.getUniversalID().equals(cache.serverDocUnid) || modified != cache.serverDocModified) {
+				// Mirror Domino's maximum entity size
+				long maxEntitySize = serverDoc.getItemValueInteger("HTTP_MaxContentLength"); //$NON-NLS-1$
+				if(maxEntitySize == 0) {
+					maxEntitySize = Long.MAX_VALUE;
+				}
+				cache.maxEntitySize = maxEntitySize;
+				cache.serverDocUnid = serverDoc.getUniversalID();
+				cache.serverDocModified = modified;
+			}
+			return cache.maxEntitySize;
+		} finally {
+			names.recycle();
+		}
+	}
+	
+	private static ReverseProxyTarget routeTarget(CachedTarget target) {
+		String targetPath = targetPaths.get(target.contextPath);
+		// Servers still replaying warm-up requests are held back until they report ready
+		boolean ready = !ServerWarmup.instance.getWarmingPorts().contains(target.target.getUri().getPort());
+		if(targetPath == null && ready) {
+			return target.target;
+		}
+		URI uri = targetPath == null ? target.target.getUri() : URI.create(target.baseUri + "/" + targetPath); //$NON-NLS-1$
+		return new ReverseProxyTarget(uri, target.target.isUseXForwardedFor(), target.target.isUseWsHeaders(), ready);
+	}
+	
+	private static String trimSlashes(String path) {
+		String result = path == null ? "" : path.trim(); //$NON-NLS-1$
+		while(result.startsWith("/")) { //$NON-NLS-1$
+			result = result.substring(1);
+		}
+		return result;
+	}
+	
+	private static Number getNumberItem(Document doc, String itemName) throws NotesException {
+		List<?> value = doc.getItemValue(itemName);
+		if(value != null && !value.isEmpty() && value.get(0) instanceof Number) {
+			return (Number)value.get(0);
+		}
+		return null;
+	}
+	
+	private static long elapsedMillis(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+	
+	private static String hash(String value) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			return new BigInteger(1, digest.digest(value.getBytes(StandardCharsets.UTF_8))).toString(16);
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 	
 	private static RSAPrivateKey readPrivateKey(String key) throws InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
 		String privateKeyPEM = key
@@ -297,4 +584,35 @@ public class AdminNSFProxyConfigProvider implements ReverseProxyConfigProvider {
 	    }
 	    return keyManagers;
 	}
+	
+	private static class CachedTarget {
+		private final String baseUri;
+		private final String contextPath;
+		private final List<String> dominoServers;
+		private final ReverseProxyTarget target;
+		
+		CachedTarget(String baseUri, String contextPath, List<String> dominoServers, ReverseProxyTarget target) {
+			this.baseUri = baseUri;
+			this.contextPath = contextPath;
+			this.dominoServers = dominoServers;
+			this.target = target;
+		}
+	}
+	
+	private static class BuildCache {
+		/** The admin NSF time up to which changes have been applied to {@link #targets} */
+		private Date targetsUntil;
+		/** Targets by document UNID, in view order */
+		private final Map<String, CachedTarget> targets = new LinkedHashMap<>();
+		private int lastTargetsRead;
+		
+		private String sslMaterialHash;
+		private SSLContext sslContext;
+		
+		private String serverDocUnid;
+		private long serverDocModified;
+		private long maxEntitySize;
+		
+		private Map<String, Long> lastTimings = Collections.emptyMap();
+	}
 }
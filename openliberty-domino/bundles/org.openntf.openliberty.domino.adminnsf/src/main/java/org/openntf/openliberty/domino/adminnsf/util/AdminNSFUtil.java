@@ -25,13 +25,12 @@ import java.util.concurrent.ExecutionException;
 
 import org.openntf.openliberty.domino.adminnsf.AdminNSFService;
 import org.openntf.openliberty.domino.adminnsf.config.AdminNSFProperties;
-import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.NotesSessionWorker;
 
 import lotus.domino.Database;
 import lotus.domino.Document;
 import lotus.domino.Name;
 import lotus.domino.NotesException;
-import lotus.domino.NotesFactory;
 import lotus.domino.Session;
 import lotus.domino.View;
 
@@ -94,33 +93,28 @@ public enum AdminNSFUtil {
 	
 	public static Collection<String> getCurrentServerNamesList() {
 		try {
-			return DominoThreadFactory.getExecutor().submit(() -> {
+			return NotesSessionWorker.instance.call(session -> {
 				return AccessController.doPrivileged((PrivilegedExceptionAction<Collection<String>>)() -> {
-					Session session = NotesFactory.createSession();
-					try {
-						Class<?> dominoServerClass = ClassLoader.getSystemClassLoader().loadClass("lotus.notes.addins.DominoServer"); //$NON-NLS-1$
-						Method getNamesList = dominoServerClass.getMethod("getNamesList", String.class); //$NON-NLS-1$
-						Object dominoServer = dominoServerClass.getConstructor(new Class<?>[0]).newInstance();
-						@SuppressWarnings("unchecked")
-						Collection<String> names = (Collection<String>)getNamesList.invoke(dominoServer, session.getUserName());
+					Class<?> dominoServerClass = ClassLoader.getSystemClassLoader().loadClass("lotus.notes.addins.DominoServer"); //$NON-NLS-1$
+					Method getNamesList = dominoServerClass.getMethod("getNamesList", String.class); //$NON-NLS-1$
+					Object dominoServer = dominoServerClass.getConstructor(new Class<?>[0]).newInstance();
+					@SuppressWarnings("unchecked")
+					Collection<String> names = (Collection<String>)getNamesList.invoke(dominoServer, session.getUserName());
 
-						Collection<String> namesList = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
-						namesList.addAll(names);
-						
-						// The abbreviated name _shouldn't_ make it into the names field, but just in case
-						Name nameObj = session.getUserNameObject();
-						try {
-							namesList.add(nameObj.getAbbreviated());
-						} finally {
-							nameObj.recycle();
-						}
-						
-						return namesList;
+					Collection<String> namesList = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+					namesList.addAll(names);
+					
+					// The abbreviated name _shouldn't_ make it into the names field, but just in case
+					Name nameObj = session.getUserNameObject();
+					try {
+						namesList.add(nameObj.getAbbreviated());
 					} finally {
-						session.recycle();
+						nameObj.recycle();
 					}
+					
+					return namesList;
 				});
-			}).get();
+			});
 		} catch (InterruptedException | ExecutionException e) {
 			throw new RuntimeException(e);
 		}
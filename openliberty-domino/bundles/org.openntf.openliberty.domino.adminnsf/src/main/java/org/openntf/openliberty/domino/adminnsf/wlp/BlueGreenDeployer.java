@@ -0,0 +1,464 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.adminnsf.wlp;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openntf.openliberty.domino.adminnsf.AdminNSFService;
+import org.openntf.openliberty.domino.adminnsf.Messages;
+import org.openntf.openliberty.domino.adminnsf.proxy.AdminNSFProxyConfigProvider;
+import org.openntf.openliberty.domino.artifact.AppStore;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.reverseproxy.RequestSampler;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigProvider;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyTarget;
+import org.openntf.openliberty.domino.reverseproxy.metrics.ProxyMetrics;
+import org.openntf.openliberty.domino.runtime.OpenLibertyRuntime;
+import org.openntf.openliberty.domino.server.ServerInstance;
+import org.openntf.openliberty.domino.server.wlp.LibertyServerConfiguration;
+import org.openntf.openliberty.domino.server.wlp.LibertyServerInstance;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.xml.XMLDocument;
+import org.openntf.openliberty.domino.util.xml.XMLNode;
+import org.xml.sax.SAXException;
+
+/**
+ * Coordinates blue/green deployments of server-document WAR files.
+ * 
+ * <p>Each version of an app is deployed under its own context root, derived from the
+ * configured context path and the digest of the WAR. When the WAR changes, the new version
+ * is added to the server alongside the running one. Once Liberty reports that it has started
+ * and any warm-up URLs have been requested, the reverse proxy is switched to it, and the
+ * previous version is removed once the reverse proxies report no requests in flight to it,
+ * or after {@link #DRAIN_SECONDS} at most.</p>
+ * 
+ * <p>Since each version has its own context root, apps deployed this way should be reached
+ * through the reverse proxy rather than directly.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum BlueGreenDeployer {
+	instance;
+	
+	private static final Logger log = OpenLibertyLog.instance.log;
+	
+	/** The maximum time to wait for a new version to report that it has started */
+	public static final long START_TIMEOUT_MINUTES = 5;
+	/** The longest time to leave a previous version deployed after requests are switched away from it */
+	public static final long DRAIN_SECONDS = 30;
+	/** How often to check whether a previous version has finished its in-flight requests */
+	private static final long DRAIN_POLL_MILLIS = 500;
+	
+	private static final int VERSION_LENGTH = 12;
+	private static final int WARMUP_CONNECT_TIMEOUT = (int)TimeUnit.SECONDS.toMillis(30);
+	private static final int WARMUP_READ_TIMEOUT = (int)TimeUnit.MINUTES.toMillis(2);
+	
+	/** Deployments by server name, guarded by this object's monitor */
+	private final Map<String, Deployment> deployments = new HashMap<>();
+	
+	/**
+	 * Adds the {@code webApplication} elements for the app versions that should currently be
+	 * deployed to the provided server configuration, including {@code warPath} if it is not
+	 * the running version.
+	 * 
+	 * @param serverName the name of the server
+	 * @param serverXml the server configuration generated from the server document, which is
+	 * 		modified in place
+	 * @param contextPath the context path the app is published at through the reverse proxy
+	 * @param warPath the installed location of the WAR, as returned by {@link AppStore}
+	 * @return {@code true} if {@code warPath} is a new version that should be switched to via
+	 * 		{@link #activate(String, List)} once the configuration is applied
+	 * @throws IOException if there is a problem serializing the server configuration
+	 */
+	public synchronized boolean prepare(String serverName, XMLDocument serverXml, String contextPath, Path warPath) throws IOException {
+		Deployment deployment = deployments.get(serverName);
+		if(deployment == null || !deployment.contextPath.equals(contextPath)) {
+			if(deployment != null) {
+				discard(deployment);
+			}
+			deployment = new Deployment(contextPath);
+			deployments.put(serverName, deployment);
+		}
+		deployment.baseServerXml = serverXml.getXml();
+		
+		String version = warPath.getParent().getFileName().toString();
+		if(version.length() > VERSION_LENGTH) {
+			version = version.substring(0, VERSION_LENGTH);
+		}
+		
+		boolean switchNeeded = false;
+		if(deployment.active != null && deployment.active.version.equals(version)) {
+			cancelCandidate(deployment);
+		} else if(deployment.candidate == null || !deployment.candidate.version.equals(version)) {
+			cancelCandidate(deployment);
+			
+			// A previous version that is still draining can be switched back to without redeploying it
+			String candidateVersion = version;
+			Slot draining = deployment.draining.stream()
+				.filter(slot -> slot.version.equals(candidateVersion))
+				.findFirst()
+				.orElse(null);
+			if(draining != null) {
+				deployment.draining.remove(draining);
+				deployment.candidate = draining;
+				deployment.getSlots().forEach(slot -> addWebApplication(serverXml, slot));
+				return true;
+			}
+			
+			long logPosition = OpenLibertyRuntime.instance.getServerInstance(serverName)
+				.filter(LibertyServerInstance.class::isInstance)
+				.map(LibertyServerInstance.class::cast)
+				.map(LibertyServerInstance::getMessagesLogPosition)
+				.orElse(0L);
+			deployment.candidate = new Slot(version, contextPath, warPath, logPosition);
+			AppStore.instance.setPinned(warPath, true);
+			switchNeeded = true;
+			
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("BlueGreenDeployer.deployingCandidate"), getClass().getSimpleName(), version, serverName, deployment.candidate.contextRoot)); //$NON-NLS-1$
+			}
+		}
+		
+		deployment.getSlots().forEach(slot -> addWebApplication(serverXml, slot));
+		return switchNeeded;
+	}
+	
+	/**
+	 * Begins switching the named server to the version added by the last call to
+	 * {@link #prepare(String, XMLDocument, String, Path)}. This waits for the version to start,
+	 * requests the provided warm-up URLs, switches the reverse proxy to it, and removes the
+	 * previous version once it has drained.
+	 * 
+	 * @param serverName the name of the server
+	 * @param warmupPaths paths relative to the app context root to request before switching
+	 */
+	public synchronized void activate(String serverName, List<String> warmupPaths) {
+		Deployment deployment = deployments.get(serverName);
+		if(deployment == null || deployment.candidate == null) {
+			return;
+		}
+		Slot candidate = deployment.candidate;
+		List<String> paths = new ArrayList<>(warmupPaths);
+		deployment.switchTask = DominoThreadFactory.getExecutor().submit(() -> {
+			try {
+				switchTo(serverName, deployment, candidate, paths);
+			} catch(InterruptedException e) {
+				// Superseded by a newer version
+			} catch(Throwable t) {
+				if(log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, format(Messages.getString("BlueGreenDeployer.exceptionSwitching"), BlueGreenDeployer.class.getSimpleName(), serverName), t); //$NON-NLS-1$
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Stops managing the named server, such as when it is removed or switched to in-place
+	 * deployment, and routes its context path back to the app server directly.
+	 * 
+	 * @param serverName the name of the server
+	 */
+	public synchronized void remove(String serverName) {
+		Deployment deployment = deployments.remove(serverName);
+		if(deployment != null) {
+			discard(deployment);
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private void switchTo(String serverName, Deployment deployment, Slot candidate, List<String> warmupPaths) throws InterruptedException {
+		long start = System.nanoTime();
+		ServerInstance<?> serverInstance = OpenLibertyRuntime.instance.getServerInstance(serverName).orElse(null);
+		if(!candidate.started && serverInstance instanceof LibertyServerInstance) {
+			LibertyServerInstance liberty = (LibertyServerInstance)serverInstance;
+			if(!liberty.awaitApplicationStarted(candidate.appName, candidate.logPosition, START_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+				if(log.isLoggable(Level.WARNING)) {
+					log.warning(format(Messages.getString("BlueGreenDeployer.candidateFailed"), getClass().getSimpleName(), candidate.version, serverName)); //$NON-NLS-1$
+				}
+				synchronized(this) {
+					if(deployment.candidate == candidate && deployments.get(serverName) == deployment) {
+						deployment.candidate = null;
+						deployment.switchTask = null;
+						AppStore.instance.setPinned(candidate.location, false);
+						updateServerXml(serverName, deployment);
+					}
+				}
+				return;
+			}
+			candidate.started = true;
+		}
+		
+		warmUp(serverName, deployment.contextPath, candidate, warmupPaths);
+		
+		Slot previous;
+		synchronized(this) {
+			if(deployment.candidate != candidate || deployments.get(serverName) != deployment) {
+				// Superseded while warming up
+				return;
+			}
+			AdminNSFProxyConfigProvider.setTargetPath(deployment.contextPath, candidate.contextRoot);
+			RequestSampler.instance.setContextRoot(deployment.contextPath, candidate.contextRoot);
+			previous = deployment.active;
+			deployment.active = candidate;
+			candidate.started = true;
+			deployment.candidate = null;
+			deployment.switchTask = null;
+			if(previous != null) {
+				deployment.draining.add(previous);
+			}
+		}
+		AdminNSFService.instance.refreshReverseProxy();
+		MetricsRegistry.instance.histogram(OpenLibertyRuntime.DEPLOY_DURATION, OpenLibertyRuntime.DEPLOY_DURATION_HELP, "kind", "blue_green") //$NON-NLS-1$ //$NON-NLS-2$
+			.record(System.nanoTime() - start);
+		
+		if(log.isLoggable(Level.INFO)) {
+			log.info(format(Messages.getString("BlueGreenDeployer.switched"), getClass().getSimpleName(), serverName, candidate.version, DRAIN_SECONDS)); //$NON-NLS-1$
+		}
+		
+		if(previous != null) {
+			awaitDrained(serverName, deployment, previous, System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS));
+		}
+	}
+	
+	/**
+	 * Removes a previous version once the reverse proxies report no requests in flight to its
+	 * context root, or once the deadline has passed.
+	 */
+	private void awaitDrained(String serverName, Deployment deployment, Slot drained, long deadline) {
+		DominoThreadFactory.getScheduler().schedule(() -> {
+			synchronized(this) {
+				if(!deployment.draining.contains(drained)) {
+					// Switched back to or discarded in the meantime
+					return;
+				}
+			}
+			int active = ProxyMetrics.instance.getActiveBackendRequests(drained.contextRoot);
+			if(active > 0 && System.nanoTime() < deadline) {
+				awaitDrained(serverName, deployment, drained, deadline);
+				return;
+			}
+			if(active > 0 && log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("BlueGreenDeployer.drainTimedOut"), getClass().getSimpleName(), drained.version, serverName, active, DRAIN_SECONDS)); //$NON-NLS-1$
+			}
+			removeDrained(serverName, deployment, drained);
+		}, DRAIN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	private synchronized void removeDrained(String serverName, Deployment deployment, Slot drained) {
+		if(!deployment.draining.remove(drained)) {
+			return;
+		}
+		if(log.isLoggable(Level.INFO)) {
+			log.info(format(Messages.getString("BlueGreenDeployer.removingVersion"), getClass().getSimpleName(), drained.version, serverName)); //$NON-NLS-1$
+		}
+		AppStore.instance.setPinned(drained.location, false);
+		if(deployments.get(serverName) == deployment) {
+			updateServerXml(serverName, deployment);
+		}
+	}
+	
+	/**
+	 * Requests each warm-up path from the new version directly, so that its first requests
+	 * through the proxy don't pay for lazy initialization.
+	 */
+	private void warmUp(String serverName, String contextPath, Slot candidate, List<String> warmupPaths) throws InterruptedException {
+		if(warmupPaths.isEmpty()) {
+			return;
+		}
+		String baseUri = getBaseUri(serverName, contextPath);
+		if(baseUri == null) {
+			return;
+		}
+		for(String path : warmupPaths) {
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			String url = baseUri + candidate.contextRoot + (path.startsWith("/") ? path : "/" + path); //$NON-NLS-1$ //$NON-NLS-2$
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("BlueGreenDeployer.warmingUp"), getClass().getSimpleName(), candidate.version, serverName, url)); //$NON-NLS-1$
+			}
+			try {
+				HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+				try {
+					conn.setConnectTimeout(WARMUP_CONNECT_TIMEOUT);
+					conn.setReadTimeout(WARMUP_READ_TIMEOUT);
+					int status = conn.getResponseCode();
+					InputStream is = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+					if(is != null) {
+						try {
+							byte[] buffer = new byte[8192];
+							while(is.read(buffer) != -1) {
+								// Drain the response
+							}
+						} finally {
+							is.close();
+						}
+					}
+				} finally {
+					conn.disconnect();
+				}
+			} catch(IOException e) {
+				if(log.isLoggable(Level.WARNING)) {
+					log.warning(format(Messages.getString("BlueGreenDeployer.warmUpFailed"), getClass().getSimpleName(), url, e)); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Determines the scheme, host, and port of the app server, preferring the reverse proxy
+	 * target for the context path and falling back to the server's first listening port.
+	 */
+	private String getBaseUri(String serverName, String contextPath) {
+		String key = contextPath.startsWith("/") ? contextPath.substring(1) : contextPath; //$NON-NLS-1$
+		ReverseProxyConfig config = OpenLibertyUtil.findRequiredExtension(ReverseProxyConfigProvider.class).createConfiguration();
+		ReverseProxyTarget target = config.getTargets().get(key);
+		if(target != null) {
+			URI uri = target.getUri();
+			return uri.getScheme() + "://" + uri.getAuthority(); //$NON-NLS-1$
+		}
+		return OpenLibertyRuntime.instance.getServerInstance(serverName)
+			.flatMap(serverInstance -> serverInstance.getListeningPorts().stream().findFirst())
+			.map(port -> "http://localhost:" + port) //$NON-NLS-1$
+			.orElse(null);
+	}
+	
+	/**
+	 * Applies the base server configuration with the current versions added, keeping the rest
+	 * of the server's current configuration, such as its warm-up settings.
+	 */
+	private void updateServerXml(String serverName, Deployment deployment) {
+		try {
+			XMLDocument serverXml = new XMLDocument(deployment.baseServerXml);
+			deployment.getSlots().forEach(slot -> addWebApplication(serverXml, slot));
+			LibertyServerConfiguration newConfig = new LibertyServerConfiguration();
+			newConfig.setServerXml(serverXml);
+			OpenLibertyRuntime.instance.getServerInstance(serverName)
+				.map(ServerInstance::getConfiguration)
+				.filter(LibertyServerConfiguration.class::isInstance)
+				.map(LibertyServerConfiguration.class::cast)
+				.ifPresent(current -> newConfig.setWarmup(current.getWarmup()));
+			OpenLibertyRuntime.instance.updateConfiguration(serverName, newConfig);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		} catch(SAXException | ParserConfigurationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void cancelCandidate(Deployment deployment) {
+		if(deployment.switchTask != null) {
+			deployment.switchTask.cancel(true);
+			deployment.switchTask = null;
+		}
+		if(deployment.candidate != null) {
+			AppStore.instance.setPinned(deployment.candidate.location, false);
+			deployment.candidate = null;
+		}
+	}
+	
+	private void discard(Deployment deployment) {
+		cancelCandidate(deployment);
+		deployment.getSlots().forEach(slot -> AppStore.instance.setPinned(slot.location, false));
+		AdminNSFProxyConfigProvider.setTargetPath(deployment.contextPath, null);
+		RequestSampler.instance.setContextRoot(deployment.contextPath, null);
+	}
+	
+	private static void addWebApplication(XMLDocument serverXml, Slot slot) {
+		XMLNode webApplication = serverXml.selectSingleNode("/server").addChildElement("webApplication"); //$NON-NLS-1$ //$NON-NLS-2$
+		webApplication.setAttribute("contextRoot", slot.contextRoot); //$NON-NLS-1$
+		webApplication.setAttribute("id", slot.appName); //$NON-NLS-1$
+		webApplication.setAttribute("location", slot.location.toString()); //$NON-NLS-1$
+		webApplication.setAttribute("name", slot.appName); //$NON-NLS-1$
+	}
+	
+	/**
+	 * A single deployed version of an app.
+	 */
+	private static class Slot {
+		private final String version;
+		private final String appName;
+		private final String contextRoot;
+		private final Path location;
+		/** The position in the server's messages log before this version was added */
+		private final long logPosition;
+		/** Whether Liberty has reported that this version started */
+		private volatile boolean started;
+		
+		Slot(String version, String contextPath, Path location, long logPosition) {
+			this.version = version;
+			this.appName = "app-" + version; //$NON-NLS-1$
+			this.contextRoot = contextPath + '-' + version;
+			this.location = location;
+			this.logPosition = logPosition;
+		}
+	}
+	
+	/**
+	 * The deployment state of a single server, guarded by the {@link BlueGreenDeployer} monitor.
+	 */
+	private static class Deployment {
+		private final String contextPath;
+		private String baseServerXml;
+		/** The version requests are routed to */
+		private Slot active;
+		/** A new version that is starting or warming up */
+		private Slot candidate;
+		/** Previous versions that are waiting to be removed */
+		private final List<Slot> draining = new ArrayList<>();
+		private Future<?> switchTask;
+		
+		Deployment(String contextPath) {
+			this.contextPath = contextPath;
+		}
+		
+		List<Slot> getSlots() {
+			List<Slot> result = new ArrayList<>(draining);
+			if(active != null) {
+				result.add(active);
+			}
+			if(candidate != null) {
+				result.add(candidate);
+			}
+			return result;
+		}
+	}
+}
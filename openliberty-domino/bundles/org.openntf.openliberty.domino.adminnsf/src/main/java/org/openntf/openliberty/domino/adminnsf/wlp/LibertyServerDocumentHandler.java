@@ -4,8 +4,8 @@ import static java.text.MessageFormat.format;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -17,10 +17,13 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.openntf.openliberty.domino.adminnsf.AbstractJavaServerDocumentHandler;
 import org.openntf.openliberty.domino.adminnsf.AdminNSFService;
 import org.openntf.openliberty.domino.adminnsf.Messages;
+import org.openntf.openliberty.domino.adminnsf.NSFAttachmentArchive;
+import org.openntf.openliberty.domino.artifact.AppStore;
 import org.openntf.openliberty.domino.jvm.JVMIdentifier;
 import org.openntf.openliberty.domino.jvm.RunningJVMJavaRuntimeProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.OpenLibertyRuntime;
+import org.openntf.openliberty.domino.server.WarmupConfiguration;
 import org.openntf.openliberty.domino.server.wlp.LibertyExtensionDeployer;
 import org.openntf.openliberty.domino.server.wlp.LibertyServerConfiguration;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
@@ -57,6 +60,23 @@ public class LibertyServerDocumentHandler extends AbstractJavaServerDocumentHand
 	public static final String ITEM_LIBERTYARTIFACT = "LibertyArtifact"; //$NON-NLS-1$
 	/** @since 3.0.0 */
 	public static final String ITEM_LIBERTYMAVENREPO = "LibertyMavenRepo"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_INSTANTON = "InstantOn"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_CLASSSHARING = "ClassSharing"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_DEPLOYMENTMODE = "DeploymentMode"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_WARMUPURLS = "WarmupURLs"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_WARMUPRECORDED = "WarmupRecorded"; //$NON-NLS-1$
+	/** @since 4.0.0 */
+	public static final String ITEM_WARMUPCONCURRENCY = "WarmupConcurrency"; //$NON-NLS-1$
+	/**
+	 * Value of {@link #ITEM_DEPLOYMENTMODE} that deploys WAR updates via {@link BlueGreenDeployer}
+	 * @since 4.0.0
+	 */
+	public static final String DEPLOYMENTMODE_BLUEGREEN = "BlueGreen"; //$NON-NLS-1$
 	
 	@Override
 	public boolean canHandle(Document serverDoc) throws NotesException {
@@ -66,7 +86,6 @@ public class LibertyServerDocumentHandler extends AbstractJavaServerDocumentHand
 	@Override
 	public void handle(Document serverDoc) throws NotesException {
 		String serverName = serverDoc.getItemValueString(AdminNSFService.ITEM_SERVERNAME);
-		XMLDocument serverXml = null;
 		
 		if(log.isLoggable(Level.INFO)) {
 			log.info(format(Messages.getString("AdminNSFService.deployingDefinedServer"), getClass().getSimpleName(), serverName)); //$NON-NLS-1$
@@ -82,32 +101,28 @@ public class LibertyServerDocumentHandler extends AbstractJavaServerDocumentHand
 			}
 			config.setJavaVersion(new JVMIdentifier(javaVersion, javaType));
 			
-			config.setServerXml(generateServerXml(serverDoc));
 			config.setServerEnv(serverDoc.getItemValueString(ITEM_SERVERENV));
 			config.setJvmOptions(serverDoc.getItemValueString(ITEM_JVMOPTIONS));
 			config.setBootstrapProperties(serverDoc.getItemValueString(ITEM_BOOTSTRAPPROPS));
 			if(serverDoc.hasItem(ITEM_DEPLOYMENTZIPS)) {
 				RichTextItem deploymentItem = (RichTextItem)serverDoc.getFirstItem(ITEM_DEPLOYMENTZIPS);
 				@SuppressWarnings("unchecked")
-				List<EmbeddedObject> objects = deploymentItem.getEmbeddedObjects();
+				Vector<EmbeddedObject> objects = deploymentItem.getEmbeddedObjects();
 				for(EmbeddedObject eo : objects) {
 					if(eo.getType() == EmbeddedObject.EMBED_ATTACHMENT) {
-						Path zip = Files.createTempFile(OpenLibertyUtil.getTempDirectory(), "nsfdeployment", ".zip"); //$NON-NLS-1$ //$NON-NLS-2$
-						Files.deleteIfExists(zip);
-						eo.extractFile(zip.toString());
-						config.addAdditionalZip(zip);
+						// Streamed from the document at deployment time
+						config.addAdditionalZip(new NSFAttachmentArchive(serverDoc, eo));
 					}
 				}
+				deploymentItem.recycle(objects);
 			}
 			
 			config.setLibertyVersion(serverDoc.getItemValueString(ITEM_LIBERTYVERSION));
 			config.setLibertyArtifact(serverDoc.getItemValueString(ITEM_LIBERTYARTIFACT));
 			config.setLibertyMavenRepo(serverDoc.getItemValueString(ITEM_LIBERTYMAVENREPO));
-			
-			
-			OpenLibertyRuntime.instance.registerServer(serverName, config);
-			OpenLibertyRuntime.instance.createServer(serverName);
-			OpenLibertyRuntime.instance.startServer(serverName);
+			config.setCheckpointEnabled("Y".equals(serverDoc.getItemValueString(ITEM_INSTANTON))); //$NON-NLS-1$
+			// Enabled unless explicitly disabled, including for documents created before the option existed
+			config.setClassSharingEnabled(!"N".equals(serverDoc.getItemValueString(ITEM_CLASSSHARING))); //$NON-NLS-1$
 			
 			// Deploy the attached WAR
 			String contextPath = serverDoc.getItemValueString(AdminNSFService.ITEM_CONTEXTPATH);
@@ -117,46 +132,18 @@ public class LibertyServerDocumentHandler extends AbstractJavaServerDocumentHand
 			if(!contextPath.startsWith("/")) { //$NON-NLS-1$
 				contextPath = "/" + contextPath; //$NON-NLS-1$
 			}
+			Path warPath = installWar(serverDoc, serverName, contextPath);
 			
-			// Generate a name based on the modification time, to avoid Windows file-locking trouble
-			// Shave off the last digit, to avoid trouble with Domino TIMEDATE limitations
-			long docMod = serverDoc.getLastModified().toJavaDate().getTime();
-			docMod = docMod / 10 * 10;
-			Path appsRoot = OpenLibertyUtil.getTempDirectory().resolve("apps"); //$NON-NLS-1$
-			Path appDir = appsRoot.resolve(serverDoc.getNoteID() + '-' + docMod);
-			Files.createDirectories(appDir);
-			Path warPath = appDir.resolve("app.war"); //$NON-NLS-1$
-			
-	
-			// See if we need to deploy the file
-			if(!Files.exists(warPath)) {
-				if(log.isLoggable(Level.INFO)) {
-					log.info(format(Messages.getString("AdminNSFService.deployingDefinedApp"), getClass().getSimpleName(), serverName, contextPath)); //$NON-NLS-1$
-				}
-				
-				if(serverDoc.hasItem(ITEM_WAR)) {
-					Item warItem = serverDoc.getFirstItem(ITEM_WAR);
-					if(warItem.getType() == Item.RICHTEXT) {
-						RichTextItem rtItem = (RichTextItem)warItem;
-						@SuppressWarnings("unchecked")
-						Vector<EmbeddedObject> objects = rtItem.getEmbeddedObjects();
-						try {
-							for(EmbeddedObject eo : objects) {
-								// Deploy all attached files
-								if(eo.getType() == EmbeddedObject.EMBED_ATTACHMENT) {
-									eo.extractFile(warPath.toString());
-									break;
-								}
-							}
-						} finally {
-							rtItem.recycle(objects);
-						}
-					}
-					
+			// Include the app in the initial configuration so that Liberty doesn't see a configuration without it
+			XMLDocument serverXml = generateServerXml(serverDoc);
+			boolean blueGreen = DEPLOYMENTMODE_BLUEGREEN.equals(serverDoc.getItemValueString(ITEM_DEPLOYMENTMODE));
+			boolean switchNeeded = false;
+			if(warPath != null && blueGreen) {
+				switchNeeded = BlueGreenDeployer.instance.prepare(serverName, serverXml, contextPath, warPath);
+			} else {
+				BlueGreenDeployer.instance.remove(serverName);
+				if(warPath != null) {
 					// Add a webApplication entry
-					if(serverXml == null) {
-						serverXml = generateServerXml(serverDoc);
-					}
 					XMLNode webApplication = serverXml.selectSingleNode("/server").addChildElement("webApplication"); //$NON-NLS-1$ //$NON-NLS-2$
 					webApplication.setAttribute("contextRoot", contextPath); //$NON-NLS-1$
 					webApplication.setAttribute("id", "app-" + serverDoc.getNoteID()); //$NON-NLS-1$ //$NON-NLS-2$
@@ -164,18 +151,83 @@ public class LibertyServerDocumentHandler extends AbstractJavaServerDocumentHand
 					webApplication.setAttribute("name", serverName); //$NON-NLS-1$
 				}
 			}
+			config.setServerXml(serverXml);
+			
+			@SuppressWarnings("unchecked")
+			List<String> warmupPaths = ((List<String>)serverDoc.getItemValue(ITEM_WARMUPURLS)).stream()
+				.filter(StringUtil::isNotEmpty)
+				.map(String::trim)
+				.collect(Collectors.toList());
+			config.setWarmup(readWarmupConfiguration(serverDoc, blueGreen ? Collections.emptyList() : warmupPaths, contextPath));
+			
+			OpenLibertyRuntime.instance.registerServer(serverName, config);
+			OpenLibertyRuntime.instance.createServer(serverName);
+			OpenLibertyRuntime.instance.startServer(serverName);
 			
-			if(serverXml != null) {
-				// TODO create a full configuration
-				LibertyServerConfiguration newConfig = new LibertyServerConfiguration();
-				newConfig.setServerXml(serverXml);
-				OpenLibertyRuntime.instance.updateConfiguration(serverName, newConfig);
+			if(switchNeeded) {
+				BlueGreenDeployer.instance.activate(serverName, warmupPaths);
 			}
 		} catch(IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 	
+	/**
+	 * Reads the warm-up options for the server after it starts.
+	 * 
+	 * <p>In blue/green mode, the configured paths are replayed against each candidate version
+	 * by {@link BlueGreenDeployer} instead, since the app's context root changes with its version.</p>
+	 * 
+	 * @param serverDoc the server document to read
+	 * @param warmupPaths the configured warm-up paths, relative to the app context
+	 * @param contextPath the context path of the app
+	 * @return the warm-up configuration for the server
+	 */
+	private WarmupConfiguration readWarmupConfiguration(Document serverDoc, List<String> warmupPaths, String contextPath) throws NotesException {
+		List<String> paths = warmupPaths.stream()
+			.map(path -> contextPath + (path.startsWith("/") ? path : "/" + path)) //$NON-NLS-1$ //$NON-NLS-2$
+			.collect(Collectors.toList());
+		boolean replayRecorded = "Y".equals(serverDoc.getItemValueString(ITEM_WARMUPRECORDED)); //$NON-NLS-1$
+		int concurrency = serverDoc.getItemValueInteger(ITEM_WARMUPCONCURRENCY);
+		if(concurrency < 1) {
+			concurrency = WarmupConfiguration.DEFAULT_CONCURRENCY;
+		}
+		return new WarmupConfiguration(paths, replayRecorded, concurrency);
+	}
+	
+	/**
+	 * Installs the first file attached to the {@value #ITEM_WAR} item into the {@link AppStore}.
+	 * 
+	 * @return the installed location of the WAR, or {@code null} if there is no attached WAR
+	 */
+	private Path installWar(Document serverDoc, String serverName, String contextPath) throws NotesException, IOException {
+		if(!serverDoc.hasItem(ITEM_WAR)) {
+			return null;
+		}
+		Item warItem = serverDoc.getFirstItem(ITEM_WAR);
+		if(warItem.getType() != Item.RICHTEXT) {
+			return null;
+		}
+		RichTextItem rtItem = (RichTextItem)warItem;
+		@SuppressWarnings("unchecked")
+		Vector<EmbeddedObject> objects = rtItem.getEmbeddedObjects();
+		try {
+			for(EmbeddedObject eo : objects) {
+				// Deploy the first attached file
+				if(eo.getType() == EmbeddedObject.EMBED_ATTACHMENT) {
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("AdminNSFService.deployingDefinedApp"), getClass().getSimpleName(), serverName, contextPath)); //$NON-NLS-1$
+					}
+					// The stored path only changes when the WAR content does, so Liberty doesn't redeploy unchanged apps
+					return AppStore.instance.install(serverName, new NSFAttachmentArchive(serverDoc, eo), "app.war"); //$NON-NLS-1$
+				}
+			}
+			return null;
+		} finally {
+			rtItem.recycle(objects);
+		}
+	}
+	
 	private XMLDocument generateServerXml(Document serverDoc) throws NotesException, IOException {
 		try {
 			String serverXmlString = serverDoc.getItemValueString(ITEM_SERVERXML);
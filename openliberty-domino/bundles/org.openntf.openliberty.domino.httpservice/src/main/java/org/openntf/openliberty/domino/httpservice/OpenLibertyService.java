@@ -25,6 +25,7 @@ import javax.servlet.ServletException;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.CLIManagerDelegate;
 import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 
 import com.darwino.domino.napi.DominoAPI;
 import com.darwino.domino.napi.DominoException;
@@ -48,7 +49,7 @@ public class OpenLibertyService extends HttpService {
 		
 		delegate.start();
 		
-		DominoThreadFactory.getExecutor().submit(() -> {
+		DominoThreadFactory.getExecutor(Pool.RUNTIME).submit(() -> {
 			long hDesc = DominoAPI.get().AddInCreateStatusLine(Messages.getString("OpenLibertyService.taskName")); //$NON-NLS-1$
 			DominoAPI.get().AddInSetStatusLine(hDesc, Messages.getString("OpenLibertyService.statusRunning")); //$NON-NLS-1$
 			try {
@@ -16,12 +16,12 @@
 package org.openntf.openliberty.domino.httpservice;
 
 import java.text.MessageFormat;
-import java.util.EventObject;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.event.ServerDeployEvent;
 import org.openntf.openliberty.domino.event.ServerStartEvent;
 import org.openntf.openliberty.domino.event.ServerStopEvent;
@@ -58,34 +58,41 @@ public class ServerStatusLineService implements RuntimeService {
 	}
 	
 	@Override
-	public void notifyMessage(EventObject event) {
-		if(event instanceof ServerStartEvent) {
-			synchronized(deleteSync) {
-				ServerInstance<?> instance = ((ServerStartEvent)event).getSource();
-				statusLines.computeIfAbsent(instance.getServerName(), serverName -> {
-					long result = DominoAPI.get().AddInCreateStatusLine(Messages.getString("ServerStatusLineService.serverTaskName")); //$NON-NLS-1$
-					DominoAPI.get().AddInSetStatusLine(result, MessageFormat.format(Messages.getString("ServerStatusLineService.serverRunning"), serverName)); //$NON-NLS-1$
-					return result;
-				});
-				
-				updateStatusLine(instance);
-			}
-		} else if(event instanceof ServerStopEvent) {
-			synchronized(deleteSync) {
-				ServerInstance<?> instance = ((ServerStopEvent)event).getSource();
-				Long hDesc = statusLines.get(instance.getServerName());
-				if(hDesc != null) {
-					DominoAPI.get().AddInDeleteStatusLine(hDesc);
-				}
-			}
-		} else if(event instanceof ServerDeployEvent) {
-			synchronized(deleteSync) {
-				ServerInstance<?> instance = ((ServerStopEvent)event).getSource();
-				updateStatusLine(instance);
+	public void subscribe(EventBus bus) {
+		bus.subscribe(this, ServerStartEvent.class, this::serverStarted);
+		bus.subscribe(this, ServerStopEvent.class, this::serverStopped);
+		bus.subscribe(this, ServerDeployEvent.class, this::serverDeployed);
+	}
+	
+	private void serverStarted(ServerStartEvent event) {
+		synchronized(deleteSync) {
+			ServerInstance<?> instance = event.getSource();
+			statusLines.computeIfAbsent(instance.getServerName(), serverName -> {
+				long result = DominoAPI.get().AddInCreateStatusLine(Messages.getString("ServerStatusLineService.serverTaskName")); //$NON-NLS-1$
+				DominoAPI.get().AddInSetStatusLine(result, MessageFormat.format(Messages.getString("ServerStatusLineService.serverRunning"), serverName)); //$NON-NLS-1$
+				return result;
+			});
+			
+			updateStatusLine(instance);
+		}
+	}
+	
+	private void serverStopped(ServerStopEvent event) {
+		synchronized(deleteSync) {
+			ServerInstance<?> instance = event.getSource();
+			Long hDesc = statusLines.get(instance.getServerName());
+			if(hDesc != null) {
+				DominoAPI.get().AddInDeleteStatusLine(hDesc);
 			}
 		}
 	}
 	
+	private void serverDeployed(ServerDeployEvent event) {
+		synchronized(deleteSync) {
+			updateStatusLine(event.getSource());
+		}
+	}
+	
 	// *******************************************************************************
 	// * Internal utility methods
 	// *******************************************************************************
@@ -16,8 +16,11 @@
 package org.openntf.openliberty.domino.reverseproxy.httpservice;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
 import java.util.Collections;
-import java.util.EventObject;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -27,14 +30,18 @@ import java.util.stream.Collectors;
 
 import javax.servlet.ServletException;
 
-import org.openntf.openliberty.domino.event.EventRecipient;
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigDiff;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigProvider;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyService;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyTarget;
 import org.openntf.openliberty.domino.reverseproxy.event.ReverseProxyConfigChangedEvent;
-import org.openntf.openliberty.domino.runtime.OpenLibertyRuntime;
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogWriter;
+import org.openntf.openliberty.domino.reverseproxy.metrics.ProxyMetrics;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
 
 import com.ibm.commons.util.StringUtil;
@@ -48,15 +55,21 @@ import com.ibm.designer.runtime.domino.bootstrap.adapter.HttpSessionAdapter;
 /**
  * Reverse proxy implementation that resides in Domino's HTTP task.
  * 
+ * <p>When a metrics path is configured, the {@link MetricsRegistry} is also served at that
+ * path.</p>
+ * 
  * @author Jesse Gallagher
  * @since 3.0.0
  */
-public class ReverseProxyHttpService extends HttpService implements ReverseProxyService, EventRecipient {
+public class ReverseProxyHttpService extends HttpService implements ReverseProxyService {
 	private static final Logger log = OpenLibertyLog.getLog();
 
 	public static final String TYPE = "NHTTP"; //$NON-NLS-1$
-	private boolean enabled;
-	private Map<String, ComponentModule> targets;
+	private volatile boolean enabled;
+	private volatile Map<String, ComponentModule> targets;
+	private ReverseProxyConfig config;
+	private volatile AccessLogWriter accessLog;
+	private volatile String metricsPath;
 
 	public ReverseProxyHttpService(LCDEnvironment env) {
 		super(env);
@@ -64,6 +77,7 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 		try {
 			ReverseProxyConfigProvider configProvider = OpenLibertyUtil.findRequiredExtension(ReverseProxyConfigProvider.class);
 			ReverseProxyConfig config = configProvider.createConfiguration();
+			this.config = config;
 	
 			this.enabled = config.isEnabled(this);
 			if (!enabled) {
@@ -74,11 +88,13 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 				}
 				this.targets = buildModules(config.getTargets());
 			}
+			this.metricsPath = config.getMetricsPath();
+			updateAccessLog(config);
 		} catch(Exception e) {
 			e.printStackTrace();
 			throw e;
 		}
-		OpenLibertyRuntime.instance.registerMessageRecipient(this);
+		EventBus.instance.subscribe(this, ReverseProxyConfigChangedEvent.class, this::configChanged);
 	}
 
 	@Override
@@ -86,13 +102,44 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 		return TYPE;
 	}
 	
-	@Override
-	public void notifyMessage(EventObject event) {
-		if(event instanceof ReverseProxyConfigChangedEvent) {
-			this.targets.values().forEach(ComponentModule::destroyModule);
-			ReverseProxyConfig config = ((ReverseProxyConfigChangedEvent)event).getSource();
-			this.enabled = config.isEnabled(this);
-			this.targets = buildModules(config.getTargets());
+	private synchronized void configChanged(ReverseProxyConfigChangedEvent event) {
+		ReverseProxyConfig config = event.getSource();
+		ReverseProxyConfigDiff diff = config.diff(this.config);
+		this.config = config;
+		if(diff.isEmpty()) {
+			return;
+		}
+		if(diff.isAccessLogChanged() || diff.isEnabledChanged(this)) {
+			updateAccessLog(config);
+		}
+		
+		boolean enabled = config.isEnabled(this);
+		Map<String, ComponentModule> oldTargets = this.targets;
+		Map<String, ComponentModule> newTargets;
+		if(!enabled) {
+			newTargets = Collections.emptyMap();
+		} else if(diff.isEnabledChanged(this)) {
+			newTargets = buildModules(config.getTargets());
+		} else {
+			// Only rebuild the modules for targets that actually changed
+			newTargets = new HashMap<>(oldTargets);
+			newTargets.keySet().removeAll(diff.getRemovedTargets().keySet());
+			newTargets.putAll(buildModules(diff.getAddedTargets()));
+			newTargets.putAll(buildModules(diff.getChangedTargets()));
+		}
+		
+		this.targets = newTargets;
+		this.metricsPath = config.getMetricsPath();
+		this.enabled = enabled;
+		
+		oldTargets.entrySet()
+			.stream()
+			.filter(entry -> newTargets.get(entry.getKey()) != entry.getValue())
+			.map(Map.Entry::getValue)
+			.forEach(ComponentModule::destroyModule);
+		
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(MessageFormat.format("NHTTP reverse proxy: applied configuration changes {0}", diff));
 		}
 	}
 
@@ -102,6 +149,9 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 			return false;
 		}
 		String pathInfo = getChompedPathInfo(fullPath);
+		if(pathInfo.equals(this.metricsPath)) {
+			return true;
+		}
 		boolean match = this.targets.keySet().stream()
 			.anyMatch(contextRoot -> pathInfo.equals(contextRoot) || pathInfo.startsWith(contextRoot + '/'));
 		return match;
@@ -118,6 +168,10 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 		if (StringUtil.isEmpty(fullPath)) {
 			return false;
 		}
+		if (pathInfo.equals(this.metricsPath)) {
+			writeMetrics(servletResponse);
+			return true;
+		}
 		Optional<ComponentModule> target = this.targets.entrySet()
 			.stream()
 			.filter(entry -> pathInfo.equals(entry.getKey()) || pathInfo.startsWith(entry.getKey() + '/'))
@@ -138,7 +192,17 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 	
 	@Override
 	public void destroyService() {
-		// NOP
+		EventBus.instance.unsubscribe(this);
+		closeAccessLog();
+	}
+	
+	/**
+	 * @return the writer for the proxy's access log, or {@code null} if the access log
+	 * 		is disabled
+	 * @since 4.0.0
+	 */
+	public AccessLogWriter getAccessLog() {
+		return accessLog;
 	}
 	
 	// *******************************************************************************
@@ -158,6 +222,38 @@ public class ReverseProxyHttpService extends HttpService implements ReverseProxy
 		}
 	}
 	
+	private void writeMetrics(HttpServletResponseAdapter servletResponse) throws IOException {
+		byte[] content = MetricsRegistry.instance.scrape().getBytes(StandardCharsets.UTF_8);
+		servletResponse.setStatus(200);
+		servletResponse.setContentType(MetricsWriter.CONTENT_TYPE);
+		servletResponse.addHeader("Cache-Control", "no-store"); //$NON-NLS-1$ //$NON-NLS-2$
+		try(OutputStream os = servletResponse.getOutputStream()) {
+			os.write(content);
+		}
+	}
+	
+	private void updateAccessLog(ReverseProxyConfig config) {
+		// Settings may have changed, so always replace any existing writer
+		closeAccessLog();
+		if(config.isEnabled(this) && config.isAccessLogEnabled()) {
+			AccessLogWriter accessLog = AccessLogWriter.create(config, TYPE);
+			this.accessLog = accessLog;
+			ProxyMetrics.instance.registerAccessLog(TYPE, accessLog);
+			if(log.isLoggable(Level.INFO)) {
+				log.info(MessageFormat.format("NHTTP reverse proxy: writing access log to {0}", accessLog.getFile()));
+			}
+		}
+	}
+	
+	private void closeAccessLog() {
+		AccessLogWriter accessLog = this.accessLog;
+		if(accessLog != null) {
+			this.accessLog = null;
+			ProxyMetrics.instance.unregisterAccessLog(TYPE);
+			accessLog.close();
+		}
+	}
+	
 	private Map<String, ComponentModule> buildModules(Map<String, ReverseProxyTarget> targets) {
 		return targets.entrySet()
 			.stream()
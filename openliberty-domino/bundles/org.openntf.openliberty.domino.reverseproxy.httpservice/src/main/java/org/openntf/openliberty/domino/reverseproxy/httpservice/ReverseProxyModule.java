@@ -16,6 +16,8 @@
 package org.openntf.openliberty.domino.reverseproxy.httpservice;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -23,18 +25,23 @@ import java.net.HttpCookie;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
@@ -42,13 +49,22 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.AbstractExecutionAwareRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.reverseproxy.RequestSampler;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyTarget;
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogEntry;
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogWriter;
+import org.openntf.openliberty.domino.reverseproxy.metrics.ProxyMetrics;
+import org.openntf.openliberty.domino.reverseproxy.metrics.TargetMetrics;
 
 import com.ibm.designer.runtime.domino.adapter.ComponentModule;
 import com.ibm.designer.runtime.domino.adapter.LCDEnvironment;
@@ -63,6 +79,7 @@ import com.ibm.designer.runtime.domino.bootstrap.adapter.HttpSessionAdapter;
  * @since 3.1.0
  */
 public class ReverseProxyModule extends ComponentModule {
+	private static final Logger log = OpenLibertyLog.getLog();
 	
 	private static final String HEADER_SET_COOKIE = "Set-Cookie"; //$NON-NLS-1$
 	private static final String HEADER_SET_COOKIE2 = "Set-Cookie2"; //$NON-NLS-1$
@@ -93,11 +110,13 @@ public class ReverseProxyModule extends ComponentModule {
 	}
 	
 	private final ReverseProxyTarget target;
+	private final TargetMetrics metrics;
 	private HttpClient proxyClient;
 
 	public ReverseProxyModule(LCDEnvironment env, ReverseProxyHttpService service, String moduleName, ReverseProxyTarget target) {
 		super(env, service, moduleName, false);
 		this.target = target;
+		this.metrics = ProxyMetrics.instance.getTarget(ReverseProxyHttpService.TYPE, moduleName);
 	}
 	
 	@Override
@@ -125,25 +144,50 @@ public class ReverseProxyModule extends ComponentModule {
 	@Override
 	public void doService(String var1, String fullPath, HttpSessionAdapter httpSessionAdapter, HttpServletRequestAdapter servletRequest,
 			HttpServletResponseAdapter servletResponse) throws ServletException, IOException {
+		long timestamp = System.currentTimeMillis();
+		long start = metrics.requestStarted();
+		String backendPath = target.getUri().getRawPath();
+		ProxyMetrics.instance.backendRequestStarted(backendPath);
+		HttpClientContext context = HttpClientContext.create();
+		CountingInputStream requestBody = null;
+		long responseBytes = 0;
+		int statusCode = 0;
+		boolean failed = false;
+		
 		HttpRequest proxyRequest = null;
 		HttpResponse proxyResponse = null;
 		try {
+			if(!target.isReady()) {
+				// The server is still warming up - ask clients to come back shortly
+				statusCode = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+				servletResponse.setStatus(statusCode);
+				servletResponse.setIntHeader("Retry-After", 5); //$NON-NLS-1$
+				return;
+			}
+			
 			String method = servletRequest.getMethod();
 			URI targetUri = target.getUri();
 			
 			// Incoming request will be in the form foo/bar
 			// Target will be in the form http://localhost/foo - for now, we can assume there's no substring replacement
-			String proxyRequestUri = targetUri.resolve(servletRequest.getPathInfo()).toString();
+			URI resolvedUri = targetUri.resolve(servletRequest.getPathInfo());
+			String proxyRequestUri = resolvedUri.toString();
+			String proxyRequestPath = resolvedUri.getRawPath();
 			String queryString = servletRequest.getQueryString();
 			if(queryString != null && !queryString.isEmpty()) {
 				proxyRequestUri += '?' + queryString;
+				proxyRequestPath += '?' + queryString;
 			}
+			
+			// Keep a sample of requests to replay when warming up the server after a restart
+			RequestSampler.instance.record(method, targetUri.getPort(), proxyRequestPath);
 
 			// spec: RFC 2616, sec 4.3: either of these two headers signal that there is a
 			// message body.
 			if (servletRequest.getHeader(HEADER_CONTENT_LENGTH) != null
 					|| servletRequest.getHeader(HEADER_TRANSFER_ENCODING) != null) {
-				proxyRequest = newProxyRequestWithEntity(method, proxyRequestUri, servletRequest);
+				requestBody = new CountingInputStream(servletRequest.getInputStream());
+				proxyRequest = newProxyRequestWithEntity(method, proxyRequestUri, servletRequest, requestBody);
 			} else {
 				proxyRequest = new BasicHttpRequest(method, proxyRequestUri);
 			}
@@ -155,13 +199,13 @@ public class ReverseProxyModule extends ComponentModule {
 			// Execute the request
 			HttpHost host = new HttpHost(targetUri.getHost(), targetUri.getPort(), targetUri.getScheme());
 			
-			proxyResponse = this.proxyClient.execute(host, proxyRequest);
+			proxyResponse = this.proxyClient.execute(host, proxyRequest, context);
 
 			// Process the response:
 
 			// Pass the response code. This method with the "reason phrase" is deprecated
 			// but it's the only way to pass the reason along too.
-			int statusCode = proxyResponse.getStatusLine().getStatusCode();
+			statusCode = proxyResponse.getStatusLine().getStatusCode();
 			// noinspection deprecation
 			servletResponse.setStatus(statusCode, proxyResponse.getStatusLine().getReasonPhrase());
 
@@ -178,16 +222,127 @@ public class ReverseProxyModule extends ComponentModule {
 				servletResponse.setIntHeader(HEADER_CONTENT_LENGTH, 0);
 			} else {
 				// Send the content to the client
-				copyResponseEntity(proxyResponse, servletResponse, proxyRequest, servletRequest);
+				responseBytes = copyResponseEntity(proxyResponse, servletResponse, proxyRequest, servletRequest);
 			}
 
 		} catch (Throwable e) {
+			// A missing response means that the back end couldn't be reached or didn't answer
+			failed = proxyResponse == null;
 			handleRequestException(proxyRequest, e);
 		} finally {
 			// make sure the entire entity was consumed, so the connection is released
 			if (proxyResponse != null) {
 				EntityUtils.consumeQuietly(proxyResponse.getEntity());
 			}
+			
+			ProxyMetrics.instance.backendRequestCompleted(backendPath);
+			recordRequest(timestamp, start, context, servletRequest, statusCode, requestBody == null ? 0 : requestBody.getCount(), responseBytes, failed);
+		}
+	}
+	
+	// *******************************************************************************
+	// * Instrumentation
+	// *******************************************************************************
+	
+	private void recordRequest(long timestamp, long start, HttpClientContext context, HttpServletRequestAdapter servletRequest,
+			int statusCode, long requestBytes, long responseBytes, boolean failed) {
+		long connectNanos = TimingRequestExecutor.getElapsed(context, TimingRequestExecutor.ATTR_CONNECTED, start);
+		long firstByteNanos = TimingRequestExecutor.getElapsed(context, TimingRequestExecutor.ATTR_RESPONSE, start);
+		long durationNanos = metrics.requestCompleted(start, statusCode, connectNanos, firstByteNanos, requestBytes, responseBytes, failed);
+		
+		AccessLogWriter accessLog = getHttpService().getAccessLog();
+		if(accessLog != null) {
+			String uri = servletRequest.getRequestURI();
+			String queryString = servletRequest.getQueryString();
+			if(queryString != null && !queryString.isEmpty()) {
+				uri += '?' + queryString;
+			}
+			accessLog.log(new AccessLogEntry(timestamp, servletRequest.getRemoteAddr(), servletRequest.getRemoteUser(),
+				servletRequest.getMethod(), uri, servletRequest.getProtocol(), statusCode, responseBytes,
+				servletRequest.getHeader("Referer"), servletRequest.getHeader("User-Agent"), durationNanos, metrics.getTarget())); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+	
+	/**
+	 * Records when a connection to the back end has been obtained and when the back end's
+	 * response headers have been read, in the {@link HttpContext} of the request.
+	 */
+	private static class TimingRequestExecutor extends HttpRequestExecutor {
+		static final String ATTR_CONNECTED = TimingRequestExecutor.class.getName() + "_connected"; //$NON-NLS-1$
+		static final String ATTR_RESPONSE = TimingRequestExecutor.class.getName() + "_response"; //$NON-NLS-1$
+		
+		@Override
+		public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+			context.setAttribute(ATTR_CONNECTED, System.nanoTime());
+			HttpResponse response = super.execute(request, conn, context);
+			context.setAttribute(ATTR_RESPONSE, System.nanoTime());
+			return response;
+		}
+		
+		static long getElapsed(HttpContext context, String attr, long start) {
+			Object time = context.getAttribute(attr);
+			return time instanceof Long ? (Long)time - start : -1;
+		}
+	}
+	
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+		
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if(result != -1) {
+				count++;
+			}
+			return result;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int result = super.read(b, off, len);
+			if(result > 0) {
+				count += result;
+			}
+			return result;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			count += result;
+			return result;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+	}
+	
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+		
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+		
+		public long getCount() {
+			return count;
 		}
 	}
 	
@@ -202,6 +357,7 @@ public class ReverseProxyModule extends ComponentModule {
 			.setDefaultRequestConfig(config)
 			.setConnectionManager(new PoolingHttpClientConnectionManager())
 			.disableRedirectHandling()
+			.setRequestExecutor(new TimingRequestExecutor())
 			.build();
 	}
 	
@@ -219,7 +375,9 @@ public class ReverseProxyModule extends ComponentModule {
 			}
 		}
 		
-		e.printStackTrace();
+		if(log.isLoggable(Level.WARNING)) {
+			log.log(Level.WARNING, MessageFormat.format("NHTTP reverse proxy: exception proxying request to {0}", target.getUri()), e);
+		}
         //abort request, according to best practice with HttpClient
         if (proxyRequest instanceof AbstractExecutionAwareRequest) {
         	AbstractExecutionAwareRequest abortableHttpRequest = (AbstractExecutionAwareRequest) proxyRequest;
@@ -236,14 +394,14 @@ public class ReverseProxyModule extends ComponentModule {
     }
 
 	private HttpRequest newProxyRequestWithEntity(String method, String proxyRequestUri,
-                                                  HttpServletRequestAdapter servletRequest)
+                                                  HttpServletRequestAdapter servletRequest, InputStream requestBody)
             throws IOException {
         HttpEntityEnclosingRequest eProxyRequest =
                 new BasicHttpEntityEnclosingRequest(method, proxyRequestUri);
         // Add the input entity (streamed)
         //  note: we don't bother ensuring we close the servletInputStream since the container handles it
         eProxyRequest.setEntity(
-                new InputStreamEntity(servletRequest.getInputStream(), getContentLength(servletRequest)));
+                new InputStreamEntity(requestBody, getContentLength(servletRequest)));
         return eProxyRequest;
     }
 
@@ -367,15 +525,21 @@ public class ReverseProxyModule extends ComponentModule {
 
 
 
-    /** Copy response body data (the entity) from the proxy to the servlet client. */
-    private void copyResponseEntity(HttpResponse proxyResponse, HttpServletResponseAdapter servletResponse,
+    /**
+     * Copy response body data (the entity) from the proxy to the servlet client.
+     * 
+     * @return the number of bytes written to the client
+     */
+    private long copyResponseEntity(HttpResponse proxyResponse, HttpServletResponseAdapter servletResponse,
                                     HttpRequest proxyRequest, HttpServletRequestAdapter servletRequest)
             throws IOException {
         HttpEntity entity = proxyResponse.getEntity();
         if (entity != null) {
-            OutputStream servletOutputStream = servletResponse.getOutputStream();
+            CountingOutputStream servletOutputStream = new CountingOutputStream(servletResponse.getOutputStream());
             entity.writeTo(servletOutputStream);
+            return servletOutputStream.getCount();
         }
+        return 0;
     }
 
     /**
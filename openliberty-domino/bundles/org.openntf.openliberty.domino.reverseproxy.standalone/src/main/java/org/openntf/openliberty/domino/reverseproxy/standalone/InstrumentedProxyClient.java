@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.standalone;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.proxy.ProxyCallback;
+import io.undertow.server.handlers.proxy.ProxyClient;
+import io.undertow.server.handlers.proxy.ProxyConnection;
+
+/**
+ * Wraps a {@link ProxyClient} to note on the exchange when a back-end connection was obtained
+ * or could not be obtained, for use by {@link MetricsHandler}.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+class InstrumentedProxyClient implements ProxyClient {
+	private final ProxyClient delegate;
+	
+	public InstrumentedProxyClient(ProxyClient delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public ProxyTarget findTarget(HttpServerExchange exchange) {
+		return delegate.findTarget(exchange);
+	}
+
+	@Override
+	public void getConnection(ProxyTarget target, HttpServerExchange exchange, ProxyCallback<ProxyConnection> callback, long timeout, TimeUnit timeUnit) {
+		delegate.getConnection(target, exchange, new ProxyCallback<ProxyConnection>() {
+			@Override
+			public void completed(HttpServerExchange exchange, ProxyConnection result) {
+				exchange.putAttachment(MetricsHandler.CONNECTED, System.nanoTime());
+				// An earlier attempt may have failed before the proxy retried
+				exchange.removeAttachment(MetricsHandler.BACKEND_FAILED);
+				callback.completed(exchange, result);
+			}
+
+			@Override
+			public void failed(HttpServerExchange exchange) {
+				exchange.putAttachment(MetricsHandler.BACKEND_FAILED, Boolean.TRUE);
+				callback.failed(exchange);
+			}
+
+			@Override
+			public void couldNotResolveBackend(HttpServerExchange exchange) {
+				exchange.putAttachment(MetricsHandler.BACKEND_FAILED, Boolean.TRUE);
+				callback.couldNotResolveBackend(exchange);
+			}
+
+			@Override
+			public void queuedRequestFailed(HttpServerExchange exchange) {
+				exchange.putAttachment(MetricsHandler.BACKEND_FAILED, Boolean.TRUE);
+				callback.queuedRequestFailed(exchange);
+			}
+		}, timeout, timeUnit);
+	}
+	
+	@Override
+	public List<ProxyTarget> getAllTargets() {
+		return delegate.getAllTargets();
+	}
+}
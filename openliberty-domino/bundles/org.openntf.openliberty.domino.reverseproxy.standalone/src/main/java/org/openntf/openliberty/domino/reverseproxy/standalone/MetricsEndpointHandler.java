@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.standalone;
+
+import java.nio.charset.StandardCharsets;
+
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Serves the current contents of the {@link MetricsRegistry} in OpenMetrics text format.
+ * 
+ * <p>Collecting metrics calls into other runtime components, so requests are dispatched
+ * off the IO thread before scraping.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+class MetricsEndpointHandler implements HttpHandler {
+	@Override
+	public void handleRequest(HttpServerExchange exchange) throws Exception {
+		if(exchange.isInIoThread()) {
+			exchange.dispatch(this);
+			return;
+		}
+		if(!Methods.GET.equals(exchange.getRequestMethod()) && !Methods.HEAD.equals(exchange.getRequestMethod())) {
+			exchange.setStatusCode(StatusCodes.METHOD_NOT_ALLOWED);
+			exchange.getResponseHeaders().put(Headers.ALLOW, "GET, HEAD"); //$NON-NLS-1$
+			exchange.endExchange();
+			return;
+		}
+		
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, MetricsWriter.CONTENT_TYPE);
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-store"); //$NON-NLS-1$
+		exchange.getResponseSender().send(MetricsRegistry.instance.scrape(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.standalone;
+
+import java.net.InetSocketAddress;
+import java.util.function.Supplier;
+
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogEntry;
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogWriter;
+import org.openntf.openliberty.domino.reverseproxy.metrics.ProxyMetrics;
+import org.openntf.openliberty.domino.reverseproxy.metrics.TargetMetrics;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
+
+/**
+ * Records {@link TargetMetrics} and access log entries for the requests passing through
+ * a proxy prefix path.
+ * 
+ * <p>The time to the first byte is measured when the response is committed to the client,
+ * which for proxied requests is when the back end's response headers have arrived.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+class MetricsHandler implements HttpHandler {
+	/** Set by {@link InstrumentedProxyClient} when a connection to the back end has been obtained */
+	static final AttachmentKey<Long> CONNECTED = AttachmentKey.create(Long.class);
+	/** Set by {@link InstrumentedProxyClient} when no connection to the back end could be obtained */
+	static final AttachmentKey<Boolean> BACKEND_FAILED = AttachmentKey.create(Boolean.class);
+	private static final AttachmentKey<Long> COMMITTED = AttachmentKey.create(Long.class);
+	
+	private final HttpHandler next;
+	private final TargetMetrics metrics;
+	/** The path of the back-end URI requests are forwarded to, or {@code null} if not tracked */
+	private final String backendPath;
+	private final Supplier<AccessLogWriter> accessLog;
+	
+	public MetricsHandler(HttpHandler next, TargetMetrics metrics, String backendPath, Supplier<AccessLogWriter> accessLog) {
+		this.next = next;
+		this.metrics = metrics;
+		this.backendPath = backendPath;
+		this.accessLog = accessLog;
+	}
+	
+	@Override
+	public void handleRequest(HttpServerExchange exchange) throws Exception {
+		long timestamp = System.currentTimeMillis();
+		long start = metrics.requestStarted();
+		if(backendPath != null) {
+			ProxyMetrics.instance.backendRequestStarted(backendPath);
+		}
+		exchange.addResponseCommitListener(ex -> ex.putAttachment(COMMITTED, System.nanoTime()));
+		exchange.addExchangeCompleteListener((ex, nextListener) -> {
+			try {
+				if(backendPath != null) {
+					ProxyMetrics.instance.backendRequestCompleted(backendPath);
+				}
+				recordRequest(ex, timestamp, start);
+			} finally {
+				nextListener.proceed();
+			}
+		});
+		next.handleRequest(exchange);
+	}
+	
+	private void recordRequest(HttpServerExchange exchange, long timestamp, long start) {
+		int status = exchange.getStatusCode();
+		long responseBytes = exchange.getResponseBytesSent();
+		boolean failed = exchange.getAttachment(BACKEND_FAILED) != null;
+		long durationNanos = metrics.requestCompleted(start, status, getElapsed(exchange, CONNECTED, start),
+			getElapsed(exchange, COMMITTED, start), exchange.getRequestContentLength(), responseBytes, failed);
+		
+		AccessLogWriter accessLog = this.accessLog.get();
+		if(accessLog != null) {
+			String uri = exchange.getRequestURI();
+			String queryString = exchange.getQueryString();
+			if(StringUtil.isNotEmpty(queryString)) {
+				uri += '?' + queryString;
+			}
+			InetSocketAddress source = exchange.getSourceAddress();
+			String remoteAddr = source == null || source.getAddress() == null ? null : source.getAddress().getHostAddress();
+			accessLog.log(new AccessLogEntry(timestamp, remoteAddr, null, exchange.getRequestMethod().toString(), uri,
+				exchange.getProtocol().toString(), status, responseBytes, exchange.getRequestHeaders().getFirst(Headers.REFERER),
+				exchange.getRequestHeaders().getFirst(Headers.USER_AGENT), durationNanos, metrics.getTarget()));
+		}
+	}
+	
+	private static long getElapsed(HttpServerExchange exchange, AttachmentKey<Long> key, long start) {
+		Long time = exchange.getAttachment(key);
+		return time == null ? -1 : time - start;
+	}
+}
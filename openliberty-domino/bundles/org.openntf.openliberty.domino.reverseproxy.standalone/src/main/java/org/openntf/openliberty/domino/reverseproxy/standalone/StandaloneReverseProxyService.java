@@ -28,45 +28,59 @@ import io.undertow.attribute.RemoteIPAttribute;
 import io.undertow.attribute.RequestProtocolAttribute;
 import io.undertow.attribute.RequestSchemeAttribute;
 import io.undertow.attribute.SecureExchangeAttribute;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.PathHandler;
 import io.undertow.server.handlers.RedirectHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.SetHeaderHandler;
 import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyClient;
 import io.undertow.server.handlers.proxy.ProxyHandler;
 import io.undertow.util.HttpString;
 
 import java.net.URI;
 import java.text.MessageFormat;
-import java.util.EventObject;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.openntf.openliberty.domino.event.EventRecipient;
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.ext.RuntimeService;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigDiff;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfigProvider;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyService;
 import org.openntf.openliberty.domino.reverseproxy.ReverseProxyTarget;
+import org.openntf.openliberty.domino.reverseproxy.RequestSampler;
 import org.openntf.openliberty.domino.reverseproxy.event.ReverseProxyConfigChangedEvent;
-import org.openntf.openliberty.domino.runtime.OpenLibertyRuntime;
+import org.openntf.openliberty.domino.reverseproxy.metrics.AccessLogWriter;
+import org.openntf.openliberty.domino.reverseproxy.metrics.ProxyMetrics;
 
 /**
  * Reverse proxy implementation that opens a proxy on a configured port and supports
  * HTTP/2.
  * 
+ * <p>Each prefix path records its requests in {@link ProxyMetrics}, and requests are written
+ * to an access log when one is enabled in the configuration. When a metrics path is
+ * configured, the {@link MetricsRegistry} is served at that path.</p>
+ * 
  * @author Jesse Gallagher
  * @since 2.1.0
  */
-public class StandaloneReverseProxyService implements RuntimeService, ReverseProxyService, EventRecipient {
+public class StandaloneReverseProxyService implements RuntimeService, ReverseProxyService {
 	private static final Logger log = OpenLibertyLog.getLog();
 	
 	public static final String TYPE = "Standalone"; //$NON-NLS-1$
+	/** The name used in metrics for requests proxied to Domino */
+	public static final String DOMINO_TARGET = "/"; //$NON-NLS-1$
 
 	private Undertow server;
+	private PathHandler pathHandler;
 	ReverseProxyConfig config;
-	private int configHash;
+	private volatile AccessLogWriter accessLog;
 	
 	@Override
 	public String getProxyType() {
@@ -74,133 +88,267 @@ public class StandaloneReverseProxyService implements RuntimeService, ReversePro
 	}
 
 	@Override
-	public void notifyMessage(EventObject event) {
-		if(event instanceof ReverseProxyConfigChangedEvent) {
-			ReverseProxyConfig config = ((ReverseProxyConfigChangedEvent)event).getSource();
-			int newHash = config.hashCode();
-			if(this.configHash != newHash) {
-				this.config = config;
-				this.configHash = newHash;
-				
-				refreshServer();
-			}
-		}
+	public void subscribe(EventBus bus) {
+		bus.subscribe(this, ReverseProxyConfigChangedEvent.class, this::configChanged);
+	}
+	
+	private void configChanged(ReverseProxyConfigChangedEvent event) {
+		applyConfig(event.getSource());
 	}
 	
 	@Override
 	public void run() {
 		try {
 			ReverseProxyConfigProvider configProvider = OpenLibertyUtil.findRequiredExtension(ReverseProxyConfigProvider.class);
-			this.config = configProvider.createConfiguration();
-			this.configHash = this.config.hashCode();
-			
-			refreshServer();
+			applyConfig(configProvider.createConfiguration());
 		} catch(Throwable t) {
 			t.printStackTrace();
 		}
-		
-		OpenLibertyRuntime.instance.registerMessageRecipient(this);
 	}
 	
 	@Override
-	public void close() {
-		if(this.server != null) {
-			this.server.stop();
-			this.server = null;
+	public synchronized void close() {
+		stopServer();
+		closeAccessLog();
+	}
+	
+	/**
+	 * @return the writer for the proxy's access log, or {@code null} if the access log
+	 * 		is disabled
+	 * @since 4.0.0
+	 */
+	public AccessLogWriter getAccessLog() {
+		return accessLog;
+	}
+	
+	/**
+	 * Applies the provided configuration, restarting the server only when the listeners or
+	 * enablement changed and otherwise swapping the affected handlers in place.
+	 */
+	private synchronized void applyConfig(ReverseProxyConfig newConfig) {
+		ReverseProxyConfigDiff diff = newConfig.diff(this.config);
+		this.config = newConfig;
+		if(diff.isEmpty()) {
+			return;
+		}
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(MessageFormat.format("Reverse proxy: applying configuration changes {0}", diff));
+		}
+		
+		if(diff.isAccessLogChanged() || diff.isEnabledChanged(this)) {
+			updateAccessLog();
+		}
+		
+		if(this.server == null || diff.isListenersChanged() || diff.isEnabledChanged(this)) {
+			refreshServer();
+			return;
+		}
+		
+		for(String contextPath : diff.getRemovedTargets().keySet()) {
+			String contextRoot = "/" + contextPath; //$NON-NLS-1$
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(MessageFormat.format("Reverse proxy: removing prefix path for {0}", contextRoot));
+			}
+			this.pathHandler.removePrefixPath(contextRoot);
+		}
+		addTargets(this.pathHandler, diff.getAddedTargets());
+		addTargets(this.pathHandler, diff.getChangedTargets());
+		if(diff.isDominoChanged()) {
+			this.pathHandler.addPrefixPath("/", createDominoHandler()); //$NON-NLS-1$
+		}
+		if(diff.isMetricsPathChanged()) {
+			ReverseProxyConfig previous = diff.getPrevious();
+			if(previous != null && previous.getMetricsPath() != null) {
+				this.pathHandler.removeExactPath("/" + previous.getMetricsPath()); //$NON-NLS-1$
+			}
+			addMetricsEndpoint(this.pathHandler);
 		}
 	}
 	
 	private void refreshServer() {
+		stopServer();
+		if(this.config.isEnabled(this)) {
+			this.server = startServer();
+		}
+	}
+	
+	private void stopServer() {
 		if(this.server != null) {
+			ProxyMetrics.instance.unregisterActiveConnections(TYPE);
 			this.server.stop();
 			this.server = null;
-		}
-		if(this.config.isEnabled(this)) {
-			this.server = startServer();
+			this.pathHandler = null;
 		}
 	}
 	
-	private synchronized Undertow startServer() {
+	private Undertow startServer() {
 		PathHandler pathHandler = new PathHandler();
 		
 		// Add handlers for each target
-		Map<String, ReverseProxyTarget> targets = this.config.getTargets();
-		if(targets != null) {
-			for(Map.Entry<String, ReverseProxyTarget> target : targets.entrySet()) {
-				String contextRoot = "/" + target.getKey(); //$NON-NLS-1$
-				URI targetUri = target.getValue().getUri();
-				
-				LoadBalancingProxyClient appProxy = new LoadBalancingProxyClient().addHost(targetUri);
-				ProxyHandler.Builder proxyHandler = ProxyHandler.builder().setProxyClient(appProxy);
-				
-				if(target.getValue().isUseWsHeaders()) {
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRH"), RemoteHostAttribute.INSTANCE); //$NON-NLS-1$
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRA"), RemoteIPAttribute.INSTANCE); //$NON-NLS-1$
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSC"), RequestSchemeAttribute.INSTANCE); //$NON-NLS-1$
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSPR"), RequestProtocolAttribute.INSTANCE); //$NON-NLS-1$
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSP"), LocalPortAttribute.INSTANCE); //$NON-NLS-1$
-					proxyHandler.addRequestHeader(HttpString.tryFromString("$WSIS"), SecureExchangeAttribute.INSTANCE); //$NON-NLS-1$
-				}
-				
-				if(log.isLoggable(Level.FINE)) {
-					log.fine(MessageFormat.format("Reverse proxy: adding prefix path for {0}", contextRoot));
-				}
-				pathHandler.addPrefixPath(contextRoot, proxyHandler.build());
-			}
-		}
+		addTargets(pathHandler, this.config.getTargets());
 		
 		// Construct the Domino proxy
-		{
-			boolean dominoHttps = config.dominoHttps;
-			String dominoHostName = config.dominoHostName;
-			int dominoHttpPort = config.dominoHttpPort;
-			String dominoUri = MessageFormat.format("http{0}://{1}:{2}", dominoHttps ? "s" : "", dominoHostName, Integer.toString(dominoHttpPort)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			LoadBalancingProxyClient dominoProxy = new LoadBalancingProxyClient().addHost(URI.create(dominoUri));
-			
-			ProxyHandler.Builder proxyHandler = ProxyHandler.builder()
-            		.setProxyClient(dominoProxy);
-			if(config.useDominoConnectorHeaders) {
-				proxyHandler.addRequestHeader(HttpString.tryFromString("X-ConnectorHeaders-Secret"), new StringAttribute(config.dominoConnectorHeadersSecret)); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRH"), RemoteHostAttribute.INSTANCE); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRA"), RemoteIPAttribute.INSTANCE); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSC"), RequestSchemeAttribute.INSTANCE); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSPR"), RequestProtocolAttribute.INSTANCE); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSP"), LocalPortAttribute.INSTANCE); //$NON-NLS-1$
-				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSIS"), SecureExchangeAttribute.INSTANCE); //$NON-NLS-1$
-			}
-			pathHandler.addPrefixPath("/", proxyHandler.build()); //$NON-NLS-1$
-		}
+		pathHandler.addPrefixPath("/", createDominoHandler()); //$NON-NLS-1$
+		addMetricsEndpoint(pathHandler);
 
 		Undertow.Builder serverBuilder = Undertow.builder()
 			.setHandler(pathHandler)
 			.setServerOption(UndertowOptions.ENABLE_HTTP2, true)
 			.setServerOption(UndertowOptions.HTTP2_SETTINGS_ENABLE_PUSH, true)
-			.setServerOption(UndertowOptions.MAX_ENTITY_SIZE, config.maxEntitySize)
+			.setServerOption(UndertowOptions.MAX_ENTITY_SIZE, config.getMaxEntitySize())
+			// Needed for the connection counts reported to ProxyMetrics
+			.setServerOption(UndertowOptions.ENABLE_STATISTICS, true)
 			// Obligatory for XPages minifiers
 			.setServerOption(UndertowOptions.ALLOW_ENCODED_SLASH, true);
-		if(config.proxyHttpPort != -1) {
-			if(config.redirectHttpToHttps) {
-				if(config.proxyHttpsPort == ReverseProxyConfig.PORT_DISABLED) {
+		if(config.getProxyHttpPort() != ReverseProxyConfig.PORT_DISABLED) {
+			if(config.isRedirectHttpToHttps()) {
+				if(config.getProxyHttpsPort() == ReverseProxyConfig.PORT_DISABLED) {
 					throw new IllegalStateException("HTTP-to-HTTPS redirection cannot be enabled when HTTPS is disabled");
 				}
-				serverBuilder.addHttpListener(config.proxyHttpPort, config.proxyHostName, new RedirectHandler(new HttpRedirectAttribute(config.proxyHttpsPort)));
+				serverBuilder.addHttpListener(config.getProxyHttpPort(), config.getProxyHostName(), new RedirectHandler(new HttpRedirectAttribute(config.getProxyHttpsPort())));
 			} else {
-				serverBuilder.addHttpListener(config.proxyHttpPort, config.proxyHostName);
+				serverBuilder.addHttpListener(config.getProxyHttpPort(), config.getProxyHostName());
 			}
 		}
-		if(config.proxyHttpsPort != -1) {
-			serverBuilder.addHttpsListener(config.proxyHttpsPort, config.proxyHostName, config.proxyHttpsContext);
+		if(config.getProxyHttpsPort() != ReverseProxyConfig.PORT_DISABLED) {
+			serverBuilder.addHttpsListener(config.getProxyHttpsPort(), config.getProxyHostName(), config.getProxyHttpsContext());
 		}
 		Undertow server = serverBuilder.build();
 		server.start();
+		this.pathHandler = pathHandler;
+		ProxyMetrics.instance.registerActiveConnections(TYPE, () -> server.getListenerInfo()
+			.stream()
+			.mapToLong(listener -> listener.getConnectorStatistics().getActiveConnections())
+			.sum()
+		);
 
 		if(log.isLoggable(Level.INFO)) {
-			log.info(MessageFormat.format("Reverse proxy listening on {0}:{1}", config.proxyHostName, Integer.toString(config.proxyHttpPort)));
+			log.info(MessageFormat.format("Reverse proxy listening on {0}:{1}", config.getProxyHostName(), Integer.toString(config.getProxyHttpPort())));
 		}
 		
 		return server;
 	}
 	
+	private void addTargets(PathHandler pathHandler, Map<String, ReverseProxyTarget> targets) {
+		for(Map.Entry<String, ReverseProxyTarget> target : targets.entrySet()) {
+			String contextRoot = "/" + target.getKey(); //$NON-NLS-1$
+			URI targetUri = target.getValue().getUri();
+			
+			if(!target.getValue().isReady()) {
+				// The server is still warming up - ask clients to come back shortly
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(MessageFormat.format("Reverse proxy: {0} is not ready to receive requests", contextRoot));
+				}
+				pathHandler.addPrefixPath(contextRoot, instrument(new SetHeaderHandler(new ResponseCodeHandler(503), "Retry-After", "5"), target.getKey(), null)); //$NON-NLS-1$ //$NON-NLS-2$
+				continue;
+			}
+			
+			LoadBalancingProxyClient appProxy = new LoadBalancingProxyClient().addHost(targetUri);
+			ProxyHandler.Builder proxyHandler = ProxyHandler.builder().setProxyClient(new InstrumentedProxyClient(appProxy));
+			
+			if(target.getValue().isUseWsHeaders()) {
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRH"), RemoteHostAttribute.INSTANCE); //$NON-NLS-1$
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRA"), RemoteIPAttribute.INSTANCE); //$NON-NLS-1$
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSC"), RequestSchemeAttribute.INSTANCE); //$NON-NLS-1$
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSPR"), RequestProtocolAttribute.INSTANCE); //$NON-NLS-1$
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSP"), LocalPortAttribute.INSTANCE); //$NON-NLS-1$
+				proxyHandler.addRequestHeader(HttpString.tryFromString("$WSIS"), SecureExchangeAttribute.INSTANCE); //$NON-NLS-1$
+			}
+			
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(MessageFormat.format("Reverse proxy: adding prefix path for {0}", contextRoot));
+			}
+			pathHandler.addPrefixPath(contextRoot, instrument(new SamplingHandler(proxyHandler.build(), targetUri), target.getKey(), targetUri.getRawPath()));
+		}
+	}
+	
+	private void addMetricsEndpoint(PathHandler pathHandler) {
+		String metricsPath = this.config.getMetricsPath();
+		if(metricsPath != null) {
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(MessageFormat.format("Reverse proxy: serving metrics at /{0}", metricsPath));
+			}
+			// Exact paths take precedence over the prefix paths used for targets
+			pathHandler.addExactPath("/" + metricsPath, new MetricsEndpointHandler()); //$NON-NLS-1$
+		}
+	}
+	
+	private HttpHandler createDominoHandler() {
+		boolean dominoHttps = config.isDominoHttps();
+		String dominoHostName = config.getDominoHostName();
+		int dominoHttpPort = config.getDominoHttpPort();
+		String dominoUri = MessageFormat.format("http{0}://{1}:{2}", dominoHttps ? "s" : "", dominoHostName, Integer.toString(dominoHttpPort)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		ProxyClient dominoProxy = new InstrumentedProxyClient(new LoadBalancingProxyClient().addHost(URI.create(dominoUri)));
+		
+		ProxyHandler.Builder proxyHandler = ProxyHandler.builder()
+        		.setProxyClient(dominoProxy);
+		if(config.isUseDominoConnectorHeaders()) {
+			proxyHandler.addRequestHeader(HttpString.tryFromString("X-ConnectorHeaders-Secret"), new StringAttribute(config.getDominoConnectorHeadersSecret())); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRH"), RemoteHostAttribute.INSTANCE); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSRA"), RemoteIPAttribute.INSTANCE); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSC"), RequestSchemeAttribute.INSTANCE); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSPR"), RequestProtocolAttribute.INSTANCE); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSSP"), LocalPortAttribute.INSTANCE); //$NON-NLS-1$
+			proxyHandler.addRequestHeader(HttpString.tryFromString("$WSIS"), SecureExchangeAttribute.INSTANCE); //$NON-NLS-1$
+		}
+		return instrument(proxyHandler.build(), DOMINO_TARGET, null);
+	}
+	
+	private HttpHandler instrument(HttpHandler handler, String target, String backendPath) {
+		return new MetricsHandler(handler, ProxyMetrics.instance.getTarget(TYPE, target), backendPath, this::getAccessLog);
+	}
+	
+	private void updateAccessLog() {
+		// Settings may have changed, so always replace any existing writer
+		closeAccessLog();
+		if(this.config.isEnabled(this) && this.config.isAccessLogEnabled()) {
+			AccessLogWriter accessLog = AccessLogWriter.create(this.config, TYPE);
+			this.accessLog = accessLog;
+			ProxyMetrics.instance.registerAccessLog(TYPE, accessLog);
+			if(log.isLoggable(Level.INFO)) {
+				log.info(MessageFormat.format("Reverse proxy: writing access log to {0}", accessLog.getFile()));
+			}
+		}
+	}
+	
+	private void closeAccessLog() {
+		AccessLogWriter accessLog = this.accessLog;
+		if(accessLog != null) {
+			this.accessLog = null;
+			ProxyMetrics.instance.unregisterAccessLog(TYPE);
+			accessLog.close();
+		}
+	}
+	
+	/**
+	 * Records proxied requests with {@link RequestSampler} so that they can be replayed
+	 * to warm up the app server after a restart.
+	 * 
+	 * @since 4.0.0
+	 */
+	private static class SamplingHandler implements HttpHandler {
+		private final HttpHandler next;
+		private final int port;
+		private final String basePath;
+		
+		public SamplingHandler(HttpHandler next, URI targetUri) {
+			this.next = next;
+			this.port = targetUri.getPort();
+			this.basePath = StringUtil.toString(targetUri.getRawPath());
+		}
+		
+		@Override
+		public void handleRequest(HttpServerExchange exchange) throws Exception {
+			String path = basePath + exchange.getRelativePath();
+			String query = exchange.getQueryString();
+			if(StringUtil.isNotEmpty(query)) {
+				path += '?' + query;
+			}
+			RequestSampler.instance.record(exchange.getRequestMethod().toString(), port, path);
+			next.handleRequest(exchange);
+		}
+	}
+	
 	private static class StringAttribute implements ExchangeAttribute {
 		private final String value;
 		public StringAttribute(String value) {
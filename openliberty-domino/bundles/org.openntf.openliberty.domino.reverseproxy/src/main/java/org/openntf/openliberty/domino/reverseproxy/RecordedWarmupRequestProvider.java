@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openntf.openliberty.domino.server.ServerInstance;
+import org.openntf.openliberty.domino.server.WarmupRequestProvider;
+
+/**
+ * Supplies the requests recorded by {@link RequestSampler} for a server's listening ports
+ * as warm-up requests.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class RecordedWarmupRequestProvider implements WarmupRequestProvider {
+
+	@Override
+	public List<String> getWarmupRequests(ServerInstance<?> server, int maxRequests) {
+		Set<String> result = new LinkedHashSet<>();
+		for(Integer port : server.getListeningPorts()) {
+			result.addAll(RequestSampler.instance.getSample(port, maxRequests - result.size()));
+			if(result.size() >= maxRequests) {
+				break;
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Records a sample of recent {@code GET} requests proxied to each app server, so that they
+ * can be replayed to warm up the server after it restarts.
+ * 
+ * <p>For each app server port, the most recently requested distinct paths are kept along
+ * with their hit counts, up to {@value #MAX_PATHS_PER_PORT} paths.</p>
+ * 
+ * <p>When an app is served from a versioned context root that changes between deployments,
+ * the mapping can be registered via {@link #setContextRoot(String, String)}. Requests are then
+ * recorded under the stable context path and replayed against whichever context root is
+ * current, so that samples don't go stale when the app switches versions.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum RequestSampler {
+	instance;
+	
+	public static final int MAX_PATHS_PER_PORT = 256;
+	private static final int MAX_PATH_LENGTH = 2048;
+	
+	private final Map<Integer, Map<String, Integer>> samples = new ConcurrentHashMap<>();
+	/** Current app server context roots, by the stable context path they are published at */
+	private final Map<String, String> contextRoots = new ConcurrentHashMap<>();
+	
+	/**
+	 * Records a request proxied to an app server.
+	 * 
+	 * @param method the HTTP method of the request
+	 * @param port the port of the app server
+	 * @param path the path sent to the app server, including the context root and any query string
+	 */
+	public void record(String method, int port, String path) {
+		if(!"GET".equals(method) || path == null || path.isEmpty() || path.length() > MAX_PATH_LENGTH) { //$NON-NLS-1$
+			return;
+		}
+		String stablePath = path;
+		for(Map.Entry<String, String> entry : contextRoots.entrySet()) {
+			if(isUnder(path, entry.getValue())) {
+				stablePath = entry.getKey() + path.substring(entry.getValue().length());
+				break;
+			}
+		}
+		Map<String, Integer> paths = samples.computeIfAbsent(port, key -> new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > MAX_PATHS_PER_PORT;
+			}
+		});
+		synchronized(paths) {
+			paths.merge(stablePath, 1, Integer::sum);
+		}
+	}
+	
+	/**
+	 * @param port the port of the app server
+	 * @param maxRequests the maximum number of paths to return
+	 * @return the recorded paths for the app server, most frequently requested first
+	 */
+	public List<String> getSample(int port, int maxRequests) {
+		Map<String, Integer> paths = samples.get(port);
+		if(paths == null) {
+			return Collections.emptyList();
+		}
+		Map<String, Integer> copy;
+		synchronized(paths) {
+			copy = new LinkedHashMap<>(paths);
+		}
+		return copy.entrySet().stream()
+			.sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+			.limit(maxRequests)
+			.map(Map.Entry::getKey)
+			.map(this::toCurrentPath)
+			.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Registers the context root on the app server that currently serves a stable context path.
+	 * 
+	 * @param contextPath the context path the app is published at, e.g. {@code "/app"}
+	 * @param contextRoot the context root currently serving it on the app server, e.g.
+	 * 		{@code "/app-1a2b3c"}, or {@code null} to remove the mapping
+	 */
+	public void setContextRoot(String contextPath, String contextRoot) {
+		String key = normalize(contextPath);
+		if(contextRoot == null) {
+			contextRoots.remove(key);
+		} else {
+			contextRoots.put(key, normalize(contextRoot));
+		}
+	}
+	
+	/**
+	 * Discards all recorded requests.
+	 */
+	public void clear() {
+		samples.clear();
+	}
+	
+	private String toCurrentPath(String path) {
+		for(Map.Entry<String, String> entry : contextRoots.entrySet()) {
+			if(isUnder(path, entry.getKey())) {
+				return entry.getValue() + path.substring(entry.getKey().length());
+			}
+		}
+		return path;
+	}
+	
+	private static boolean isUnder(String path, String root) {
+		if(!path.startsWith(root)) {
+			return false;
+		}
+		if(path.length() == root.length()) {
+			return true;
+		}
+		char next = path.charAt(root.length());
+		return next == '/' || next == '?';
+	}
+	
+	private static String normalize(String contextPath) {
+		String result = contextPath.trim();
+		while(result.endsWith("/")) { //$NON-NLS-1$
+			result = result.substring(0, result.length()-1);
+		}
+		return result.startsWith("/") ? result : "/" + result; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -15,66 +15,273 @@
  */
 package org.openntf.openliberty.domino.reverseproxy;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.net.ssl.SSLContext;
 
-public class ReverseProxyConfig {
+/**
+ * Immutable configuration for the reverse proxy, created via a {@link Builder}.
+ * 
+ * <p>Configurations are compared structurally, so that proxy implementations can tell
+ * whether anything changed between two builds, and {@link #diff(ReverseProxyConfig)} reports
+ * what changed. The {@link SSLContext} is compared by identity, so providers should reuse the
+ * same instance while the underlying key material is unchanged.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 3.0.0
+ */
+public final class ReverseProxyConfig {
 	public static final int PORT_DISABLED = -1;
+	/** The default size in bytes at which access logs are rotated */
+	public static final long DEFAULT_ACCESS_LOG_MAX_SIZE = 20L * 1024 * 1024;
+	/** The default number of rotated access log files to keep */
+	public static final int DEFAULT_ACCESS_LOG_MAX_FILES = 5;
+	
+	private final boolean globalEnabled;
+	private final Set<String> enabledTypes;
+	
+	private final String proxyHostName;
+	private final int proxyHttpPort;
+	private final boolean redirectHttpToHttps;
+	private final int proxyHttpsPort;
+	private final SSLContext proxyHttpsContext;
+	private final long maxEntitySize;
 	
-	private boolean globalEnabled = true;
-	private Collection<String> enabledTypes = new HashSet<>();
+	private final String dominoHostName;
+	private final int dominoHttpPort;
+	private final boolean dominoHttps;
+	private final boolean useDominoConnectorHeaders;
+	private final String dominoConnectorHeadersSecret;
 	
-	public String proxyHostName;
-	public int proxyHttpPort = PORT_DISABLED;
-	public boolean redirectHttpToHttps;
-	public int proxyHttpsPort = PORT_DISABLED;
-	public SSLContext proxyHttpsContext;
-	public long maxEntitySize;
+	private final boolean accessLogEnabled;
+	private final String accessLogFormat;
+	private final long accessLogMaxSize;
+	private final int accessLogMaxFiles;
 	
-	public String dominoHostName = "localhost"; //$NON-NLS-1$
-	public int dominoHttpPort;
-	public boolean dominoHttps;
-	public boolean useDominoConnectorHeaders;
-	public String dominoConnectorHeadersSecret;
+	private final String metricsPath;
 	
-	private Map<String, ReverseProxyTarget> targets = new HashMap<>();
+	private final Map<String, ReverseProxyTarget> targets;
 	
-	public void setGlobalEnabled(boolean globalEnabled) {
-		this.globalEnabled = globalEnabled;
+	private ReverseProxyConfig(Builder builder) {
+		this.globalEnabled = builder.globalEnabled;
+		this.enabledTypes = Collections.unmodifiableSet(new LinkedHashSet<>(builder.enabledTypes));
+		this.proxyHostName = builder.proxyHostName;
+		this.proxyHttpPort = builder.proxyHttpPort;
+		this.redirectHttpToHttps = builder.redirectHttpToHttps;
+		this.proxyHttpsPort = builder.proxyHttpsPort;
+		this.proxyHttpsContext = builder.proxyHttpsContext;
+		this.maxEntitySize = builder.maxEntitySize;
+		this.dominoHostName = builder.dominoHostName;
+		this.dominoHttpPort = builder.dominoHttpPort;
+		this.dominoHttps = builder.dominoHttps;
+		this.useDominoConnectorHeaders = builder.useDominoConnectorHeaders;
+		this.dominoConnectorHeadersSecret = builder.dominoConnectorHeadersSecret;
+		this.accessLogEnabled = builder.accessLogEnabled;
+		this.accessLogFormat = builder.accessLogFormat;
+		this.accessLogMaxSize = builder.accessLogMaxSize;
+		this.accessLogMaxFiles = builder.accessLogMaxFiles;
+		this.metricsPath = builder.metricsPath;
+		this.targets = Collections.unmodifiableMap(new LinkedHashMap<>(builder.targets));
 	}
+	
+	/**
+	 * @return a new {@link Builder} with default values
+	 * @since 4.0.0
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * @return a new {@link Builder} initialized with the values of this configuration
+	 * @since 4.0.0
+	 */
+	public Builder toBuilder() {
+		Builder result = new Builder();
+		result.globalEnabled = globalEnabled;
+		result.enabledTypes.addAll(enabledTypes);
+		result.proxyHostName = proxyHostName;
+		result.proxyHttpPort = proxyHttpPort;
+		result.redirectHttpToHttps = redirectHttpToHttps;
+		result.proxyHttpsPort = proxyHttpsPort;
+		result.proxyHttpsContext = proxyHttpsContext;
+		result.maxEntitySize = maxEntitySize;
+		result.dominoHostName = dominoHostName;
+		result.dominoHttpPort = dominoHttpPort;
+		result.dominoHttps = dominoHttps;
+		result.useDominoConnectorHeaders = useDominoConnectorHeaders;
+		result.dominoConnectorHeadersSecret = dominoConnectorHeadersSecret;
+		result.accessLogEnabled = accessLogEnabled;
+		result.accessLogFormat = accessLogFormat;
+		result.accessLogMaxSize = accessLogMaxSize;
+		result.accessLogMaxFiles = accessLogMaxFiles;
+		result.metricsPath = metricsPath;
+		result.targets.putAll(targets);
+		return result;
+	}
+	
 	public boolean isGlobalEnabled() {
 		return this.globalEnabled;
 	}
-	public void addEnabledType(String enabledType) {
-		this.enabledTypes.add(enabledType);
+	/** @since 4.0.0 */
+	public Set<String> getEnabledTypes() {
+		return enabledTypes;
 	}
 	public boolean isEnabled(ReverseProxyService proxy) {
 		return globalEnabled && enabledTypes.contains(proxy.getProxyType());
 	}
 	
+	/** @since 4.0.0 */
+	public String getProxyHostName() {
+		return proxyHostName;
+	}
+	/** @since 4.0.0 */
+	public int getProxyHttpPort() {
+		return proxyHttpPort;
+	}
+	/** @since 4.0.0 */
+	public boolean isRedirectHttpToHttps() {
+		return redirectHttpToHttps;
+	}
+	/** @since 4.0.0 */
+	public int getProxyHttpsPort() {
+		return proxyHttpsPort;
+	}
+	/** @since 4.0.0 */
+	public SSLContext getProxyHttpsContext() {
+		return proxyHttpsContext;
+	}
+	/** @since 4.0.0 */
+	public long getMaxEntitySize() {
+		return maxEntitySize;
+	}
+	
+	/** @since 4.0.0 */
+	public String getDominoHostName() {
+		return dominoHostName;
+	}
+	/** @since 4.0.0 */
+	public int getDominoHttpPort() {
+		return dominoHttpPort;
+	}
+	/** @since 4.0.0 */
+	public boolean isDominoHttps() {
+		return dominoHttps;
+	}
+	/** @since 4.0.0 */
+	public boolean isUseDominoConnectorHeaders() {
+		return useDominoConnectorHeaders;
+	}
+	/** @since 4.0.0 */
+	public String getDominoConnectorHeadersSecret() {
+		return dominoConnectorHeadersSecret;
+	}
+	
+	/**
+	 * @return whether proxy implementations should write an access log of proxied requests
+	 * @since 4.0.0
+	 */
+	public boolean isAccessLogEnabled() {
+		return accessLogEnabled;
+	}
+	
+	/**
+	 * @return the access log format pattern, or {@code null} to use the default format
+	 * @since 4.0.0
+	 */
+	public String getAccessLogFormat() {
+		return accessLogFormat;
+	}
+	
 	/**
-	 * @return a {@link Map} of app context paths to server configurations
+	 * @return the size in bytes at which access logs are rotated, or {@code 0} to never rotate
+	 * @since 4.0.0
+	 */
+	public long getAccessLogMaxSize() {
+		return accessLogMaxSize;
+	}
+	
+	/**
+	 * @return the number of rotated access log files to keep
+	 * @since 4.0.0
+	 */
+	public int getAccessLogMaxFiles() {
+		return accessLogMaxFiles;
+	}
+	
+	/**
+	 * @return the path, relative to the root of the proxy and without leading or trailing
+	 * 		slashes, at which to serve runtime metrics in OpenMetrics format, or {@code null}
+	 * 		to not serve metrics
+	 * @since 4.0.0
+	 */
+	public String getMetricsPath() {
+		return metricsPath;
+	}
+	
+	/**
+	 * @param other the configuration to compare to
+	 * @return whether the access log settings of the two configurations are the same
+	 * @since 4.0.0
+	 */
+	boolean isSameAccessLog(ReverseProxyConfig other) {
+		return accessLogEnabled == other.accessLogEnabled && Objects.equals(accessLogFormat, other.accessLogFormat)
+				&& accessLogMaxSize == other.accessLogMaxSize && accessLogMaxFiles == other.accessLogMaxFiles;
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of app context paths to server configurations
 	 */
 	public Map<String, ReverseProxyTarget> getTargets() {
 		return this.targets;
 	}
 	
-	public ReverseProxyConfig addTarget(String contextPath, ReverseProxyTarget target) {
-		this.targets.put(contextPath, target);
-		return this;
+	/**
+	 * Compares this configuration to a previous one.
+	 * 
+	 * @param previous the previous configuration, or {@code null} if there was none
+	 * @return a {@link ReverseProxyConfigDiff} describing the changes from {@code previous}
+	 * 		to this configuration
+	 * @since 4.0.0
+	 */
+	public ReverseProxyConfigDiff diff(ReverseProxyConfig previous) {
+		return new ReverseProxyConfigDiff(previous, this);
+	}
+	
+	/**
+	 * @param other the configuration to compare to
+	 * @return whether the listener settings of the two configurations are the same
+	 * @since 4.0.0
+	 */
+	boolean isSameListeners(ReverseProxyConfig other) {
+		return Objects.equals(proxyHostName, other.proxyHostName) && proxyHttpPort == other.proxyHttpPort
+				&& redirectHttpToHttps == other.redirectHttpToHttps && proxyHttpsPort == other.proxyHttpsPort
+				&& proxyHttpsContext == other.proxyHttpsContext && maxEntitySize == other.maxEntitySize;
+	}
+	
+	/**
+	 * @param other the configuration to compare to
+	 * @return whether the Domino back-end settings of the two configurations are the same
+	 * @since 4.0.0
+	 */
+	boolean isSameDomino(ReverseProxyConfig other) {
+		return Objects.equals(dominoHostName, other.dominoHostName) && dominoHttpPort == other.dominoHttpPort
+				&& dominoHttps == other.dominoHttps && useDominoConnectorHeaders == other.useDominoConnectorHeaders
+				&& Objects.equals(dominoConnectorHeadersSecret, other.dominoConnectorHeadersSecret);
 	}
 	
 	@Override
 	public int hashCode() {
-		// proxyHttpsContext is left out as it doesn't implement hashCode
+		// proxyHttpsContext is compared by identity
 		return Objects.hash(dominoConnectorHeadersSecret, dominoHostName, dominoHttpPort, dominoHttps, enabledTypes,
-				globalEnabled, maxEntitySize, proxyHostName, proxyHttpPort, proxyHttpsPort, targets,
-				useDominoConnectorHeaders);
+				globalEnabled, maxEntitySize, proxyHostName, proxyHttpPort, proxyHttpsPort, redirectHttpToHttps, targets,
+				useDominoConnectorHeaders, accessLogEnabled, accessLogFormat, accessLogMaxSize, accessLogMaxFiles,
+				metricsPath, System.identityHashCode(proxyHttpsContext));
 	}
 	@Override
 	public boolean equals(Object obj) {
@@ -85,13 +292,148 @@ public class ReverseProxyConfig {
 		if (getClass() != obj.getClass())
 			return false;
 		ReverseProxyConfig other = (ReverseProxyConfig) obj;
-		return Objects.equals(dominoConnectorHeadersSecret, other.dominoConnectorHeadersSecret)
-				&& Objects.equals(dominoHostName, other.dominoHostName) && dominoHttpPort == other.dominoHttpPort
-				&& dominoHttps == other.dominoHttps && Objects.equals(enabledTypes, other.enabledTypes)
-				&& globalEnabled == other.globalEnabled && maxEntitySize == other.maxEntitySize
-				&& Objects.equals(proxyHostName, other.proxyHostName) && proxyHttpPort == other.proxyHttpPort
-				&& Objects.equals(proxyHttpsContext, other.proxyHttpsContext) && proxyHttpsPort == other.proxyHttpsPort
-				&& Objects.equals(targets, other.targets)
-				&& useDominoConnectorHeaders == other.useDominoConnectorHeaders;
+		return globalEnabled == other.globalEnabled && Objects.equals(enabledTypes, other.enabledTypes)
+				&& isSameListeners(other) && isSameDomino(other)
+				&& isSameAccessLog(other) && Objects.equals(metricsPath, other.metricsPath)
+				&& Objects.equals(targets, other.targets);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("ReverseProxyConfig [globalEnabled=%s, enabledTypes=%s, proxyHostName=%s, proxyHttpPort=%s, redirectHttpToHttps=%s, proxyHttpsPort=%s, maxEntitySize=%s, dominoHostName=%s, dominoHttpPort=%s, dominoHttps=%s, useDominoConnectorHeaders=%s, accessLogEnabled=%s, accessLogFormat=%s, accessLogMaxSize=%s, accessLogMaxFiles=%s, metricsPath=%s, targets=%s]", //$NON-NLS-1$
+				globalEnabled, enabledTypes, proxyHostName, proxyHttpPort, redirectHttpToHttps, proxyHttpsPort, maxEntitySize,
+				dominoHostName, dominoHttpPort, dominoHttps, useDominoConnectorHeaders, accessLogEnabled, accessLogFormat,
+				accessLogMaxSize, accessLogMaxFiles, metricsPath, targets);
+	}
+	
+	/**
+	 * Builds {@link ReverseProxyConfig} instances. Builders are not thread-safe.
+	 * 
+	 * @since 4.0.0
+	 */
+	public static final class Builder {
+		private boolean globalEnabled = true;
+		private final Set<String> enabledTypes = new LinkedHashSet<>();
+		
+		private String proxyHostName;
+		private int proxyHttpPort = PORT_DISABLED;
+		private boolean redirectHttpToHttps;
+		private int proxyHttpsPort = PORT_DISABLED;
+		private SSLContext proxyHttpsContext;
+		private long maxEntitySize;
+		
+		private String dominoHostName = "localhost"; //$NON-NLS-1$
+		private int dominoHttpPort;
+		private boolean dominoHttps;
+		private boolean useDominoConnectorHeaders;
+		private String dominoConnectorHeadersSecret;
+		
+		private boolean accessLogEnabled;
+		private String accessLogFormat;
+		private long accessLogMaxSize = DEFAULT_ACCESS_LOG_MAX_SIZE;
+		private int accessLogMaxFiles = DEFAULT_ACCESS_LOG_MAX_FILES;
+		
+		private String metricsPath;
+		
+		private final Map<String, ReverseProxyTarget> targets = new LinkedHashMap<>();
+		
+		private Builder() {
+		}
+		
+		public Builder globalEnabled(boolean globalEnabled) {
+			this.globalEnabled = globalEnabled;
+			return this;
+		}
+		public boolean isGlobalEnabled() {
+			return globalEnabled;
+		}
+		public Builder addEnabledType(String enabledType) {
+			this.enabledTypes.add(enabledType);
+			return this;
+		}
+		public Builder proxyHostName(String proxyHostName) {
+			this.proxyHostName = proxyHostName;
+			return this;
+		}
+		public Builder proxyHttpPort(int proxyHttpPort) {
+			this.proxyHttpPort = proxyHttpPort;
+			return this;
+		}
+		public Builder redirectHttpToHttps(boolean redirectHttpToHttps) {
+			this.redirectHttpToHttps = redirectHttpToHttps;
+			return this;
+		}
+		public Builder proxyHttpsPort(int proxyHttpsPort) {
+			this.proxyHttpsPort = proxyHttpsPort;
+			return this;
+		}
+		public Builder proxyHttpsContext(SSLContext proxyHttpsContext) {
+			this.proxyHttpsContext = proxyHttpsContext;
+			return this;
+		}
+		public Builder maxEntitySize(long maxEntitySize) {
+			this.maxEntitySize = maxEntitySize;
+			return this;
+		}
+		public Builder dominoHostName(String dominoHostName) {
+			this.dominoHostName = dominoHostName;
+			return this;
+		}
+		public Builder dominoHttpPort(int dominoHttpPort) {
+			this.dominoHttpPort = dominoHttpPort;
+			return this;
+		}
+		public Builder dominoHttps(boolean dominoHttps) {
+			this.dominoHttps = dominoHttps;
+			return this;
+		}
+		public Builder useDominoConnectorHeaders(boolean useDominoConnectorHeaders) {
+			this.useDominoConnectorHeaders = useDominoConnectorHeaders;
+			return this;
+		}
+		public Builder dominoConnectorHeadersSecret(String dominoConnectorHeadersSecret) {
+			this.dominoConnectorHeadersSecret = dominoConnectorHeadersSecret;
+			return this;
+		}
+		public Builder accessLogEnabled(boolean accessLogEnabled) {
+			this.accessLogEnabled = accessLogEnabled;
+			return this;
+		}
+		public Builder accessLogFormat(String accessLogFormat) {
+			this.accessLogFormat = accessLogFormat;
+			return this;
+		}
+		public Builder accessLogMaxSize(long accessLogMaxSize) {
+			this.accessLogMaxSize = accessLogMaxSize;
+			return this;
+		}
+		public Builder accessLogMaxFiles(int accessLogMaxFiles) {
+			this.accessLogMaxFiles = accessLogMaxFiles;
+			return this;
+		}
+		public Builder metricsPath(String metricsPath) {
+			// Store the path without surrounding slashes, with blank values disabling the endpoint
+			String path = metricsPath == null ? "" : metricsPath.trim(); //$NON-NLS-1$
+			while(path.startsWith("/")) { //$NON-NLS-1$
+				path = path.substring(1);
+			}
+			while(path.endsWith("/")) { //$NON-NLS-1$
+				path = path.substring(0, path.length()-1);
+			}
+			this.metricsPath = path.isEmpty() ? null : path;
+			return this;
+		}
+		public Builder addTarget(String contextPath, ReverseProxyTarget target) {
+			this.targets.put(contextPath, target);
+			return this;
+		}
+		public Builder removeTarget(String contextPath) {
+			this.targets.remove(contextPath);
+			return this;
+		}
+		
+		public ReverseProxyConfig build() {
+			return new ReverseProxyConfig(this);
+		}
 	}
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Describes the differences between two {@link ReverseProxyConfig} instances, allowing
+ * proxy implementations to apply only the changes they need to.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ * @see ReverseProxyConfig#diff(ReverseProxyConfig)
+ */
+public final class ReverseProxyConfigDiff {
+	private final ReverseProxyConfig previous;
+	private final ReverseProxyConfig current;
+	private final Map<String, ReverseProxyTarget> addedTargets = new LinkedHashMap<>();
+	private final Map<String, ReverseProxyTarget> removedTargets = new LinkedHashMap<>();
+	private final Map<String, ReverseProxyTarget> changedTargets = new LinkedHashMap<>();
+	private final boolean listenersChanged;
+	private final boolean dominoChanged;
+	private final boolean accessLogChanged;
+	private final boolean metricsPathChanged;
+	
+	ReverseProxyConfigDiff(ReverseProxyConfig previous, ReverseProxyConfig current) {
+		this.previous = previous;
+		this.current = Objects.requireNonNull(current, "current cannot be null"); //$NON-NLS-1$
+		
+		Map<String, ReverseProxyTarget> oldTargets = previous == null ? Collections.emptyMap() : previous.getTargets();
+		for(Map.Entry<String, ReverseProxyTarget> target : current.getTargets().entrySet()) {
+			ReverseProxyTarget oldTarget = oldTargets.get(target.getKey());
+			if(oldTarget == null) {
+				addedTargets.put(target.getKey(), target.getValue());
+			} else if(!oldTarget.equals(target.getValue())) {
+				changedTargets.put(target.getKey(), target.getValue());
+			}
+		}
+		for(Map.Entry<String, ReverseProxyTarget> target : oldTargets.entrySet()) {
+			if(!current.getTargets().containsKey(target.getKey())) {
+				removedTargets.put(target.getKey(), target.getValue());
+			}
+		}
+		
+		this.listenersChanged = previous == null || !previous.isSameListeners(current);
+		this.dominoChanged = previous == null || !previous.isSameDomino(current);
+		this.accessLogChanged = previous == null || !previous.isSameAccessLog(current);
+		this.metricsPathChanged = previous == null || !Objects.equals(previous.getMetricsPath(), current.getMetricsPath());
+	}
+	
+	/**
+	 * @return the previous configuration, or {@code null} if there was none
+	 */
+	public ReverseProxyConfig getPrevious() {
+		return previous;
+	}
+	
+	/**
+	 * @return the new configuration
+	 */
+	public ReverseProxyConfig getCurrent() {
+		return current;
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of context paths to targets that are new in the current
+	 * 		configuration
+	 */
+	public Map<String, ReverseProxyTarget> getAddedTargets() {
+		return Collections.unmodifiableMap(addedTargets);
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of context paths to targets from the previous configuration
+	 * 		that are absent from the current one
+	 */
+	public Map<String, ReverseProxyTarget> getRemovedTargets() {
+		return Collections.unmodifiableMap(removedTargets);
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of context paths to the new values of targets whose
+	 * 		configuration changed
+	 */
+	public Map<String, ReverseProxyTarget> getChangedTargets() {
+		return Collections.unmodifiableMap(changedTargets);
+	}
+	
+	/**
+	 * @return whether any targets were added, removed, or changed
+	 */
+	public boolean isTargetsChanged() {
+		return !addedTargets.isEmpty() || !removedTargets.isEmpty() || !changedTargets.isEmpty();
+	}
+	
+	/**
+	 * @return whether the listening host, ports, redirection, TLS context, or maximum entity
+	 * 		size changed
+	 */
+	public boolean isListenersChanged() {
+		return listenersChanged;
+	}
+	
+	/**
+	 * @return whether the settings for proxying to Domino itself changed
+	 */
+	public boolean isDominoChanged() {
+		return dominoChanged;
+	}
+	
+	/**
+	 * @return whether the access log was enabled, disabled, or reconfigured
+	 */
+	public boolean isAccessLogChanged() {
+		return accessLogChanged;
+	}
+	
+	/**
+	 * @return whether the metrics endpoint was enabled, disabled, or moved
+	 * @since 4.0.0
+	 */
+	public boolean isMetricsPathChanged() {
+		return metricsPathChanged;
+	}
+	
+	/**
+	 * @param proxy the proxy implementation to check
+	 * @return whether the enablement of the given proxy changed
+	 */
+	public boolean isEnabledChanged(ReverseProxyService proxy) {
+		boolean wasEnabled = previous != null && previous.isEnabled(proxy);
+		return wasEnabled != current.isEnabled(proxy);
+	}
+	
+	/**
+	 * @return whether the two configurations are equal
+	 */
+	public boolean isEmpty() {
+		return current.equals(previous);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("ReverseProxyConfigDiff [addedTargets=%s, removedTargets=%s, changedTargets=%s, listenersChanged=%s, dominoChanged=%s, accessLogChanged=%s, metricsPathChanged=%s]", //$NON-NLS-1$
+				addedTargets.keySet(), removedTargets.keySet(), changedTargets.keySet(), listenersChanged, dominoChanged, accessLogChanged, metricsPathChanged);
+	}
+}
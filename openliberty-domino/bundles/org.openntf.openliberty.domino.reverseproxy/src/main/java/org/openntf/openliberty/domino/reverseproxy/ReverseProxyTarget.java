@@ -16,6 +16,7 @@
 package org.openntf.openliberty.domino.reverseproxy;
 
 import java.net.URI;
+import java.util.Objects;
 
 /**
  * Represents the configuration for a backing app server for the reverse proxy. 
@@ -27,11 +28,25 @@ public class ReverseProxyTarget {
 	private final URI uri;
 	private final boolean useXForwardedFor;
 	private final boolean useWsHeaders;
+	private final boolean ready;
 
 	public ReverseProxyTarget(URI uri, boolean useXForwardedFor, boolean useWsHeaders) {
+		this(uri, useXForwardedFor, useWsHeaders, true);
+	}
+	
+	/**
+	 * @param uri the base URI of the app on the app server
+	 * @param useXForwardedFor whether to send {@code X-Forwarded-For} headers
+	 * @param useWsHeaders whether to send WebSphere-style connector headers
+	 * @param ready whether the app server is ready to receive requests, such as after it has
+	 * 		warmed up
+	 * @since 4.0.0
+	 */
+	public ReverseProxyTarget(URI uri, boolean useXForwardedFor, boolean useWsHeaders, boolean ready) {
 		this.uri = uri;
 		this.useXForwardedFor = useXForwardedFor;
 		this.useWsHeaders = useWsHeaders;
+		this.ready = ready;
 	}
 	
 	public URI getUri() {
@@ -43,10 +58,36 @@ public class ReverseProxyTarget {
 	public boolean isUseXForwardedFor() {
 		return useXForwardedFor;
 	}
+	/**
+	 * @return whether requests should be proxied to the target, or else answered with a
+	 * 		{@code 503 Service Unavailable} response
+	 * @since 4.0.0
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(uri, useWsHeaders, useXForwardedFor, ready);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ReverseProxyTarget other = (ReverseProxyTarget) obj;
+		return Objects.equals(uri, other.uri) && useWsHeaders == other.useWsHeaders
+				&& useXForwardedFor == other.useXForwardedFor && ready == other.ready;
+	}
 
 	@Override
 	public String toString() {
-		return String.format("ReverseProxyTarget [uri=%s, useXForwardedFor=%s, useWsHeaders=%s]", //$NON-NLS-1$
-				uri, useXForwardedFor, useWsHeaders);
+		return String.format("ReverseProxyTarget [uri=%s, useXForwardedFor=%s, useWsHeaders=%s, ready=%s]", //$NON-NLS-1$
+				uri, useXForwardedFor, useWsHeaders, ready);
 	}
 }
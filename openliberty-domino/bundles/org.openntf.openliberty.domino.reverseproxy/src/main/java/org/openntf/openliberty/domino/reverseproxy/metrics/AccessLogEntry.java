@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+/**
+ * Describes a single proxied request for writing to an {@link AccessLogWriter}.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class AccessLogEntry {
+	private final long timestamp;
+	private final String remoteAddr;
+	private final String remoteUser;
+	private final String method;
+	private final String uri;
+	private final String protocol;
+	private final int status;
+	private final long responseBytes;
+	private final String referer;
+	private final String userAgent;
+	private final long durationNanos;
+	private final String target;
+	
+	/**
+	 * @param timestamp the time the request was received, in milliseconds since the epoch
+	 * @param remoteAddr the address of the client
+	 * @param remoteUser the authenticated user name, or {@code null} if not known
+	 * @param method the HTTP method of the request
+	 * @param uri the request path, including any query string
+	 * @param protocol the request protocol, such as {@code "HTTP/1.1"}
+	 * @param status the HTTP status sent to the client, or {@code 0} if no response was sent
+	 * @param responseBytes the number of response body bytes sent to the client
+	 * @param referer the value of the {@code Referer} header, or {@code null} if not sent
+	 * @param userAgent the value of the {@code User-Agent} header, or {@code null} if not sent
+	 * @param durationNanos the time taken to handle the request, in nanoseconds
+	 * @param target the context path of the proxy target that handled the request
+	 */
+	public AccessLogEntry(long timestamp, String remoteAddr, String remoteUser, String method, String uri, String protocol,
+			int status, long responseBytes, String referer, String userAgent, long durationNanos, String target) {
+		this.timestamp = timestamp;
+		this.remoteAddr = remoteAddr;
+		this.remoteUser = remoteUser;
+		this.method = method;
+		this.uri = uri;
+		this.protocol = protocol;
+		this.status = status;
+		this.responseBytes = responseBytes;
+		this.referer = referer;
+		this.userAgent = userAgent;
+		this.durationNanos = durationNanos;
+		this.target = target;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getRemoteAddr() {
+		return remoteAddr;
+	}
+
+	public String getRemoteUser() {
+		return remoteUser;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public String getProtocol() {
+		return protocol;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	public String getReferer() {
+		return referer;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A parsed access log pattern, using a subset of the Apache HTTP Server
+ * <a href="https://httpd.apache.org/docs/2.4/mod/mod_log_config.html#formats">log format
+ * directives</a>.
+ * 
+ * <p>The supported directives are:</p>
+ * 
+ * <ul>
+ * 	<li>{@code %a}, {@code %h} - the client address</li>
+ * 	<li>{@code %l} - always {@code -}</li>
+ * 	<li>{@code %u} - the authenticated user name</li>
+ * 	<li>{@code %t} - the time the request was received</li>
+ * 	<li>{@code %r} - the request line</li>
+ * 	<li>{@code %m}, {@code %U}, {@code %q}, {@code %H} - the method, path, query string, and protocol</li>
+ * 	<li>{@code %s}, {@code %>s} - the response status</li>
+ * 	<li>{@code %b}, {@code %B} - the response body size, with {@code %b} using {@code -} for none</li>
+ * 	<li>{@code %D}, {@code %T}, {@code %{ms}T}, {@code %{us}T}, {@code %{s}T} - the request duration</li>
+ * 	<li>{@code %{Referer}i}, {@code %{User-Agent}i} - request headers</li>
+ * 	<li>{@code %{target}n} - the context path of the proxy target</li>
+ * 	<li>{@code %%} - a literal {@code %}</li>
+ * </ul>
+ * 
+ * <p>The names {@value #NAME_COMMON} and {@value #NAME_COMBINED} may be used in place of
+ * a pattern.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public final class AccessLogFormat {
+	public static final String NAME_COMMON = "common"; //$NON-NLS-1$
+	public static final String NAME_COMBINED = "combined"; //$NON-NLS-1$
+	
+	public static final String COMMON = "%h %l %u %t \"%r\" %>s %b"; //$NON-NLS-1$
+	public static final String COMBINED = COMMON + " \"%{Referer}i\" \"%{User-Agent}i\""; //$NON-NLS-1$
+	/** The Combined Log Format followed by the duration in milliseconds and the proxy target */
+	public static final String DEFAULT = COMBINED + " %{ms}T %{target}n"; //$NON-NLS-1$
+	
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US) //$NON-NLS-1$
+		.withZone(ZoneId.systemDefault());
+	
+	private final String pattern;
+	private final List<BiConsumer<AccessLogEntry, StringBuilder>> parts;
+	
+	private AccessLogFormat(String pattern, List<BiConsumer<AccessLogEntry, StringBuilder>> parts) {
+		this.pattern = pattern;
+		this.parts = Collections.unmodifiableList(parts);
+	}
+	
+	/**
+	 * Parses a log pattern.
+	 * 
+	 * @param pattern the pattern to parse, one of the named formats, or {@code null} or empty
+	 * 		to use {@link #DEFAULT}
+	 * @return the parsed format
+	 * @throws IllegalArgumentException if {@code pattern} contains an unsupported directive
+	 */
+	public static AccessLogFormat parse(String pattern) {
+		String effective = pattern == null ? "" : pattern.trim(); //$NON-NLS-1$
+		if(effective.isEmpty()) {
+			effective = DEFAULT;
+		} else if(NAME_COMMON.equalsIgnoreCase(effective)) {
+			effective = COMMON;
+		} else if(NAME_COMBINED.equalsIgnoreCase(effective)) {
+			effective = COMBINED;
+		}
+		
+		List<BiConsumer<AccessLogEntry, StringBuilder>> parts = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while(i < effective.length()) {
+			char c = effective.charAt(i++);
+			if(c != '%') {
+				literal.append(c);
+				continue;
+			}
+			
+			String param = null;
+			if(i < effective.length() && effective.charAt(i) == '{') {
+				int end = effective.indexOf('}', i);
+				if(end < 0) {
+					throw new IllegalArgumentException(MessageFormat.format("Unterminated directive in access log pattern: {0}", pattern));
+				}
+				param = effective.substring(i + 1, end);
+				i = end + 1;
+			}
+			if(i < effective.length() && effective.charAt(i) == '>') {
+				i++;
+			}
+			if(i >= effective.length()) {
+				throw new IllegalArgumentException(MessageFormat.format("Incomplete directive in access log pattern: {0}", pattern));
+			}
+			char directive = effective.charAt(i++);
+			if(directive == '%') {
+				literal.append('%');
+				continue;
+			}
+			
+			if(literal.length() > 0) {
+				String text = literal.toString();
+				parts.add((entry, line) -> line.append(text));
+				literal.setLength(0);
+			}
+			parts.add(createPart(directive, param, pattern));
+		}
+		if(literal.length() > 0) {
+			String text = literal.toString();
+			parts.add((entry, line) -> line.append(text));
+		}
+		
+		return new AccessLogFormat(effective, parts);
+	}
+	
+	/**
+	 * @return the effective pattern, with any named format expanded
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+	
+	/**
+	 * Appends the formatted entry to the provided line, without a line terminator.
+	 * 
+	 * @param entry the entry to format
+	 * @param line the builder to append to
+	 */
+	public void format(AccessLogEntry entry, StringBuilder line) {
+		for(BiConsumer<AccessLogEntry, StringBuilder> part : parts) {
+			part.accept(entry, line);
+		}
+	}
+	
+	@Override
+	public int hashCode() {
+		return pattern.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof AccessLogFormat && Objects.equals(pattern, ((AccessLogFormat)obj).pattern);
+	}
+	
+	@Override
+	public String toString() {
+		return pattern;
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private static BiConsumer<AccessLogEntry, StringBuilder> createPart(char directive, String param, String pattern) {
+		switch(directive) {
+		case 'a':
+		case 'h':
+			return (entry, line) -> line.append(orDash(entry.getRemoteAddr()));
+		case 'l':
+			return (entry, line) -> line.append('-');
+		case 'u':
+			return (entry, line) -> line.append(orDash(entry.getRemoteUser()));
+		case 't':
+			return (entry, line) -> line.append('[').append(TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(entry.getTimestamp()))).append(']');
+		case 'r':
+			return (entry, line) -> line.append(entry.getMethod()).append(' ').append(entry.getUri()).append(' ').append(entry.getProtocol());
+		case 'm':
+			return (entry, line) -> line.append(entry.getMethod());
+		case 'U':
+			return (entry, line) -> {
+				String uri = entry.getUri();
+				int queryIndex = uri.indexOf('?');
+				line.append(queryIndex < 0 ? uri : uri.substring(0, queryIndex));
+			};
+		case 'q':
+			return (entry, line) -> {
+				String uri = entry.getUri();
+				int queryIndex = uri.indexOf('?');
+				if(queryIndex >= 0) {
+					line.append(uri, queryIndex, uri.length());
+				}
+			};
+		case 'H':
+			return (entry, line) -> line.append(entry.getProtocol());
+		case 's':
+			return (entry, line) -> {
+				if(entry.getStatus() == 0) {
+					line.append('-');
+				} else {
+					line.append(entry.getStatus());
+				}
+			};
+		case 'b':
+			return (entry, line) -> {
+				if(entry.getResponseBytes() <= 0) {
+					line.append('-');
+				} else {
+					line.append(entry.getResponseBytes());
+				}
+			};
+		case 'B':
+			return (entry, line) -> line.append(Math.max(0, entry.getResponseBytes()));
+		case 'D':
+			return (entry, line) -> line.append(TimeUnit.NANOSECONDS.toMicros(entry.getDurationNanos()));
+		case 'T':
+			TimeUnit unit;
+			if(param == null || "s".equals(param)) { //$NON-NLS-1$
+				unit = TimeUnit.SECONDS;
+			} else if("ms".equals(param)) { //$NON-NLS-1$
+				unit = TimeUnit.MILLISECONDS;
+			} else if("us".equals(param)) { //$NON-NLS-1$
+				unit = TimeUnit.MICROSECONDS;
+			} else {
+				throw new IllegalArgumentException(MessageFormat.format("Unsupported time unit \"{0}\" in access log pattern: {1}", param, pattern));
+			}
+			return (entry, line) -> line.append(unit.convert(entry.getDurationNanos(), TimeUnit.NANOSECONDS));
+		case 'i':
+			if("Referer".equalsIgnoreCase(param)) { //$NON-NLS-1$
+				return (entry, line) -> line.append(orDash(entry.getReferer()));
+			} else if("User-Agent".equalsIgnoreCase(param)) { //$NON-NLS-1$
+				return (entry, line) -> line.append(orDash(entry.getUserAgent()));
+			}
+			throw new IllegalArgumentException(MessageFormat.format("Unsupported request header \"{0}\" in access log pattern: {1}", param, pattern));
+		case 'n':
+			if("target".equals(param)) { //$NON-NLS-1$
+				return (entry, line) -> line.append(orDash(entry.getTarget()));
+			}
+			throw new IllegalArgumentException(MessageFormat.format("Unsupported note \"{0}\" in access log pattern: {1}", param, pattern));
+		default:
+			throw new IllegalArgumentException(MessageFormat.format("Unsupported directive \"%{0}\" in access log pattern: {1}", directive, pattern));
+		}
+	}
+	
+	private static String orDash(String value) {
+		return value == null || value.isEmpty() ? "-" : value.replace('"', '\''); //$NON-NLS-1$
+	}
+}
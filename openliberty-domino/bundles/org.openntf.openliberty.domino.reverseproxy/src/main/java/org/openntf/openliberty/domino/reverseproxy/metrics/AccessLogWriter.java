@@ -0,0 +1,281 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.reverseproxy.ReverseProxyConfig;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+
+/**
+ * Writes {@link AccessLogEntry} records to a file using an {@link AccessLogFormat}.
+ * 
+ * <p>Entries are queued by request threads and written in batches by a single background
+ * task, so logging never blocks a request. When the queue is full, entries are dropped and
+ * counted in {@link #getDropped()}.</p>
+ * 
+ * <p>When a maximum size is set, the file is rotated once it reaches that size: the current
+ * file is renamed with a {@code .1} suffix before the extension, older files are shifted up,
+ * and files beyond the configured count are deleted.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class AccessLogWriter implements Closeable {
+	private static final Logger log = OpenLibertyLog.getLog();
+	
+	/** The maximum number of entries that may wait to be written */
+	public static final int QUEUE_SIZE = 8192;
+	/** The maximum number of entries written between flushes */
+	public static final int BATCH_SIZE = 512;
+	
+	private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+	
+	private final Path file;
+	private final AccessLogFormat format;
+	private final long maxSize;
+	private final int maxFiles;
+	private final BlockingQueue<AccessLogEntry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private final LongAdder written = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final Future<?> writerTask;
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a new writer and starts its background task.
+	 * 
+	 * @param file the file to append entries to, which will be created if needed
+	 * @param format the format to use for each entry
+	 * @param maxSize the size in bytes at which to rotate the file, or {@code 0} to never rotate
+	 * @param maxFiles the number of rotated files to keep
+	 */
+	public AccessLogWriter(Path file, AccessLogFormat format, long maxSize, int maxFiles) {
+		this.file = file;
+		this.format = format;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+		this.writerTask = DominoThreadFactory.getExecutor(Pool.RUNTIME).submit(this::writeEntries);
+	}
+	
+	/**
+	 * Creates a writer for a proxy's access log using the settings from the provided configuration.
+	 * An unsupported format pattern is logged and replaced with {@link AccessLogFormat#DEFAULT}.
+	 * 
+	 * @param config the reverse proxy configuration
+	 * @param proxyType the type of the proxy writing the log, such as {@code "NHTTP"}
+	 * @return a new started {@link AccessLogWriter}
+	 */
+	public static AccessLogWriter create(ReverseProxyConfig config, String proxyType) {
+		AccessLogFormat format;
+		try {
+			format = AccessLogFormat.parse(config.getAccessLogFormat());
+		} catch(IllegalArgumentException e) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.warning(MessageFormat.format("{0}; using the default access log format", e.getMessage()));
+			}
+			format = AccessLogFormat.parse(null);
+		}
+		return new AccessLogWriter(getDefaultFile(proxyType), format, config.getAccessLogMaxSize(), config.getAccessLogMaxFiles());
+	}
+	
+	/**
+	 * @param proxyType the type of the proxy writing the log, such as {@code "NHTTP"}
+	 * @return the default access log file for the proxy, within the runtime's {@code logs} directory
+	 */
+	public static Path getDefaultFile(String proxyType) {
+		Path baseDir = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class).getBaseDirectory();
+		return baseDir.resolve("logs").resolve("access-" + proxyType.toLowerCase(Locale.US) + ".log"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+	
+	/**
+	 * Queues an entry to be written. This method does not block.
+	 * 
+	 * @param entry the entry to write
+	 */
+	public void log(AccessLogEntry entry) {
+		if(closed || !queue.offer(entry)) {
+			dropped.increment();
+		}
+	}
+	
+	/**
+	 * @return the file that entries are written to
+	 */
+	public Path getFile() {
+		return file;
+	}
+	
+	/**
+	 * @return the format used for each entry
+	 */
+	public AccessLogFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * @return the number of entries written to the file
+	 */
+	public long getWritten() {
+		return written.sum();
+	}
+	
+	/**
+	 * @return the number of entries discarded because the queue was full or the writer was closed
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+	
+	/**
+	 * @return the number of entries waiting to be written
+	 */
+	public int getPending() {
+		return queue.size();
+	}
+	
+	/**
+	 * Stops accepting entries and waits briefly for queued entries to be written.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			writerTask.get(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException | TimeoutException e) {
+			writerTask.cancel(true);
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private void writeEntries() {
+		BufferedWriter w = null;
+		try {
+			Files.createDirectories(file.getParent());
+			w = open();
+			long size = Files.size(file);
+			List<AccessLogEntry> batch = new ArrayList<>(BATCH_SIZE);
+			StringBuilder line = new StringBuilder(256);
+			String lineSeparator = System.lineSeparator();
+			while(true) {
+				AccessLogEntry first;
+				try {
+					first = queue.poll(1, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					// Write out whatever is left before stopping
+					first = null;
+					closed = true;
+				}
+				if(first == null) {
+					if(queue.isEmpty()) {
+						if(closed) {
+							break;
+						}
+						continue;
+					}
+				} else {
+					batch.add(first);
+				}
+				queue.drainTo(batch, BATCH_SIZE - batch.size());
+				for(AccessLogEntry entry : batch) {
+					line.setLength(0);
+					format.format(entry, line);
+					line.append(lineSeparator);
+					w.append(line);
+					// Close enough for rotation purposes, since log lines are almost entirely ASCII
+					size += line.length();
+				}
+				w.flush();
+				written.add(batch.size());
+				batch.clear();
+				
+				if(maxSize > 0 && size >= maxSize) {
+					w.close();
+					rotate();
+					w = open();
+					size = 0;
+				}
+			}
+		} catch(IOException e) {
+			closed = true;
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, MessageFormat.format("Unable to write to access log {0}", file), e);
+			}
+		} finally {
+			if(w != null) {
+				try {
+					w.close();
+				} catch (IOException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+	
+	private BufferedWriter open() throws IOException {
+		return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+	
+	private void rotate() throws IOException {
+		Files.deleteIfExists(getRotatedFile(maxFiles));
+		for(int i = maxFiles - 1; i >= 1; i--) {
+			Path source = getRotatedFile(i);
+			if(Files.exists(source)) {
+				Files.move(source, getRotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if(maxFiles > 0) {
+			Files.move(file, getRotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(file);
+		}
+	}
+	
+	private Path getRotatedFile(int index) {
+		String name = file.getFileName().toString();
+		int dotIndex = name.lastIndexOf('.');
+		String rotatedName = dotIndex < 0 ? name + '.' + index : name.substring(0, dotIndex) + '.' + index + name.substring(dotIndex);
+		return file.resolveSibling(rotatedName);
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
+
+/**
+ * Holds the {@link TargetMetrics} for each target of each reverse proxy implementation, as
+ * well as the connection counts and access logs that running proxies register.
+ * 
+ * <p>These are published to the {@link MetricsRegistry} under the {@code proxy_} prefix.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum ProxyMetrics {
+	instance;
+	
+	private static final String PREFIX = MetricsRegistry.PREFIX + "proxy_"; //$NON-NLS-1$
+	private static final String LABEL_PROXY = "proxy"; //$NON-NLS-1$
+	private static final String LABEL_TARGET = "target"; //$NON-NLS-1$
+	
+	private final Map<String, TargetMetrics> targets = new ConcurrentHashMap<>();
+	private final Map<String, LongSupplier> activeConnections = new ConcurrentHashMap<>();
+	private final Map<String, AccessLogWriter> accessLogs = new ConcurrentHashMap<>();
+	/** In-flight requests by back-end path, across all proxy types */
+	private final Map<String, AtomicInteger> activeByPath = new ConcurrentHashMap<>();
+	
+	private ProxyMetrics() {
+		MetricsRegistry.instance.register(PREFIX, this::collectMetrics);
+	}
+	
+	/**
+	 * Retrieves the metrics for a proxy target, creating them if needed.
+	 * 
+	 * @param proxyType the type of the proxy handling the target, such as {@code "NHTTP"}
+	 * @param target the context path of the target
+	 * @return the {@link TargetMetrics} for the target
+	 */
+	public TargetMetrics getTarget(String proxyType, String target) {
+		return targets.computeIfAbsent(proxyType + '/' + target, key -> new TargetMetrics(proxyType, target));
+	}
+	
+	/**
+	 * Marks the start of a request forwarded to the given path on a back-end server, such as the
+	 * context root of one version of an app. Each call must be paired with a call to
+	 * {@link #backendRequestCompleted(String)}.
+	 * 
+	 * @param path the path of the target URI the request is forwarded to
+	 */
+	public void backendRequestStarted(String path) {
+		activeByPath.computeIfAbsent(normalizePath(path), key -> new AtomicInteger()).incrementAndGet();
+	}
+	
+	/**
+	 * Marks the end of a request passed to {@link #backendRequestStarted(String)}.
+	 * 
+	 * @param path the path of the target URI the request was forwarded to
+	 */
+	public void backendRequestCompleted(String path) {
+		AtomicInteger active = activeByPath.get(normalizePath(path));
+		if(active != null) {
+			active.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * @param path the path of a target URI
+	 * @return the number of requests currently in flight to that path on any back-end server
+	 */
+	public int getActiveBackendRequests(String path) {
+		AtomicInteger active = activeByPath.get(normalizePath(path));
+		return active == null ? 0 : active.get();
+	}
+	
+	/**
+	 * @return an unmodifiable {@link List} of the metrics for all targets that have been proxied
+	 */
+	public List<TargetMetrics> getTargets() {
+		return Collections.unmodifiableList(new ArrayList<>(targets.values()));
+	}
+	
+	/**
+	 * Registers a source for the number of client connections currently open to a proxy.
+	 * 
+	 * @param proxyType the type of the proxy, such as {@code "Standalone"}
+	 * @param supplier a thread-safe supplier of the current connection count
+	 */
+	public void registerActiveConnections(String proxyType, LongSupplier supplier) {
+		activeConnections.put(proxyType, supplier);
+	}
+	
+	/**
+	 * @param proxyType the type of the proxy whose connection count source to remove
+	 */
+	public void unregisterActiveConnections(String proxyType) {
+		activeConnections.remove(proxyType);
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of proxy types to the number of client connections
+	 * 		currently open to them, for proxies that report connection counts
+	 */
+	public Map<String, Long> getActiveConnections() {
+		Map<String, Long> result = new TreeMap<>();
+		activeConnections.forEach((proxyType, supplier) -> result.put(proxyType, supplier.getAsLong()));
+		return Collections.unmodifiableMap(result);
+	}
+	
+	/**
+	 * Registers the access log currently in use by a proxy.
+	 * 
+	 * @param proxyType the type of the proxy, such as {@code "Standalone"}
+	 * @param accessLog the proxy's active access log
+	 */
+	public void registerAccessLog(String proxyType, AccessLogWriter accessLog) {
+		accessLogs.put(proxyType, accessLog);
+	}
+	
+	/**
+	 * @param proxyType the type of the proxy whose access log to remove
+	 */
+	public void unregisterAccessLog(String proxyType) {
+		accessLogs.remove(proxyType);
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of proxy types to their active access logs
+	 */
+	public Map<String, AccessLogWriter> getAccessLogs() {
+		return Collections.unmodifiableMap(new TreeMap<>(accessLogs));
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private void collectMetrics(MetricsWriter writer) {
+		List<TargetMetrics> targets = new ArrayList<>(this.targets.values());
+		targets.sort(Comparator.comparing(TargetMetrics::getProxyType).thenComparing(TargetMetrics::getTarget));
+		
+		writer.family(PREFIX + "requests", MetricsWriter.Type.COUNTER, "Requests proxied to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.counter(PREFIX + "requests", t.getRequests(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "request_failures", MetricsWriter.Type.COUNTER, "Requests that could not be proxied to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.counter(PREFIX + "request_failures", t.getFailures(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "request_bytes", MetricsWriter.Type.COUNTER, "Request body bytes sent to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.counter(PREFIX + "request_bytes", t.getBytesIn(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "response_bytes", MetricsWriter.Type.COUNTER, "Response body bytes received from each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.counter(PREFIX + "response_bytes", t.getBytesOut(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "responses", MetricsWriter.Type.COUNTER, "Responses from each target by status code"); //$NON-NLS-1$ //$NON-NLS-2$
+		for(TargetMetrics t : targets) {
+			new TreeMap<>(t.getStatusCounts()).forEach((code, count) ->
+				writer.counter(PREFIX + "responses", count, LABEL_PROXY, t.getProxyType(), LABEL_TARGET, t.getTarget(), "code", String.valueOf(code)) //$NON-NLS-1$ //$NON-NLS-2$
+			);
+		}
+		writer.family(PREFIX + "active_requests", MetricsWriter.Type.GAUGE, "Requests currently in flight to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.gauge(PREFIX + "active_requests", t.getActive(), labels(t))); //$NON-NLS-1$
+		
+		writer.family(PREFIX + "connect_duration_seconds", MetricsWriter.Type.HISTOGRAM, "Time taken to obtain a connection to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.histogram(PREFIX + "connect_duration_seconds", t.getConnectTime(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "first_byte_duration_seconds", MetricsWriter.Type.HISTOGRAM, "Time until each target began its response"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.histogram(PREFIX + "first_byte_duration_seconds", t.getFirstByteTime(), labels(t))); //$NON-NLS-1$
+		writer.family(PREFIX + "request_duration_seconds", MetricsWriter.Type.HISTOGRAM, "Total time taken by requests to each target"); //$NON-NLS-1$ //$NON-NLS-2$
+		targets.forEach(t -> writer.histogram(PREFIX + "request_duration_seconds", t.getTotalTime(), labels(t))); //$NON-NLS-1$
+		
+		writer.family(PREFIX + "open_connections", MetricsWriter.Type.GAUGE, "Client connections currently open to each proxy"); //$NON-NLS-1$ //$NON-NLS-2$
+		getActiveConnections().forEach((proxyType, count) -> writer.gauge(PREFIX + "open_connections", count, LABEL_PROXY, proxyType)); //$NON-NLS-1$
+		
+		writer.family(PREFIX + "access_log_entries", MetricsWriter.Type.COUNTER, "Access log entries by whether they were written or dropped due to a full queue"); //$NON-NLS-1$ //$NON-NLS-2$
+		getAccessLogs().forEach((proxyType, accessLog) -> {
+			writer.counter(PREFIX + "access_log_entries", accessLog.getWritten(), LABEL_PROXY, proxyType, "result", "written"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			writer.counter(PREFIX + "access_log_entries", accessLog.getDropped(), LABEL_PROXY, proxyType, "result", "dropped"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		});
+	}
+	
+	private static String normalizePath(String path) {
+		String result = path == null ? "" : path; //$NON-NLS-1$
+		while(result.startsWith("/")) { //$NON-NLS-1$
+			result = result.substring(1);
+		}
+		while(result.endsWith("/")) { //$NON-NLS-1$
+			result = result.substring(0, result.length() - 1);
+		}
+		return result;
+	}
+	
+	private static String[] labels(TargetMetrics target) {
+		return new String[] { LABEL_PROXY, target.getProxyType(), LABEL_TARGET, target.getTarget() };
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+import static java.text.MessageFormat.format;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.openntf.openliberty.domino.ext.StatisticsProvider;
+import org.openntf.openliberty.domino.metrics.Histogram;
+import org.openntf.openliberty.domino.reverseproxy.Messages;
+
+/**
+ * Contributes the statistics held in {@link ProxyMetrics} to the runtime's {@code stats}
+ * console command.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class ProxyStatisticsProvider implements StatisticsProvider {
+
+	@Override
+	public void printStatistics(PrintStream out) {
+		List<TargetMetrics> targets = new ArrayList<>(ProxyMetrics.instance.getTargets());
+		Map<String, Long> connections = ProxyMetrics.instance.getActiveConnections();
+		Map<String, AccessLogWriter> accessLogs = ProxyMetrics.instance.getAccessLogs();
+		if(targets.isEmpty() && connections.isEmpty() && accessLogs.isEmpty()) {
+			return;
+		}
+		
+		out.println(Messages.getString("ProxyStatisticsProvider.targets")); //$NON-NLS-1$
+		targets.sort(Comparator.comparing(TargetMetrics::getProxyType).thenComparing(TargetMetrics::getTarget));
+		for(TargetMetrics target : targets) {
+			out.println(format(Messages.getString("ProxyStatisticsProvider.target"), //$NON-NLS-1$
+				target.getProxyType(), target.getTarget(), target.getRequests(), target.getRequestRate(), target.getActive(),
+				target.getFailures(), target.getBytesIn(), target.getBytesOut(), target.getStatusCounts()));
+			out.println(formatTimes("ProxyStatisticsProvider.connectTimes", target.getConnectTime())); //$NON-NLS-1$
+			out.println(formatTimes("ProxyStatisticsProvider.firstByteTimes", target.getFirstByteTime())); //$NON-NLS-1$
+			out.println(formatTimes("ProxyStatisticsProvider.totalTimes", target.getTotalTime())); //$NON-NLS-1$
+		}
+		if(!connections.isEmpty()) {
+			out.println(Messages.getString("ProxyStatisticsProvider.connections")); //$NON-NLS-1$
+			connections.forEach((proxyType, count) -> out.println(format(Messages.getString("ProxyStatisticsProvider.connection"), proxyType, count))); //$NON-NLS-1$
+		}
+		if(!accessLogs.isEmpty()) {
+			out.println(Messages.getString("ProxyStatisticsProvider.accessLogs")); //$NON-NLS-1$
+			accessLogs.forEach((proxyType, accessLog) -> out.println(format(Messages.getString("ProxyStatisticsProvider.accessLog"), //$NON-NLS-1$
+				proxyType, accessLog.getFile(), accessLog.getWritten(), accessLog.getPending(), accessLog.getDropped())));
+		}
+	}
+	
+	private static String formatTimes(String messageKey, Histogram.Snapshot times) {
+		// Indent the timings beneath their target
+		return "    " + format(Messages.getString(messageKey), //$NON-NLS-1$
+			times.getPercentileMillis(50), times.getPercentileMillis(90), times.getPercentileMillis(99), times.getMaxMillis());
+	}
+}
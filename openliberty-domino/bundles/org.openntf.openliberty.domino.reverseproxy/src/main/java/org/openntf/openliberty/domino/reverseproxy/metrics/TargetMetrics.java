@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.reverseproxy.metrics;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openntf.openliberty.domino.metrics.Histogram;
+import org.openntf.openliberty.domino.metrics.RateMeter;
+
+/**
+ * Accumulates request statistics for a single reverse proxy target.
+ * 
+ * <p>All methods are lock-free and safe to call from request threads.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class TargetMetrics {
+	private static final int MAX_STATUS = 600;
+	
+	private final String proxyType;
+	private final String target;
+	
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+	private final RateMeter requestRate = new RateMeter();
+	
+	private final Histogram connectTime = new Histogram();
+	private final Histogram firstByteTime = new Histogram();
+	private final Histogram totalTime = new Histogram();
+	
+	TargetMetrics(String proxyType, String target) {
+		this.proxyType = proxyType;
+		this.target = target;
+	}
+	
+	/**
+	 * Marks the start of a proxied request.
+	 * 
+	 * @return the start time of the request, from {@link System#nanoTime()}, to pass to
+	 * 		{@link #requestCompleted}
+	 */
+	public long requestStarted() {
+		active.incrementAndGet();
+		requestRate.mark();
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Marks the end of a proxied request.
+	 * 
+	 * @param startNanos the value returned by {@link #requestStarted()}
+	 * @param status the HTTP status sent to the client, or {@code 0} if no response was sent
+	 * @param connectNanos the time taken to obtain a connection to the back end, or {@code -1}
+	 * 		if unknown
+	 * @param firstByteNanos the time from the start of the request until the back end's response
+	 * 		headers arrived, or {@code -1} if unknown
+	 * @param requestBytes the number of request body bytes sent to the back end
+	 * @param responseBytes the number of response body bytes sent to the client
+	 * @param failed whether the request failed due to the back end, such as a connection failure
+	 * @return the total duration of the request, in nanoseconds
+	 */
+	public long requestCompleted(long startNanos, int status, long connectNanos, long firstByteNanos, long requestBytes, long responseBytes, boolean failed) {
+		long totalNanos = System.nanoTime() - startNanos;
+		active.decrementAndGet();
+		requests.increment();
+		if(failed) {
+			failures.increment();
+		}
+		if(status > 0 && status < MAX_STATUS) {
+			statusCounts.incrementAndGet(status);
+		}
+		if(connectNanos >= 0) {
+			connectTime.record(connectNanos);
+		}
+		if(firstByteNanos >= 0) {
+			firstByteTime.record(firstByteNanos);
+		}
+		totalTime.record(totalNanos);
+		if(requestBytes > 0) {
+			bytesIn.add(requestBytes);
+		}
+		if(responseBytes > 0) {
+			bytesOut.add(responseBytes);
+		}
+		return totalNanos;
+	}
+	
+	/**
+	 * @return the type of the proxy handling the target, such as {@code "NHTTP"}
+	 */
+	public String getProxyType() {
+		return proxyType;
+	}
+	
+	/**
+	 * @return the context path of the target
+	 */
+	public String getTarget() {
+		return target;
+	}
+	
+	/**
+	 * @return the number of completed requests
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+	
+	/**
+	 * @return the average number of requests started per second over the last minute
+	 */
+	public double getRequestRate() {
+		return requestRate.getRatePerSecond();
+	}
+	
+	/**
+	 * @return the number of requests that failed due to the back end
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+	
+	/**
+	 * @return the number of requests currently in progress
+	 */
+	public int getActive() {
+		return active.get();
+	}
+	
+	/**
+	 * @return the total number of request body bytes sent to the back end
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+	
+	/**
+	 * @return the total number of response body bytes sent to clients
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+	
+	/**
+	 * @return an unmodifiable {@link Map} of HTTP status codes to the number of responses sent
+	 * 		with them, in ascending order of status
+	 */
+	public Map<Integer, Long> getStatusCounts() {
+		Map<Integer, Long> result = new TreeMap<>();
+		for(int i = 0; i < MAX_STATUS; i++) {
+			long count = statusCounts.get(i);
+			if(count > 0) {
+				result.put(i, count);
+			}
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	
+	/**
+	 * @return the time taken to obtain a connection to the back end
+	 */
+	public Histogram.Snapshot getConnectTime() {
+		return connectTime.snapshot();
+	}
+	
+	/**
+	 * @return the time from the start of the request until the back end's response headers arrived
+	 */
+	public Histogram.Snapshot getFirstByteTime() {
+		return firstByteTime.snapshot();
+	}
+	
+	/**
+	 * @return the total time taken to proxy the request, including sending the response body
+	 */
+	public Histogram.Snapshot getTotalTime() {
+		return totalTime.snapshot();
+	}
+	
+	@Override
+	public String toString() {
+		return MessageFormat.format("TargetMetrics [proxyType={0}, target={1}, requests={2}, requestRate={3}, failures={4}, active={5}, bytesIn={6}, bytesOut={7}, statusCounts={8}, connectTime={9}, firstByteTime={10}, totalTime={11}]", //$NON-NLS-1$
+			proxyType, target, getRequests(), getRequestRate(), getFailures(), getActive(), getBytesIn(), getBytesOut(), getStatusCounts(),
+			getConnectTime(), getFirstByteTime(), getTotalTime());
+	}
+}
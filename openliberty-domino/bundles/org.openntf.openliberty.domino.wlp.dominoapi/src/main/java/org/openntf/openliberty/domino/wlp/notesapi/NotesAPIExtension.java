@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -38,10 +37,11 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.openntf.openliberty.domino.artifact.ArtifactStore;
+import org.openntf.openliberty.domino.artifact.StoredArtifact;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.server.wlp.LibertyExtensionDeployer;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
-import org.openntf.openliberty.domino.util.commons.apache.IOUtils;
 
 /**
  * This extension deployer auto-vivifies a bundle that provides LSXBE and NAPI
@@ -52,7 +52,10 @@ import org.openntf.openliberty.domino.util.commons.apache.IOUtils;
  */
 public class NotesAPIExtension implements LibertyExtensionDeployer {
 	public static final String BUNDLE_NAME = "org.openntf.openliberty.wlp.notesapi"; //$NON-NLS-1$
-	public static final String URL_CORBA = "https://repo1.maven.org/maven2/org/glassfish/corba/glassfish-corba-omgapi/4.2.1/glassfish-corba-omgapi-4.2.1.jar"; //$NON-NLS-1$
+	public static final String MAVEN_CENTRAL = "https://repo1.maven.org/maven2/"; //$NON-NLS-1$
+	public static final String CORBA_GROUP_ID = "org.glassfish.corba"; //$NON-NLS-1$
+	public static final String CORBA_ARTIFACT_ID = "glassfish-corba-omgapi"; //$NON-NLS-1$
+	public static final String CORBA_VERSION = "4.2.1"; //$NON-NLS-1$
 
 	@Override
 	public String getShortName() {
@@ -64,6 +67,15 @@ public class NotesAPIExtension implements LibertyExtensionDeployer {
 		return "1.0"; //$NON-NLS-1$
 	}
 
+	@Override
+	public void fetchArtifacts() {
+		try {
+			fetchCorba();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	@Override
 	public InputStream getEsaData() {
 		// Build our bundle if we need it
@@ -172,14 +184,16 @@ public class NotesAPIExtension implements LibertyExtensionDeployer {
 			}
 			
 			// Copy in CORBA to support Notes.jar in Java > 8
-			OpenLibertyUtil.download(new URL(URL_CORBA), (contentType, is) -> {
-				zos.putNextEntry(new ZipEntry("corba.jar")); //$NON-NLS-1$
-				IOUtils.copy(is, zos);
-				return null;
-			});
+			StoredArtifact corba = fetchCorba();
+			zos.putNextEntry(new ZipEntry("corba.jar")); //$NON-NLS-1$
+			Files.copy(corba.getPath(), zos);
 		}
 	}
 	
+	private StoredArtifact fetchCorba() throws IOException {
+		return ArtifactStore.instance.fetchMaven(MAVEN_CENTRAL, CORBA_GROUP_ID, CORBA_ARTIFACT_ID, CORBA_VERSION, "jar"); //$NON-NLS-1$
+	}
+	
 	private List<Path> getEmbeds() {
 		return Stream.of(
 				findNotesJar(),
@@ -0,0 +1,364 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.server.DeploymentArchive;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Content-addressed store for application archives deployed to servers, such as WAR files
+ * attached to server documents.
+ *
+ * <p>Each distinct archive is stored once by SHA-256 digest. Servers are given their own
+ * copy of an archive in a directory named by its digest, created as a hard link to the
+ * stored content where the file system allows it. As a result, an archive whose content
+ * is unchanged keeps the same path across edits to its server definition, and Liberty does
+ * not redeploy it.</p>
+ *
+ * <p>Archives are also indexed by their {@link DeploymentArchive#getKey() key}, so that an
+ * archive that has already been stored is not read again.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum AppStore {
+	instance;
+
+	private static final Logger log = OpenLibertyLog.instance.log;
+
+	private static final String DIR_BLOBS = "blobs"; //$NON-NLS-1$
+	private static final String DIR_KEYS = "keys"; //$NON-NLS-1$
+	private static final String DIR_SERVERS = "servers"; //$NON-NLS-1$
+	private static final String DIR_TMP = "tmp"; //$NON-NLS-1$
+
+	private static final String PROP_KEY = "key"; //$NON-NLS-1$
+	private static final String PROP_SHA256 = "sha256"; //$NON-NLS-1$
+	private static final String PROP_SIZE = "size"; //$NON-NLS-1$
+
+	/**
+	 * Superseded and unreferenced content modified within this window is never removed, giving
+	 * servers time to switch to the new version of an application
+	 */
+	private static final long GRACE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+	/** Leftover temporary files older than this are considered abandoned */
+	private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	/** Installed version directories that are in use alongside their server's current version */
+	private final Set<Path> pinned = new HashSet<>();
+
+	/**
+	 * Installs the provided archive for use by the named server, storing its content if it is
+	 * not already present.
+	 *
+	 * @param serverName the name of the server the archive is deployed to
+	 * @param archive the archive to install
+	 * @param fileName the file name to give the installed archive, such as {@code "app.war"}
+	 * @return the path of the server's copy of the archive, which is stable for as long as the
+	 * 		archive content does not change
+	 * @throws IOException if there is a problem reading the archive or writing to the store
+	 */
+	public synchronized Path install(String serverName, DeploymentArchive archive, String fileName) throws IOException {
+		Path storeDir = getStoreDirectory();
+		String sha256 = findByKey(storeDir, archive.getKey());
+		if(sha256 == null) {
+			sha256 = store(storeDir, archive);
+		} else if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("AppStore.usingStoredApp"), archive.getName(), sha256)); //$NON-NLS-1$
+		}
+		Path blob = getBlobPath(storeDir, sha256);
+		touch(blob);
+
+		Path serverDir = storeDir.resolve(DIR_SERVERS).resolve(toDirectoryName(serverName));
+		Path versionDir = serverDir.resolve(sha256);
+		Path result = versionDir.resolve(fileName);
+		if(!Files.isRegularFile(result) || Files.size(result) != Files.size(blob)) {
+			Files.createDirectories(versionDir);
+			Path tmp = versionDir.resolve(fileName + ".tmp"); //$NON-NLS-1$
+			Files.deleteIfExists(tmp);
+			try {
+				try {
+					Files.createLink(tmp, blob);
+				} catch(UnsupportedOperationException | IOException e) {
+					// Links aren't possible across file systems or on some platforms
+					if(log.isLoggable(Level.FINER)) {
+						log.finer(format(Messages.getString("AppStore.copyingApp"), blob, result, e)); //$NON-NLS-1$
+					}
+					Files.copy(blob, tmp, StandardCopyOption.REPLACE_EXISTING);
+				}
+				Files.move(tmp, result, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		// Mark this as the server's current version for garbage collection
+		Files.setLastModifiedTime(versionDir, FileTime.fromMillis(System.currentTimeMillis()));
+		return result;
+	}
+
+	/**
+	 * Marks an installed application as in use, so that it is not removed by garbage collection
+	 * after a newer version is installed for the same server.
+	 *
+	 * @param app an application path returned by {@link #install(String, DeploymentArchive, String)}
+	 * @param pin {@code true} to keep the application, or {@code false} to allow its removal once
+	 * 		superseded
+	 * @since 4.0.0
+	 */
+	public synchronized void setPinned(Path app, boolean pin) {
+		Path versionDir = app.getParent().toAbsolutePath();
+		if(pin) {
+			pinned.add(versionDir);
+		} else {
+			pinned.remove(versionDir);
+		}
+	}
+
+	/**
+	 * Removes application versions that have been superseded for the given servers, versions
+	 * belonging to servers that are no longer active, and stored content that is no longer
+	 * referenced by any server.
+	 *
+	 * <p>Files that cannot be removed, such as archives still held open by a running server on
+	 * Windows, are left in place to be removed by a later collection.</p>
+	 *
+	 * @param activeServers the names of all servers that are currently deployed
+	 */
+	public synchronized void collectGarbage(Collection<String> activeServers) {
+		try {
+			Path storeDir = getStoreDirectory();
+			long now = System.currentTimeMillis();
+			removeStaleFiles(storeDir.resolve(DIR_TMP), now - STALE_TEMP_MILLIS);
+
+			Set<String> activeDirs = activeServers.stream().map(AppStore::toDirectoryName).collect(Collectors.toSet());
+			Set<String> referenced = new HashSet<>();
+			Path serversDir = storeDir.resolve(DIR_SERVERS);
+			for(Path serverDir : list(serversDir)) {
+				boolean active = activeDirs.contains(serverDir.getFileName().toString());
+				List<Path> versions = list(serverDir);
+				// The most recently installed version is the one in use
+				versions.sort(Comparator.comparing(AppStore::lastModified).reversed());
+				for(int i = 0; i < versions.size(); i++) {
+					Path version = versions.get(i);
+					boolean current = active && (i == 0 || pinned.contains(version.toAbsolutePath()));
+					if(current || lastModified(version) >= now - GRACE_MILLIS || !deleteTree(version)) {
+						referenced.add(version.getFileName().toString());
+					}
+				}
+				if(!active && list(serverDir).isEmpty()) {
+					Files.deleteIfExists(serverDir);
+				}
+			}
+
+			for(Path keyFile : list(storeDir.resolve(DIR_KEYS))) {
+				String sha256 = loadProperties(keyFile).getProperty(PROP_SHA256);
+				if(StringUtil.isEmpty(sha256) || !Files.isRegularFile(getBlobPath(storeDir, sha256))) {
+					Files.deleteIfExists(keyFile);
+				}
+			}
+
+			Path blobsDir = storeDir.resolve(DIR_BLOBS);
+			if(Files.isDirectory(blobsDir)) {
+				List<Path> blobs;
+				try(Stream<Path> files = Files.find(blobsDir, 2, (path, attr) -> attr.isRegularFile())) {
+					blobs = files.collect(Collectors.toList());
+				}
+				for(Path blob : blobs) {
+					if(!referenced.contains(blob.getFileName().toString()) && lastModified(blob) < now - GRACE_MILLIS) {
+						if(log.isLoggable(Level.FINE)) {
+							log.fine(format(Messages.getString("AppStore.removingApp"), blob)); //$NON-NLS-1$
+						}
+						Files.deleteIfExists(blob);
+					}
+				}
+			}
+		} catch(IOException e) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, Messages.getString("AppStore.exceptionCollectingGarbage"), e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+
+	private Path getStoreDirectory() {
+		RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+		return config.getAppStoreDirectory();
+	}
+
+	private static String findByKey(Path storeDir, String key) throws IOException {
+		Path keyFile = storeDir.resolve(DIR_KEYS).resolve(ArtifactStore.digest(key) + ".properties"); //$NON-NLS-1$
+		if(!Files.isRegularFile(keyFile)) {
+			return null;
+		}
+		Properties props = loadProperties(keyFile);
+		String sha256 = props.getProperty(PROP_SHA256);
+		if(StringUtil.isEmpty(sha256) || !key.equals(props.getProperty(PROP_KEY))) {
+			return null;
+		}
+		Path blob = getBlobPath(storeDir, sha256);
+		if(!Files.isRegularFile(blob) || !String.valueOf(Files.size(blob)).equals(props.getProperty(PROP_SIZE))) {
+			return null;
+		}
+		return sha256;
+	}
+
+	private static String store(Path storeDir, DeploymentArchive archive) throws IOException {
+		Path tmpDir = storeDir.resolve(DIR_TMP);
+		Files.createDirectories(tmpDir);
+		Path tmp = Files.createTempFile(tmpDir, "app", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			MessageDigest digest = ArtifactStore.getMessageDigest(ArtifactChecksum.SHA256);
+			archive.read(is -> {
+				try(InputStream dis = new DigestInputStream(is, digest)) {
+					Files.copy(dis, tmp, StandardCopyOption.REPLACE_EXISTING);
+				}
+			});
+			String sha256 = ArtifactStore.toHex(digest.digest());
+			long size = Files.size(tmp);
+
+			Path blob = getBlobPath(storeDir, sha256);
+			if(Files.isRegularFile(blob) && Files.size(blob) == size) {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("AppStore.usingStoredApp"), archive.getName(), sha256)); //$NON-NLS-1$
+				}
+			} else {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("AppStore.storingApp"), archive.getName(), sha256)); //$NON-NLS-1$
+				}
+				Files.createDirectories(blob.getParent());
+				try {
+					Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch(FileAlreadyExistsException e) {
+					// Then the same content was stored concurrently
+				}
+			}
+
+			Properties props = new Properties();
+			props.setProperty(PROP_KEY, archive.getKey());
+			props.setProperty(PROP_SHA256, sha256);
+			props.setProperty(PROP_SIZE, String.valueOf(size));
+			Path keyFile = storeDir.resolve(DIR_KEYS).resolve(ArtifactStore.digest(archive.getKey()) + ".properties"); //$NON-NLS-1$
+			Files.createDirectories(keyFile.getParent());
+			Path keyTmp = keyFile.resolveSibling(keyFile.getFileName() + ".tmp"); //$NON-NLS-1$
+			try(OutputStream os = Files.newOutputStream(keyTmp)) {
+				props.store(os, null);
+			}
+			Files.move(keyTmp, keyFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return sha256;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static Path getBlobPath(Path storeDir, String sha256) {
+		return storeDir.resolve(DIR_BLOBS).resolve(sha256.substring(0, 2)).resolve(sha256);
+	}
+
+	/**
+	 * Converts a server name to a form safe for use as a directory name on all platforms.
+	 */
+	private static String toDirectoryName(String serverName) {
+		return StringUtil.toString(serverName).replaceAll("[^A-Za-z0-9._-]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static Properties loadProperties(Path file) throws IOException {
+		Properties props = new Properties();
+		try(InputStream is = Files.newInputStream(file)) {
+			props.load(is);
+		}
+		return props;
+	}
+
+	private static List<Path> list(Path dir) throws IOException {
+		if(!Files.isDirectory(dir)) {
+			return new ArrayList<>();
+		}
+		try(Stream<Path> files = Files.list(dir)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+
+	private static void removeStaleFiles(Path dir, long olderThan) throws IOException {
+		for(Path file : list(dir)) {
+			if(lastModified(file) < olderThan) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the given directory and its contents.
+	 *
+	 * @return whether the directory was fully removed
+	 */
+	private static boolean deleteTree(Path dir) {
+		try {
+			for(Path file : list(dir)) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(dir);
+			return true;
+		} catch(IOException e) {
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("AppStore.unableToRemoveVersion"), dir, e)); //$NON-NLS-1$
+			}
+			return false;
+		}
+	}
+
+	private static void touch(Path file) throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch(IOException e) {
+			return 0;
+		}
+	}
+}
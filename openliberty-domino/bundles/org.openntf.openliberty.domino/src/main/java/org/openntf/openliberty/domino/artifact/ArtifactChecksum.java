@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import static java.text.MessageFormat.format;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Represents a digest published by the source of an artifact, such as a Maven
+ * {@code .sha1} sidecar file or the checksum listed by the Adoptium API.
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class ArtifactChecksum {
+	public static final String SHA1 = "SHA-1"; //$NON-NLS-1$
+	public static final String SHA256 = "SHA-256"; //$NON-NLS-1$
+	public static final String SHA512 = "SHA-512"; //$NON-NLS-1$
+
+	private static final Pattern HEX = Pattern.compile("^[0-9a-f]+$"); //$NON-NLS-1$
+
+	private final String algorithm;
+	private final String value;
+
+	public ArtifactChecksum(String algorithm, String value) {
+		this.algorithm = Objects.requireNonNull(algorithm, "algorithm cannot be null"); //$NON-NLS-1$
+		String hex = StringUtil.toString(value).trim().toLowerCase();
+		if(!HEX.matcher(hex).matches()) {
+			throw new IllegalArgumentException(format(Messages.getString("ArtifactChecksum.invalidChecksum"), value)); //$NON-NLS-1$
+		}
+		this.value = hex;
+	}
+
+	/**
+	 * Parses the contents of a checksum sidecar file. These files contain the hex-encoded
+	 * digest, optionally followed by whitespace and the name of the file.
+	 *
+	 * @param algorithm the digest algorithm used by the sidecar
+	 * @param sidecar the text content of the sidecar file
+	 * @return a new {@link ArtifactChecksum} for the digest
+	 * @throws IllegalArgumentException if {@code sidecar} does not start with a hex digest
+	 */
+	public static ArtifactChecksum parse(String algorithm, String sidecar) {
+		String content = StringUtil.toString(sidecar).trim();
+		String[] parts = content.split("\\s+", 2); //$NON-NLS-1$
+		return new ArtifactChecksum(algorithm, parts[0]);
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * @param hex a hex-encoded digest computed with {@link #getAlgorithm()}
+	 * @return whether {@code hex} matches this checksum
+	 */
+	public boolean matches(String hex) {
+		return value.equalsIgnoreCase(StringUtil.toString(hex));
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(algorithm, value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ArtifactChecksum)) {
+			return false;
+		}
+		ArtifactChecksum other = (ArtifactChecksum) obj;
+		return Objects.equals(algorithm, other.algorithm) && Objects.equals(value, other.value);
+	}
+
+	@Override
+	public String toString() {
+		return algorithm + ':' + value;
+	}
+}
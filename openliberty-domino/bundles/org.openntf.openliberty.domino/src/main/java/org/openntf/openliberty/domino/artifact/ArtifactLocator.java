@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import java.io.IOException;
+
+/**
+ * Resolves the remote location of an artifact. Locators are only invoked when the
+ * artifact is not already available from the {@link ArtifactStore} or a configured
+ * mirror, so implementations may freely perform network requests such as querying
+ * a release API.
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+@FunctionalInterface
+public interface ArtifactLocator {
+	/**
+	 * @return a {@link RemoteArtifact} describing where to download the artifact
+	 * @throws IOException if there is a problem locating the artifact
+	 */
+	RemoteArtifact locate() throws IOException;
+}
@@ -0,0 +1,931 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import static java.text.MessageFormat.format;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.Counter;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DownloadEngine;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.commons.apache.IOUtils;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+import org.openntf.openliberty.domino.util.json.JSONArray;
+import org.openntf.openliberty.domino.util.json.JSONValue;
+import org.openntf.openliberty.domino.util.json.parser.JSONParser;
+import org.openntf.openliberty.domino.util.json.parser.ParseException;
+
+/**
+ * Content-addressed store for artifacts downloaded by the runtime, such as Liberty
+ * runtime ZIPs and JVM archives.
+ *
+ * <p>Content is stored by SHA-256 digest and verified against the checksum published by
+ * the artifact's source before it is made available. Later lookups only compare the size of
+ * the stored content against the size recorded at import. All writes are performed to a temporary
+ * file and atomically moved into place, and updates are guarded by file locks so that the
+ * same store directory can be shared by several Domino servers on the same host.</p>
+ *
+ * <p>When the store grows past {@link RuntimeConfigurationProvider#getArtifactStoreMaxSize()},
+ * the least-recently-used artifacts are removed. This happens periodically once the store
+ * is first used, or on demand via {@link #collectGarbage()}.</p>
+ *
+ * <p>Artifacts missing from the store are first looked for in the
+ * {@link RuntimeConfigurationProvider#getArtifactMirrorDirectory() mirror directory}, if
+ * configured, before being downloaded. In
+ * {@link RuntimeConfigurationProvider#isArtifactOfflineMode() offline mode}, no downloads
+ * are attempted.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum ArtifactStore {
+	instance;
+
+	private static final Logger log = OpenLibertyLog.instance.log;
+
+	private static final String DIR_BLOBS = "blobs"; //$NON-NLS-1$
+	private static final String DIR_KEYS = "keys"; //$NON-NLS-1$
+	private static final String DIR_LOCKS = "locks"; //$NON-NLS-1$
+	private static final String DIR_TMP = "tmp"; //$NON-NLS-1$
+	private static final String FILE_GCLOCK = ".gc.lock"; //$NON-NLS-1$
+
+	private static final String PROP_KEY = "key"; //$NON-NLS-1$
+	private static final String PROP_FILENAME = "fileName"; //$NON-NLS-1$
+	private static final String PROP_URL = "url"; //$NON-NLS-1$
+	private static final String PROP_SHA256 = "sha256"; //$NON-NLS-1$
+	private static final String PROP_CHECKSUM = "checksum"; //$NON-NLS-1$
+	private static final String PROP_SIZE = "size"; //$NON-NLS-1$
+
+	private static final String KEY_PREFIX_MAVEN = "maven:"; //$NON-NLS-1$
+
+	/** The name of the JSON file describing the content of a mirror directory */
+	public static final String MIRROR_MANIFEST = "manifest.json"; //$NON-NLS-1$
+	/** The name of the optional Maven-layout repository within a mirror directory */
+	public static final String MIRROR_MAVEN = "maven"; //$NON-NLS-1$
+	private static final String MIRROR_ARTIFACTS = "artifacts"; //$NON-NLS-1$
+	private static final String MANIFEST_VERSION = "version"; //$NON-NLS-1$
+	private static final String MANIFEST_ARTIFACTS = "artifacts"; //$NON-NLS-1$
+	private static final String MANIFEST_PATH = "path"; //$NON-NLS-1$
+
+	/** Artifacts accessed within this window are never evicted, to avoid removing in-use content */
+	private static final long EVICTION_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+	/** Leftover temporary files older than this are considered abandoned */
+	private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+	/** The delay before the first garbage collection after the store is first used */
+	private static final long GC_INITIAL_DELAY_MINUTES = 5;
+	/** The delay between periodic garbage collections */
+	private static final long GC_INTERVAL_MINUTES = 60;
+
+	private static final String FETCHES = MetricsRegistry.PREFIX + "artifact_fetches"; //$NON-NLS-1$
+	private static final String FETCHES_HELP = "Artifact requests by where they were satisfied from"; //$NON-NLS-1$
+	private static final Counter FETCHES_STORE = MetricsRegistry.instance.counter(FETCHES, FETCHES_HELP, "source", "store"); //$NON-NLS-1$ //$NON-NLS-2$
+	private static final Counter FETCHES_MIRROR = MetricsRegistry.instance.counter(FETCHES, FETCHES_HELP, "source", "mirror"); //$NON-NLS-1$ //$NON-NLS-2$
+	private static final Counter FETCHES_DOWNLOAD = MetricsRegistry.instance.counter(FETCHES, FETCHES_HELP, "source", "download"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/** In-process monitors for keys currently in use, removed once no thread holds or awaits them */
+	private final Map<String, KeyMonitor> keyMonitors = new ConcurrentHashMap<>();
+	private final AtomicBoolean collecting = new AtomicBoolean();
+	/** The scheduler and task used for periodic garbage collection, guarded by this object's monitor */
+	private ScheduledExecutorService gcScheduler;
+	private ScheduledFuture<?> gcTask;
+
+	/**
+	 * Looks up a previously-stored artifact by its logical key, verifying that its content
+	 * is intact.
+	 *
+	 * @param key the logical key of the artifact
+	 * @return an {@link Optional} describing the stored artifact, or an empty one if it is
+	 * 		not present or fails verification
+	 * @throws IOException if there is a problem reading the store
+	 */
+	public Optional<StoredArtifact> find(String key) throws IOException {
+		Path storeDir = getStoreDirectory();
+		String keyHash = digest(key);
+		return withKeyLock(storeDir, keyHash, () -> Optional.ofNullable(readVerifiedEntry(storeDir, keyHash)));
+	}
+
+	/**
+	 * Retrieves the artifact stored under the given key, downloading it from {@code url}
+	 * if it is not already present.
+	 *
+	 * @param key the logical key of the artifact
+	 * @param fileName the file name of the artifact, used to determine its type later
+	 * @param url the URL to download the artifact from
+	 * @param checksum the checksum published by the source, or {@code null} if none is available
+	 * @return a {@link StoredArtifact} describing the verified content
+	 * @throws IOException if there is a problem downloading the artifact or if the downloaded
+	 * 		content does not match {@code checksum}
+	 */
+	public StoredArtifact fetch(String key, String fileName, URL url, ArtifactChecksum checksum) throws IOException {
+		return fetch(key, checksum, !isLocal(url), () -> new RemoteArtifact(fileName, url, checksum));
+	}
+
+	/**
+	 * Retrieves the artifact stored under the given key, consulting the configured mirror
+	 * directory and then {@code locator} if it is not already present.
+	 *
+	 * <p>{@code locator} is only invoked when the artifact must be downloaded, and never when
+	 * {@link RuntimeConfigurationProvider#isArtifactOfflineMode() offline mode} is enabled.</p>
+	 *
+	 * @param key the logical key of the artifact
+	 * @param locator a callback to determine the remote source of the artifact
+	 * @return a {@link StoredArtifact} describing the verified content
+	 * @throws IOException if there is a problem retrieving the artifact, if the retrieved
+	 * 		content does not match its published checksum, or if the artifact is not available
+	 * 		locally in offline mode
+	 */
+	public StoredArtifact fetch(String key, ArtifactLocator locator) throws IOException {
+		return fetch(key, null, true, locator);
+	}
+
+	/**
+	 * Retrieves the given artifact from a Maven repository, verifying it against the
+	 * {@code .sha512} or {@code .sha1} sidecar published alongside it.
+	 *
+	 * <p>{@code mavenRepo} may be a {@code file:} URL to a local Maven-layout directory, in
+	 * which case it is used even in offline mode.</p>
+	 *
+	 * @param mavenRepo the base URL of the Maven repository
+	 * @param groupId the Maven group ID of the artifact
+	 * @param artifactId the Maven artifact ID of the artifact
+	 * @param version the version of the artifact
+	 * @param extension the file extension of the artifact, such as {@code "zip"}
+	 * @return a {@link StoredArtifact} describing the verified content
+	 * @throws IOException if there is a problem downloading the artifact or if the downloaded
+	 * 		content does not match the repository checksum
+	 */
+	public StoredArtifact fetchMaven(String mavenRepo, String groupId, String artifactId, String version, String extension) throws IOException {
+		String key = buildMavenKey(groupId, artifactId, version, extension);
+		String base = mavenRepo;
+		if(!base.endsWith("/")) { //$NON-NLS-1$
+			base += '/';
+		}
+		URL repoUrl = new URL(base);
+
+		// Release artifacts in Maven are immutable, so there's no need to check the remote again
+		return fetch(key, null, !isLocal(repoUrl), () -> {
+			String fileName = artifactId + '-' + version + '.' + extension;
+			URL url = new URL(repoUrl, groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/' + fileName);
+
+			ArtifactChecksum checksum = fetchChecksum(new URL(url + ".sha512"), ArtifactChecksum.SHA512); //$NON-NLS-1$
+			if(checksum == null) {
+				checksum = fetchChecksum(new URL(url + ".sha1"), ArtifactChecksum.SHA1); //$NON-NLS-1$
+			}
+			if(checksum == null && log.isLoggable(Level.WARNING)) {
+				log.warning(format(Messages.getString("ArtifactStore.noChecksumAvailable"), url)); //$NON-NLS-1$
+			}
+			return new RemoteArtifact(fileName, url, checksum);
+		});
+	}
+
+	/**
+	 * Builds the key used to store the given Maven artifact.
+	 *
+	 * @param groupId the Maven group ID of the artifact
+	 * @param artifactId the Maven artifact ID of the artifact
+	 * @param version the version of the artifact
+	 * @param extension the file extension of the artifact
+	 * @return a key suitable for {@link #find(String)}
+	 */
+	public static String buildMavenKey(String groupId, String artifactId, String version, String extension) {
+		return format("{0}{1}:{2}:{3}:{4}", KEY_PREFIX_MAVEN, groupId, artifactId, version, extension); //$NON-NLS-1$
+	}
+
+	/**
+	 * Downloads a checksum sidecar file, such as a Maven {@code .sha1} or a GitHub release
+	 * {@code .sha256.txt} asset.
+	 *
+	 * @param url the URL of the sidecar file
+	 * @param algorithm the digest algorithm used by the sidecar
+	 * @return the parsed checksum, or {@code null} if the sidecar does not exist
+	 * @throws IOException if there is a problem downloading the sidecar
+	 */
+	public ArtifactChecksum fetchChecksum(URL url, String algorithm) throws IOException {
+		if(isLocal(url)) {
+			Path file = toPath(url);
+			if(!Files.isRegularFile(file)) {
+				return null;
+			}
+			return ArtifactChecksum.parse(algorithm, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		}
+		try {
+			return OpenLibertyUtil.download(url, (contentType, is) -> {
+				String content = new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8);
+				return ArtifactChecksum.parse(algorithm, content);
+			});
+		} catch(FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Removes temporary files left behind by interrupted downloads and evicts the
+	 * least-recently-used artifacts until the store fits within the configured size.
+	 *
+	 * <p>This is run periodically once the store is first used, but may also be called
+	 * directly. If another thread or process is already collecting garbage in the same store,
+	 * this method returns immediately.</p>
+	 */
+	public void collectGarbage() {
+		if(!collecting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+			Path storeDir = getStoreDirectory();
+			Files.createDirectories(storeDir);
+			try(
+				FileChannel channel = FileChannel.open(storeDir.resolve(FILE_GCLOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.tryLock()
+			) {
+				if(lock == null) {
+					// Then another server is doing this
+					return;
+				}
+
+				long now = System.currentTimeMillis();
+				removeStaleFiles(storeDir.resolve(DIR_TMP), now - STALE_TEMP_MILLIS);
+
+				// Map blobs to the keys that reference them
+				Map<String, List<Path>> references = new HashMap<>();
+				Path keysDir = storeDir.resolve(DIR_KEYS);
+				if(Files.isDirectory(keysDir)) {
+					try(Stream<Path> keys = Files.list(keysDir)) {
+						for(Path keyFile : keys.filter(p -> p.getFileName().toString().endsWith(".properties")).collect(Collectors.toList())) { //$NON-NLS-1$
+							String sha256 = loadProperties(keyFile).getProperty(PROP_SHA256);
+							if(StringUtil.isNotEmpty(sha256)) {
+								references.computeIfAbsent(sha256, k -> new ArrayList<>()).add(keyFile);
+							}
+						}
+					}
+				}
+
+				List<Path> blobs = listBlobs(storeDir);
+
+				// Remove blobs that are no longer referenced by any key
+				Set<Path> orphans = new HashSet<>();
+				for(Path blob : blobs) {
+					if(!references.containsKey(blob.getFileName().toString()) && Files.getLastModifiedTime(blob).toMillis() < now - EVICTION_GRACE_MILLIS) {
+						deleteBlob(blob);
+						orphans.add(blob);
+					}
+				}
+				blobs.removeAll(orphans);
+
+				long maxSize = config.getArtifactStoreMaxSize();
+				if(maxSize <= 0) {
+					return;
+				}
+				long totalSize = 0;
+				for(Path blob : blobs) {
+					totalSize += Files.size(blob);
+				}
+				if(totalSize <= maxSize) {
+					return;
+				}
+
+				// Evict least-recently-used blobs until we fit
+				blobs.sort(Comparator.comparing(ArtifactStore::lastAccess));
+				for(Path blob : blobs) {
+					if(totalSize <= maxSize) {
+						break;
+					}
+					if(lastAccess(blob) >= now - EVICTION_GRACE_MILLIS) {
+						continue;
+					}
+					String sha256 = blob.getFileName().toString();
+					List<String> keyHashes = references.getOrDefault(sha256, Collections.emptyList()).stream()
+						.map(ArtifactStore::getKeyHash)
+						.sorted()
+						.collect(Collectors.toList());
+					long size = Files.size(blob);
+					boolean evicted = withKeyLocks(storeDir, keyHashes, () -> {
+						// Check again now that the keys can't be read or replaced concurrently
+						if(lastAccess(blob) >= now - EVICTION_GRACE_MILLIS) {
+							return false;
+						}
+						for(String keyHash : keyHashes) {
+							Path keyFile = getKeyFile(storeDir, keyHash);
+							if(sha256.equals(loadProperties(keyFile).getProperty(PROP_SHA256))) {
+								Files.deleteIfExists(keyFile);
+							}
+						}
+						deleteBlob(blob);
+						return true;
+					});
+					if(evicted) {
+						totalSize -= size;
+					}
+				}
+			}
+		} catch(IOException e) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, Messages.getString("ArtifactStore.exceptionCollectingGarbage"), e); //$NON-NLS-1$
+			}
+		} finally {
+			collecting.set(false);
+		}
+	}
+
+	/**
+	 * Copies all verified artifacts in the store to the given directory and records them in its
+	 * {@value #MIRROR_MANIFEST} file, so that the directory can be used as the
+	 * {@link RuntimeConfigurationProvider#getArtifactMirrorDirectory() mirror directory} on a
+	 * server without network access.
+	 *
+	 * <p>Entries already present in an existing manifest are retained, allowing a mirror to be
+	 * seeded from several machines, such as for different platforms.</p>
+	 *
+	 * @param mirrorDir the directory to export to
+	 * @return the number of artifacts exported
+	 * @throws IOException if there is a problem reading the store or writing the mirror
+	 */
+	public int exportMirror(Path mirrorDir) throws IOException {
+		Path storeDir = getStoreDirectory();
+		Map<String, Map<String, Object>> manifest = readManifest(mirrorDir);
+
+		int count = 0;
+		Path keysDir = storeDir.resolve(DIR_KEYS);
+		if(Files.isDirectory(keysDir)) {
+			List<Path> keyFiles;
+			try(Stream<Path> keys = Files.list(keysDir)) {
+				keyFiles = keys.filter(p -> p.getFileName().toString().endsWith(".properties")).collect(Collectors.toList()); //$NON-NLS-1$
+			}
+			for(Path keyFile : keyFiles) {
+				String keyHash = getKeyHash(keyFile);
+				Map<String, Object> entry = withKeyLock(storeDir, keyHash, () -> {
+					StoredArtifact artifact = readVerifiedEntry(storeDir, keyHash);
+					if(artifact == null) {
+						return null;
+					}
+					String path = MIRROR_ARTIFACTS + '/' + artifact.getSha256() + '/' + artifact.getFileName();
+					Path dest = mirrorDir.resolve(path);
+					if(!Files.isRegularFile(dest) || Files.size(dest) != Files.size(artifact.getPath())) {
+						if(log.isLoggable(Level.FINE)) {
+							log.fine(format(Messages.getString("ArtifactStore.exportingArtifact"), artifact.getKey(), dest)); //$NON-NLS-1$
+						}
+						Files.createDirectories(dest.getParent());
+						Path tmp = dest.resolveSibling(dest.getFileName() + ".tmp"); //$NON-NLS-1$
+						try {
+							Files.copy(artifact.getPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+							Files.move(tmp, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+						} finally {
+							Files.deleteIfExists(tmp);
+						}
+					}
+
+					Properties props = loadProperties(keyFile);
+					Map<String, Object> result = new LinkedHashMap<>();
+					result.put(PROP_KEY, artifact.getKey());
+					result.put(PROP_FILENAME, artifact.getFileName());
+					result.put(MANIFEST_PATH, path);
+					result.put(PROP_SHA256, artifact.getSha256());
+					if(StringUtil.isNotEmpty(props.getProperty(PROP_CHECKSUM))) {
+						result.put(PROP_CHECKSUM, props.getProperty(PROP_CHECKSUM));
+					}
+					if(StringUtil.isNotEmpty(props.getProperty(PROP_URL))) {
+						result.put(PROP_URL, props.getProperty(PROP_URL));
+					}
+					return result;
+				});
+				if(entry != null) {
+					manifest.put((String)entry.get(PROP_KEY), entry);
+					count++;
+				}
+			}
+		}
+
+		writeManifest(mirrorDir, manifest);
+		return count;
+	}
+
+	/**
+	 * Computes the hex-encoded digest of the given file.
+	 *
+	 * @param file the file to digest
+	 * @param algorithm the digest algorithm to use
+	 * @return the hex-encoded digest
+	 * @throws IOException if there is a problem reading {@code file}
+	 */
+	public static String digest(Path file, String algorithm) throws IOException {
+		MessageDigest digest = getMessageDigest(algorithm);
+		byte[] buffer = new byte[64 * 1024];
+		try(InputStream is = Files.newInputStream(file)) {
+			int read;
+			while((read = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+
+	@FunctionalInterface
+	private interface IOCallable<T> {
+		T call() throws IOException;
+	}
+
+	private Path getStoreDirectory() {
+		RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+		return config.getArtifactStoreDirectory();
+	}
+
+	private StoredArtifact fetch(String key, ArtifactChecksum expected, boolean remote, ArtifactLocator locator) throws IOException {
+		RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+		Path storeDir = config.getArtifactStoreDirectory();
+		String keyHash = digest(key);
+		scheduleGarbageCollection();
+		return withKeyLock(storeDir, keyHash, () -> {
+			StoredArtifact existing = readVerifiedEntry(storeDir, keyHash);
+			if(existing != null && (expected == null || expected.equals(readChecksum(storeDir, keyHash)))) {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("ArtifactStore.usingStoredArtifact"), key, existing.getPath())); //$NON-NLS-1$
+				}
+				FETCHES_STORE.increment();
+				return existing;
+			}
+
+			Path mirrorDir = config.getArtifactMirrorDirectory();
+			StoredArtifact mirrored = importFromMirror(mirrorDir, storeDir, keyHash, key, expected);
+			if(mirrored != null) {
+				FETCHES_MIRROR.increment();
+				return mirrored;
+			}
+
+			if(remote && config.isArtifactOfflineMode()) {
+				throw new IOException(format(Messages.getString("ArtifactStore.offlineUnavailable"), key, mirrorDir)); //$NON-NLS-1$
+			}
+			// Locating usually means querying a remote registry, such as Maven metadata or a JVM vendor API
+			long start = System.nanoTime();
+			RemoteArtifact artifact = locator.locate();
+			MetricsRegistry.instance.histogram(MetricsRegistry.PREFIX + "registry_lookup_duration_seconds", "Time taken to look up remote artifact locations", "source", getSource(key)) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				.record(System.nanoTime() - start);
+			FETCHES_DOWNLOAD.increment();
+			return download(storeDir, keyHash, key, artifact.getFileName(), artifact.getUrl(), artifact.getChecksum(), null);
+		});
+	}
+
+	/**
+	 * Schedules periodic garbage collection if it is not already scheduled on the current
+	 * scheduler, which is replaced when the runtime restarts.
+	 */
+	private synchronized void scheduleGarbageCollection() {
+		ScheduledExecutorService scheduler = DominoThreadFactory.getScheduler();
+		if(gcTask == null || gcTask.isDone() || gcScheduler != scheduler) {
+			gcScheduler = scheduler;
+			gcTask = scheduler.scheduleWithFixedDelay(this::collectGarbage, GC_INITIAL_DELAY_MINUTES, GC_INTERVAL_MINUTES, TimeUnit.MINUTES);
+		}
+	}
+
+	/**
+	 * Determines a low-cardinality name for the origin of the given key, for use in metrics:
+	 * the provider name for JVM keys and the key scheme, such as "maven", otherwise.
+	 */
+	private static String getSource(String key) {
+		String[] parts = key.split(":", 3); //$NON-NLS-1$
+		if(parts.length > 2 && "jvm".equals(parts[0])) { //$NON-NLS-1$
+			return parts[1];
+		}
+		return parts.length > 1 ? parts[0] : "other"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Looks for the given key in the mirror directory, first in its manifest and then, for
+	 * Maven artifacts, in its Maven-layout repository, and imports it into the store if found.
+	 */
+	private StoredArtifact importFromMirror(Path mirrorDir, Path storeDir, String keyHash, String key, ArtifactChecksum expected) throws IOException {
+		if(mirrorDir == null || !Files.isDirectory(mirrorDir)) {
+			return null;
+		}
+
+		Map<String, Object> entry = readManifest(mirrorDir).get(key);
+		if(entry != null) {
+			Path file = mirrorDir.resolve(StringUtil.toString(entry.get(MANIFEST_PATH))).normalize();
+			ArtifactChecksum checksum = parseChecksum(StringUtil.toString(entry.get(PROP_CHECKSUM)));
+			if(file.startsWith(mirrorDir.normalize()) && Files.isRegularFile(file) && (expected == null || expected.equals(checksum))) {
+				if(log.isLoggable(Level.INFO)) {
+					log.info(format(Messages.getString("ArtifactStore.importingFromMirror"), key, file)); //$NON-NLS-1$
+				}
+				String fileName = StringUtil.toString(entry.get(PROP_FILENAME));
+				return download(storeDir, keyHash, key, fileName, file.toUri().toURL(), checksum, StringUtil.toString(entry.get(PROP_SHA256)));
+			}
+		}
+
+		if(key.startsWith(KEY_PREFIX_MAVEN)) {
+			// groupId:artifactId:version:extension
+			String[] parts = key.substring(KEY_PREFIX_MAVEN.length()).split(":"); //$NON-NLS-1$
+			if(parts.length == 4) {
+				Path dir = mirrorDir.resolve(MIRROR_MAVEN);
+				for(String groupPart : parts[0].split("\\.")) { //$NON-NLS-1$
+					dir = dir.resolve(groupPart);
+				}
+				String fileName = parts[1] + '-' + parts[2] + '.' + parts[3];
+				Path file = dir.resolve(parts[1]).resolve(parts[2]).resolve(fileName);
+				if(Files.isRegularFile(file)) {
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("ArtifactStore.importingFromMirror"), key, file)); //$NON-NLS-1$
+					}
+					URL url = file.toUri().toURL();
+					ArtifactChecksum checksum = fetchChecksum(new URL(url + ".sha512"), ArtifactChecksum.SHA512); //$NON-NLS-1$
+					if(checksum == null) {
+						checksum = fetchChecksum(new URL(url + ".sha1"), ArtifactChecksum.SHA1); //$NON-NLS-1$
+					}
+					return download(storeDir, keyHash, key, fileName, url, checksum, null);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the manifest of the given mirror directory, returning a map of artifact keys to
+	 * their entries.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Map<String, Object>> readManifest(Path mirrorDir) throws IOException {
+		Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+		Path manifest = mirrorDir.resolve(MIRROR_MANIFEST);
+		if(Files.isRegularFile(manifest)) {
+			try(Reader r = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+				Map<String, Object> json = (Map<String, Object>)new JSONParser().parse(r);
+				List<Map<String, Object>> artifacts = (List<Map<String, Object>>)json.get(MANIFEST_ARTIFACTS);
+				if(artifacts != null) {
+					for(Map<String, Object> artifact : artifacts) {
+						String key = StringUtil.toString(artifact.get(PROP_KEY));
+						if(StringUtil.isNotEmpty(key)) {
+							result.put(key, artifact);
+						}
+					}
+				}
+			} catch(ParseException | ClassCastException e) {
+				throw new IOException(format(Messages.getString("ArtifactStore.invalidMirrorManifest"), manifest), e); //$NON-NLS-1$
+			}
+		}
+		return result;
+	}
+
+	private static void writeManifest(Path mirrorDir, Map<String, Map<String, Object>> entries) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put(MANIFEST_VERSION, 1);
+		json.put(MANIFEST_ARTIFACTS, new JSONArray(entries.values()));
+
+		Files.createDirectories(mirrorDir);
+		Path manifest = mirrorDir.resolve(MIRROR_MANIFEST);
+		Path tmp = Files.createTempFile(mirrorDir, MIRROR_MANIFEST, ".tmp"); //$NON-NLS-1$
+		try {
+			try(Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING)) {
+				JSONValue.writeJSONString(json, w);
+			}
+			Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static boolean isLocal(URL url) {
+		return "file".equals(url.getProtocol()); //$NON-NLS-1$
+	}
+
+	private static Path toPath(URL url) throws IOException {
+		try {
+			return Paths.get(url.toURI());
+		} catch(URISyntaxException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Executes the provided task while holding both an in-process monitor and a file lock for
+	 * the given key, so that only one thread in any process sharing the store can modify it.
+	 */
+	@SuppressWarnings("try")
+	private <T> T withKeyLock(Path storeDir, String keyHash, IOCallable<T> task) throws IOException {
+		KeyMonitor monitor = keyMonitors.compute(keyHash, (k, existing) -> {
+			KeyMonitor result = existing == null ? new KeyMonitor() : existing;
+			result.users++;
+			return result;
+		});
+		try {
+			synchronized(monitor) {
+				Path lockFile = storeDir.resolve(DIR_LOCKS).resolve(keyHash + ".lock"); //$NON-NLS-1$
+				Files.createDirectories(lockFile.getParent());
+				try(
+					FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock lock = channel.lock()
+				) {
+					return task.call();
+				}
+			}
+		} finally {
+			keyMonitors.computeIfPresent(keyHash, (k, existing) -> --existing.users == 0 ? null : existing);
+		}
+	}
+
+	/**
+	 * Executes the provided task while holding the locks for all of the given keys, which
+	 * must be sorted so that concurrent callers acquire them in the same order.
+	 */
+	private <T> T withKeyLocks(Path storeDir, List<String> keyHashes, IOCallable<T> task) throws IOException {
+		if(keyHashes.isEmpty()) {
+			return task.call();
+		}
+		return withKeyLock(storeDir, keyHashes.get(0), () -> withKeyLocks(storeDir, keyHashes.subList(1, keyHashes.size()), task));
+	}
+
+	private StoredArtifact download(Path storeDir, String keyHash, String key, String fileName, URL url, ArtifactChecksum checksum, String expectedSha256) throws IOException {
+		Path tmpDir = storeDir.resolve(DIR_TMP);
+		Files.createDirectories(tmpDir);
+		// Use a stable name so that an interrupted download can be resumed on the next attempt
+		Path tmp = tmpDir.resolve(keyHash);
+		try {
+			if(isLocal(url)) {
+				Files.copy(toPath(url), tmp, StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				if(log.isLoggable(Level.INFO)) {
+					log.info(format(Messages.getString("ArtifactStore.downloadingArtifact"), key, url)); //$NON-NLS-1$
+				}
+				DownloadEngine.download(url, tmp);
+			}
+
+			String sha256 = digest(tmp, ArtifactChecksum.SHA256);
+			if(StringUtil.isNotEmpty(expectedSha256) && !expectedSha256.equalsIgnoreCase(sha256)) {
+				throw new IOException(format(Messages.getString("ArtifactStore.checksumMismatch"), url, ArtifactChecksum.SHA256 + ':' + expectedSha256, sha256)); //$NON-NLS-1$
+			}
+			if(checksum != null) {
+				String actual = ArtifactChecksum.SHA256.equals(checksum.getAlgorithm()) ? sha256 : digest(tmp, checksum.getAlgorithm());
+				if(!checksum.matches(actual)) {
+					throw new IOException(format(Messages.getString("ArtifactStore.checksumMismatch"), url, checksum, actual)); //$NON-NLS-1$
+				}
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("ArtifactStore.verifiedChecksum"), url, checksum)); //$NON-NLS-1$
+				}
+			}
+
+			Path blob = getBlobPath(storeDir, sha256);
+			Files.createDirectories(blob.getParent());
+			try {
+				Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+			} catch(FileAlreadyExistsException e) {
+				// Then another key already references the same content
+				try {
+					touch(blob);
+				} catch(NoSuchFileException e2) {
+					// Then it was removed as unreferenced in the meantime
+					Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+				}
+			}
+			touch(blob);
+
+			Properties props = new Properties();
+			props.setProperty(PROP_KEY, key);
+			props.setProperty(PROP_FILENAME, fileName);
+			props.setProperty(PROP_URL, url.toString());
+			props.setProperty(PROP_SHA256, sha256);
+			props.setProperty(PROP_SIZE, Long.toString(Files.size(blob)));
+			if(checksum != null) {
+				props.setProperty(PROP_CHECKSUM, checksum.toString());
+			}
+			storeProperties(props, getKeyFile(storeDir, keyHash));
+
+			return new StoredArtifact(key, fileName, sha256, blob);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Reads the entry for the given key, checking that its content has the size recorded when
+	 * it was imported. The content was fully verified at import, so it is not hashed again here
+	 * except for entries that predate size recording.
+	 */
+	private StoredArtifact readVerifiedEntry(Path storeDir, String keyHash) throws IOException {
+		Path keyFile = getKeyFile(storeDir, keyHash);
+		if(!Files.isRegularFile(keyFile)) {
+			return null;
+		}
+		Properties props = loadProperties(keyFile);
+		String sha256 = props.getProperty(PROP_SHA256);
+		if(StringUtil.isEmpty(sha256)) {
+			return null;
+		}
+		Path blob = getBlobPath(storeDir, sha256);
+		if(!Files.isRegularFile(blob)) {
+			return null;
+		}
+
+		boolean intact;
+		String size = props.getProperty(PROP_SIZE);
+		if(StringUtil.isEmpty(size)) {
+			intact = sha256.equals(digest(blob, ArtifactChecksum.SHA256));
+			if(intact) {
+				props.setProperty(PROP_SIZE, Long.toString(Files.size(blob)));
+				storeProperties(props, keyFile);
+			}
+		} else {
+			intact = size.equals(Long.toString(Files.size(blob)));
+		}
+		if(!intact) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.warning(format(Messages.getString("ArtifactStore.corruptArtifact"), props.getProperty(PROP_KEY), blob)); //$NON-NLS-1$
+			}
+			deleteBlob(blob);
+			return null;
+		}
+
+		touch(blob);
+		return new StoredArtifact(props.getProperty(PROP_KEY), props.getProperty(PROP_FILENAME), sha256, blob);
+	}
+
+	private ArtifactChecksum readChecksum(Path storeDir, String keyHash) throws IOException {
+		return parseChecksum(loadProperties(getKeyFile(storeDir, keyHash)).getProperty(PROP_CHECKSUM));
+	}
+
+	private static Path getKeyFile(Path storeDir, String keyHash) {
+		return storeDir.resolve(DIR_KEYS).resolve(keyHash + ".properties"); //$NON-NLS-1$
+	}
+
+	private static String getKeyHash(Path keyFile) {
+		String name = keyFile.getFileName().toString();
+		return name.substring(0, name.length() - ".properties".length()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses a checksum in the format produced by {@link ArtifactChecksum#toString()}.
+	 */
+	private static ArtifactChecksum parseChecksum(String checksum) {
+		if(StringUtil.isEmpty(checksum)) {
+			return null;
+		}
+		int colonIndex = checksum.lastIndexOf(':');
+		if(colonIndex < 1) {
+			return null;
+		}
+		return new ArtifactChecksum(checksum.substring(0, colonIndex), checksum.substring(colonIndex+1));
+	}
+
+	private static Path getBlobPath(Path storeDir, String sha256) {
+		return storeDir.resolve(DIR_BLOBS).resolve(sha256.substring(0, 2)).resolve(sha256);
+	}
+
+	private static List<Path> listBlobs(Path storeDir) throws IOException {
+		Path blobsDir = storeDir.resolve(DIR_BLOBS);
+		if(!Files.isDirectory(blobsDir)) {
+			return new ArrayList<>();
+		}
+		try(Stream<Path> blobs = Files.find(blobsDir, 2, (path, attr) -> attr.isRegularFile())) {
+			return blobs.collect(Collectors.toList());
+		}
+	}
+
+	private static void deleteBlob(Path blob) throws IOException {
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("ArtifactStore.removingArtifact"), blob)); //$NON-NLS-1$
+		}
+		Files.deleteIfExists(blob);
+	}
+
+	private static void removeStaleFiles(Path dir, long olderThan) throws IOException {
+		if(!Files.isDirectory(dir)) {
+			return;
+		}
+		try(Stream<Path> files = Files.list(dir)) {
+			for(Path file : files.collect(Collectors.toList())) {
+				if(Files.getLastModifiedTime(file).toMillis() < olderThan) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records an access to the given blob by updating its modification time, which is used
+	 * to determine least-recently-used order across processes.
+	 */
+	private static void touch(Path blob) throws IOException {
+		Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	private static long lastAccess(Path blob) {
+		try {
+			return Files.getLastModifiedTime(blob).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static Properties loadProperties(Path file) throws IOException {
+		Properties props = new Properties();
+		if(Files.isRegularFile(file)) {
+			try(InputStream is = Files.newInputStream(file)) {
+				props.load(is);
+			}
+		}
+		return props;
+	}
+
+	private static void storeProperties(Properties props, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp"); //$NON-NLS-1$
+		try {
+			try(OutputStream os = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) {
+				props.store(os, null);
+			}
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	static String digest(String value) {
+		MessageDigest digest = getMessageDigest(ArtifactChecksum.SHA256);
+		return toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	static MessageDigest getMessageDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * An in-process monitor for a key, along with the number of threads holding or awaiting it.
+	 */
+	private static class KeyMonitor {
+		/** Guarded by the {@link ArtifactStore#keyMonitors} entry for the key */
+		private int users;
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+}
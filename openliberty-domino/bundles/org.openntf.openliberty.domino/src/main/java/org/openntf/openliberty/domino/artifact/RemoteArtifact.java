@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import java.net.URL;
+
+/**
+ * Describes the remote source of an artifact to be retrieved into the {@link ArtifactStore}.
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class RemoteArtifact {
+	private final String fileName;
+	private final URL url;
+	private final ArtifactChecksum checksum;
+
+	public RemoteArtifact(String fileName, URL url, ArtifactChecksum checksum) {
+		this.fileName = fileName;
+		this.url = url;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @return the file name of the artifact, used to determine its type later
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the URL to download the artifact from
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return the checksum published by the source, or {@code null} if none is available
+	 */
+	public ArtifactChecksum getChecksum() {
+		return checksum;
+	}
+
+	@Override
+	public String toString() {
+		return "RemoteArtifact [fileName=" + fileName + ", url=" + url + ", checksum=" + checksum + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.artifact;
+
+import java.nio.file.Path;
+
+/**
+ * Represents a verified artifact held in the {@link ArtifactStore}.
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class StoredArtifact {
+	private final String key;
+	private final String fileName;
+	private final String sha256;
+	private final Path path;
+
+	public StoredArtifact(String key, String fileName, String sha256, Path path) {
+		this.key = key;
+		this.fileName = fileName;
+		this.sha256 = sha256;
+		this.path = path;
+	}
+
+	/**
+	 * @return the logical key used to look up the artifact
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the original file name of the artifact, which can be used to determine
+	 * 		its archive type
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the hex-encoded SHA-256 digest of the artifact content
+	 */
+	public String getSha256() {
+		return sha256;
+	}
+
+	/**
+	 * @return the location of the artifact content within the store
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return "StoredArtifact [key=" + key + ", fileName=" + fileName + ", sha256=" + sha256 + ", path=" + path + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
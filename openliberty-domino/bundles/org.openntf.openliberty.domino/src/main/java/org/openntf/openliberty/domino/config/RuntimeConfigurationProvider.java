@@ -25,6 +25,12 @@ import java.nio.file.Path;
  * @since 3.0.0
  */
 public interface RuntimeConfigurationProvider {
+	/**
+	 * The default maximum size of the artifact store, in bytes.
+	 * @since 4.0.0
+	 */
+	long DEFAULT_ARTIFACT_STORE_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+	
 	/**
 	 * @return the base working directory for the runtime
 	 */
@@ -59,4 +65,49 @@ public interface RuntimeConfigurationProvider {
 	 * @since 3.0.0
 	 */
 	Path getDominoProgramDirectory();
+	
+	/**
+	 * @return the directory used to store downloaded artifacts, which may be shared
+	 * 		among multiple servers on the same host
+	 * @since 4.0.0
+	 */
+	default Path getArtifactStoreDirectory() {
+		return getBaseDirectory().resolve("artifacts"); //$NON-NLS-1$
+	}
+	
+	/**
+	 * @return the directory used to store application archives deployed to servers
+	 * @since 4.0.0
+	 */
+	default Path getAppStoreDirectory() {
+		return getBaseDirectory().resolve("apps"); //$NON-NLS-1$
+	}
+	
+	/**
+	 * @return the maximum size in bytes of the artifact store before least-recently-used
+	 * 		artifacts are removed, or {@code 0} to disable the limit
+	 * @since 4.0.0
+	 */
+	default long getArtifactStoreMaxSize() {
+		return DEFAULT_ARTIFACT_STORE_MAX_SIZE;
+	}
+
+	/**
+	 * @return a local directory containing pre-seeded artifacts, either described by a
+	 * 		{@code manifest.json} file or laid out as a Maven repository in a {@code maven}
+	 * 		subdirectory, or {@code null} if no mirror is configured
+	 * @since 4.0.0
+	 */
+	default Path getArtifactMirrorDirectory() {
+		return null;
+	}
+
+	/**
+	 * @return whether artifacts must be resolved exclusively from the artifact store and
+	 * 		mirror directory, without any network access
+	 * @since 4.0.0
+	 */
+	default boolean isArtifactOfflineMode() {
+		return false;
+	}
 }
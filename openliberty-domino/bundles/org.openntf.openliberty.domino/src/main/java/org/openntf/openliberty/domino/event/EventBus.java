@@ -0,0 +1,416 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.event;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+
+/**
+ * Dispatches runtime events to subscribers registered for specific event classes.
+ * 
+ * <p>Each subscribing object has its own bounded mailbox, which is drained by at most one
+ * task at a time on {@link DominoThreadFactory#getEventExecutor()}. This means that a given
+ * subscriber sees events in the order they were published, while a slow subscriber does
+ * not hold up delivery to the others.</p>
+ * 
+ * <p>Subscriptions are keyed on the identity of the subscribing object and the event class,
+ * so subscribing again replaces the previous handler rather than adding a duplicate.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum EventBus {
+	instance;
+	
+	/** The maximum number of events that may wait for a single subscriber */
+	public static final int MAILBOX_CAPACITY = 1000;
+	/** The handler duration past which a subscriber is considered slow */
+	public static final long SLOW_SUBSCRIBER_THRESHOLD = TimeUnit.SECONDS.toMillis(1);
+	/** The number of events delivered to a subscriber before yielding its dispatch thread */
+	private static final int DRAIN_BATCH = 32;
+	
+	private final Logger log = OpenLibertyLog.getLog();
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+	
+	private EventBus() {
+		MetricsRegistry.instance.register(MetricsRegistry.PREFIX + "event", this::collectMetrics); //$NON-NLS-1$
+	}
+	
+	/**
+	 * Registers a handler for events of the given class and its subclasses.
+	 * 
+	 * @param <E> the type of event to receive
+	 * @param owner the subscribing object, used to group and order deliveries
+	 * @param eventType the class of event to receive
+	 * @param handler the handler to invoke for matching events
+	 */
+	public <E extends EventObject> void subscribe(Object owner, Class<E> eventType, Consumer<? super E> handler) {
+		Subscriber subscriber;
+		synchronized(subscribers) {
+			subscriber = findSubscriber(owner);
+			if(subscriber == null) {
+				subscriber = new Subscriber(owner);
+				subscribers.add(subscriber);
+			}
+		}
+		subscriber.addHandler(eventType, handler);
+	}
+	
+	/**
+	 * Registers a legacy {@link EventRecipient} to receive all events.
+	 * 
+	 * @param recipient the recipient to register
+	 */
+	public void subscribe(EventRecipient recipient) {
+		subscribe(recipient, EventObject.class, recipient::notifyMessage);
+	}
+	
+	/**
+	 * Removes all subscriptions held by the provided object. Events already queued for it
+	 * are discarded.
+	 * 
+	 * @param owner the subscribing object
+	 */
+	public void unsubscribe(Object owner) {
+		synchronized(subscribers) {
+			Subscriber subscriber = findSubscriber(owner);
+			if(subscriber != null) {
+				subscribers.remove(subscriber);
+				subscriber.discard();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all subscriptions.
+	 */
+	public void clear() {
+		synchronized(subscribers) {
+			subscribers.forEach(Subscriber::discard);
+			subscribers.clear();
+		}
+	}
+	
+	/**
+	 * Queues the provided event for delivery to all subscribers registered for its class.
+	 * 
+	 * @param event the event to publish
+	 * @return a {@link List} of void-returning {@link Future} objects representing the delivery
+	 * 		to each matching subscriber
+	 */
+	public List<Future<?>> publish(EventObject event) {
+		List<Future<?>> result = new ArrayList<>();
+		for(Subscriber subscriber : subscribers) {
+			if(subscriber.accepts(event)) {
+				result.add(subscriber.enqueue(event));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return a snapshot of the delivery statistics for each current subscriber
+	 */
+	public List<SubscriberStatistics> getStatistics() {
+		return Collections.unmodifiableList(subscribers.stream()
+			.map(SubscriberStatistics::new)
+			.collect(Collectors.toList()));
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private void collectMetrics(MetricsWriter writer) {
+		List<SubscriberStatistics> statistics = getStatistics();
+		String prefix = MetricsRegistry.PREFIX + "event_"; //$NON-NLS-1$
+		writer.family(prefix + "pending", MetricsWriter.Type.GAUGE, "Events waiting to be delivered to each subscriber"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(sub -> writer.gauge(prefix + "pending", sub.getPending(), "subscriber", sub.getSubscriber())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "delivered", MetricsWriter.Type.COUNTER, "Events delivered to each subscriber"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(sub -> writer.counter(prefix + "delivered", sub.getDelivered(), "subscriber", sub.getSubscriber())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "dropped", MetricsWriter.Type.COUNTER, "Events discarded because a subscriber's mailbox was full"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(sub -> writer.counter(prefix + "dropped", sub.getDropped(), "subscriber", sub.getSubscriber())); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	private Subscriber findSubscriber(Object owner) {
+		for(Subscriber subscriber : subscribers) {
+			if(subscriber.owner == owner) {
+				return subscriber;
+			}
+		}
+		return null;
+	}
+	
+	private static class Handler {
+		private final Class<? extends EventObject> eventType;
+		private final Consumer<EventObject> consumer;
+		
+		@SuppressWarnings("unchecked")
+		Handler(Class<? extends EventObject> eventType, Consumer<?> consumer) {
+			this.eventType = eventType;
+			this.consumer = (Consumer<EventObject>)consumer;
+		}
+	}
+	
+	private static class Delivery {
+		private final EventObject event;
+		private final long published = System.nanoTime();
+		private final CompletableFuture<Void> completion = new CompletableFuture<>();
+		
+		Delivery(EventObject event) {
+			this.event = event;
+		}
+	}
+	
+	private class Subscriber {
+		private final Object owner;
+		private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+		private final BlockingQueue<Delivery> mailbox = new LinkedBlockingQueue<>(MAILBOX_CAPACITY);
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		
+		private final AtomicLong delivered = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicLong slow = new AtomicLong();
+		private final AtomicLong totalLag = new AtomicLong();
+		private final AtomicLong maxLag = new AtomicLong();
+		private final AtomicLong maxDuration = new AtomicLong();
+		
+		Subscriber(Object owner) {
+			this.owner = owner;
+		}
+		
+		synchronized void addHandler(Class<? extends EventObject> eventType, Consumer<?> consumer) {
+			handlers.removeIf(h -> h.eventType.equals(eventType));
+			handlers.add(new Handler(eventType, consumer));
+		}
+		
+		boolean accepts(EventObject event) {
+			for(Handler handler : handlers) {
+				if(handler.eventType.isInstance(event)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		Future<?> enqueue(EventObject event) {
+			Delivery delivery = new Delivery(event);
+			if(!mailbox.offer(delivery)) {
+				long count = dropped.incrementAndGet();
+				if(log.isLoggable(Level.WARNING)) {
+					log.warning(format(Messages.getString("EventBus.mailboxFull"), owner, event.getClass().getSimpleName(), count)); //$NON-NLS-1$
+				}
+				delivery.completion.completeExceptionally(new RejectedExecutionException());
+				return delivery.completion;
+			}
+			schedule();
+			return delivery.completion;
+		}
+		
+		void discard() {
+			handlers.clear();
+			Delivery delivery;
+			while((delivery = mailbox.poll()) != null) {
+				delivery.completion.cancel(false);
+			}
+		}
+		
+		private void schedule() {
+			if(scheduled.compareAndSet(false, true)) {
+				try {
+					DominoThreadFactory.getEventExecutor().execute(this::drain);
+				} catch(RejectedExecutionException e) {
+					// The runtime is shutting down
+					scheduled.set(false);
+					discard();
+				}
+			}
+		}
+		
+		private void drain() {
+			try {
+				for(int i = 0; i < DRAIN_BATCH; i++) {
+					Delivery delivery = mailbox.poll();
+					if(delivery == null) {
+						break;
+					}
+					deliver(delivery);
+				}
+			} finally {
+				scheduled.set(false);
+				// Pick up anything that arrived during or after the batch
+				if(!mailbox.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+		
+		private void deliver(Delivery delivery) {
+			long start = System.nanoTime();
+			long lag = start - delivery.published;
+			totalLag.addAndGet(lag);
+			maxLag.accumulateAndGet(lag, Math::max);
+			try {
+				for(Handler handler : handlers) {
+					if(handler.eventType.isInstance(delivery.event)) {
+						handler.consumer.accept(delivery.event);
+					}
+				}
+				delivery.completion.complete(null);
+			} catch(Throwable t) {
+				if(log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, format(Messages.getString("EventBus.exceptionDeliveringEvent"), delivery.event.getClass().getSimpleName(), owner), t); //$NON-NLS-1$
+				}
+				delivery.completion.completeExceptionally(t);
+			} finally {
+				delivered.incrementAndGet();
+				long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				maxDuration.accumulateAndGet(duration, Math::max);
+				if(duration >= SLOW_SUBSCRIBER_THRESHOLD) {
+					slow.incrementAndGet();
+					if(log.isLoggable(Level.WARNING)) {
+						log.warning(format(Messages.getString("EventBus.slowSubscriber"), owner, delivery.event.getClass().getSimpleName(), duration, TimeUnit.NANOSECONDS.toMillis(lag))); //$NON-NLS-1$
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Represents a point-in-time view of the delivery statistics for a subscriber.
+	 * 
+	 * @since 4.0.0
+	 */
+	public static class SubscriberStatistics {
+		private final String subscriber;
+		private final List<String> eventTypes;
+		private final int pending;
+		private final long delivered;
+		private final long dropped;
+		private final long slow;
+		private final long averageLag;
+		private final long maxLag;
+		private final long maxDuration;
+		
+		SubscriberStatistics(Subscriber subscriber) {
+			this.subscriber = String.valueOf(subscriber.owner);
+			this.eventTypes = subscriber.handlers.stream()
+				.map(h -> h.eventType.getSimpleName())
+				.collect(Collectors.toList());
+			this.pending = subscriber.mailbox.size();
+			this.delivered = subscriber.delivered.get();
+			this.dropped = subscriber.dropped.get();
+			this.slow = subscriber.slow.get();
+			this.averageLag = this.delivered == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(subscriber.totalLag.get() / this.delivered);
+			this.maxLag = TimeUnit.NANOSECONDS.toMillis(subscriber.maxLag.get());
+			this.maxDuration = subscriber.maxDuration.get();
+		}
+		
+		/**
+		 * @return a description of the subscribing object
+		 */
+		public String getSubscriber() {
+			return subscriber;
+		}
+		
+		/**
+		 * @return the simple names of the event classes the subscriber is registered for
+		 */
+		public List<String> getEventTypes() {
+			return eventTypes;
+		}
+		
+		/**
+		 * @return the number of events waiting to be delivered
+		 */
+		public int getPending() {
+			return pending;
+		}
+		
+		/**
+		 * @return the number of events delivered, including those whose handler failed
+		 */
+		public long getDelivered() {
+			return delivered;
+		}
+		
+		/**
+		 * @return the number of events discarded because the mailbox was full
+		 */
+		public long getDropped() {
+			return dropped;
+		}
+		
+		/**
+		 * @return the number of deliveries that took longer than {@link EventBus#SLOW_SUBSCRIBER_THRESHOLD}
+		 */
+		public long getSlow() {
+			return slow;
+		}
+		
+		/**
+		 * @return the average time in milliseconds between publishing and delivery
+		 */
+		public long getAverageLag() {
+			return averageLag;
+		}
+		
+		/**
+		 * @return the longest time in milliseconds between publishing and delivery
+		 */
+		public long getMaxLag() {
+			return maxLag;
+		}
+		
+		/**
+		 * @return the longest time in milliseconds spent in the subscriber's handlers for a
+		 * 		single event
+		 */
+		public long getMaxDuration() {
+			return maxDuration;
+		}
+		
+		@Override
+		public String toString() {
+			return format("SubscriberStatistics [subscriber={0}, eventTypes={1}, pending={2}, delivered={3}, dropped={4}, slow={5}, averageLag={6}, maxLag={7}, maxDuration={8}]", //$NON-NLS-1$
+				subscriber, eventTypes, pending, delivered, dropped, slow, averageLag, maxLag, maxDuration);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.event;
+
+import java.util.EventObject;
+
+import org.openntf.openliberty.domino.server.ServerInstance;
+
+/**
+ * This event signals that a supervised server exited without being asked to stop,
+ * or did not start within the expected time.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class ServerCrashedEvent extends EventObject {
+	private static final long serialVersionUID = 1L;
+	
+	private final int recentCrashes;
+	private final long restartDelay;
+
+	/**
+	 * @param instance the server that crashed
+	 * @param recentCrashes the number of crashes within the supervisor's crash-loop window,
+	 * 		including this one
+	 * @param restartDelay the delay in milliseconds before the server is restarted, or
+	 * 		{@code -1} if it will not be restarted automatically
+	 */
+	public ServerCrashedEvent(ServerInstance<?> instance, int recentCrashes, long restartDelay) {
+		super(instance);
+		this.recentCrashes = recentCrashes;
+		this.restartDelay = restartDelay;
+	}
+
+	@Override
+	public ServerInstance<?> getSource() {
+		return (ServerInstance<?>)super.getSource();
+	}
+	
+	/**
+	 * @return the number of crashes within the supervisor's crash-loop window, including
+	 * 		this one
+	 */
+	public int getRecentCrashes() {
+		return recentCrashes;
+	}
+	
+	/**
+	 * @return the delay in milliseconds before the server is restarted, or {@code -1} if
+	 * 		automatic restarts have been suspended for the server
+	 */
+	public long getRestartDelay() {
+		return restartDelay;
+	}
+	
+	/**
+	 * @return whether the server will be restarted automatically
+	 */
+	public boolean isRestarting() {
+		return restartDelay >= 0;
+	}
+}
@@ -17,6 +17,7 @@ package org.openntf.openliberty.domino.ext;
 
 import java.util.EventObject;
 
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.event.EventRecipient;
 
 /**
@@ -26,8 +27,9 @@ import org.openntf.openliberty.domino.event.EventRecipient;
  * <p>These services should be registered as {@code ServiceLoader} service using the
  * <code>org.openntf.openliberty.domino.ext.RuntimeService</code> name.</p>
  * 
- * <p>These objects are also implicitly added to the runtime's message-recipient queue
- * to receive {@link EventObject}s for runtime events.</p>
+ * <p>When the runtime starts, {@link #subscribe(EventBus)} is called on each service to
+ * register it for runtime events. By default, this subscribes the service to all
+ * {@link EventObject}s via {@link #notifyMessage(EventObject)}.</p>
  * 
  * @author Jesse Gallagher
  * @since 1.18004
@@ -35,6 +37,22 @@ import org.openntf.openliberty.domino.event.EventRecipient;
 public interface RuntimeService extends Runnable, EventRecipient, AutoCloseable {
 	public static final String SERVICE_ID = RuntimeService.class.getName();
 	
+	/**
+	 * Registers this service's event subscriptions. Implementations interested in only
+	 * specific events should override this to subscribe to those event classes.
+	 * 
+	 * @param bus the runtime's event bus
+	 * @since 4.0.0
+	 */
+	default void subscribe(EventBus bus) {
+		bus.subscribe(this);
+	}
+	
+	@Override
+	default void notifyMessage(EventObject event) {
+		// NOP by default
+	}
+	
 	@Override
 	void close();
 }
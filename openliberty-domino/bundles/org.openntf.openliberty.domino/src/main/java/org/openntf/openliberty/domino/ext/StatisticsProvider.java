@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.ext;
+
+import java.io.PrintStream;
+
+/**
+ * Defines a service that contributes operational statistics to the output of the
+ * runtime's {@code stats} console command.
+ * 
+ * <p>These services should be registered as {@code ServiceLoader} service using the
+ * <code>org.openntf.openliberty.domino.ext.StatisticsProvider</code> name.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public interface StatisticsProvider {
+	/**
+	 * Writes the current statistics for this provider in a human-readable form.
+	 * 
+	 * @param out the stream to write to
+	 */
+	void printStatistics(PrintStream out);
+}
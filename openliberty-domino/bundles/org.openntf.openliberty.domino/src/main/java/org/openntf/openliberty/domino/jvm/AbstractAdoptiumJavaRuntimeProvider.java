@@ -17,16 +17,30 @@ package org.openntf.openliberty.domino.jvm;
 
 import static java.text.MessageFormat.format;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.openntf.openliberty.domino.artifact.ArtifactChecksum;
+import org.openntf.openliberty.domino.artifact.ArtifactLocator;
+import org.openntf.openliberty.domino.artifact.RemoteArtifact;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
 import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+import org.openntf.openliberty.domino.util.json.parser.JSONParser;
+import org.openntf.openliberty.domino.util.json.parser.ParseException;
 
 /**
  * Abstract mplementation of {@link JavaRuntimeProvider} that downloads and references
@@ -40,14 +54,13 @@ public abstract class AbstractAdoptiumJavaRuntimeProvider extends AbstractDownlo
 	
 	// 0 = Java version, 1 = OS, 2 = arch, 3 = jvm impl (hotspot), 4 = vendor
 	public static final String API_LATEST = "https://api.adoptium.net/v3/binary/latest/{0}/ga/{1}/{2}/jdk/{3}/normal/{4}?project=jdk"; //$NON-NLS-1$
+	// 0 = Java version, 1 = jvm impl (hotspot), 2 = OS, 3 = arch, 4 = vendor
+	public static final String API_ASSETS_LATEST = "https://api.adoptium.net/v3/assets/latest/{0}/{1}?os={2}&architecture={3}&image_type=jdk&vendor={4}"; //$NON-NLS-1$
 	
 	@Override
 	public Path getJavaHome(JVMIdentifier identifier) {
 		String version = identifier.getVersion();
-		String javaJvm = identifier.getType();
-		if(StringUtil.isEmpty(javaJvm)) {
-			javaJvm = "HotSpot"; //$NON-NLS-1$
-		}
+		String javaJvm = getJvmName(identifier);
 		if(log.isLoggable(Level.FINE)) {
 			log.fine(format(Messages.getString("JavaRuntimeProvider.configuredJavaRuntimeWithJVM"), version , javaJvm)); //$NON-NLS-1$
 		}	
@@ -66,18 +79,65 @@ public abstract class AbstractAdoptiumJavaRuntimeProvider extends AbstractDownlo
 			return jvmDir;
 		}
 		
-		// Otherwise, look for a release on GitHub
-		if("1.8".equals(version)) { //$NON-NLS-1$
-			version = "8"; //$NON-NLS-1$
-		}
-		String latestUrl = format(API_LATEST, version, getOsName(), getOsArch(), getJvmType(), getVendor());
-		download(latestUrl, jvmDir);
-		
-		markExecutables(jvmDir);
+		// Otherwise, look for a release via the Adoptium API
+		download(getArtifactKey(identifier), getArtifactLocator(identifier), jvmDir);
 		
 		return jvmDir;
 	}
 	
+	@Override
+	protected String getArtifactKey(JVMIdentifier identifier) {
+		return buildArtifactKey(getVendor(), normalizeVersion(identifier.getVersion()), getJvmName(identifier));
+	}
+	
+	@Override
+	protected ArtifactLocator getArtifactLocator(JVMIdentifier identifier) {
+		String assetsUrl = format(API_ASSETS_LATEST, normalizeVersion(identifier.getVersion()), getJvmType(), getOsName(), getOsArch(), getVendor());
+		return () -> {
+			Map<String, Object> binaryPackage = fetchLatestPackage(assetsUrl, identifier);
+			String link = StringUtil.toString(binaryPackage.get("link")); //$NON-NLS-1$
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("JavaRuntimeProvider.downloadingJDKFrom"), getVendor(), link)); //$NON-NLS-1$
+			}
+			
+			String checksumValue = StringUtil.toString(binaryPackage.get("checksum")); //$NON-NLS-1$
+			ArtifactChecksum checksum = StringUtil.isEmpty(checksumValue) ? null : new ArtifactChecksum(ArtifactChecksum.SHA256, checksumValue);
+			return new RemoteArtifact(StringUtil.toString(binaryPackage.get("name")), new URL(link), checksum); //$NON-NLS-1$
+		};
+	}
+	
+	private static String getJvmName(JVMIdentifier identifier) {
+		String javaJvm = identifier.getType();
+		return StringUtil.isEmpty(javaJvm) ? "HotSpot" : javaJvm; //$NON-NLS-1$
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> fetchLatestPackage(String assetsUrl, JVMIdentifier identifier) {
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("JavaRuntimeProvider.downloadingReleaseListFrom"), getVendor(), assetsUrl)); //$NON-NLS-1$
+		}
+		List<Map<String, Object>> assets;
+		try {
+			assets = OpenLibertyUtil.download(new URL(assetsUrl), (contentType, is) -> {
+				try(Reader r = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+					return (List<Map<String, Object>>)new JSONParser().parse(r);
+				} catch (ParseException e) {
+					throw new IOException(e);
+				}
+			});
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		return assets.stream()
+			.map(asset -> (Map<String, Object>)asset.get("binary")) //$NON-NLS-1$
+			.filter(Objects::nonNull)
+			.map(binary -> (Map<String, Object>)binary.get("package")) //$NON-NLS-1$
+			.filter(Objects::nonNull)
+			.findFirst()
+			.orElseThrow(() -> new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToLocateJDKBuild"), getVendor(), identifier, assetsUrl))); //$NON-NLS-1$
+	}
+	
 	protected abstract String getVendor();
 	protected abstract String getJvmType();
 
@@ -18,8 +18,7 @@ package org.openntf.openliberty.domino.jvm;
 import static java.text.MessageFormat.format;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -32,65 +31,181 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.openntf.openliberty.domino.artifact.ArtifactChecksum;
+import org.openntf.openliberty.domino.artifact.ArtifactLocator;
+import org.openntf.openliberty.domino.artifact.ArtifactStore;
+import org.openntf.openliberty.domino.artifact.StoredArtifact;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
 import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
-import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveEntry;
-import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveInputStream;
+import org.openntf.openliberty.domino.util.PipelinedTarExtractor;
 import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
-import org.openntf.openliberty.domino.util.json.parser.JSONParser;
-import org.openntf.openliberty.domino.util.json.parser.ParseException;
 
 public abstract class AbstractDownloadingJavaRuntimeProvider implements JavaRuntimeProvider {
 	private static final Logger log = OpenLibertyLog.instance.log;
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Retrieves the release list for a GitHub-hosted distribution from its persisted
+	 * {@link GitHubReleaseCatalog}, which is only fetched synchronously the first time
+	 * it is needed and is otherwise refreshed in the background.
+	 * 
+	 * @param providerName a human-readable name of the distribution
+	 * @param releasesUrl the GitHub API URL of the release list
+	 * @return the cataloged releases
+	 */
 	protected static List<Map<String, Object>> fetchGitHubReleasesList(String providerName, String releasesUrl) {
-		if(log.isLoggable(Level.FINE)) {
-			log.fine(format(Messages.getString("JavaRuntimeProvider.downloadingReleaseListFrom"), providerName, releasesUrl)); //$NON-NLS-1$
+		try {
+			return GitHubReleaseCatalog.get(providerName, releasesUrl).getReleases();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
 		}
+	}
+
+	/**
+	 * Finds the checksum published alongside a GitHub release asset, either as a
+	 * {@code .sha256.txt} or {@code .sha256} asset.
+	 * 
+	 * @param assets the assets of the release containing the download
+	 * @param assetName the name of the downloadable asset
+	 * @return the published checksum, or {@code null} if the release doesn't include one
+	 * @since 4.0.0
+	 */
+	protected static ArtifactChecksum findGitHubChecksum(List<Map<String, Object>> assets, String assetName) {
 		try {
-			return OpenLibertyUtil.download(new URL(releasesUrl), (contentType, is) -> {
-				try(Reader r = new InputStreamReader(is)) {
-					return (List<Map<String, Object>>)new JSONParser().parse(r);
-				} catch (ParseException e) {
-					throw new IOException(e);
+			for(Map<String, Object> asset : assets) {
+				String name = StringUtil.toString(asset.get("name")); //$NON-NLS-1$
+				if(name.equals(assetName + ".sha256.txt") || name.equals(assetName + ".sha256")) { //$NON-NLS-1$ //$NON-NLS-2$
+					return ArtifactStore.instance.fetchChecksum(new URL((String)asset.get("browser_download_url")), ArtifactChecksum.SHA256); //$NON-NLS-1$
 				}
-			});
+			}
 		} catch(IOException e) {
 			throw new UncheckedIOException(e);
 		}
+		if(log.isLoggable(Level.WARNING)) {
+			log.warning(format(Messages.getString("JavaRuntimeProvider.noChecksumForAsset"), assetName)); //$NON-NLS-1$
+		}
+		return null;
+	}
+	
+	/**
+	 * Builds a key for use with {@link ArtifactStore} for a JVM distribution on the current
+	 * platform.
+	 * 
+	 * @param providerName an identifier for the distribution provider
+	 * @param version the Java version
+	 * @param type the JVM type
+	 * @return a key suitable for {@link ArtifactStore#fetch}
+	 * @since 4.0.0
+	 */
+	protected static String buildArtifactKey(String providerName, String version, String type) {
+		return format("jvm:{0}:{1}:{2}:{3}:{4}", providerName, version, type, getOsName(), System.getProperty("os.arch")); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
-	protected static void download(String url, Path jvmDir) {
+	/**
+	 * Maps version aliases to the form used by distribution APIs, such as "1.8" to "8".
+	 * 
+	 * @param version the configured Java version
+	 * @return the normalized version
+	 * @since 4.0.0
+	 */
+	protected static String normalizeVersion(String version) {
+		return "1.8".equals(version) ? "8" : version; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * @param identifier the desired JVM version
+	 * @return the {@link ArtifactStore} key of the archive for the JVM on the current platform
+	 * @since 4.0.0
+	 */
+	protected abstract String getArtifactKey(JVMIdentifier identifier);
+	
+	/**
+	 * @param identifier the desired JVM version
+	 * @return a callback that determines the remote location and checksum of the archive for
+	 * 		the JVM on the current platform
+	 * @since 4.0.0
+	 */
+	protected abstract ArtifactLocator getArtifactLocator(JVMIdentifier identifier);
+	
+	@Override
+	public void fetchArtifacts(JVMIdentifier identifier) {
+		try {
+			ArtifactStore.instance.fetch(getArtifactKey(identifier), getArtifactLocator(identifier));
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Retrieves the given JVM archive from the shared {@link ArtifactStore}, downloading it from
+	 * the location determined by {@code locator} if needed, and deploys it to {@code jvmDir}.
+	 * 
+	 * <p>{@code locator} is only invoked when the archive is not already available locally,
+	 * so it should perform any release-list queries itself.</p>
+	 * 
+	 * @param key the logical key for the archive in the store
+	 * @param locator a callback to determine the remote location and checksum of the archive
+	 * @param jvmDir the target JVM directory
+	 * @since 4.0.0
+	 */
+	protected static void download(String key, ArtifactLocator locator, Path jvmDir) {
+		try {
+			long start = System.nanoTime();
+			StoredArtifact artifact = ArtifactStore.instance.fetch(key, locator);
+			install(artifact, jvmDir);
+			String[] parts = key.split(":", 3); //$NON-NLS-1$
+			String provider = parts.length > 2 ? parts[1] : key;
+			MetricsRegistry.instance.histogram(MetricsRegistry.PREFIX + "jvm_install_duration_seconds", "Time taken to fetch and extract JVM runtimes", "provider", provider) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				.record(System.nanoTime() - start);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Extracts the given archive into a temporary directory alongside {@code jvmDir} and then moves
+	 * it into place, so that an interrupted extraction is never mistaken for a complete runtime.
+	 * 
+	 * @param artifact the stored JVM archive
+	 * @param jvmDir the target JVM directory
+	 * @throws IOException if there is a problem extracting the archive
+	 * @since 4.0.0
+	 */
+	protected static void install(StoredArtifact artifact, Path jvmDir) throws IOException {
 		// TODO consider replacing with NIO filesystem operations, though they don't inherently support .tar.gz
+		Files.createDirectories(jvmDir.getParent());
+		Path tempDir = Files.createTempDirectory(jvmDir.getParent(), "." + jvmDir.getFileName()); //$NON-NLS-1$
 		try {
-			OpenLibertyUtil.download(new URL(url), (contentType, is) -> {
-				switch(String.valueOf(contentType)) {
-				case "application/zip": //$NON-NLS-1$
+			String fileName = StringUtil.toString(artifact.getFileName()).toLowerCase();
+			try(InputStream is = Files.newInputStream(artifact.getPath())) {
+				if(fileName.endsWith(".zip")) { //$NON-NLS-1$
 					try(ZipInputStream zis = new ZipInputStream(is)) {
-						extract(zis, jvmDir);
+						extract(zis, tempDir);
 					}
-					break;
-				case "application/x-compressed-tar": //$NON-NLS-1$
-				case "application/gzip": //$NON-NLS-1$
-					try(GZIPInputStream gzis = new GZIPInputStream(is)) {
-						try(TarArchiveInputStream tis = new TarArchiveInputStream(gzis)) {
-							extract(tis, jvmDir);
-						}
-					}
-					break;
-				default:
-					throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unsupportedContentType"), contentType)); //$NON-NLS-1$
+					// ZIP files don't carry POSIX permissions
+					markExecutables(tempDir);
+				} else if(fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) { //$NON-NLS-1$ //$NON-NLS-2$
+					extractTarGz(is, tempDir);
+				} else {
+					throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unsupportedArchiveType"), artifact.getFileName())); //$NON-NLS-1$
 				}
-				return null;
-			});
-		} catch(IOException e) {
-			throw new UncheckedIOException(e);
+			}
+			
+			// Clear out any remnants of an earlier incomplete deployment
+			if(Files.exists(jvmDir)) {
+				OpenLibertyUtil.deltree(jvmDir);
+			}
+			Files.move(tempDir, jvmDir, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if(Files.exists(tempDir)) {
+				OpenLibertyUtil.deltree(tempDir);
+			}
 		}
 	}
 	
@@ -134,10 +249,7 @@ public abstract class AbstractDownloadingJavaRuntimeProvider implements JavaRunt
 			
 			if(StringUtil.isNotEmpty(name)) {
 				// The first directory is a container
-				int slashIndex = name.indexOf('/');
-				if(slashIndex > -1) {
-					name = name.substring(slashIndex+1);
-				}
+				name = stripContainer(name);
 				
 				if(StringUtil.isNotEmpty(name)) {
 					if(log.isLoggable(Level.FINER)) {
@@ -159,35 +271,36 @@ public abstract class AbstractDownloadingJavaRuntimeProvider implements JavaRunt
 		}
 	}
 	
-	protected static void extract(TarArchiveInputStream tis, Path dest) throws IOException {
-		TarArchiveEntry entry = tis.getNextTarEntry();
-		while(entry != null) {
-			String name = entry.getName();
-
-			if(StringUtil.isNotEmpty(name)) {
-				// The first directory is a container
-				int slashIndex = name.indexOf('/');
-				if(slashIndex > -1) {
-					name = name.substring(slashIndex+1);
-				}
-				
-				if(StringUtil.isNotEmpty(name)) {
-					if(log.isLoggable(Level.FINER)) {
-						log.finer(format(Messages.getString("JavaRuntimeProvider.deployingFile"), name)); //$NON-NLS-1$
-					}
-					
-					Path path = dest.resolve(name);
-					if(entry.isDirectory()) {
-						Files.createDirectories(path);
-					} else {
-						Files.createDirectories(path.getParent());
-						Files.copy(tis, path, StandardCopyOption.REPLACE_EXISTING);
-					}
-				}
-			}
-			
-			entry = tis.getNextTarEntry();
+	/**
+	 * Extracts a {@code .tar.gz} JVM archive using a {@link PipelinedTarExtractor}, removing the
+	 * containing directory and restoring file permissions from the archive.
+	 * 
+	 * @param is the compressed archive data
+	 * @param dest the directory to extract to
+	 * @throws IOException if there is a problem extracting the archive
+	 * @since 4.0.0
+	 */
+	protected static void extractTarGz(InputStream is, Path dest) throws IOException {
+		PipelinedTarExtractor extractor = new PipelinedTarExtractor(DominoThreadFactory.getExecutor(Pool.PROVISIONING), PipelinedTarExtractor.DEFAULT_WRITER_COUNT, AbstractDownloadingJavaRuntimeProvider::stripContainer);
+		extractor.extract(is, dest);
+	}
+	
+	/**
+	 * Removes the first directory from an archive entry name, since JVM archives wrap their
+	 * content in a versioned container directory.
+	 * 
+	 * @param name the archive entry name
+	 * @return the name relative to the container directory, or an empty string for the
+	 * 		container itself
+	 * @since 4.0.0
+	 */
+	protected static String stripContainer(String name) {
+		String result = StringUtil.toString(name);
+		int slashIndex = result.indexOf('/');
+		if(slashIndex > -1) {
+			result = result.substring(slashIndex+1);
 		}
+		return result;
 	}
 	
 	protected static String getOsName() {
@@ -0,0 +1,401 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.jvm;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+import org.openntf.openliberty.domino.util.json.JSONArray;
+import org.openntf.openliberty.domino.util.json.JSONObject;
+import org.openntf.openliberty.domino.util.json.JSONValue;
+import org.openntf.openliberty.domino.util.json.parser.ContentHandler;
+import org.openntf.openliberty.domino.util.json.parser.JSONParser;
+import org.openntf.openliberty.domino.util.json.parser.ParseException;
+
+/**
+ * Maintains a locally-persisted copy of a GitHub release list, retaining only the release
+ * and asset properties needed to locate JVM downloads.
+ * 
+ * <p>Catalogs are stored in {@code jvm/catalog} within the runtime base directory. Once a
+ * catalog has been fetched, {@link #getReleases()} always answers from the local copy and,
+ * when the copy is older than {@link #REFRESH_INTERVAL}, schedules a conditional request
+ * on {@link DominoThreadFactory#getScheduler()} to bring it up to date. Only the very first
+ * lookup for a given URL waits on the network.</p>
+ * 
+ * <p>Responses are read with a streaming {@link ContentHandler}, so the full GitHub API
+ * payload, which includes author and uploader details for every asset, is never built
+ * in memory.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class GitHubReleaseCatalog {
+	private static final Logger log = OpenLibertyLog.instance.log;
+	
+	/** The age after which a persisted catalog is refreshed in the background */
+	public static final long REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(6);
+	
+	/** The release properties retained in the catalog */
+	public static final Set<String> RELEASE_PROPERTIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		"tag_name", "prerelease", "draft", "published_at" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	)));
+	/** The asset properties retained in the catalog */
+	public static final Set<String> ASSET_PROPERTIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		"name", "browser_download_url", "content_type", "size" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	)));
+	
+	private static final String PROP_ASSETS = "assets"; //$NON-NLS-1$
+	private static final String PROP_URL = "url"; //$NON-NLS-1$
+	private static final String PROP_ETAG = "etag"; //$NON-NLS-1$
+	private static final String PROP_LASTMODIFIED = "lastModified"; //$NON-NLS-1$
+	private static final String PROP_FETCHED = "fetched"; //$NON-NLS-1$
+	private static final String PROP_RELEASES = "releases"; //$NON-NLS-1$
+	
+	private static final Map<String, GitHubReleaseCatalog> catalogs = new ConcurrentHashMap<>();
+	
+	/**
+	 * Retrieves the shared catalog for the given release-list URL.
+	 * 
+	 * @param providerName a human-readable name of the distribution, used for logging
+	 * @param releasesUrl the GitHub API URL of the release list
+	 * @return the catalog for {@code releasesUrl}
+	 */
+	public static GitHubReleaseCatalog get(String providerName, String releasesUrl) {
+		return catalogs.computeIfAbsent(releasesUrl, url -> new GitHubReleaseCatalog(providerName, url));
+	}
+	
+	private final String providerName;
+	private final String releasesUrl;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private volatile Snapshot snapshot;
+	
+	private GitHubReleaseCatalog(String providerName, String releasesUrl) {
+		this.providerName = providerName;
+		this.releasesUrl = releasesUrl;
+	}
+	
+	/**
+	 * Retrieves the releases in the catalog, in the order provided by GitHub. Each release
+	 * is a map containing the properties in {@link #RELEASE_PROPERTIES} and an {@code "assets"}
+	 * list of maps containing the properties in {@link #ASSET_PROPERTIES}.
+	 * 
+	 * @return the cataloged releases
+	 * @throws IOException if no catalog has been persisted and the release list could not
+	 * 		be fetched
+	 */
+	public List<Map<String, Object>> getReleases() throws IOException {
+		Snapshot current = getSnapshot();
+		if(current == null) {
+			synchronized(this) {
+				current = getSnapshot();
+				if(current == null) {
+					current = refresh(null);
+				}
+			}
+		} else if(System.currentTimeMillis() - current.fetched > REFRESH_INTERVAL) {
+			scheduleRefresh();
+		}
+		return current.releases;
+	}
+	
+	/**
+	 * Schedules a background refresh of the catalog, unless one is already in progress or
+	 * the runtime is in offline mode.
+	 */
+	public void scheduleRefresh() {
+		RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+		if(config.isArtifactOfflineMode()) {
+			return;
+		}
+		if(refreshing.compareAndSet(false, true)) {
+			DominoThreadFactory.getScheduler().submit(() -> {
+				try {
+					synchronized(this) {
+						refresh(getSnapshot());
+					}
+				} catch(Throwable t) {
+					if(log.isLoggable(Level.WARNING)) {
+						log.log(Level.WARNING, format(Messages.getString("GitHubReleaseCatalog.exceptionRefreshingCatalog"), providerName, releasesUrl), t); //$NON-NLS-1$
+					}
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private Snapshot getSnapshot() throws IOException {
+		Snapshot result = this.snapshot;
+		if(result == null) {
+			result = load();
+			this.snapshot = result;
+		}
+		return result;
+	}
+	
+	private Snapshot refresh(Snapshot current) throws IOException {
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("JavaRuntimeProvider.downloadingReleaseListFrom"), providerName, releasesUrl)); //$NON-NLS-1$
+		}
+		
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("Accept", "application/vnd.github+json"); //$NON-NLS-1$ //$NON-NLS-2$
+		if(current != null) {
+			if(StringUtil.isNotEmpty(current.etag)) {
+				headers.put("If-None-Match", current.etag); //$NON-NLS-1$
+			}
+			if(StringUtil.isNotEmpty(current.lastModified)) {
+				headers.put("If-Modified-Since", current.lastModified); //$NON-NLS-1$
+			}
+		}
+		
+		Snapshot result;
+		HttpURLConnection conn = OpenLibertyUtil.openConnection(new URL(releasesUrl), headers);
+		try {
+			int responseCode = conn.getResponseCode();
+			if(responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && current != null) {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("GitHubReleaseCatalog.catalogNotModified"), providerName)); //$NON-NLS-1$
+				}
+				result = new Snapshot(current.etag, current.lastModified, System.currentTimeMillis(), current.releases);
+			} else if(responseCode == HttpURLConnection.HTTP_OK) {
+				ReleaseListHandler handler = new ReleaseListHandler();
+				try(InputStream is = conn.getInputStream(); Reader r = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+					new JSONParser().parse(r, handler);
+				} catch(ParseException e) {
+					throw new IOException(e);
+				}
+				result = new Snapshot(conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"), System.currentTimeMillis(), handler.releases); //$NON-NLS-1$ //$NON-NLS-2$
+			} else {
+				throw new IOException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, conn.getURL())); //$NON-NLS-1$
+			}
+		} finally {
+			conn.disconnect();
+		}
+		
+		store(result);
+		this.snapshot = result;
+		return result;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Snapshot load() throws IOException {
+		Path file = getCatalogFile();
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try(Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			Map<String, Object> json = (Map<String, Object>)new JSONParser().parse(r);
+			if(!releasesUrl.equals(json.get(PROP_URL))) {
+				return null;
+			}
+			Number fetched = (Number)json.get(PROP_FETCHED);
+			List<Map<String, Object>> releases = (List<Map<String, Object>>)json.get(PROP_RELEASES);
+			if(fetched == null || releases == null) {
+				return null;
+			}
+			return new Snapshot((String)json.get(PROP_ETAG), (String)json.get(PROP_LASTMODIFIED), fetched.longValue(), releases);
+		} catch(ParseException | ClassCastException e) {
+			// Treat a damaged catalog as missing, and it will be replaced on the next fetch
+			if(log.isLoggable(Level.WARNING)) {
+				log.warning(format(Messages.getString("GitHubReleaseCatalog.invalidCatalog"), file)); //$NON-NLS-1$
+			}
+			return null;
+		}
+	}
+	
+	private void store(Snapshot snapshot) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put(PROP_URL, releasesUrl);
+		if(snapshot.etag != null) {
+			json.put(PROP_ETAG, snapshot.etag);
+		}
+		if(snapshot.lastModified != null) {
+			json.put(PROP_LASTMODIFIED, snapshot.lastModified);
+		}
+		json.put(PROP_FETCHED, snapshot.fetched);
+		json.put(PROP_RELEASES, snapshot.releases);
+		
+		Path file = getCatalogFile();
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp"); //$NON-NLS-1$
+		try {
+			try(Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING)) {
+				JSONValue.writeJSONString(json, w);
+			}
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+	
+	private Path getCatalogFile() {
+		RuntimeConfigurationProvider config = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
+		String name = releasesUrl.replaceFirst("^[a-zA-Z]+://", "").replaceAll("[^a-zA-Z0-9.-]+", "_"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		return config.getBaseDirectory().resolve("jvm").resolve("catalog").resolve(name + ".json"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+	
+	private static class Snapshot {
+		private final String etag;
+		private final String lastModified;
+		private final long fetched;
+		private final List<Map<String, Object>> releases;
+		
+		public Snapshot(String etag, String lastModified, long fetched, List<Map<String, Object>> releases) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.fetched = fetched;
+			this.releases = releases;
+		}
+	}
+	
+	/**
+	 * Extracts the retained properties from a GitHub release-list response as it is parsed.
+	 * Container depth is tracked so that nested objects such as {@code "author"} and
+	 * {@code "uploader"} are skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	private static class ReleaseListHandler implements ContentHandler {
+		private static final int DEPTH_RELEASE = 2;
+		private static final int DEPTH_ASSETS = 3;
+		private static final int DEPTH_ASSET = 4;
+		
+		private final List<Map<String, Object>> releases = new JSONArray();
+		private int depth;
+		private String releaseKey;
+		private String assetKey;
+		private Map<String, Object> release;
+		private List<Map<String, Object>> assets;
+		private Map<String, Object> asset;
+		
+		@Override
+		public void startJSON() {
+			// NOP
+		}
+		
+		@Override
+		public void endJSON() {
+			// NOP
+		}
+		
+		@Override
+		public boolean startObject() {
+			depth++;
+			if(depth == DEPTH_RELEASE) {
+				release = new JSONObject();
+			} else if(depth == DEPTH_ASSET && assets != null) {
+				asset = new JSONObject();
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean endObject() {
+			if(depth == DEPTH_RELEASE && release != null) {
+				releases.add(release);
+				release = null;
+			} else if(depth == DEPTH_ASSET && asset != null) {
+				assets.add(asset);
+				asset = null;
+			}
+			depth--;
+			return true;
+		}
+		
+		@Override
+		public boolean startObjectEntry(String key) {
+			if(depth == DEPTH_RELEASE) {
+				releaseKey = key;
+			} else if(depth == DEPTH_ASSET) {
+				assetKey = key;
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean endObjectEntry() {
+			if(depth == DEPTH_RELEASE) {
+				releaseKey = null;
+			} else if(depth == DEPTH_ASSET) {
+				assetKey = null;
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean startArray() {
+			depth++;
+			if(depth == DEPTH_ASSETS && release != null && PROP_ASSETS.equals(releaseKey)) {
+				assets = new JSONArray();
+				release.put(PROP_ASSETS, assets);
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean endArray() {
+			if(depth == DEPTH_ASSETS) {
+				assets = null;
+			}
+			depth--;
+			return true;
+		}
+		
+		@Override
+		public boolean primitive(Object value) {
+			if(depth == DEPTH_RELEASE && release != null && RELEASE_PROPERTIES.contains(releaseKey)) {
+				release.put(releaseKey, value);
+			} else if(depth == DEPTH_ASSET && asset != null && ASSET_PROPERTIES.contains(assetKey)) {
+				asset.put(assetKey, value);
+			}
+			return true;
+		}
+	}
+}
@@ -17,15 +17,19 @@ package org.openntf.openliberty.domino.jvm;
 
 import static java.text.MessageFormat.format;
 
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.openntf.openliberty.domino.artifact.ArtifactChecksum;
+import org.openntf.openliberty.domino.artifact.ArtifactLocator;
+import org.openntf.openliberty.domino.artifact.RemoteArtifact;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
@@ -52,7 +56,6 @@ public class GraalVMCEJavaRuntimeProvider extends AbstractDownloadingJavaRuntime
 		return TYPE_GRAALVMCE.equals(identifier.getType());
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public Path getJavaHome(JVMIdentifier identifier) {
 		String version = identifier.getVersion();
@@ -76,40 +79,60 @@ public class GraalVMCEJavaRuntimeProvider extends AbstractDownloadingJavaRuntime
 		}
 		
 		// Otherwise, look for a release on GitHub
-		if("1.8".equals(version)) { //$NON-NLS-1$
-			version = "8"; //$NON-NLS-1$
-		}
-		List<Map<String, Object>> releases = fetchGitHubReleasesList(PROVIDER_NAME, API_RELEASES);
-		
-		// Find any applicable releases, in order, as some releases may contain only certain platforms
-		List<Map<String, Object>> validReleases = releases.stream()
-			.filter(release -> !(Boolean)release.get("prerelease")) //$NON-NLS-1$
-			.filter(release -> !(Boolean)release.get("draft")) //$NON-NLS-1$
-			.filter(release -> release.containsKey("assets")) //$NON-NLS-1$
-			.collect(Collectors.toList());
-		if(validReleases.isEmpty()) {
-			throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToLocateJDKBuild"), PROVIDER_NAME, identifier, API_RELEASES)); //$NON-NLS-1$
-		}
-		
-		String qualifier = format("graalvm-ce-java{0}-{1}-{2}", version, getOsName(), getOsArch()); //$NON-NLS-1$
-		Map<String, Object> download = validReleases.stream()
-			.map(release -> (List<Map<String, Object>>)release.get("assets")) //$NON-NLS-1$
-			.flatMap(Collection::stream)
-			.filter(asset -> validDownloadName(qualifier, StringUtil.toString(asset.get("name")))) //$NON-NLS-1$
-			.findFirst()
-			.orElseThrow(() -> new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToFindJDKBuildFor"), PROVIDER_NAME, qualifier))); //$NON-NLS-1$
-		if(log.isLoggable(Level.INFO)) {
-			log.info(format(Messages.getString("JavaRuntimeProvider.downloadingJDKFrom"), PROVIDER_NAME, download.get("browser_download_url")));  //$NON-NLS-1$//$NON-NLS-2$
-		}
-		
-		// GraalVM content types are all "application/binary", so we have to use the extension
-		download((String)download.get("browser_download_url"), jvmDir); //$NON-NLS-1$
-
-		markExecutables(jvmDir);
+		download(getArtifactKey(identifier), getArtifactLocator(identifier), jvmDir);
 		
 		return jvmDir;
 	}
 	
+	@Override
+	protected String getArtifactKey(JVMIdentifier identifier) {
+		return buildArtifactKey(TYPE_GRAALVMCE, normalizeVersion(identifier.getVersion()), identifier.getType());
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	protected ArtifactLocator getArtifactLocator(JVMIdentifier identifier) {
+		String qualifier = format("graalvm-ce-java{0}-{1}-{2}", normalizeVersion(identifier.getVersion()), getOsName(), getOsArch()); //$NON-NLS-1$
+		return () -> {
+			List<Map<String, Object>> releases = fetchGitHubReleasesList(PROVIDER_NAME, API_RELEASES);
+			
+			// Find any applicable releases, in order, as some releases may contain only certain platforms
+			List<Map<String, Object>> validReleases = releases.stream()
+				.filter(release -> !(Boolean)release.get("prerelease")) //$NON-NLS-1$
+				.filter(release -> !(Boolean)release.get("draft")) //$NON-NLS-1$
+				.filter(release -> release.containsKey("assets")) //$NON-NLS-1$
+				.collect(Collectors.toList());
+			if(validReleases.isEmpty()) {
+				throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToLocateJDKBuild"), PROVIDER_NAME, identifier, API_RELEASES)); //$NON-NLS-1$
+			}
+			
+			Map<String, Object> download = null;
+			List<Map<String, Object>> releaseAssets = null;
+			for(Map<String, Object> release : validReleases) {
+				List<Map<String, Object>> assets = (List<Map<String, Object>>)release.get("assets"); //$NON-NLS-1$
+				Optional<Map<String, Object>> asset = assets.stream()
+					.filter(a -> validDownloadName(qualifier, StringUtil.toString(a.get("name")))) //$NON-NLS-1$
+					.findFirst();
+				if(asset.isPresent()) {
+					download = asset.get();
+					releaseAssets = assets;
+					break;
+				}
+			}
+			if(download == null) {
+				throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToFindJDKBuildFor"), PROVIDER_NAME, qualifier)); //$NON-NLS-1$
+			}
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("JavaRuntimeProvider.downloadingJDKFrom"), PROVIDER_NAME, download.get("browser_download_url")));  //$NON-NLS-1$//$NON-NLS-2$
+			}
+			
+			// GraalVM content types are all "application/binary", so we have to use the extension
+			String assetName = StringUtil.toString(download.get("name")); //$NON-NLS-1$
+			ArtifactChecksum checksum = findGitHubChecksum(releaseAssets, assetName);
+			return new RemoteArtifact(assetName, new URL((String)download.get("browser_download_url")), checksum); //$NON-NLS-1$
+		};
+	}
+	
 	private static boolean validDownloadName(String qualifier, String assetName) {
 		return assetName.startsWith(qualifier) && (assetName.endsWith(".zip") || assetName.endsWith(".tar.gz")); //$NON-NLS-1$ //$NON-NLS-2$
 	}
@@ -45,6 +45,21 @@ public interface JavaRuntimeProvider {
 	 */
 	Path getJavaHome(JVMIdentifier identifier);
 	
+	/**
+	 * Ensures that any archives needed to provide the requested runtime are present in the
+	 * {@link org.openntf.openliberty.domino.artifact.ArtifactStore ArtifactStore}, even if the
+	 * runtime is already installed, so that they can be exported to a mirror.
+	 * 
+	 * <p>The default implementation does nothing, which is appropriate for providers that
+	 * don't download runtimes.</p>
+	 * 
+	 * @param identifier the desired JVM version
+	 * @since 4.0.0
+	 */
+	default void fetchArtifacts(JVMIdentifier identifier) {
+		// NOP
+	}
+	
 	/**
 	 * Determines the priority of this provider relative to other implementations that can also
 	 * provide the same type. A higher number means higher priority.
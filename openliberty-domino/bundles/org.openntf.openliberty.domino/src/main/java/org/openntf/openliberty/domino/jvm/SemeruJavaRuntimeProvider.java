@@ -17,15 +17,19 @@ package org.openntf.openliberty.domino.jvm;
 
 import static java.text.MessageFormat.format;
 
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.openntf.openliberty.domino.artifact.ArtifactChecksum;
+import org.openntf.openliberty.domino.artifact.ArtifactLocator;
+import org.openntf.openliberty.domino.artifact.RemoteArtifact;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
@@ -53,7 +57,6 @@ public class SemeruJavaRuntimeProvider extends AbstractDownloadingJavaRuntimePro
 		return TYPE_OPENJ9.equals(identifier.getType());
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public Path getJavaHome(JVMIdentifier identifier) {
 		String version = identifier.getVersion();
@@ -77,50 +80,70 @@ public class SemeruJavaRuntimeProvider extends AbstractDownloadingJavaRuntimePro
 		}
 		
 		// Otherwise, look for a release on GitHub
-		if("1.8".equals(version)) { //$NON-NLS-1$
-			version = "8"; //$NON-NLS-1$
-		}
-		String releasesUrl = format(API_RELEASES, version);
-		// TODO support pagination here (page= and per_page query params, 
-		List<Map<String, Object>> releases = fetchGitHubReleasesList(PROVIDER_NAME, releasesUrl);
-		
-		// Find any applicable releases, in order, as some releases may contain only certain platforms
-		List<Map<String, Object>> validReleases = releases.stream()
-			.filter(release -> !(Boolean)release.get("prerelease")) //$NON-NLS-1$
-			.filter(release -> !(Boolean)release.get("draft")) //$NON-NLS-1$
-			.filter(release -> release.containsKey("assets")) //$NON-NLS-1$
-			.collect(Collectors.toList());
-		if(validReleases.isEmpty()) {
-			throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToLocateJDKBuild"), PROVIDER_NAME, identifier, releasesUrl)); //$NON-NLS-1$
-		}
-		
-		// HotSpot:
-		//    Linux: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x64_linux_hotspot_11.0.6_10.tar.gz
-		//    Windows x64: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x64_windows_hotspot_11.0.6_10.zip
-		//    Windows x86: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x86-32_windows_hotspot_11.0.6_10.zip
-		// OpenJ9:
-		//    Linux: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10_openj9-0.18.1/OpenJDK11U-jdk_x64_linux_openj9_11.0.6_10_openj9-0.18.1.tar.gz
-		//    Windows x64: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10_openj9-0.18.1/OpenJDK11U-jdk_x64_windows_openj9_11.0.6_10_openj9-0.18.1.zip
-		String qualifier = format("jdk_{0}_{1}", getOsArch(), getOsName()); //$NON-NLS-1$
-		Map<String, Object> download = validReleases.stream()
-			.map(release -> (List<Map<String, Object>>)release.get("assets")) //$NON-NLS-1$
-			.flatMap(Collection::stream)
-			.filter(asset -> !StringUtil.toString(asset.get("name")).contains("-testimage")) //$NON-NLS-1$ //$NON-NLS-2$
-			.filter(asset -> !StringUtil.toString(asset.get("name")).contains("-debugimage")) //$NON-NLS-1$ //$NON-NLS-2$
-			.filter(asset -> StringUtil.toString(asset.get("name")).contains("-" + qualifier + "_")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			.filter(asset -> "application/x-compressed-tar".equals(asset.get("content_type")) || "application/zip".equals(asset.get("content_type"))) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-			.findFirst()
-			.orElseThrow(() -> new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToFindJDKBuildFor"), PROVIDER_NAME, qualifier))); //$NON-NLS-1$
-		if(log.isLoggable(Level.INFO)) {
-			log.info(format(Messages.getString("JavaRuntimeProvider.downloadingJDKFrom"), PROVIDER_NAME, download.get("browser_download_url")));  //$NON-NLS-1$//$NON-NLS-2$
-		}
-		
-		download((String)download.get("browser_download_url"), jvmDir); //$NON-NLS-1$
-		
-		markExecutables(jvmDir);
+		download(getArtifactKey(identifier), getArtifactLocator(identifier), jvmDir);
 		
 		return jvmDir;
 	}
+	
+	@Override
+	protected String getArtifactKey(JVMIdentifier identifier) {
+		return buildArtifactKey(TYPE_OPENJ9, normalizeVersion(identifier.getVersion()), identifier.getType());
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	protected ArtifactLocator getArtifactLocator(JVMIdentifier identifier) {
+		String releasesUrl = format(API_RELEASES, normalizeVersion(identifier.getVersion()));
+		return () -> {
+			// TODO support pagination here (page= and per_page query params, 
+			List<Map<String, Object>> releases = fetchGitHubReleasesList(PROVIDER_NAME, releasesUrl);
+			
+			// Find any applicable releases, in order, as some releases may contain only certain platforms
+			List<Map<String, Object>> validReleases = releases.stream()
+				.filter(release -> !(Boolean)release.get("prerelease")) //$NON-NLS-1$
+				.filter(release -> !(Boolean)release.get("draft")) //$NON-NLS-1$
+				.filter(release -> release.containsKey("assets")) //$NON-NLS-1$
+				.collect(Collectors.toList());
+			if(validReleases.isEmpty()) {
+				throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToLocateJDKBuild"), PROVIDER_NAME, identifier, releasesUrl)); //$NON-NLS-1$
+			}
+			
+			// HotSpot:
+			//    Linux: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x64_linux_hotspot_11.0.6_10.tar.gz
+			//    Windows x64: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x64_windows_hotspot_11.0.6_10.zip
+			//    Windows x86: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10/OpenJDK11U-jdk_x86-32_windows_hotspot_11.0.6_10.zip
+			// OpenJ9:
+			//    Linux: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10_openj9-0.18.1/OpenJDK11U-jdk_x64_linux_openj9_11.0.6_10_openj9-0.18.1.tar.gz
+			//    Windows x64: https://github.com/AdoptOpenJDK/openjdk11-binaries/releases/download/jdk-11.0.6%2B10_openj9-0.18.1/OpenJDK11U-jdk_x64_windows_openj9_11.0.6_10_openj9-0.18.1.zip
+			String qualifier = format("jdk_{0}_{1}", getOsArch(), getOsName()); //$NON-NLS-1$
+			Map<String, Object> download = null;
+			List<Map<String, Object>> releaseAssets = null;
+			for(Map<String, Object> release : validReleases) {
+				List<Map<String, Object>> assets = (List<Map<String, Object>>)release.get("assets"); //$NON-NLS-1$
+				Optional<Map<String, Object>> asset = assets.stream()
+					.filter(a -> !StringUtil.toString(a.get("name")).contains("-testimage")) //$NON-NLS-1$ //$NON-NLS-2$
+					.filter(a -> !StringUtil.toString(a.get("name")).contains("-debugimage")) //$NON-NLS-1$ //$NON-NLS-2$
+					.filter(a -> StringUtil.toString(a.get("name")).contains("-" + qualifier + "_")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					.filter(a -> "application/x-compressed-tar".equals(a.get("content_type")) || "application/zip".equals(a.get("content_type"))) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					.findFirst();
+				if(asset.isPresent()) {
+					download = asset.get();
+					releaseAssets = assets;
+					break;
+				}
+			}
+			if(download == null) {
+				throw new IllegalStateException(format(Messages.getString("JavaRuntimeProvider.unableToFindJDKBuildFor"), PROVIDER_NAME, qualifier)); //$NON-NLS-1$
+			}
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("JavaRuntimeProvider.downloadingJDKFrom"), PROVIDER_NAME, download.get("browser_download_url")));  //$NON-NLS-1$//$NON-NLS-2$
+			}
+			
+			String assetName = StringUtil.toString(download.get("name")); //$NON-NLS-1$
+			ArtifactChecksum checksum = findGitHubChecksum(releaseAssets, assetName);
+			return new RemoteArtifact(assetName, new URL((String)download.get("browser_download_url")), checksum); //$NON-NLS-1$
+		};
+	}
 
 	private static String getOsArch() {
 		String arch = System.getProperty("os.arch"); //$NON-NLS-1$
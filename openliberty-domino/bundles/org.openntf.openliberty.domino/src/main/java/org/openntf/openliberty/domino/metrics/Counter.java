@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically-increasing count, suitable for incrementing on request-handling threads.
+ * 
+ * <p>Incrementing the counter costs a single uncontended {@link LongAdder} update and does
+ * not allocate.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class Counter {
+	private final LongAdder value = new LongAdder();
+	
+	/**
+	 * Adds one to the count.
+	 */
+	public void increment() {
+		value.increment();
+	}
+	
+	/**
+	 * Adds to the count.
+	 * 
+	 * @param amount the non-negative amount to add
+	 */
+	public void add(long amount) {
+		value.add(amount);
+	}
+	
+	/**
+	 * @return the current count
+	 */
+	public long get() {
+		return value.sum();
+	}
+	
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with fixed, exponentially-sized buckets, suitable for
+ * recording on request-handling threads.
+ * 
+ * <p>Bucket {@code i} counts durations of less than 2<sup>i</sup> microseconds, so
+ * percentiles are estimated to within a factor of two; the last bucket also counts any longer
+ * durations. Recording a value costs a few atomic increments and does not allocate.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class Histogram {
+	/** The number of buckets, with the last covering durations of about 18 minutes and above */
+	public static final int BUCKET_COUNT = 31;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder sumNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	
+	/**
+	 * Records a duration.
+	 * 
+	 * @param nanos the duration to record, in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketIndex(nanos / 1000));
+		sumNanos.add(nanos);
+		long max = maxNanos.get();
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+	
+	/**
+	 * @return a point-in-time view of the recorded values
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new Snapshot(counts, sumNanos.sum(), maxNanos.get());
+	}
+	
+	/**
+	 * @param index the index of the bucket, from {@code 0} to {@link #BUCKET_COUNT}{@code - 1}
+	 * @return the exclusive upper bound of the bucket in microseconds, or {@link Long#MAX_VALUE}
+	 * 		for the last bucket
+	 */
+	public static long getBucketUpperBoundMicros(int index) {
+		return index >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << index;
+	}
+	
+	private static int bucketIndex(long micros) {
+		int index = 64 - Long.numberOfLeadingZeros(micros);
+		return Math.min(index, BUCKET_COUNT - 1);
+	}
+	
+	/**
+	 * Represents a point-in-time view of a {@link Histogram}. Since the histogram is updated
+	 * concurrently, the fields may differ slightly from one another.
+	 */
+	public static class Snapshot {
+		private final long[] buckets;
+		private final long count;
+		private final long sumNanos;
+		private final long maxNanos;
+		
+		Snapshot(long[] buckets, long sumNanos, long maxNanos) {
+			this.buckets = buckets;
+			long count = 0;
+			for(long bucket : buckets) {
+				count += bucket;
+			}
+			this.count = count;
+			this.sumNanos = sumNanos;
+			this.maxNanos = maxNanos;
+		}
+		
+		/**
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * @return the sum of the recorded values, in nanoseconds
+		 */
+		public long getSumNanos() {
+			return sumNanos;
+		}
+		
+		/**
+		 * @return the largest recorded value, in milliseconds
+		 */
+		public long getMaxMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+		}
+		
+		/**
+		 * @return the mean of the recorded values in milliseconds, or {@code 0} if there are none
+		 */
+		public double getMeanMillis() {
+			return count == 0 ? 0 : sumNanos / 1_000_000d / count;
+		}
+		
+		/**
+		 * @param index the index of the bucket
+		 * @return the number of values recorded in the bucket
+		 * @see Histogram#getBucketUpperBoundMicros(int)
+		 */
+		public long getBucketCount(int index) {
+			return buckets[index];
+		}
+		
+		/**
+		 * Estimates a percentile of the recorded values by interpolating within the bucket
+		 * that contains it.
+		 * 
+		 * @param percentile the percentile to estimate, from {@code 0} to {@code 100}
+		 * @return the estimated value in milliseconds, or {@code 0} if there are no values
+		 */
+		public double getPercentileMillis(double percentile) {
+			if(count == 0) {
+				return 0;
+			}
+			double rank = Math.max(1, Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for(int i = 0; i < buckets.length; i++) {
+				if(buckets[i] == 0) {
+					continue;
+				}
+				if(seen + buckets[i] >= rank) {
+					double lower = i == 0 ? 0 : getBucketUpperBoundMicros(i - 1);
+					double upper = i == buckets.length - 1 ? TimeUnit.NANOSECONDS.toMicros(maxNanos) : getBucketUpperBoundMicros(i);
+					double fraction = (rank - seen) / buckets[i];
+					double micros = lower + (Math.max(upper, lower) - lower) * fraction;
+					return Math.min(micros, TimeUnit.NANOSECONDS.toMicros(maxNanos)) / 1000;
+				}
+				seen += buckets[i];
+			}
+			return getMaxMillis();
+		}
+		
+		@Override
+		public String toString() {
+			return MessageFormat.format("Histogram.Snapshot [count={0}, mean={1,number,0.###}ms, p50={2,number,0.###}ms, p90={3,number,0.###}ms, p99={4,number,0.###}ms, max={5}ms]", //$NON-NLS-1$
+				count, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99), getMaxMillis());
+		}
+	}
+}
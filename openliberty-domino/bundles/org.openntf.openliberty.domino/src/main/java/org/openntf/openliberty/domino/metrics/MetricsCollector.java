@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+/**
+ * Writes a set of metric families when the {@link MetricsRegistry} is scraped, for
+ * values that are already tracked elsewhere or whose labels are not known in advance.
+ * 
+ * <p>Collectors are called on the thread serving the scrape, so they should be quick and
+ * must not block on other runtime tasks.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ * @see MetricsRegistry#register(String, MetricsCollector)
+ */
+@FunctionalInterface
+public interface MetricsCollector {
+	/**
+	 * Writes the current values of this collector's metric families.
+	 * 
+	 * @param writer the writer to use
+	 */
+	void collect(MetricsWriter writer);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+import static java.text.MessageFormat.format;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+
+/**
+ * Holds the operational metrics published by the runtime and its extension bundles, and
+ * renders them in the OpenMetrics text format for scraping by Prometheus or compatible tools.
+ * 
+ * <p>Metrics are either created here with {@link #counter}, {@link #histogram}, and
+ * {@link #gauge}, or supplied on demand by a {@link MetricsCollector} registered with
+ * {@link #register}. Counters and histograms should be looked up once and kept in a field,
+ * so that recording a value on a hot path costs only the update itself.</p>
+ * 
+ * <p>By convention, metric names start with {@value #PREFIX}.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum MetricsRegistry {
+	instance;
+	
+	/** The prefix used for the names of metrics published by the runtime */
+	public static final String PREFIX = "openliberty_domino_"; //$NON-NLS-1$
+	
+	private static final Pattern NAME = Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$"); //$NON-NLS-1$
+	
+	private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+	private final Map<String, MetricsCollector> collectors = new ConcurrentSkipListMap<>();
+	
+	/**
+	 * Retrieves a counter, creating it and its family if needed.
+	 * 
+	 * @param name the name of the counter family, without the {@code _total} suffix
+	 * @param help a description of the family, used when it is first created
+	 * @param labels alternating label names and values identifying the counter within its family
+	 * @return the {@link Counter} for the name and labels
+	 * @throws IllegalArgumentException if {@code name} is already used by a different type of metric
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return getFamily(name, MetricsWriter.Type.COUNTER, help, Counter.class).get(labels, Counter::new);
+	}
+	
+	/**
+	 * Retrieves a latency histogram, creating it and its family if needed.
+	 * 
+	 * @param name the name of the histogram family, which should end with {@code _seconds}
+	 * @param help a description of the family, used when it is first created
+	 * @param labels alternating label names and values identifying the histogram within its family
+	 * @return the {@link Histogram} for the name and labels
+	 * @throws IllegalArgumentException if {@code name} is already used by a different type of metric
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return getFamily(name, MetricsWriter.Type.HISTOGRAM, help, Histogram.class).get(labels, Histogram::new);
+	}
+	
+	/**
+	 * Registers a gauge whose value is read when the registry is scraped, replacing any
+	 * existing gauge with the same name and labels.
+	 * 
+	 * @param name the name of the gauge family
+	 * @param help a description of the family, used when it is first created
+	 * @param value a thread-safe supplier of the current value
+	 * @param labels alternating label names and values identifying the gauge within its family
+	 * @throws IllegalArgumentException if {@code name} is already used by a different type of metric
+	 */
+	public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+		getFamily(name, MetricsWriter.Type.GAUGE, help, DoubleSupplier.class).put(labels, value);
+	}
+	
+	/**
+	 * Registers a collector, replacing any existing collector with the same key.
+	 * 
+	 * @param key a unique key for the collector, conventionally the common prefix of the
+	 * 		families it writes
+	 * @param collector the collector to call when the registry is scraped
+	 */
+	public void register(String key, MetricsCollector collector) {
+		collectors.put(key, collector);
+	}
+	
+	/**
+	 * @param key the key of the collector to remove
+	 */
+	public void unregister(String key) {
+		collectors.remove(key);
+	}
+	
+	/**
+	 * Writes all registered metrics. A collector that fails is logged and skipped, so that
+	 * one faulty source does not prevent the others from being reported.
+	 * 
+	 * @param writer the writer to use
+	 */
+	public void write(MetricsWriter writer) {
+		families.values().forEach(family -> family.write(writer));
+		collectors.forEach((key, collector) -> {
+			try {
+				collector.collect(writer);
+			} catch(RuntimeException e) {
+				Logger log = OpenLibertyLog.instance.log;
+				if(log.isLoggable(Level.WARNING)) {
+					log.log(Level.WARNING, format(Messages.getString("MetricsRegistry.collectorFailed"), key), e); //$NON-NLS-1$
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return the complete OpenMetrics text for all registered metrics
+	 * @see MetricsWriter#CONTENT_TYPE
+	 */
+	public String scrape() {
+		MetricsWriter writer = new MetricsWriter();
+		write(writer);
+		return writer.finish();
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private <T> Family<T> getFamily(String name, MetricsWriter.Type type, String help, Class<T> valueType) {
+		Family<?> family = families.computeIfAbsent(name, key -> {
+			if(!NAME.matcher(name).matches()) {
+				throw new IllegalArgumentException(format(Messages.getString("MetricsRegistry.invalidName"), name)); //$NON-NLS-1$
+			}
+			return new Family<>(name, type, help);
+		});
+		if(family.type != type) {
+			throw new IllegalArgumentException(format(Messages.getString("MetricsRegistry.typeMismatch"), name, family.type, type)); //$NON-NLS-1$
+		}
+		@SuppressWarnings("unchecked")
+		Family<T> result = (Family<T>)family;
+		return result;
+	}
+	
+	/**
+	 * A named set of metrics of one type, distinguished by their labels.
+	 */
+	private static class Family<T> {
+		private final String name;
+		private final MetricsWriter.Type type;
+		private final String help;
+		private final Map<List<String>, T> children = new ConcurrentHashMap<>();
+		
+		public Family(String name, MetricsWriter.Type type, String help) {
+			this.name = name;
+			this.type = type;
+			this.help = help;
+		}
+		
+		public T get(String[] labels, Supplier<T> factory) {
+			return children.computeIfAbsent(Arrays.asList(labels), key -> factory.get());
+		}
+		
+		public void put(String[] labels, T value) {
+			children.put(Arrays.asList(labels), value);
+		}
+		
+		public void write(MetricsWriter writer) {
+			writer.family(name, type, help);
+			children.forEach((labelList, value) -> {
+				String[] labels = labelList.toArray(new String[labelList.size()]);
+				switch(type) {
+				case COUNTER:
+					writer.counter(name, ((Counter)value).get(), labels);
+					break;
+				case HISTOGRAM:
+					writer.histogram(name, ((Histogram)value).snapshot(), labels);
+					break;
+				case GAUGE:
+				default:
+					writer.gauge(name, ((DoubleSupplier)value).getAsDouble(), labels);
+					break;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openntf.openliberty.domino.runtime.Messages;
+
+/**
+ * Writes metric families in the OpenMetrics text exposition format, which is also accepted
+ * by Prometheus.
+ * 
+ * <p>Labels are passed as alternating names and values. Each family must be written in full,
+ * starting with {@link #family(String, Type, String)}, before the next one is begun.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class MetricsWriter {
+	/** The content type to use when serving the output over HTTP */
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8"; //$NON-NLS-1$
+	
+	/** The {@code le} label values for each {@link Histogram} bucket, in seconds */
+	private static final String[] BUCKET_BOUNDS = new String[Histogram.BUCKET_COUNT];
+	static {
+		for(int i = 0; i < Histogram.BUCKET_COUNT - 1; i++) {
+			BUCKET_BOUNDS[i] = BigDecimal.valueOf(Histogram.getBucketUpperBoundMicros(i), 6).stripTrailingZeros().toPlainString();
+		}
+		BUCKET_BOUNDS[Histogram.BUCKET_COUNT - 1] = "+Inf"; //$NON-NLS-1$
+	}
+	
+	/**
+	 * The types of metric family supported by {@link MetricsWriter}.
+	 */
+	public enum Type {
+		COUNTER, GAUGE, HISTOGRAM
+	}
+	
+	private final StringBuilder out = new StringBuilder(4096);
+	
+	/**
+	 * Begins a new metric family.
+	 * 
+	 * @param name the name of the family, without any {@code _total} or unit suffix required by its type
+	 * @param type the type of the family
+	 * @param help a description of the family
+	 * @return this writer
+	 */
+	public MetricsWriter family(String name, Type type, String help) {
+		out.append("# TYPE ").append(name).append(' ').append(type.name().toLowerCase(Locale.US)).append('\n'); //$NON-NLS-1$
+		out.append("# HELP ").append(name).append(' '); //$NON-NLS-1$
+		escape(help);
+		out.append('\n');
+		return this;
+	}
+	
+	/**
+	 * Writes the value of a counter within a {@link Type#COUNTER} family.
+	 * 
+	 * @param family the name of the family
+	 * @param value the current count
+	 * @param labels alternating label names and values
+	 * @return this writer
+	 */
+	public MetricsWriter counter(String family, long value, String... labels) {
+		sampleName(family, "_total", labels); //$NON-NLS-1$
+		out.append(' ').append(value).append('\n');
+		return this;
+	}
+	
+	/**
+	 * Writes the value of a gauge within a {@link Type#GAUGE} family.
+	 * 
+	 * @param family the name of the family
+	 * @param value the current value
+	 * @param labels alternating label names and values
+	 * @return this writer
+	 */
+	public MetricsWriter gauge(String family, double value, String... labels) {
+		sampleName(family, null, labels);
+		out.append(' ');
+		appendValue(value);
+		out.append('\n');
+		return this;
+	}
+	
+	/**
+	 * Writes the buckets, count, and sum of a latency histogram within a {@link Type#HISTOGRAM}
+	 * family, in seconds.
+	 * 
+	 * @param family the name of the family
+	 * @param snapshot the histogram values
+	 * @param labels alternating label names and values
+	 * @return this writer
+	 */
+	public MetricsWriter histogram(String family, Histogram.Snapshot snapshot, String... labels) {
+		long cumulative = 0;
+		for(int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+			cumulative += snapshot.getBucketCount(i);
+			sampleName(family, "_bucket", labels, BUCKET_BOUNDS[i]); //$NON-NLS-1$
+			out.append(' ').append(cumulative).append('\n');
+		}
+		sampleName(family, "_count", labels); //$NON-NLS-1$
+		out.append(' ').append(cumulative).append('\n');
+		sampleName(family, "_sum", labels); //$NON-NLS-1$
+		out.append(' ');
+		appendValue(snapshot.getSumNanos() / (double)TimeUnit.SECONDS.toNanos(1));
+		out.append('\n');
+		return this;
+	}
+	
+	/**
+	 * Completes the output with the required end marker.
+	 * 
+	 * @return the complete exposition text
+	 */
+	public String finish() {
+		out.append("# EOF\n"); //$NON-NLS-1$
+		return out.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return out.toString();
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private void sampleName(String family, String suffix, String[] labels) {
+		sampleName(family, suffix, labels, null);
+	}
+	
+	private void sampleName(String family, String suffix, String[] labels, String bucketBound) {
+		if(labels.length % 2 != 0) {
+			throw new IllegalArgumentException(Messages.getString("MetricsWriter.unpairedLabels")); //$NON-NLS-1$
+		}
+		out.append(family);
+		if(suffix != null) {
+			out.append(suffix);
+		}
+		if(labels.length > 0 || bucketBound != null) {
+			out.append('{');
+			for(int i = 0; i < labels.length; i += 2) {
+				if(i > 0) {
+					out.append(',');
+				}
+				out.append(labels[i]).append("=\""); //$NON-NLS-1$
+				escape(labels[i + 1]);
+				out.append('"');
+			}
+			if(bucketBound != null) {
+				if(labels.length > 0) {
+					out.append(',');
+				}
+				out.append("le=\"").append(bucketBound).append('"'); //$NON-NLS-1$
+			}
+			out.append('}');
+		}
+	}
+	
+	private void appendValue(double value) {
+		if(Double.isNaN(value)) {
+			out.append("NaN"); //$NON-NLS-1$
+		} else if(Double.isInfinite(value)) {
+			out.append(value > 0 ? "+Inf" : "-Inf"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long)value);
+		} else {
+			out.append(value);
+		}
+	}
+	
+	private void escape(String value) {
+		if(value == null) {
+			return;
+		}
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '\\':
+				out.append("\\\\"); //$NON-NLS-1$
+				break;
+			case '\n':
+				out.append("\\n"); //$NON-NLS-1$
+				break;
+			case '"':
+				out.append("\\\""); //$NON-NLS-1$
+				break;
+			default:
+				out.append(c);
+				break;
+			}
+		}
+	}
+}
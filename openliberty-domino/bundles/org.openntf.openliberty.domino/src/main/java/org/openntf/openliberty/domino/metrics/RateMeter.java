@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the rate of events over the last minute using one-second slots, suitable for
+ * marking on request-handling threads.
+ * 
+ * <p>Marking an event costs one or two atomic operations and does not allocate. A slot
+ * being recycled concurrently with a mark may lose that mark, so the rate is approximate.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class RateMeter {
+	/** The number of one-second slots kept, including the current, partial, second */
+	private static final int SLOTS = 61;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+	private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+	
+	public RateMeter() {
+		for(int i = 0; i < SLOTS; i++) {
+			seconds.set(i, Long.MIN_VALUE);
+		}
+	}
+	
+	/**
+	 * Records an event at the current time.
+	 */
+	public void mark() {
+		long second = currentSecond();
+		int slot = (int)Math.floorMod(second, (long)SLOTS);
+		long stamp = seconds.get(slot);
+		if(stamp != second && seconds.compareAndSet(slot, stamp, second)) {
+			counts.set(slot, 0);
+		}
+		counts.incrementAndGet(slot);
+	}
+	
+	/**
+	 * @return the average number of events per second over the last full minute
+	 */
+	public double getRatePerSecond() {
+		long now = currentSecond();
+		long total = 0;
+		for(int i = 0; i < SLOTS; i++) {
+			long stamp = seconds.get(i);
+			// Skip the current, incomplete second
+			if(stamp < now && stamp >= now - (SLOTS - 1)) {
+				total += counts.get(i);
+			}
+		}
+		return total / (double)(SLOTS - 1);
+	}
+	
+	private static long currentSecond() {
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+	}
+}
@@ -15,13 +15,20 @@
  */
 package org.openntf.openliberty.domino.runtime;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.openntf.openliberty.domino.event.EventBus;
+import org.openntf.openliberty.domino.ext.StatisticsProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.PoolStatistics;
 
 /**
  * This class handles shared code for CLI-based runtime managers.
@@ -37,7 +44,7 @@ public class CLIManagerDelegate implements AutoCloseable {
 	 */
 	public void start() {
 		if(this.runner == null) {
-			this.runner = DominoThreadFactory.getExecutor().submit(OpenLibertyRuntime.instance);
+			this.runner = DominoThreadFactory.getExecutor(Pool.RUNTIME).submit(OpenLibertyRuntime.instance);
 		}
 	}
 	
@@ -103,9 +110,25 @@ public class CLIManagerDelegate implements AutoCloseable {
 			case HELP:
 				emitHelp();
 				return ""; //$NON-NLS-1$
+			case STATS:
+				emitStatistics();
+				return ""; //$NON-NLS-1$
 			case REFRESH:
 				OpenLibertyRuntime.instance.refreshDeploymentConfiguration();
 				return Messages.getString("CLIManagerDelegate.refresh"); //$NON-NLS-1$
+			case SEED:
+				if(this.runner == null) {
+					return Messages.getString("CLIManagerDelegate.serverIsNotRunning"); //$NON-NLS-1$
+				}
+				if(argv.length > 1) {
+					// Allow for spaces in the directory path
+					Path mirrorDir = Paths.get(line.trim().substring(argv[0].length()).trim());
+					OpenLibertyRuntime.instance.seedArtifacts(mirrorDir);
+					return MessageFormat.format(Messages.getString("CLIManagerDelegate.seedToMirror"), mirrorDir); //$NON-NLS-1$
+				} else {
+					OpenLibertyRuntime.instance.seedArtifacts(null);
+					return Messages.getString("CLIManagerDelegate.seed"); //$NON-NLS-1$
+				}
 			default:
 				return MessageFormat.format(Messages.getString("CLIManagerDelegate.commandNotYetImplemented"), command); //$NON-NLS-1$
 			}
@@ -123,12 +146,33 @@ public class CLIManagerDelegate implements AutoCloseable {
 		}
 	}
 	
+	/**
+	 * Outputs the utilization of the runtime's thread pools and event subscribers, to help
+	 * diagnose saturation, followed by the output of any {@link StatisticsProvider}s.
+	 * 
+	 * @since 4.0.0
+	 */
+	private void emitStatistics() {
+		PrintStream out = OpenLibertyLog.instance.out;
+		out.println(Messages.getString("CLIManagerDelegate.poolStatistics")); //$NON-NLS-1$
+		for(PoolStatistics pool : DominoThreadFactory.getStatistics()) {
+			out.println(MessageFormat.format(Messages.getString("CLIManagerDelegate.poolStatisticsLine"), pool.getName(), pool.getActive(), pool.getPoolSize(), //$NON-NLS-1$
+				pool.getMaxPoolSize(), pool.getLargestPoolSize(), pool.getQueued(), pool.getCompleted(), pool.getRejected()));
+		}
+		out.println(Messages.getString("CLIManagerDelegate.eventStatistics")); //$NON-NLS-1$
+		for(EventBus.SubscriberStatistics sub : EventBus.instance.getStatistics()) {
+			out.println(MessageFormat.format(Messages.getString("CLIManagerDelegate.eventStatisticsLine"), sub.getSubscriber(), sub.getEventTypes(), sub.getPending(), //$NON-NLS-1$
+				sub.getDelivered(), sub.getDropped(), sub.getSlow(), sub.getAverageLag(), sub.getMaxLag(), sub.getMaxDuration()));
+		}
+		OpenLibertyUtil.findExtensions(StatisticsProvider.class).forEach(provider -> provider.printStatistics(out));
+	}
+	
 	// *******************************************************************************
 	// * Internal implementation
 	// *******************************************************************************
 
 	private enum Command {
-		STATUS, STOP, START, RESTART, HELP, REFRESH;
+		STATUS, STOP, START, RESTART, HELP, REFRESH, SEED, STATS;
 	}
 	
 	private Command parseCommand(String command) {
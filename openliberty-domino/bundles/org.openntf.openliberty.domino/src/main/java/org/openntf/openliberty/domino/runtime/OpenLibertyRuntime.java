@@ -17,26 +17,29 @@ package org.openntf.openliberty.domino.runtime;
 
 import static java.text.MessageFormat.format;
 
+import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EventObject;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+import org.openntf.openliberty.domino.artifact.ArtifactStore;
+import org.openntf.openliberty.domino.event.EventBus;
 import org.openntf.openliberty.domino.event.EventRecipient;
 import org.openntf.openliberty.domino.event.RefreshDeploymentConfigEvent;
 import org.openntf.openliberty.domino.event.ServerDeployEvent;
@@ -44,17 +47,33 @@ import org.openntf.openliberty.domino.event.ServerStartEvent;
 import org.openntf.openliberty.domino.event.ServerStopEvent;
 import org.openntf.openliberty.domino.ext.RuntimeService;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.Histogram;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
 import org.openntf.openliberty.domino.server.ServerConfiguration;
 import org.openntf.openliberty.domino.server.ServerInstance;
+import org.openntf.openliberty.domino.server.ServerSupervisor;
+import org.openntf.openliberty.domino.server.ServerWarmup;
 import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
 
 public enum OpenLibertyRuntime implements Runnable {
 	instance;
 	
+	/**
+	 * The name of the histogram family recording the time taken to deploy servers and apps.
+	 * @since 4.0.0
+	 */
+	public static final String DEPLOY_DURATION = MetricsRegistry.PREFIX + "deploy_duration_seconds"; //$NON-NLS-1$
+	/**
+	 * The description of the {@link #DEPLOY_DURATION} family.
+	 * @since 4.0.0
+	 */
+	public static final String DEPLOY_DURATION_HELP = "Time taken to deploy servers and their apps"; //$NON-NLS-1$
+	
 	private final BlockingQueue<RuntimeTask> taskQueue = new LinkedBlockingDeque<>();
 	private final List<RuntimeService> runtimeServices = new ArrayList<>();
-	private final Collection<EventRecipient> messageRecipients = Collections.synchronizedList(new ArrayList<>());
 	
 	private Set<String> startedServers = Collections.synchronizedSet(new HashSet<>());
 	
@@ -62,9 +81,34 @@ public enum OpenLibertyRuntime implements Runnable {
 	 * Maps server names to their configurations.
 	 * @since 3.0.0
 	 */
-	private Map<String, ServerInstance<?>> serverInstances = new HashMap<>();
+	private Map<String, ServerInstance<?>> serverInstances = new ConcurrentHashMap<>();
+	
+	/**
+	 * Restarts started servers that exit unexpectedly.
+	 * @since 4.0.0
+	 */
+	private final ServerSupervisor supervisor = new ServerSupervisor(this::restartServer, this::broadcastMessage);
+	
+	/**
+	 * Time taken to process each type of task.
+	 * @since 4.0.0
+	 */
+	private final Map<RuntimeTask.Type, Histogram> taskDurations = new EnumMap<>(RuntimeTask.Type.class);
+	private final Histogram createDuration;
+	private final Histogram updateDuration;
 	
 	private Logger log;
+	
+	private OpenLibertyRuntime() {
+		MetricsRegistry metrics = MetricsRegistry.instance;
+		for(RuntimeTask.Type type : RuntimeTask.Type.values()) {
+			taskDurations.put(type, metrics.histogram(MetricsRegistry.PREFIX + "runtime_task_duration_seconds", "Time taken to process runtime tasks", "task", type.name().toLowerCase(Locale.US))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		createDuration = metrics.histogram(DEPLOY_DURATION, DEPLOY_DURATION_HELP, "kind", "create"); //$NON-NLS-1$ //$NON-NLS-2$
+		updateDuration = metrics.histogram(DEPLOY_DURATION, DEPLOY_DURATION_HELP, "kind", "update"); //$NON-NLS-1$ //$NON-NLS-2$
+		metrics.gauge(MetricsRegistry.PREFIX + "runtime_queued_tasks", "Runtime tasks waiting to be processed", taskQueue::size); //$NON-NLS-1$ //$NON-NLS-2$
+		metrics.register(MetricsRegistry.PREFIX + "server", this::collectServerMetrics); //$NON-NLS-1$
+	}
 
 	@Override
 	public void run() {
@@ -77,8 +121,8 @@ public enum OpenLibertyRuntime implements Runnable {
 		try {
 			OpenLibertyUtil.findExtensions(RuntimeService.class).forEach(runtimeServices::add);
 			
-			runtimeServices.forEach(DominoThreadFactory.getExecutor()::submit);
-			messageRecipients.addAll(runtimeServices);
+			runtimeServices.forEach(svc -> svc.subscribe(EventBus.instance));
+			runtimeServices.forEach(DominoThreadFactory.getExecutor(Pool.RUNTIME)::submit);
 			
 			while(!Thread.interrupted()) {
 				RuntimeTask command = taskQueue.take();
@@ -86,14 +130,21 @@ public enum OpenLibertyRuntime implements Runnable {
 					if(log.isLoggable(Level.FINER)) {
 						log.finer(format(Messages.getString("OpenLibertyRuntime.receivedCommand"), command)); //$NON-NLS-1$
 					}
+					long start = System.nanoTime();
 					switch(command.type) {
 					case START: {
 						String serverName = (String)command.args[0];
+						boolean restart = command.args.length > 1 && Boolean.TRUE.equals(command.args[1]);
 						ServerInstance<?> serverInstance = this.serverInstances.get(serverName);
+						boolean wasRunning = Boolean.TRUE.equals(serverInstance.isRunning());
 						serverInstance.start();
 						serverInstance.watchLogs(OpenLibertyLog.instance.out);
+						supervisor.watch(serverInstance, restart);
 						
 						broadcastMessage(new ServerStartEvent(serverInstance));
+						if(!wasRunning) {
+							ServerWarmup.instance.start(serverInstance);
+						}
 						break;
 					}
 					case STOP: {
@@ -108,6 +159,7 @@ public enum OpenLibertyRuntime implements Runnable {
 						String serverName = (String)command.args[0];
 						ServerInstance<?> serverInstance = this.serverInstances.get(serverName);
 						serverInstance.deploy();
+						createDuration.record(System.nanoTime() - start);
 						
 						broadcastMessage(new ServerDeployEvent(serverInstance));
 						break;
@@ -118,6 +170,7 @@ public enum OpenLibertyRuntime implements Runnable {
 						ServerInstance<?> serverInstance = this.serverInstances.get(serverName);
 						
 						serverInstance.updateConfiguration(newConfig);
+						updateDuration.record(System.nanoTime() - start);
 						break;
 					}
 					case STATUS: {
@@ -130,8 +183,25 @@ public enum OpenLibertyRuntime implements Runnable {
 						broadcastMessage(new RefreshDeploymentConfigEvent(this));
 						break;
 					}
+					case SEED: {
+						seed((Path)command.args[0]);
+						break;
 					}
-					
+					case REMOVE: {
+						String serverName = (String)command.args[0];
+						ServerInstance<?> serverInstance = this.serverInstances.remove(serverName);
+						if(serverInstance != null) {
+							if(log.isLoggable(Level.INFO)) {
+								log.info(format(Messages.getString("OpenLibertyRuntime.removingServer"), serverName)); //$NON-NLS-1$
+							}
+							serverInstance.close();
+							
+							broadcastMessage(new ServerStopEvent(serverInstance));
+						}
+						break;
+					}
+					}
+					taskDurations.get(command.type).record(System.nanoTime() - start);
 				}
 			}
 		} catch(InterruptedException e) {
@@ -151,6 +221,7 @@ public enum OpenLibertyRuntime implements Runnable {
 	}
 	
 	public synchronized void stop() {
+		supervisor.close();
 		for(String serverName : startedServers) {
 			try {
 				if(log.isLoggable(Level.INFO)) {
@@ -174,7 +245,7 @@ public enum OpenLibertyRuntime implements Runnable {
 			}
 		}
 		this.runtimeServices.clear();
-		this.messageRecipients.clear();
+		EventBus.instance.clear();
 	}
 	
 	/**
@@ -199,10 +270,24 @@ public enum OpenLibertyRuntime implements Runnable {
 	}
 	
 	public void stopServer(String serverName) {
+		supervisor.unwatch(serverName);
 		taskQueue.add(new RuntimeTask(RuntimeTask.Type.STOP, serverName));
 		startedServers.remove(serverName);
 	}
 	
+	/**
+	 * Stops the named server if it is running and removes it from the runtime, such as when
+	 * its definition has been deleted. The server's files on disk are left in place.
+	 * 
+	 * @param serverName the name of the server to remove
+	 * @since 4.0.0
+	 */
+	public void removeServer(String serverName) {
+		supervisor.unwatch(serverName);
+		taskQueue.add(new RuntimeTask(RuntimeTask.Type.REMOVE, serverName));
+		startedServers.remove(serverName);
+	}
+	
 	public void createServer(String serverName) {
 		taskQueue.add(new RuntimeTask(RuntimeTask.Type.CREATE_SERVER, serverName));
 	}
@@ -211,6 +296,18 @@ public enum OpenLibertyRuntime implements Runnable {
 		taskQueue.add(new RuntimeTask(RuntimeTask.Type.UPDATE_DEPLOYMENT, serverName, config));
 	}
 	
+	/**
+	 * Retrieves the instance registered for the named server.
+	 * 
+	 * @param serverName the name of the server to look up
+	 * @return an {@link Optional} describing the registered {@link ServerInstance}, or an empty
+	 * 		one if no server is registered with that name
+	 * @since 4.0.0
+	 */
+	public Optional<ServerInstance<?>> getServerInstance(String serverName) {
+		return Optional.ofNullable(this.serverInstances.get(serverName));
+	}
+	
 	/**
 	 * Outputs the server status to the Domino console.
 	 * @since 1.2.0
@@ -220,30 +317,43 @@ public enum OpenLibertyRuntime implements Runnable {
 	}
 	
 	/**
-	 * Registers the provided recipient object in the list of broadcast-message targets.
+	 * Registers the provided recipient object to receive all broadcast events. Registering
+	 * the same object more than once has no additional effect.
+	 * 
+	 * <p>New code should prefer subscribing to specific event classes via
+	 * {@link EventBus#subscribe(Object, Class, java.util.function.Consumer)}.</p>
 	 * 
 	 * @param target the recipient to register
 	 * @since 3.0.0
 	 */
 	public void registerMessageRecipient(EventRecipient target) {
-		this.messageRecipients.add(target);
+		EventBus.instance.subscribe(target);
 	}
 	
 	/**
-	 * Notifies all registered message listeners of the provided event.
+	 * Notifies all listeners subscribed to the provided event's class.
 	 * 
-	 * <p>The {@link EventRecipient#notifyMessage(EventObject)} method on each recipient is
-	 * submitted to an {@link ExecutorService}.</p>
+	 * <p>Delivery is performed asynchronously by the {@link EventBus}.</p>
 	 * 
 	 * @param event the event to broadcast
 	 * @return a {@link List} of void-returning {@link Future} objects representing the asynchronous
 	 * 		completions of each broadcast
 	 */
-	public synchronized List<Future<?>> broadcastMessage(EventObject event) {
-		return this.messageRecipients
-			.stream()
-			.map(r -> DominoThreadFactory.getExecutor().submit(() -> r.notifyMessage(event)))
-			.collect(Collectors.toList());
+	public List<Future<?>> broadcastMessage(EventObject event) {
+		return EventBus.instance.publish(event);
+	}
+	
+	/**
+	 * Issues a command to retrieve all runtimes, JVMs, and other artifacts needed by the
+	 * registered servers into the artifact store, optionally exporting them to a mirror
+	 * directory for use on servers without network access.
+	 * 
+	 * @param mirrorDir the directory to export the artifacts to, or {@code null} to only
+	 * 		fill the local artifact store
+	 * @since 4.0.0
+	 */
+	public void seedArtifacts(Path mirrorDir) {
+		taskQueue.add(new RuntimeTask(RuntimeTask.Type.SEED, mirrorDir));
 	}
 	
 	/**
@@ -259,9 +369,62 @@ public enum OpenLibertyRuntime implements Runnable {
 	// * Internal utility methods
 	// *******************************************************************************
 	
+	/**
+	 * Requests a restart of a server that the {@link ServerSupervisor} found to have exited,
+	 * unless it has since been stopped.
+	 */
+	private void restartServer(String serverName) {
+		if(startedServers.contains(serverName)) {
+			taskQueue.add(new RuntimeTask(RuntimeTask.Type.START, serverName, true));
+		}
+	}
+	
+	private void collectServerMetrics(MetricsWriter writer) {
+		List<ServerInstance<?>> servers = new ArrayList<>(this.serverInstances.values());
+		String prefix = MetricsRegistry.PREFIX + "server_"; //$NON-NLS-1$
+		writer.family(prefix + "started", MetricsWriter.Type.GAUGE, "Whether each registered server is meant to be running"); //$NON-NLS-1$ //$NON-NLS-2$
+		servers.forEach(server -> writer.gauge(prefix + "started", startedServers.contains(server.getServerName()) ? 1 : 0, "server", server.getServerName())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "up", MetricsWriter.Type.GAUGE, "Whether each registered server's process is running"); //$NON-NLS-1$ //$NON-NLS-2$
+		for(ServerInstance<?> server : servers) {
+			Boolean running = server.isRunning();
+			// Servers that can't report their state are left out rather than reported as down
+			if(running != null) {
+				writer.gauge(prefix + "up", running ? 1 : 0, "server", server.getServerName()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+	
+	private void seed(Path mirrorDir) {
+		for(ServerInstance<?> serverInstance : this.serverInstances.values()) {
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("OpenLibertyRuntime.provisioningServer"), serverInstance.getServerName())); //$NON-NLS-1$
+			}
+			try {
+				serverInstance.provision();
+			} catch(Throwable t) {
+				if(log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, format(Messages.getString("OpenLibertyRuntime.exceptionProvisioningServer"), serverInstance.getServerName()), t); //$NON-NLS-1$
+				}
+			}
+		}
+		
+		if(mirrorDir != null) {
+			try {
+				int count = ArtifactStore.instance.exportMirror(mirrorDir);
+				if(log.isLoggable(Level.INFO)) {
+					log.info(format(Messages.getString("OpenLibertyRuntime.exportedMirror"), count, mirrorDir)); //$NON-NLS-1$
+				}
+			} catch(Throwable t) {
+				if(log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, format(Messages.getString("OpenLibertyRuntime.exceptionExportingMirror"), mirrorDir), t); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+	
 	private static class RuntimeTask {
 		enum Type {
-			START, STOP, CREATE_SERVER, STATUS, UPDATE_DEPLOYMENT, REFRESH
+			START, STOP, CREATE_SERVER, STATUS, UPDATE_DEPLOYMENT, REFRESH, SEED, REMOVE
 		}
 		private final Type type;
 		private final Object[] args;
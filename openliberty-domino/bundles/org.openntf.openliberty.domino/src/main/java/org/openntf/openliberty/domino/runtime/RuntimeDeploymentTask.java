@@ -26,4 +26,19 @@ public interface RuntimeDeploymentTask<T extends ServerConfiguration> {
 	boolean canDeploy(ServerConfiguration serverConfig);
 
 	Path deploy(T config) throws IOException;
+	
+	/**
+	 * Ensures that the runtime archive for the given configuration is present in the
+	 * {@link org.openntf.openliberty.domino.artifact.ArtifactStore ArtifactStore}, even if
+	 * the runtime has already been deployed.
+	 * 
+	 * <p>The default implementation does nothing.</p>
+	 * 
+	 * @param config the configuration of the server to fetch the runtime for
+	 * @throws IOException if there is a problem retrieving the archive
+	 * @since 4.0.0
+	 */
+	default void fetchArtifacts(T config) throws IOException {
+		// NOP
+	}
 }
@@ -19,8 +19,6 @@ import static java.text.MessageFormat.format;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -32,6 +30,8 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.openntf.openliberty.domino.artifact.ArtifactStore;
+import org.openntf.openliberty.domino.artifact.StoredArtifact;
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
@@ -65,7 +65,17 @@ public class LibertyRuntimeDeployment implements RuntimeDeploymentTask<LibertySe
 			version = DEFAULT_VERSION;
 		}
 		
-		Path wlp = execDir.resolve(format("wlp-{0}", version)); //$NON-NLS-1$
+		String artifact = config.getLibertyArtifact();
+		if(StringUtil.isEmpty(artifact)) {
+			artifact = DEFAULT_ARTIFACT;
+		}
+		
+		String mavenRepo = config.getLibertyMavenRepo();
+		if(StringUtil.isEmpty(mavenRepo)) {
+			mavenRepo = DEFAULT_MAVENREPO;
+		}
+		
+		Path wlp = execDir.resolve(getRuntimeDirectoryName(artifact, version, mavenRepo));
 		
 		if(!Files.isDirectory(wlp)) {
 			// If it doesn't yet exist, download and deploy a new runtime
@@ -73,63 +83,51 @@ public class LibertyRuntimeDeployment implements RuntimeDeploymentTask<LibertySe
 				log.info(Messages.getString("StandardRuntimeDeployment.deployingNewRuntime")); //$NON-NLS-1$
 			}
 			
-			String artifact = config.getLibertyArtifact();
-			if(StringUtil.isEmpty(artifact)) {
-				artifact = DEFAULT_ARTIFACT;
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("StandardRuntimeDeployment.downloadingRuntimeFrom"), artifact + ':' + version, mavenRepo)); //$NON-NLS-1$
 			}
-			
-			Path downloadDir = execDir.resolve("download"); //$NON-NLS-1$
-			Path wlpPackage = downloadDir.resolve(buildZipName(artifact, version));
-			if(!Files.exists(wlpPackage)) {
-				Files.createDirectories(downloadDir);
-				
-				// Download from Maven
-				String mavenRepo = config.getLibertyMavenRepo();
-				if(StringUtil.isEmpty(mavenRepo)) {
-					mavenRepo = DEFAULT_MAVENREPO;
-				}
-				URL url = buildDownloadURL(mavenRepo, artifact, version);
-				if(log.isLoggable(Level.INFO)) {
-					log.info(format(Messages.getString("StandardRuntimeDeployment.downloadingRuntimeFrom"), url)); //$NON-NLS-1$
-				}
-				if(log.isLoggable(Level.INFO)) {
-					log.info(format(Messages.getString("StandardRuntimeDeployment.storingRuntimeAt"), wlpPackage)); //$NON-NLS-1$
-				}
-				OpenLibertyUtil.download(url, (contentType, is) -> {
-					Files.copy(is, wlpPackage, StandardCopyOption.REPLACE_EXISTING);
-					return null;
-				});
+			StoredArtifact wlpPackage = fetchRuntime(mavenRepo, artifact, version);
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("StandardRuntimeDeployment.storingRuntimeAt"), wlpPackage.getPath())); //$NON-NLS-1$
 			}
 				
-			// Now extract the ZIP
-			Files.createDirectories(wlp);
-			try(InputStream is = Files.newInputStream(wlpPackage)) {
-				try(ZipInputStream zis = new ZipInputStream(is)) {
-					ZipEntry entry = zis.getNextEntry();
-					while(entry != null) {
-						String name = entry.getName();
-						if(name.startsWith("wlp/")) { //$NON-NLS-1$
-							// Remove the standard prefix
-							name = name.substring(4);
-						}
-						
-						if(StringUtil.isNotEmpty(name)) {
-							if(log.isLoggable(Level.FINER)) {
-								log.finer(format(Messages.getString("StandardRuntimeDeployment.deployingFile"), name)); //$NON-NLS-1$
+			// Now extract the ZIP to a temporary directory and move it into place when complete
+			Path tempDir = Files.createTempDirectory(execDir, "." + wlp.getFileName()); //$NON-NLS-1$
+			try {
+				try(InputStream is = Files.newInputStream(wlpPackage.getPath())) {
+					try(ZipInputStream zis = new ZipInputStream(is)) {
+						ZipEntry entry = zis.getNextEntry();
+						while(entry != null) {
+							String name = entry.getName();
+							if(name.startsWith("wlp/")) { //$NON-NLS-1$
+								// Remove the standard prefix
+								name = name.substring(4);
 							}
 							
-							Path path = wlp.resolve(name);
-							if(entry.isDirectory()) {
-								Files.createDirectories(path);
-							} else {
-								Files.copy(zis, path, StandardCopyOption.REPLACE_EXISTING);
+							if(StringUtil.isNotEmpty(name)) {
+								if(log.isLoggable(Level.FINER)) {
+									log.finer(format(Messages.getString("StandardRuntimeDeployment.deployingFile"), name)); //$NON-NLS-1$
+								}
+								
+								Path path = tempDir.resolve(name);
+								if(entry.isDirectory()) {
+									Files.createDirectories(path);
+								} else {
+									Files.createDirectories(path.getParent());
+									Files.copy(zis, path, StandardCopyOption.REPLACE_EXISTING);
+								}
 							}
+							
+							zis.closeEntry();
+							entry = zis.getNextEntry();
 						}
-						
-						zis.closeEntry();
-						entry = zis.getNextEntry();
 					}
 				}
+				Files.move(tempDir, wlp, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				if(Files.exists(tempDir)) {
+					OpenLibertyUtil.deltree(tempDir);
+				}
 			}
 		}
 		
@@ -138,30 +136,48 @@ public class LibertyRuntimeDeployment implements RuntimeDeploymentTask<LibertySe
 		return wlp;
 	}
 
-	// *******************************************************************************
-	// * Internal utility methods
-	// *******************************************************************************
-	
-	private static URL buildDownloadURL(String mavenRepo, String artifact, String version) throws MalformedURLException {
-		String base = mavenRepo;
-		if(!base.endsWith("/")) { //$NON-NLS-1$
-			base += base;
+	@Override
+	public void fetchArtifacts(LibertyServerConfiguration config) throws IOException {
+		String version = config.getLibertyVersion();
+		if(StringUtil.isEmpty(version)) {
+			version = DEFAULT_VERSION;
 		}
-		URL url = new URL(base);
 		
-		String artifactPart = getArtifactId(artifact);
-		String groupPart = artifact.substring(0, artifact.length()-artifactPart.length()-1).replace('.', '/');
-		url = new URL(url, groupPart + '/' + artifactPart + '/' + version + '/');
+		String artifact = config.getLibertyArtifact();
+		if(StringUtil.isEmpty(artifact)) {
+			artifact = DEFAULT_ARTIFACT;
+		}
 		
-		String zipName = buildZipName(artifact, version);
-		url = new URL(url, zipName);
+		String mavenRepo = config.getLibertyMavenRepo();
+		if(StringUtil.isEmpty(mavenRepo)) {
+			mavenRepo = DEFAULT_MAVENREPO;
+		}
 		
-		return url;
+		fetchRuntime(mavenRepo, artifact, version);
 	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
 	
-	private static String buildZipName(String artifact, String version) {
-		String artifactId  = getArtifactId(artifact);
-		return artifactId + '-' + version + ".zip"; //$NON-NLS-1$
+	private static StoredArtifact fetchRuntime(String mavenRepo, String artifact, String version) throws IOException {
+		String artifactId = getArtifactId(artifact);
+		String groupId = artifact.substring(0, artifact.length()-artifactId.length()-1);
+		return ArtifactStore.instance.fetchMaven(mavenRepo, groupId, artifactId, version, "zip"); //$NON-NLS-1$
+	}
+	
+	/**
+	 * Determines the name of the directory holding the runtime for the given coordinates.
+	 * The default artifact from the default repository keeps the historical {@code wlp-<version>}
+	 * name, while other flavors get a suffix so that they never share a directory with it.
+	 */
+	private static String getRuntimeDirectoryName(String artifact, String version, String mavenRepo) {
+		if(DEFAULT_ARTIFACT.equals(artifact) && DEFAULT_MAVENREPO.equals(mavenRepo)) {
+			return format("wlp-{0}", version); //$NON-NLS-1$
+		}
+		String source = artifact + '@' + mavenRepo;
+		String artifactId = getArtifactId(artifact).replaceAll("[^\\w.-]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+		return format("wlp-{0}-{1}-{2}", artifactId, version, String.format("%08x", source.hashCode())); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 	
 	private static String getArtifactId(String artifact) {
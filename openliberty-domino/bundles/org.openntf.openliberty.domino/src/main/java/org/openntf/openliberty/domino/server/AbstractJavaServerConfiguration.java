@@ -26,6 +26,7 @@ import org.openntf.openliberty.domino.jvm.JVMIdentifier;
 public abstract class AbstractJavaServerConfiguration implements ServerConfiguration {
 
 	private JVMIdentifier javaVersion;
+	private WarmupConfiguration warmup = WarmupConfiguration.NONE;
 
 	public JVMIdentifier getJavaVersion() {
 		return javaVersion;
@@ -34,5 +35,18 @@ public abstract class AbstractJavaServerConfiguration implements ServerConfigura
 	public void setJavaVersion(JVMIdentifier javaVersion) {
 		this.javaVersion = javaVersion;
 	}
+	
+	@Override
+	public WarmupConfiguration getWarmup() {
+		return warmup;
+	}
+	
+	/**
+	 * @param warmup the warm-up settings to use when the server starts
+	 * @since 4.0.0
+	 */
+	public void setWarmup(WarmupConfiguration warmup) {
+		this.warmup = warmup == null ? WarmupConfiguration.NONE : warmup;
+	}
 
 }
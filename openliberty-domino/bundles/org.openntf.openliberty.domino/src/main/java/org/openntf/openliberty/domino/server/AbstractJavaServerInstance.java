@@ -18,10 +18,7 @@ package org.openntf.openliberty.domino.server;
 import static java.text.MessageFormat.format;
 
 import java.nio.file.Path;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,19 +27,19 @@ import org.openntf.openliberty.domino.jvm.JavaRuntimeProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.ProvisioningCache;
 
 public abstract class AbstractJavaServerInstance<T extends AbstractJavaServerConfiguration> implements ServerInstance<T> {
 	private static final Logger log = OpenLibertyLog.getLog();
-	private static final Map<JVMIdentifier, Path> javaHomes = Collections.synchronizedMap(new HashMap<>());
+	/**
+	 * Resolved Java homes, shared across servers. Distinct JVMs provision in parallel, while
+	 * servers requesting the same JVM wait on a single download.
+	 */
+	private static final ProvisioningCache<JVMIdentifier, Path> javaHomes = new ProvisioningCache<>();
 	
 	public Path getJavaHome() {
-		return javaHomes.computeIfAbsent(getConfiguration().getJavaVersion(), javaIdentifier -> {
-			JavaRuntimeProvider javaRuntimeProvider = OpenLibertyUtil.findExtensions(JavaRuntimeProvider.class)
-				.filter(p -> p.canProvide(javaIdentifier))
-				.sorted(Comparator.comparing(JavaRuntimeProvider::getPriority).reversed())
-				.findFirst()
-				.orElseThrow(() -> new IllegalStateException(format(Messages.getString("OpenLibertyRuntime.unableToFindJVMFor"), javaIdentifier))); //$NON-NLS-1$
-			Path javaHome = javaRuntimeProvider.getJavaHome(javaIdentifier);
+		return javaHomes.get(getConfiguration().getJavaVersion(), javaIdentifier -> {
+			Path javaHome = findJavaRuntimeProvider(javaIdentifier).getJavaHome(javaIdentifier);
 			if(log.isLoggable(Level.INFO)) {
 				log.info(format(Messages.getString("OpenLibertyRuntime.usingJavaRuntimeAt"), javaHome)); //$NON-NLS-1$
 			}
@@ -50,6 +47,26 @@ public abstract class AbstractJavaServerInstance<T extends AbstractJavaServerCon
 		});
 	}
 	
+	/**
+	 * Ensures that the archive for the configured JVM is present in the
+	 * {@link org.openntf.openliberty.domino.artifact.ArtifactStore ArtifactStore}, even if
+	 * the JVM is already installed.
+	 * 
+	 * @since 4.0.0
+	 */
+	protected void fetchJavaArtifacts() {
+		JVMIdentifier javaIdentifier = getConfiguration().getJavaVersion();
+		findJavaRuntimeProvider(javaIdentifier).fetchArtifacts(javaIdentifier);
+	}
+	
 	@Override
 	public abstract T getConfiguration();
+	
+	private static JavaRuntimeProvider findJavaRuntimeProvider(JVMIdentifier javaIdentifier) {
+		return OpenLibertyUtil.findExtensions(JavaRuntimeProvider.class)
+			.filter(p -> p.canProvide(javaIdentifier))
+			.sorted(Comparator.comparing(JavaRuntimeProvider::getPriority).reversed())
+			.findFirst()
+			.orElseThrow(() -> new IllegalStateException(format(Messages.getString("OpenLibertyRuntime.unableToFindJVMFor"), javaIdentifier))); //$NON-NLS-1$
+	}
 }
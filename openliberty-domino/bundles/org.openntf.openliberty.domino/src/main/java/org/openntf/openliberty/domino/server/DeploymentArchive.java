@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Represents an archive of files to be deployed into a server's directory, such as a ZIP
+ * attached to a server document. Archives are read as streams at deployment time, so that
+ * their content does not need to be copied to a temporary file first.
+ * 
+ * <p>Implementations must implement {@link #equals(Object)} and {@link #hashCode()} in terms
+ * of {@link #getKey()}, since archives take part in server configuration comparisons.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public interface DeploymentArchive {
+	/**
+	 * Receives the content of an archive.
+	 */
+	@FunctionalInterface
+	interface ContentConsumer {
+		void accept(InputStream is) throws IOException;
+	}
+	
+	/**
+	 * @return a value that identifies this version of the archive, which changes whenever its
+	 * 		content may have changed
+	 */
+	String getKey();
+	
+	/**
+	 * @return a human-readable name for the archive, for use in log messages
+	 */
+	String getName();
+	
+	/**
+	 * Opens the archive content and passes it to the provided consumer. The stream is only
+	 * valid for the duration of the call and is closed afterward.
+	 * 
+	 * @param consumer the consumer to read the content
+	 * @throws IOException if there is a problem opening or reading the archive
+	 */
+	void read(ContentConsumer consumer) throws IOException;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+
+/**
+ * A {@link DeploymentArchive} read from a file on the local file system. The file is left
+ * in place after deployment.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class FileDeploymentArchive implements DeploymentArchive {
+	private final Path path;
+	private final String key;
+	
+	public FileDeploymentArchive(Path path) {
+		this.path = path.toAbsolutePath();
+		try {
+			this.key = MessageFormat.format("{0}:{1,number,#}:{2,number,#}", this.path, Files.size(path), Files.getLastModifiedTime(path).toMillis()); //$NON-NLS-1$
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String getName() {
+		return path.getFileName().toString();
+	}
+
+	@Override
+	public void read(ContentConsumer consumer) throws IOException {
+		try(InputStream is = Files.newInputStream(path)) {
+			consumer.accept(is);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof DeploymentArchive)) {
+			return false;
+		}
+		return key.equals(((DeploymentArchive)obj).getKey());
+	}
+
+	@Override
+	public String toString() {
+		return "FileDeploymentArchive [path=" + path + ", key=" + key + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -23,4 +23,12 @@ package org.openntf.openliberty.domino.server;
  */
 public interface ServerConfiguration {
 	<T extends ServerConfiguration> ServerInstance<T> createInstance(String serverName);
+	
+	/**
+	 * @return the warm-up settings to use when the server starts
+	 * @since 4.0.0
+	 */
+	default WarmupConfiguration getWarmup() {
+		return WarmupConfiguration.NONE;
+	}
 }
@@ -47,6 +47,47 @@ public interface ServerInstance<T extends ServerConfiguration> extends AutoClose
 	 */
 	void deploy();
 	
+	/**
+	 * Retrieves any runtimes and other artifacts required by the server without deploying
+	 * or starting it, so that a later {@link #deploy()} does not need network access. Downloaded
+	 * archives are placed in the {@link org.openntf.openliberty.domino.artifact.ArtifactStore ArtifactStore}
+	 * even when the corresponding runtime is already installed, so that they can be mirrored.
+	 * 
+	 * <p>The default implementation does nothing.</p>
+	 * 
+	 * @since 4.0.0
+	 */
+	default void provision() {
+		// NOP
+	}
+	
+	/**
+	 * Determines whether the server process is currently running.
+	 * 
+	 * <p>The default implementation returns {@code null}, indicating that the state can't
+	 * be determined.</p>
+	 * 
+	 * @return {@code true} if the server is running, {@code false} if it is not, or {@code null}
+	 * 		if this could not be determined
+	 * @since 4.0.0
+	 */
+	default Boolean isRunning() {
+		return null;
+	}
+	
+	/**
+	 * Determines whether the server is still in an asynchronous startup phase during which its
+	 * process may exit deliberately, such as while creating a checkpoint to restore from.
+	 * 
+	 * <p>The default implementation returns {@code false}.</p>
+	 * 
+	 * @return {@code true} if a start is still in progress and liveness checks should be deferred
+	 * @since 4.0.0
+	 */
+	default boolean isStartPending() {
+		return false;
+	}
+	
 	/**
 	 * Starts the server.
 	 * 
@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EventObject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.event.ServerCrashedEvent;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+
+/**
+ * Watches started servers and restarts those that exit without being asked to stop.
+ * 
+ * <p>Liveness is checked periodically via {@link ServerInstance#isRunning()}. When a server
+ * is found to have exited, or it does not come up within {@link #STARTUP_TIMEOUT}, a
+ * {@link ServerCrashedEvent} is emitted and a restart is requested after an exponentially
+ * increasing delay. If a server crashes {@link #MAX_CRASHES} times within {@link #CRASH_WINDOW},
+ * automatic restarts are suspended until the server is started again explicitly.</p>
+ * 
+ * <p>Servers that report {@link ServerInstance#isStartPending() a pending start}, such as one
+ * creating a checkpoint, are not checked until that start completes.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class ServerSupervisor implements AutoCloseable {
+	private static final Logger log = OpenLibertyLog.getLog();
+	
+	public static final long POLL_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+	public static final long STARTUP_TIMEOUT = TimeUnit.MINUTES.toMillis(3);
+	public static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+	public static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+	public static final long CRASH_WINDOW = TimeUnit.MINUTES.toMillis(15);
+	public static final int MAX_CRASHES = 5;
+	
+	private final Consumer<String> restarter;
+	private final Consumer<EventObject> broadcaster;
+	private final Map<String, Supervised> servers = new HashMap<>();
+	
+	/**
+	 * @param restarter a callback that requests a start of the named server, which should in
+	 * 		turn call {@link #watch(ServerInstance, boolean)}
+	 * @param broadcaster a callback used to emit {@link ServerCrashedEvent}s
+	 */
+	public ServerSupervisor(Consumer<String> restarter, Consumer<EventObject> broadcaster) {
+		this.restarter = restarter;
+		this.broadcaster = broadcaster;
+	}
+	
+	/**
+	 * Begins supervising a server that has just been started.
+	 * 
+	 * @param instance the started server
+	 * @param restart {@code true} if this start was requested by the supervisor, or {@code false}
+	 * 		for an explicit start, which clears the server's crash history
+	 */
+	public synchronized void watch(ServerInstance<?> instance, boolean restart) {
+		Supervised state = servers.computeIfAbsent(instance.getServerName(), name -> new Supervised());
+		state.cancel();
+		if(!restart) {
+			state.crashes.clear();
+		}
+		state.instance = instance;
+		state.startedAt = System.currentTimeMillis();
+		state.seenRunning = false;
+		state.restarting = false;
+		state.poll = DominoThreadFactory.getScheduler().scheduleWithFixedDelay(() -> poll(instance.getServerName()), POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stops supervising the named server. This should be called before a server is deliberately
+	 * stopped so that its exit is not treated as a crash.
+	 * 
+	 * @param serverName the name of the server
+	 */
+	public synchronized void unwatch(String serverName) {
+		Supervised state = servers.remove(serverName);
+		if(state != null) {
+			state.cancel();
+		}
+	}
+	
+	@Override
+	public synchronized void close() {
+		servers.values().forEach(Supervised::cancel);
+		servers.clear();
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private void poll(String serverName) {
+		try {
+			ServerInstance<?> instance;
+			synchronized(this) {
+				Supervised state = servers.get(serverName);
+				if(state == null || state.restarting) {
+					return;
+				}
+				instance = state.instance;
+				if(instance.isStartPending()) {
+					// The process may come and go until the start completes, so begin the startup timeout afterwards
+					state.startedAt = System.currentTimeMillis();
+					state.seenRunning = false;
+					return;
+				}
+			}
+			
+			// Check outside the lock, as this may touch the file system
+			Boolean running = instance.isRunning();
+			if(running == null) {
+				return;
+			}
+			
+			synchronized(this) {
+				Supervised state = servers.get(serverName);
+				if(state == null || state.instance != instance || state.restarting) {
+					return;
+				}
+				long now = System.currentTimeMillis();
+				if(running) {
+					state.seenRunning = true;
+				} else if(state.seenRunning) {
+					crashed(state, now);
+				} else if(now - state.startedAt > STARTUP_TIMEOUT) {
+					if(log.isLoggable(Level.WARNING)) {
+						log.warning(format(Messages.getString("ServerSupervisor.serverFailedToStart"), serverName, TimeUnit.MILLISECONDS.toSeconds(STARTUP_TIMEOUT))); //$NON-NLS-1$
+					}
+					crashed(state, now);
+				}
+			}
+		} catch(Throwable t) {
+			// Don't let an exception cancel the scheduled poll
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, format(Messages.getString("ServerSupervisor.exceptionCheckingServer"), serverName), t); //$NON-NLS-1$
+			}
+		}
+	}
+	
+	private void crashed(Supervised state, long now) {
+		String serverName = state.instance.getServerName();
+		state.crashes.addLast(now);
+		while(!state.crashes.isEmpty() && now - state.crashes.peekFirst() > CRASH_WINDOW) {
+			state.crashes.removeFirst();
+		}
+		int crashCount = state.crashes.size();
+		MetricsRegistry.instance.counter(MetricsRegistry.PREFIX + "server_crashes", "Unexpected server exits detected by the supervisor", "server", serverName).increment(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		
+		if(crashCount >= MAX_CRASHES) {
+			if(log.isLoggable(Level.SEVERE)) {
+				log.severe(format(Messages.getString("ServerSupervisor.crashLoopDetected"), serverName, crashCount, TimeUnit.MILLISECONDS.toMinutes(CRASH_WINDOW))); //$NON-NLS-1$
+			}
+			unwatch(serverName);
+			broadcaster.accept(new ServerCrashedEvent(state.instance, crashCount, -1));
+			return;
+		}
+		
+		long delay = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << (crashCount - 1));
+		if(log.isLoggable(Level.WARNING)) {
+			log.warning(format(Messages.getString("ServerSupervisor.serverCrashed"), serverName, TimeUnit.MILLISECONDS.toSeconds(delay))); //$NON-NLS-1$
+		}
+		state.restarting = true;
+		state.cancel();
+		broadcaster.accept(new ServerCrashedEvent(state.instance, crashCount, delay));
+		state.poll = DominoThreadFactory.getScheduler().schedule(() -> {
+			synchronized(this) {
+				if(servers.get(serverName) != state) {
+					// Stopped or restarted in the meantime
+					return;
+				}
+				state.restarting = false;
+			}
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("ServerSupervisor.restartingServer"), serverName)); //$NON-NLS-1$
+			}
+			restarter.accept(serverName);
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private static class Supervised {
+		private ServerInstance<?> instance;
+		private long startedAt;
+		private boolean seenRunning;
+		private boolean restarting;
+		private ScheduledFuture<?> poll;
+		private final Deque<Long> crashes = new ArrayDeque<>();
+		
+		void cancel() {
+			if(poll != null) {
+				poll.cancel(false);
+				poll = null;
+			}
+		}
+	}
+}
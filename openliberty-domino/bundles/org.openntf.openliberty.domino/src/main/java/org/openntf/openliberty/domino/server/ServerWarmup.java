@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.openliberty.domino.event.ServerReadyEvent;
+import org.openntf.openliberty.domino.event.ServerWarmupEvent;
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.runtime.OpenLibertyRuntime;
+import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+
+/**
+ * Replays warm-up requests against newly-started servers, so that JIT compilation, JSP
+ * compilation, and lazy initialization happen before user requests arrive.
+ * 
+ * <p>While a server is warming up, its listening ports are reported by {@link #getWarmingPorts()}
+ * and a {@link ServerWarmupEvent} is broadcast, so that reverse proxies can hold off on routing
+ * to it. A {@link ServerReadyEvent} is broadcast once the warm-up stage completes or times out.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum ServerWarmup {
+	instance;
+	
+	private static final Logger log = OpenLibertyLog.getLog();
+	
+	/** The number of passes made over the warm-up requests */
+	public static final int PASSES = 3;
+	/** The maximum number of distinct requests replayed in each pass */
+	public static final int MAX_REQUESTS = 64;
+	
+	private static final long AVAILABILITY_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+	private static final long AVAILABILITY_POLL_INTERVAL = 500;
+	/** The time after which no further passes are started */
+	private static final long TIME_BUDGET = TimeUnit.MINUTES.toMillis(3);
+	private static final int CONNECT_TIMEOUT = (int)TimeUnit.SECONDS.toMillis(10);
+	private static final int READ_TIMEOUT = (int)TimeUnit.MINUTES.toMillis(1);
+	
+	/** Listening ports of servers currently warming up, by server name */
+	private final Map<String, Collection<Integer>> warmingPorts = new ConcurrentHashMap<>();
+	private final Map<String, WarmupReport> lastReports = new ConcurrentHashMap<>();
+	
+	/**
+	 * Begins the warm-up stage for the provided server if its configuration calls for one.
+	 * 
+	 * @param server the server that was just started
+	 */
+	public void start(ServerInstance<?> server) {
+		WarmupConfiguration config = server.getConfiguration().getWarmup();
+		if(!config.isEnabled()) {
+			return;
+		}
+		Collection<Integer> ports = server.getListeningPorts();
+		if(ports.isEmpty()) {
+			return;
+		}
+		warmingPorts.put(server.getServerName(), Collections.unmodifiableList(new ArrayList<>(ports)));
+		OpenLibertyRuntime.instance.broadcastMessage(new ServerWarmupEvent(server));
+		
+		DominoThreadFactory.getExecutor().submit(() -> {
+			try {
+				WarmupReport report = warmUp(server, config, ports.iterator().next());
+				if(report != null) {
+					lastReports.put(server.getServerName(), report);
+				}
+			} catch(InterruptedException e) {
+				// Shutting down
+			} catch(Throwable t) {
+				if(log.isLoggable(Level.WARNING)) {
+					log.log(Level.WARNING, format(Messages.getString("ServerWarmup.exceptionWarmingUp"), server.getServerName()), t); //$NON-NLS-1$
+				}
+			} finally {
+				warmingPorts.remove(server.getServerName());
+				OpenLibertyRuntime.instance.broadcastMessage(new ServerReadyEvent(server));
+			}
+		});
+	}
+	
+	/**
+	 * @return the listening ports of all servers that are currently warming up
+	 */
+	public Set<Integer> getWarmingPorts() {
+		Set<Integer> result = new LinkedHashSet<>();
+		warmingPorts.values().forEach(result::addAll);
+		return result;
+	}
+	
+	/**
+	 * @return a {@link Map} of server names to the report of their most recent warm-up stage
+	 */
+	public Map<String, WarmupReport> getLastReports() {
+		return Collections.unmodifiableMap(new HashMap<>(lastReports));
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+	
+	private WarmupReport warmUp(ServerInstance<?> server, WarmupConfiguration config, int port) throws InterruptedException {
+		long start = System.nanoTime();
+		String host = server.getListeningHost();
+		if(host == null || host.isEmpty() || "*".equals(host) || "0.0.0.0".equals(host)) { //$NON-NLS-1$ //$NON-NLS-2$
+			host = "localhost"; //$NON-NLS-1$
+		}
+		
+		if(!awaitAvailable(host, port)) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.warning(format(Messages.getString("ServerWarmup.serverUnavailable"), server.getServerName(), host, Integer.toString(port))); //$NON-NLS-1$
+			}
+			return null;
+		}
+		
+		List<String> requests = collectRequests(server, config);
+		if(requests.isEmpty()) {
+			return null;
+		}
+		if(log.isLoggable(Level.INFO)) {
+			log.info(format(Messages.getString("ServerWarmup.warmingUp"), server.getServerName(), requests.size(), PASSES, config.getConcurrency())); //$NON-NLS-1$
+		}
+		
+		String baseUrl = "http://" + host + ':' + port; //$NON-NLS-1$
+		List<WarmupReport.Pass> passes = new ArrayList<>();
+		for(int i = 0; i < PASSES; i++) {
+			if(i > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > TIME_BUDGET) {
+				break;
+			}
+			WarmupReport.Pass pass = runPass(baseUrl, requests, config.getConcurrency());
+			passes.add(pass);
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("ServerWarmup.passCompleted"), server.getServerName(), i + 1, PASSES, pass.getRequests(), //$NON-NLS-1$
+					pass.getErrors(), pass.getP50Millis(), pass.getP90Millis(), pass.getMaxMillis(), pass.getElapsedMillis()));
+			}
+		}
+		
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if(log.isLoggable(Level.INFO)) {
+			log.info(format(Messages.getString("ServerWarmup.warmupCompleted"), server.getServerName(), elapsed)); //$NON-NLS-1$
+		}
+		return new WarmupReport(server.getServerName(), requests.size(), passes, elapsed);
+	}
+	
+	private List<String> collectRequests(ServerInstance<?> server, WarmupConfiguration config) {
+		Set<String> result = new LinkedHashSet<>();
+		for(String path : config.getPaths()) {
+			result.add(path.startsWith("/") ? path : "/" + path); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if(config.isReplayRecorded()) {
+			OpenLibertyUtil.findExtensions(WarmupRequestProvider.class)
+				.map(provider -> provider.getWarmupRequests(server, MAX_REQUESTS))
+				.forEach(result::addAll);
+		}
+		List<String> requests = new ArrayList<>(result);
+		return requests.size() > MAX_REQUESTS ? requests.subList(0, MAX_REQUESTS) : requests;
+	}
+	
+	private WarmupReport.Pass runPass(String baseUrl, List<String> requests, int concurrency) throws InterruptedException {
+		long start = System.nanoTime();
+		Queue<String> queue = new ConcurrentLinkedQueue<>(requests);
+		long[] latencies = new long[requests.size()];
+		AtomicInteger index = new AtomicInteger();
+		AtomicInteger errors = new AtomicInteger();
+		
+		ExecutorService executor = DominoThreadFactory.getExecutor();
+		List<Future<?>> workers = new ArrayList<>();
+		for(int i = 0; i < Math.min(concurrency, requests.size()); i++) {
+			workers.add(executor.submit(() -> {
+				String path;
+				while((path = queue.poll()) != null) {
+					long requestStart = System.nanoTime();
+					if(!request(baseUrl + path)) {
+						errors.incrementAndGet();
+					}
+					latencies[index.getAndIncrement()] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart);
+				}
+			}));
+		}
+		try {
+			for(Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch(ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch(InterruptedException e) {
+			workers.forEach(worker -> worker.cancel(true));
+			throw e;
+		}
+		
+		int count = index.get();
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return new WarmupReport.Pass(count, errors.get(), percentile(sorted, 50), percentile(sorted, 90), count == 0 ? 0 : sorted[count - 1], elapsed);
+	}
+	
+	/**
+	 * @return {@code true} if the request received a response below 500
+	 */
+	private static boolean request(String url) {
+		try {
+			HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+			try {
+				conn.setConnectTimeout(CONNECT_TIMEOUT);
+				conn.setReadTimeout(READ_TIMEOUT);
+				conn.setInstanceFollowRedirects(false);
+				int status = conn.getResponseCode();
+				InputStream is = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+				if(is != null) {
+					try {
+						byte[] buffer = new byte[8192];
+						while(is.read(buffer) != -1) {
+							// Read the full response, as a user agent would
+						}
+					} finally {
+						is.close();
+					}
+				}
+				return status < 500;
+			} finally {
+				conn.disconnect();
+			}
+		} catch(IOException e) {
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("ServerWarmup.requestFailed"), url, e)); //$NON-NLS-1$
+			}
+			return false;
+		}
+	}
+	
+	private static boolean awaitAvailable(String host, int port) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + AVAILABILITY_TIMEOUT;
+		while(System.currentTimeMillis() < deadline) {
+			try(Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+				return true;
+			} catch(IOException e) {
+				TimeUnit.MILLISECONDS.sleep(AVAILABILITY_POLL_INTERVAL);
+			}
+		}
+		return false;
+	}
+	
+	private static long percentile(long[] sorted, int percentile) {
+		if(sorted.length == 0) {
+			return 0;
+		}
+		int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+}
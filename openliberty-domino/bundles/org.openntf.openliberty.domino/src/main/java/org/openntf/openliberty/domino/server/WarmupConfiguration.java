@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Describes the requests to replay against a server after it starts and before it is
+ * marked ready in the reverse proxy.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class WarmupConfiguration {
+	public static final int DEFAULT_CONCURRENCY = 4;
+	
+	/** Settings that disable the warm-up stage */
+	public static final WarmupConfiguration NONE = new WarmupConfiguration(Collections.emptyList(), false, DEFAULT_CONCURRENCY);
+	
+	private final List<String> paths;
+	private final boolean replayRecorded;
+	private final int concurrency;
+	
+	/**
+	 * @param paths server-relative paths to request, including the context root and any query string
+	 * @param replayRecorded whether to also replay requests recorded by {@link WarmupRequestProvider}s
+	 * @param concurrency the maximum number of requests to have in flight at once
+	 */
+	public WarmupConfiguration(List<String> paths, boolean replayRecorded, int concurrency) {
+		this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+		this.replayRecorded = replayRecorded;
+		this.concurrency = Math.max(1, concurrency);
+	}
+	
+	public List<String> getPaths() {
+		return paths;
+	}
+	
+	public boolean isReplayRecorded() {
+		return replayRecorded;
+	}
+	
+	public int getConcurrency() {
+		return concurrency;
+	}
+	
+	/**
+	 * @return whether these settings call for a warm-up stage at all
+	 */
+	public boolean isEnabled() {
+		return !paths.isEmpty() || replayRecorded;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(concurrency, paths, replayRecorded);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof WarmupConfiguration)) {
+			return false;
+		}
+		WarmupConfiguration other = (WarmupConfiguration) obj;
+		return concurrency == other.concurrency && Objects.equals(paths, other.paths) && replayRecorded == other.replayRecorded;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("WarmupConfiguration [paths=%s, replayRecorded=%s, concurrency=%s]", paths, replayRecorded, concurrency); //$NON-NLS-1$
+	}
+}
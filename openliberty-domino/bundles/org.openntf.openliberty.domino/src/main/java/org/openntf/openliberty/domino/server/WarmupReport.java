@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summarizes the warm-up stage of a server, with latency figures for each pass over the
+ * warm-up requests so that the improvement from pass to pass can be compared.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class WarmupReport {
+	private final String serverName;
+	private final int requestCount;
+	private final List<Pass> passes;
+	private final long elapsedMillis;
+	
+	public WarmupReport(String serverName, int requestCount, List<Pass> passes, long elapsedMillis) {
+		this.serverName = serverName;
+		this.requestCount = requestCount;
+		this.passes = Collections.unmodifiableList(passes);
+		this.elapsedMillis = elapsedMillis;
+	}
+	
+	public String getServerName() {
+		return serverName;
+	}
+	
+	/**
+	 * @return the number of distinct requests replayed in each pass
+	 */
+	public int getRequestCount() {
+		return requestCount;
+	}
+	
+	public List<Pass> getPasses() {
+		return passes;
+	}
+	
+	/**
+	 * @return the total duration of the warm-up stage, including waiting for the server to accept
+	 * 		connections
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("WarmupReport [serverName=%s, requestCount=%s, passes=%s, elapsedMillis=%s]", serverName, requestCount, passes, elapsedMillis); //$NON-NLS-1$
+	}
+	
+	/**
+	 * Latency figures for a single pass over the warm-up requests.
+	 */
+	public static class Pass {
+		private final int requests;
+		private final int errors;
+		private final long p50Millis;
+		private final long p90Millis;
+		private final long maxMillis;
+		private final long elapsedMillis;
+		
+		public Pass(int requests, int errors, long p50Millis, long p90Millis, long maxMillis, long elapsedMillis) {
+			this.requests = requests;
+			this.errors = errors;
+			this.p50Millis = p50Millis;
+			this.p90Millis = p90Millis;
+			this.maxMillis = maxMillis;
+			this.elapsedMillis = elapsedMillis;
+		}
+		
+		public int getRequests() {
+			return requests;
+		}
+		
+		/**
+		 * @return the number of requests that failed to connect or returned a 5xx status
+		 */
+		public int getErrors() {
+			return errors;
+		}
+		
+		public long getP50Millis() {
+			return p50Millis;
+		}
+		
+		public long getP90Millis() {
+			return p90Millis;
+		}
+		
+		public long getMaxMillis() {
+			return maxMillis;
+		}
+		
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Pass [requests=%s, errors=%s, p50Millis=%s, p90Millis=%s, maxMillis=%s, elapsedMillis=%s]", requests, errors, p50Millis, p90Millis, maxMillis, elapsedMillis); //$NON-NLS-1$
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server;
+
+import java.util.List;
+
+/**
+ * This extension interface specifies a service that can supply requests to replay when
+ * warming up a server, such as a sample of requests recently proxied to it.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public interface WarmupRequestProvider {
+	/**
+	 * @param server the server being warmed up
+	 * @param maxRequests the maximum number of requests to return
+	 * @return a non-{@code null} {@link List} of server-relative paths, including any query
+	 * 		string, in descending order of importance
+	 */
+	List<String> getWarmupRequests(ServerInstance<?> server, int maxRequests);
+}
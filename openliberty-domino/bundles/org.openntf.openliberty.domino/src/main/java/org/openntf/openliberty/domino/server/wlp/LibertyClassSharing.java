@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.server.wlp;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Manages the class data sharing cache used by a Liberty server on a specific JVM.
+ * 
+ * <p>On OpenJ9 JVMs, this is a {@code -Xshareclasses} cache of {@value #OPENJ9_CACHE_SIZE}.
+ * On HotSpot JVMs, this is a dynamic AppCDS archive: Java 19 and above maintain it
+ * automatically via {@code -XX:+AutoCreateSharedArchive}, while Java 13 through 18 dump it
+ * with {@code -XX:ArchiveClassesAtExit} when the server first stops and use it thereafter.</p>
+ * 
+ * <p>The cache is discarded whenever the provided fingerprint of the runtime and applications
+ * changes. The resulting JVM options are written to a marked block at the end of the server's
+ * {@code jvm.options} file, leaving the administrator-provided options intact.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class LibertyClassSharing {
+	private static final Logger log = OpenLibertyLog.getLog();
+	
+	public static final String OPENJ9_CACHE_SIZE = "100m"; //$NON-NLS-1$
+	
+	static final String BLOCK_START = "# BEGIN class data sharing - managed by OpenLiberty Domino"; //$NON-NLS-1$
+	static final String BLOCK_END = "# END class data sharing"; //$NON-NLS-1$
+	
+	private static final String CACHE_NAME = "liberty"; //$NON-NLS-1$
+	private static final String ARCHIVE_FILE = "liberty.jsa"; //$NON-NLS-1$
+	private static final String FINGERPRINT_FILE = ".fingerprint"; //$NON-NLS-1$
+	private static final Pattern TRAILING_WHITESPACE = Pattern.compile("\\s+$"); //$NON-NLS-1$
+	
+	private enum JvmKind {
+		OPENJ9, HOTSPOT, UNSUPPORTED
+	}
+	
+	private final Path cacheDir;
+	private final JvmKind kind;
+	private final int javaVersion;
+	
+	/**
+	 * @param baseDir the directory containing class sharing caches for all servers
+	 * @param serverName the name of the server using the cache
+	 * @param javaHome the JVM that will run the server
+	 * @throws IOException if there is a problem inspecting the JVM
+	 */
+	public LibertyClassSharing(Path baseDir, String serverName, Path javaHome) throws IOException {
+		Properties release = readRelease(javaHome);
+		this.javaVersion = parseMajorVersion(StringUtil.toString(release.getProperty("JAVA_VERSION"))); //$NON-NLS-1$
+		if(isOpenJ9(javaHome, release)) {
+			this.kind = JvmKind.OPENJ9;
+		} else if(javaVersion >= 13) {
+			this.kind = JvmKind.HOTSPOT;
+		} else {
+			this.kind = JvmKind.UNSUPPORTED;
+		}
+		this.cacheDir = baseDir.resolve(serverName).resolve(jvmKey(javaHome, release));
+	}
+	
+	/**
+	 * @return whether class data sharing can be used with this JVM
+	 */
+	public boolean isSupported() {
+		return kind != JvmKind.UNSUPPORTED;
+	}
+	
+	/**
+	 * @return the directory holding this server's cache for this JVM
+	 */
+	public Path getCacheDirectory() {
+		return cacheDir;
+	}
+	
+	/**
+	 * Discards the cache if it was built from a different runtime or application state.
+	 * 
+	 * @param fingerprint a value identifying the current runtime and application state
+	 * @throws IOException if there is a problem resetting the cache
+	 */
+	public void validate(String fingerprint) throws IOException {
+		Path marker = cacheDir.resolve(FINGERPRINT_FILE);
+		if(Files.isDirectory(cacheDir)) {
+			String existing = Files.isRegularFile(marker) ? new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim() : ""; //$NON-NLS-1$
+			if(fingerprint.equals(existing)) {
+				return;
+			}
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("LibertyClassSharing.resettingCache"), cacheDir)); //$NON-NLS-1$
+			}
+			OpenLibertyUtil.deltree(cacheDir);
+		}
+		Files.createDirectories(cacheDir);
+		Files.write(marker, fingerprint.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @return the JVM options that enable the cache, or an empty list if the JVM doesn't
+	 * 		support class data sharing
+	 */
+	public List<String> getJvmOptions() {
+		switch(kind) {
+		case OPENJ9:
+			return Arrays.asList(
+				format("-Xshareclasses:name={0},cacheDir={1},nonfatal", CACHE_NAME, cacheDir.toAbsolutePath()), //$NON-NLS-1$
+				"-Xscmx" + OPENJ9_CACHE_SIZE //$NON-NLS-1$
+			);
+		case HOTSPOT: {
+			Path archive = cacheDir.resolve(ARCHIVE_FILE).toAbsolutePath();
+			if(javaVersion >= 19) {
+				return Arrays.asList("-XX:+AutoCreateSharedArchive", "-XX:SharedArchiveFile=" + archive); //$NON-NLS-1$ //$NON-NLS-2$
+			} else if(Files.isRegularFile(archive)) {
+				return Collections.singletonList("-XX:SharedArchiveFile=" + archive); //$NON-NLS-1$
+			} else {
+				return Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive); //$NON-NLS-1$
+			}
+		}
+		case UNSUPPORTED:
+		default:
+			return Collections.emptyList();
+		}
+	}
+	
+	/**
+	 * @return the size in bytes of the cache on disk
+	 */
+	public long getCacheSize() {
+		if(!Files.isDirectory(cacheDir)) {
+			return 0;
+		}
+		try(Stream<Path> paths = Files.walk(cacheDir)) {
+			return paths.filter(Files::isRegularFile)
+				.mapToLong(p -> p.toFile().length())
+				.sum();
+		} catch(IOException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Replaces the managed block in the given {@code jvm.options} file with the provided
+	 * options, removing the block entirely if {@code options} is empty.
+	 * 
+	 * @param jvmOptionsFile the server's {@code jvm.options} file
+	 * @param options the options to write
+	 * @throws IOException if there is a problem updating the file
+	 */
+	public static void writeJvmOptions(Path jvmOptionsFile, List<String> options) throws IOException {
+		String existing = Files.isRegularFile(jvmOptionsFile) ? new String(Files.readAllBytes(jvmOptionsFile), StandardCharsets.UTF_8) : ""; //$NON-NLS-1$
+		if(options.isEmpty() && !existing.contains(BLOCK_START)) {
+			return;
+		}
+		String content = stripManagedBlock(existing);
+		
+		try(Writer w = Files.newBufferedWriter(jvmOptionsFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			w.write(content);
+			if(!options.isEmpty()) {
+				if(!content.isEmpty() && !content.endsWith("\n")) { //$NON-NLS-1$
+					w.write('\n');
+				}
+				w.write(BLOCK_START);
+				w.write('\n');
+				for(String option : options) {
+					w.write(option);
+					w.write('\n');
+				}
+				w.write(BLOCK_END);
+				w.write('\n');
+			}
+		}
+	}
+	
+	/**
+	 * Removes the managed block and any trailing whitespace from the given {@code jvm.options}
+	 * content, so that the block does not contribute to fingerprints of the server configuration.
+	 * 
+	 * @param jvmOptions the content of a {@code jvm.options} file
+	 * @return the content without the managed block
+	 */
+	public static String stripManagedBlock(String jvmOptions) {
+		String result = jvmOptions;
+		int start = result.indexOf(BLOCK_START);
+		if(start > -1) {
+			int end = result.indexOf(BLOCK_END, start);
+			end = end < 0 ? result.length() : Math.min(result.length(), end + BLOCK_END.length() + 1);
+			result = result.substring(0, start) + result.substring(end);
+		}
+		return TRAILING_WHITESPACE.matcher(result).replaceFirst(""); //$NON-NLS-1$
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	private static Properties readRelease(Path javaHome) throws IOException {
+		Properties result = new Properties();
+		Path release = javaHome.resolve("release"); //$NON-NLS-1$
+		if(Files.isRegularFile(release)) {
+			try(InputStream is = Files.newInputStream(release)) {
+				result.load(is);
+			}
+			// Values in the release file are quoted
+			for(String key : result.stringPropertyNames()) {
+				result.setProperty(key, result.getProperty(key).replace("\"", "")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return result;
+	}
+	
+	private static boolean isOpenJ9(Path javaHome, Properties release) throws IOException {
+		String variant = StringUtil.toString(release.getProperty("JVM_VARIANT")).toLowerCase(); //$NON-NLS-1$
+		if(variant.contains("openj9") || variant.contains("j9")) { //$NON-NLS-1$ //$NON-NLS-2$
+			return true;
+		}
+		// Older and IBM-built JVMs may not describe themselves in the release file
+		try(Stream<Path> paths = Files.find(javaHome, 6, (path, attr) -> {
+			String name = path.getFileName().toString();
+			return name.startsWith("libj9vm") || name.startsWith("j9vm"); //$NON-NLS-1$ //$NON-NLS-2$
+		})) {
+			return paths.findFirst().isPresent();
+		}
+	}
+	
+	private static int parseMajorVersion(String version) {
+		List<String> parts = new ArrayList<>(Arrays.asList(version.split("[._+-]"))); //$NON-NLS-1$
+		if(parts.size() > 1 && "1".equals(parts.get(0))) { //$NON-NLS-1$
+			// e.g. 1.8.0_352
+			parts.remove(0);
+		}
+		try {
+			return Integer.parseInt(parts.get(0));
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	private static String jvmKey(Path javaHome, Properties release) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			digest.update(javaHome.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+			digest.update(new TreeMap<>(release).toString().getBytes(StandardCharsets.UTF_8));
+			String hex = new BigInteger(1, digest.digest()).toString(16);
+			return hex.substring(0, Math.min(16, hex.length()));
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -47,4 +47,17 @@ public interface LibertyExtensionDeployer {
 	 * @since 2.0.0
 	 */
 	String getFeatureVersion();
+	
+	/**
+	 * Ensures that any remote artifacts used to build the ESA are present in the
+	 * {@link org.openntf.openliberty.domino.artifact.ArtifactStore ArtifactStore}, even
+	 * when a previously-built ESA would otherwise be reused.
+	 * 
+	 * <p>The default implementation does nothing.</p>
+	 * 
+	 * @since 4.0.0
+	 */
+	default void fetchArtifacts() {
+		// NOP
+	}
 }
@@ -16,11 +16,13 @@
 package org.openntf.openliberty.domino.server.wlp;
 
 import java.nio.file.Path;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
 
 import org.openntf.openliberty.domino.server.AbstractJavaServerConfiguration;
+import org.openntf.openliberty.domino.server.DeploymentArchive;
+import org.openntf.openliberty.domino.server.FileDeploymentArchive;
 import org.openntf.openliberty.domino.util.xml.XMLDocument;
 
 /**
@@ -39,7 +41,9 @@ public class LibertyServerConfiguration extends AbstractJavaServerConfiguration
 	private String serverEnv;
 	private String jvmOptions;
 	private String bootstrapProperties;
-	private Collection<Path> additionalZips = new HashSet<>();
+	private List<DeploymentArchive> additionalZips = new ArrayList<>();
+	private boolean checkpointEnabled;
+	private boolean classSharingEnabled = true;
 	
 	public String getLibertyVersion() {
 		return libertyVersion;
@@ -88,11 +92,65 @@ public class LibertyServerConfiguration extends AbstractJavaServerConfiguration
 		this.bootstrapProperties = bootstrapProperties;
 	}
 	
+	/**
+	 * Adds a ZIP file on the local file system to be extracted into the server directory.
+	 * The file is not removed after deployment.
+	 * 
+	 * @param zip the ZIP file to deploy
+	 */
 	public void addAdditionalZip(Path zip) {
+		addAdditionalZip(new FileDeploymentArchive(zip));
+	}
+	/**
+	 * Adds a ZIP archive to be extracted into the server directory. Archives are extracted
+	 * in the order they are added.
+	 * 
+	 * @param zip the archive to deploy
+	 * @since 4.0.0
+	 */
+	public void addAdditionalZip(DeploymentArchive zip) {
 		this.additionalZips.add(zip);
 	}
-	public Collection<Path> getAdditionalZips() {
-		return Collections.unmodifiableCollection(additionalZips);
+	/**
+	 * @return the ZIP archives to extract into the server directory, in order
+	 * @since 4.0.0
+	 */
+	public List<DeploymentArchive> getAdditionalZips() {
+		return Collections.unmodifiableList(additionalZips);
+	}
+	
+	/**
+	 * @return whether the server should be started from an InstantOn checkpoint when the
+	 * 		runtime and JVM support it
+	 * @since 4.0.0
+	 */
+	public boolean isCheckpointEnabled() {
+		return checkpointEnabled;
+	}
+	/**
+	 * @param checkpointEnabled whether the server should be started from an InstantOn checkpoint
+	 * 		when the runtime and JVM support it
+	 * @since 4.0.0
+	 */
+	public void setCheckpointEnabled(boolean checkpointEnabled) {
+		this.checkpointEnabled = checkpointEnabled;
+	}
+	
+	/**
+	 * @return whether the server should use a managed class data sharing cache when its JVM
+	 * 		supports it
+	 * @since 4.0.0
+	 */
+	public boolean isClassSharingEnabled() {
+		return classSharingEnabled;
+	}
+	/**
+	 * @param classSharingEnabled whether the server should use a managed class data sharing
+	 * 		cache when its JVM supports it
+	 * @since 4.0.0
+	 */
+	public void setClassSharingEnabled(boolean classSharingEnabled) {
+		this.classSharingEnabled = classSharingEnabled;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -107,6 +165,8 @@ public class LibertyServerConfiguration extends AbstractJavaServerConfiguration
 		int result = 1;
 		result = prime * result + ((additionalZips == null) ? 0 : additionalZips.hashCode());
 		result = prime * result + ((bootstrapProperties == null) ? 0 : bootstrapProperties.hashCode());
+		result = prime * result + (checkpointEnabled ? 1231 : 1237);
+		result = prime * result + (classSharingEnabled ? 1231 : 1237);
 		result = prime * result + ((jvmOptions == null) ? 0 : jvmOptions.hashCode());
 		result = prime * result + ((libertyArtifact == null) ? 0 : libertyArtifact.hashCode());
 		result = prime * result + ((libertyMavenRepo == null) ? 0 : libertyMavenRepo.hashCode());
@@ -134,6 +194,10 @@ public class LibertyServerConfiguration extends AbstractJavaServerConfiguration
 				return false;
 		} else if (!bootstrapProperties.equals(other.bootstrapProperties))
 			return false;
+		if (checkpointEnabled != other.checkpointEnabled)
+			return false;
+		if (classSharingEnabled != other.classSharingEnabled)
+			return false;
 		if (jvmOptions == null) {
 			if (other.jvmOptions != null)
 				return false;
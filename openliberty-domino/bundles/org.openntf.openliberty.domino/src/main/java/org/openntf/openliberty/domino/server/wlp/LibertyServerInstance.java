@@ -25,13 +25,21 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.math.BigInteger;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,8 +47,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Manifest;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -51,15 +65,22 @@ import java.util.zip.ZipInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.openntf.openliberty.domino.config.RuntimeConfigurationProvider;
+import org.openntf.openliberty.domino.jvm.JVMIdentifier;
+import org.openntf.openliberty.domino.jvm.SemeruJavaRuntimeProvider;
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
 import org.openntf.openliberty.domino.runtime.RuntimeDeploymentTask;
+import org.openntf.openliberty.domino.runtime.wlp.LibertyRuntimeDeployment;
 import org.openntf.openliberty.domino.server.AbstractJavaServerInstance;
+import org.openntf.openliberty.domino.server.DeploymentArchive;
 import org.openntf.openliberty.domino.server.ServerConfiguration;
 import org.openntf.openliberty.domino.util.DominoThreadFactory;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 import org.openntf.openliberty.domino.util.LogFileWatcher;
 import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.ProvisioningCache;
 import org.openntf.openliberty.domino.util.StreamRedirector;
+import org.openntf.openliberty.domino.util.StreamingZipExtractor;
 import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
 import org.openntf.openliberty.domino.util.xml.XMLDocument;
 import org.openntf.openliberty.domino.util.xml.XMLNode;
@@ -70,6 +91,35 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 	private static final Logger log = OpenLibertyLog.getLog();
 
 	private static final String serverFile;
+	private static final int PASSWORD_LENGTH = 24;
+	
+	/** The earliest Liberty release that supports InstantOn checkpoints */
+	public static final String MIN_CHECKPOINT_VERSION = "23.0.0.2"; //$NON-NLS-1$
+	/** The file in the server directory recording the state the checkpoint was taken from */
+	private static final String CHECKPOINT_FINGERPRINT_FILE = ".checkpoint.fingerprint"; //$NON-NLS-1$
+	private static final String[] FINGERPRINT_CONFIG_FILES = { "server.xml", "server.env", "jvm.options", "bootstrap.properties" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final String[] FINGERPRINT_CONTENT_DIRS = { "apps", "dropins", "configDropins" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	/** The file in the server directory recording the deployment archives extracted into it */
+	private static final String DEPLOYMENT_MANIFEST_FILE = ".deployment.properties"; //$NON-NLS-1$
+	private static final String PROP_ARCHIVES = "archives"; //$NON-NLS-1$
+	private static final String PROP_FILE_PREFIX = "file."; //$NON-NLS-1$
+	
+	/** Logged by Liberty when an application starts */
+	private static final String MSG_APP_STARTED = "CWWKZ0001I"; //$NON-NLS-1$
+	/** Logged by Liberty when an application fails to start */
+	private static final String MSG_APP_START_FAILED = "CWWKZ0002E"; //$NON-NLS-1$
+	/** Logged by Liberty when a running application is updated */
+	private static final String MSG_APP_UPDATED = "CWWKZ0003I"; //$NON-NLS-1$
+	/** Logged by Liberty when a running application fails to update */
+	private static final String MSG_APP_UPDATE_FAILED = "CWWKZ0004E"; //$NON-NLS-1$
+	private static final long LOG_POLL_INTERVAL = 500;
+	
+	/**
+	 * Summaries of the most recent start of each server in each start mode, for comparing
+	 * full starts, checkpoint restores, and class data sharing.
+	 * @since 4.0.0
+	 */
+	private static final Map<String, Map<String, String>> startHistory = new ConcurrentHashMap<>();
 	static {
 		if(OpenLibertyUtil.IS_WINDOWS) {
 			serverFile = "server.bat"; //$NON-NLS-1$
@@ -85,13 +135,18 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 	private final RuntimeConfigurationProvider runtimeConfig = OpenLibertyUtil.findRequiredExtension(RuntimeConfigurationProvider.class);
 	
 	private LogFileWatcher logWatcher;
+	private volatile String failedCheckpointFingerprint;
+	/** Set while a checkpoint is being created and restored, during which the process exits deliberately */
+	private volatile boolean checkpointStartPending;
 	private Set<Process> subprocesses = Collections.synchronizedSet(new HashSet<>());
 	
 	/**
-	 * Caches server configurations to WLP root paths.
+	 * Caches Liberty runtime coordinates to WLP root paths. Servers on the same runtime share
+	 * an entry regardless of their other configuration, and distinct runtimes are deployed
+	 * in parallel.
 	 * @since 3.0.0
 	 */
-	private static final Map<LibertyServerConfiguration, Path> wlpRoots = Collections.synchronizedMap(new HashMap<>());
+	private static final ProvisioningCache<RuntimeKey, Path> wlpRoots = new ProvisioningCache<>();
 	
 	public LibertyServerInstance(String serverName, LibertyServerConfiguration config) {
 		this.serverName = serverName;
@@ -116,7 +171,7 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 			String serverEnv = serverConfig.getServerEnv();
 			String jvmOptions = serverConfig.getJvmOptions();
 			String bootstrapProperties = serverConfig.getBootstrapProperties();
-			Collection<Path> additionalZips = serverConfig.getAdditionalZips();
+			List<DeploymentArchive> additionalZips = serverConfig.getAdditionalZips();
 			
 			Path wlp = getWlpRoot();
 			if(log.isLoggable(Level.INFO)) {
@@ -127,7 +182,7 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 			Path javaHome =  getJavaHome();
 			
 			if(!serverExists(wlp, serverName)) {
-				sendCommand(wlp, javaHome, "create", serverName).waitFor(); //$NON-NLS-1$
+				createServer(wlp, javaHome);
 			}
 			if(StringUtil.isNotEmpty(serverXml)) {
 				deployServerXml(serverXml);
@@ -135,8 +190,8 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 			if(StringUtil.isNotEmpty(serverEnv)) {
 				deployServerEnv(serverEnv);
 			}
-			for(Path zip : additionalZips) {
-				deployAdditionalZip(zip);
+			if(!additionalZips.isEmpty()) {
+				deployAdditionalZips(additionalZips);
 			}
 			if(StringUtil.isNotEmpty(jvmOptions)) {
 				deployJvmOptions(jvmOptions);
@@ -151,6 +206,23 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 		}
 	}
 	
+	@Override
+	public void provision() {
+		try {
+			// Fetch archives explicitly, as deployment skips anything already installed
+			LibertyServerConfiguration config = getConfiguration();
+			findDeploymentTask(config).fetchArtifacts(config);
+			fetchJavaArtifacts();
+			OpenLibertyUtil.findExtensions(LibertyExtensionDeployer.class).forEach(LibertyExtensionDeployer::fetchArtifacts);
+			
+			Path wlp = getWlpRoot();
+			deployExtensions(wlp);
+			getJavaHome();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
 	@Override
 	public synchronized void watchLogs(PrintStream out) {
 		Path path = getWlpRoot();
@@ -164,7 +236,46 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 	
 	@Override
 	public void start() {
-		sendCommand(this.getWlpRoot(), this.getJavaHome(), "start", serverName); //$NON-NLS-1$
+		if(Boolean.TRUE.equals(probeRunning())) {
+			OpenLibertyLog.instance.out.println(format(Messages.getString("OpenLibertyRuntime.serverAlreadyRunning"), serverName)); //$NON-NLS-1$
+			return;
+		}
+		Path wlp = this.getWlpRoot();
+		Path javaHome = this.getJavaHome();
+		LibertyClassSharing classSharing = prepareClassSharing(wlp, javaHome);
+		if(getConfiguration().isCheckpointEnabled()) {
+			if(isCheckpointSupported()) {
+				// Creating the checkpoint runs the server through application startup, so don't block the caller
+				checkpointStartPending = true;
+				Runnable task = () -> {
+					try {
+						startWithCheckpoint(wlp, javaHome, classSharing);
+					} finally {
+						checkpointStartPending = false;
+					}
+				};
+				try {
+					DominoThreadFactory.getExecutor(Pool.PROVISIONING).submit(task);
+				} catch(RejectedExecutionException e) {
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("OpenLibertyRuntime.checkpointOnCallingThread"), serverName)); //$NON-NLS-1$
+					}
+					task.run();
+				} catch(RuntimeException e) {
+					checkpointStartPending = false;
+					throw e;
+				}
+				return;
+			} else if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("OpenLibertyRuntime.checkpointUnsupported"), serverName)); //$NON-NLS-1$
+			}
+		}
+		timedStart(wlp, javaHome, false, classSharing);
+	}
+	
+	@Override
+	public boolean isStartPending() {
+		return checkpointStartPending;
 	}
 	
 	@Override
@@ -172,6 +283,7 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 		// TODO support changes other than server.xml
 		LibertyServerConfiguration config = (LibertyServerConfiguration)configuration;
 		this.config.setServerXml(config.getServerXml());
+		this.config.setWarmup(config.getWarmup());
 		try {
 			deployServerXml(config.getServerXml().getXml());
 		} catch (IOException e) {
@@ -180,22 +292,102 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 		
 	}
 	
+	/**
+	 * Determines the current end of the server's {@code messages.log} file, so that a later
+	 * call to {@link #awaitApplicationStarted(String, long, long, TimeUnit)} only considers
+	 * messages logged after this point.
+	 * 
+	 * @return the current size of the log file in bytes, or {@code 0} if it does not exist
+	 * @since 4.0.0
+	 */
+	public long getMessagesLogPosition() {
+		try {
+			Path messagesLog = getMessagesLog();
+			return Files.isRegularFile(messagesLog) ? Files.size(messagesLog) : 0;
+		} catch(IOException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Waits for Liberty to report that the named application has started.
+	 * 
+	 * @param appName the name of the application, as used in the {@code webApplication} element
+	 * @param position the log position to start reading from, as returned by {@link #getMessagesLogPosition()}
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of {@code timeout}
+	 * @return {@code true} if the application started, or {@code false} if it failed to start or
+	 * 		did not report within the timeout
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @since 4.0.0
+	 */
+	public boolean awaitApplicationStarted(String appName, long position, long timeout, TimeUnit unit) throws InterruptedException {
+		Path messagesLog = getMessagesLog();
+		Pattern appPattern = Pattern.compile("(?<![\\w-])" + Pattern.quote(appName) + "(?![\\w-])"); //$NON-NLS-1$ //$NON-NLS-2$
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long pos = position;
+		while(System.nanoTime() < deadline) {
+			try {
+				if(Files.isRegularFile(messagesLog)) {
+					try(FileChannel channel = FileChannel.open(messagesLog, StandardOpenOption.READ)) {
+						if(channel.size() < pos) {
+							// The log was rolled over
+							pos = 0;
+						}
+						int length = (int)Math.min(channel.size() - pos, Integer.MAX_VALUE);
+						ByteBuffer buffer = ByteBuffer.allocate(length);
+						while(buffer.hasRemaining() && channel.read(buffer, pos + buffer.position()) > 0) {
+							// Keep reading
+						}
+						// Only consume complete lines, leaving a partial final line for the next pass
+						int end = buffer.position();
+						while(end > 0 && buffer.get(end - 1) != '\n') {
+							end--;
+						}
+						pos += end;
+						String text = new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+						for(String line : text.split("\\r?\\n")) { //$NON-NLS-1$
+							if(!appPattern.matcher(line).find()) {
+								continue;
+							}
+							if(line.contains(MSG_APP_STARTED) || line.contains(MSG_APP_UPDATED)) {
+								return true;
+							} else if(line.contains(MSG_APP_START_FAILED) || line.contains(MSG_APP_UPDATE_FAILED)) {
+								return false;
+							}
+						}
+					}
+				}
+			} catch(IOException e) {
+				if(log.isLoggable(Level.FINE)) {
+					log.log(Level.FINE, format(Messages.getString("OpenLibertyRuntime.unableToReadMessagesLog"), messagesLog), e); //$NON-NLS-1$
+				}
+			}
+			TimeUnit.MILLISECONDS.sleep(LOG_POLL_INTERVAL);
+		}
+		return false;
+	}
+	
 	public Path getWlpRoot() {
-		return wlpRoots.computeIfAbsent(this.getConfiguration(), config -> {
-			@SuppressWarnings("unchecked")
-			RuntimeDeploymentTask<LibertyServerConfiguration> deploymentService = OpenLibertyUtil.findExtensions(RuntimeDeploymentTask.class)
-					.filter(task -> task.canDeploy(config))
-					.map(task -> (RuntimeDeploymentTask<LibertyServerConfiguration>)task)
-					.findFirst()
-					.orElseThrow(() -> new IllegalStateException(format(Messages.getString("OpenLibertyRuntime.noDeploymentFor"), config.getClass().getName()))); //$NON-NLS-1$
+		LibertyServerConfiguration config = this.getConfiguration();
+		return wlpRoots.get(new RuntimeKey(config), key -> {
 			try {
-				return deploymentService.deploy(config);
+				return findDeploymentTask(config).deploy(config);
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
 			}
 		});
 	}
 	
+	@SuppressWarnings("unchecked")
+	private static RuntimeDeploymentTask<LibertyServerConfiguration> findDeploymentTask(LibertyServerConfiguration config) {
+		return OpenLibertyUtil.findExtensions(RuntimeDeploymentTask.class)
+				.filter(task -> task.canDeploy(config))
+				.map(task -> (RuntimeDeploymentTask<LibertyServerConfiguration>)task)
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException(format(Messages.getString("OpenLibertyRuntime.noDeploymentFor"), config.getClass().getName()))); //$NON-NLS-1$
+	}
+	
 	public void deployServerXml(String serverXml) throws IOException {
 		Path xmlFile = getWlpRoot().resolve("usr").resolve("servers").resolve(serverName).resolve("server.xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		try(BufferedWriter w = Files.newBufferedWriter(xmlFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
@@ -274,12 +466,38 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 	
 	@Override
 	public void showStatus() {
-		sendCommand(getWlpRoot(), getJavaHome(), "status", serverName); //$NON-NLS-1$
+		long start = System.nanoTime();
+		Boolean running = probeRunning();
+		if(running == null) {
+			sendCommand(getWlpRoot(), getJavaHome(), "status", serverName); //$NON-NLS-1$
+			return;
+		}
+		
+		if(running) {
+			String pid = readPid();
+			if(StringUtil.isNotEmpty(pid)) {
+				OpenLibertyLog.instance.out.println(format(Messages.getString("OpenLibertyRuntime.serverRunningWithPid"), serverName, pid)); //$NON-NLS-1$
+			} else {
+				OpenLibertyLog.instance.out.println(format(Messages.getString("OpenLibertyRuntime.serverRunning"), serverName)); //$NON-NLS-1$
+			}
+		} else {
+			OpenLibertyLog.instance.out.println(format(Messages.getString("OpenLibertyRuntime.serverNotRunning"), serverName)); //$NON-NLS-1$
+		}
+		logCommandTime("status", start, false); //$NON-NLS-1$
+	}
+	
+	@Override
+	public Boolean isRunning() {
+		return probeRunning();
 	}
 	
 	@Override
 	public void close() throws Exception {
-		sendCommand(getWlpRoot(), this.getJavaHome(), "stop", serverName); //$NON-NLS-1$
+		// A server that isn't running has nothing to stop, unless a start command is still in flight
+		boolean pending = subprocesses.stream().anyMatch(Process::isAlive);
+		if(pending || !Boolean.FALSE.equals(probeRunning())) {
+			sendCommand(getWlpRoot(), this.getJavaHome(), "stop", serverName); //$NON-NLS-1$
+		}
 		
 		for(Process p : subprocesses) {
 			if(p.isAlive()) {
@@ -304,6 +522,387 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 		return Files.isDirectory(server);
 	}
 	
+	/**
+	 * Determines whether the configured runtime and JVM can use InstantOn, which requires
+	 * Liberty {@value #MIN_CHECKPOINT_VERSION} or above and a Semeru (OpenJ9) JVM of Java 11
+	 * or above on Linux.
+	 */
+	private boolean isCheckpointSupported() {
+		if(!OpenLibertyUtil.IS_LINUX) {
+			return false;
+		}
+		JVMIdentifier jvm = getConfiguration().getJavaVersion();
+		if(jvm == null || !SemeruJavaRuntimeProvider.TYPE_OPENJ9.equals(jvm.getType()) || compareVersions(jvm.getVersion(), "11") < 0) { //$NON-NLS-1$
+			return false;
+		}
+		String version = getConfiguration().getLibertyVersion();
+		if(StringUtil.isEmpty(version)) {
+			version = LibertyRuntimeDeployment.DEFAULT_VERSION;
+		}
+		return compareVersions(version, MIN_CHECKPOINT_VERSION) >= 0;
+	}
+	
+	/**
+	 * Starts the server from its InstantOn checkpoint, first creating the checkpoint at the
+	 * {@code afterAppStart} phase if there is none or if the runtime, JVM, or server files
+	 * have changed since it was taken.
+	 */
+	private void startWithCheckpoint(Path wlp, Path javaHome, LibertyClassSharing classSharing) {
+		boolean restore = false;
+		try {
+			Path serverDir = getServerDirectory();
+			Path checkpointDir = serverDir.resolve("workarea").resolve("checkpoint"); //$NON-NLS-1$ //$NON-NLS-2$
+			Path marker = serverDir.resolve(CHECKPOINT_FINGERPRINT_FILE);
+			String fingerprint = computeContentFingerprint(wlp, javaHome);
+			
+			if(!fingerprint.equals(failedCheckpointFingerprint)) {
+				boolean valid = Files.isDirectory(checkpointDir) && Files.isRegularFile(marker)
+					&& fingerprint.equals(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim());
+				if(!valid) {
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("OpenLibertyRuntime.creatingCheckpoint"), serverName)); //$NON-NLS-1$
+					}
+					deleteCheckpoint();
+					int result = sendCommand(wlp, javaHome, "checkpoint", serverName, "--at=afterAppStart").waitFor(); //$NON-NLS-1$ //$NON-NLS-2$
+					if(result == 0 && Files.isDirectory(checkpointDir)) {
+						Files.write(marker, fingerprint.getBytes(StandardCharsets.UTF_8));
+						valid = true;
+					} else {
+						// Don't retry until something changes
+						failedCheckpointFingerprint = fingerprint;
+						if(log.isLoggable(Level.WARNING)) {
+							log.warning(format(Messages.getString("OpenLibertyRuntime.checkpointFailed"), serverName, result)); //$NON-NLS-1$
+						}
+					}
+				}
+				restore = valid;
+			}
+		} catch(IOException | RuntimeException e) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, format(Messages.getString("OpenLibertyRuntime.exceptionCreatingCheckpoint"), serverName), e); //$NON-NLS-1$
+			}
+		} catch(InterruptedException e) {
+			return;
+		}
+		timedStart(wlp, javaHome, restore, classSharing);
+	}
+	
+	/**
+	 * Removes the server's InstantOn checkpoint and its fingerprint, if present, so that
+	 * {@code server start} does not restore an image that was not validated for this start.
+	 */
+	private void deleteCheckpoint() throws IOException {
+		Path serverDir = getServerDirectory();
+		Files.deleteIfExists(serverDir.resolve(CHECKPOINT_FINGERPRINT_FILE));
+		Path checkpointDir = serverDir.resolve("workarea").resolve("checkpoint"); //$NON-NLS-1$ //$NON-NLS-2$
+		if(Files.exists(checkpointDir)) {
+			OpenLibertyUtil.deltree(checkpointDir);
+		}
+	}
+	
+	/**
+	 * Provisions the server's class data sharing cache for the given JVM, if enabled and supported,
+	 * and writes the corresponding options to the server's {@code jvm.options} file.
+	 * 
+	 * @return the active cache, or {@code null} if class data sharing is not in use
+	 */
+	private LibertyClassSharing prepareClassSharing(Path wlp, Path javaHome) {
+		Path jvmOptions = getServerDirectory().resolve("jvm.options"); //$NON-NLS-1$
+		try {
+			LibertyClassSharing classSharing = null;
+			if(getConfiguration().isClassSharingEnabled()) {
+				Path baseDir = runtimeConfig.getBaseDirectory().resolve("classcache"); //$NON-NLS-1$
+				classSharing = new LibertyClassSharing(baseDir, serverName, javaHome);
+				if(classSharing.isSupported()) {
+					classSharing.validate(computeContentFingerprint(wlp, javaHome));
+				} else {
+					if(log.isLoggable(Level.FINE)) {
+						log.fine(format(Messages.getString("OpenLibertyRuntime.classSharingUnsupported"), serverName, javaHome)); //$NON-NLS-1$
+					}
+					classSharing = null;
+				}
+			}
+			LibertyClassSharing.writeJvmOptions(jvmOptions, classSharing == null ? Collections.emptyList() : classSharing.getJvmOptions());
+			return classSharing;
+		} catch(IOException e) {
+			if(log.isLoggable(Level.WARNING)) {
+				log.log(Level.WARNING, format(Messages.getString("OpenLibertyRuntime.exceptionPreparingClassSharing"), serverName), e); //$NON-NLS-1$
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Computes a digest of everything that would make an existing checkpoint or class sharing
+	 * cache stale: the runtime and JVM locations, the JVM release information, and the server's
+	 * configuration and application files.
+	 */
+	private String computeContentFingerprint(Path wlp, Path javaHome) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(wlp.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+		digest.update(javaHome.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+		Path release = javaHome.resolve("release"); //$NON-NLS-1$
+		if(Files.isRegularFile(release)) {
+			digest.update(Files.readAllBytes(release));
+		}
+		
+		Path serverDir = getServerDirectory();
+		for(String name : FINGERPRINT_CONFIG_FILES) {
+			Path file = serverDir.resolve(name);
+			if(Files.isRegularFile(file)) {
+				// Options managed for class sharing are derived from this state, so don't count them
+				String content = LibertyClassSharing.stripManagedBlock(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				digest.update(content.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		for(String name : FINGERPRINT_CONTENT_DIRS) {
+			Path dir = serverDir.resolve(name);
+			if(Files.isDirectory(dir)) {
+				List<Path> files;
+				try(Stream<Path> paths = Files.walk(dir)) {
+					files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+				for(Path file : files) {
+					String entry = serverDir.relativize(file) + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis(); //$NON-NLS-1$ //$NON-NLS-2$
+					digest.update(entry.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return new BigInteger(1, digest.digest()).toString(16);
+	}
+	
+	/**
+	 * Starts the server via the script and, once it reports that it has started, logs the
+	 * start time and memory footprint alongside the most recent figures for the other start
+	 * modes used by this server.
+	 * 
+	 * <p>When {@code restore} is {@code false}, any existing checkpoint is removed first, since
+	 * the script would otherwise restore it regardless of the server's configuration.</p>
+	 */
+	private void timedStart(Path wlp, Path javaHome, boolean restore, LibertyClassSharing classSharing) {
+		if(!restore) {
+			try {
+				deleteCheckpoint();
+			} catch(IOException e) {
+				if(log.isLoggable(Level.WARNING)) {
+					log.log(Level.WARNING, format(Messages.getString("OpenLibertyRuntime.exceptionDeletingCheckpoint"), serverName), e); //$NON-NLS-1$
+				}
+			}
+		}
+		long start = System.nanoTime();
+		Process process = sendCommand(wlp, javaHome, "start", serverName); //$NON-NLS-1$
+		DominoThreadFactory.getExecutor(Pool.PROCESS).submit(() -> {
+			try {
+				// "server start" returns once the server has reported that it started
+				if(process.waitFor() == 0) {
+					long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					String mode = Messages.getString(restore ? "OpenLibertyRuntime.startModeRestore" : "OpenLibertyRuntime.startModeFull"); //$NON-NLS-1$ //$NON-NLS-2$
+					if(classSharing != null) {
+						mode = format(Messages.getString("OpenLibertyRuntime.startModeClassSharing"), mode); //$NON-NLS-1$
+					}
+					String rss = formatSize(readResidentMemory());
+					String cacheSize = classSharing == null ? formatSize(-1) : formatSize(classSharing.getCacheSize());
+					
+					Map<String, String> history = startHistory.computeIfAbsent(serverName, name -> new ConcurrentHashMap<>());
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("OpenLibertyRuntime.serverStartStats"), serverName, elapsed, mode, rss, cacheSize)); //$NON-NLS-1$
+						for(Map.Entry<String, String> entry : history.entrySet()) {
+							if(!entry.getKey().equals(mode)) {
+								log.info(format(Messages.getString("OpenLibertyRuntime.serverStartComparison"), serverName, entry.getKey(), entry.getValue())); //$NON-NLS-1$
+							}
+						}
+					}
+					history.put(mode, format(Messages.getString("OpenLibertyRuntime.startSummary"), elapsed, rss)); //$NON-NLS-1$
+				}
+			} catch(InterruptedException e) {
+				// Shutting down
+			}
+		});
+	}
+	
+	/**
+	 * @return the resident memory of the server process in bytes, or {@code -1} if it can't
+	 * 		be determined
+	 */
+	private long readResidentMemory() {
+		String pid = readPid();
+		if(!OpenLibertyUtil.IS_LINUX || StringUtil.isEmpty(pid)) {
+			return -1;
+		}
+		try(Stream<String> lines = Files.lines(Paths.get("/proc", pid, "status"))) { //$NON-NLS-1$ //$NON-NLS-2$
+			return lines.filter(line -> line.startsWith("VmRSS:")) //$NON-NLS-1$
+				.map(line -> line.substring("VmRSS:".length()).trim().split("\\s+")[0]) //$NON-NLS-1$ //$NON-NLS-2$
+				.mapToLong(kb -> Long.parseLong(kb) * 1024)
+				.findFirst()
+				.orElse(-1);
+		} catch(IOException | RuntimeException e) {
+			return -1;
+		}
+	}
+	
+	private static String formatSize(long bytes) {
+		if(bytes < 0) {
+			return Messages.getString("OpenLibertyRuntime.unknownSize"); //$NON-NLS-1$
+		}
+		return format(Messages.getString("OpenLibertyRuntime.sizeMB"), bytes / (1024 * 1024)); //$NON-NLS-1$
+	}
+	
+	private static int compareVersions(String a, String b) {
+		String[] aParts = StringUtil.toString(a).split("\\."); //$NON-NLS-1$
+		String[] bParts = StringUtil.toString(b).split("\\."); //$NON-NLS-1$
+		for(int i = 0; i < Math.max(aParts.length, bParts.length); i++) {
+			int result = Integer.compare(parseVersionPart(aParts, i), parseVersionPart(bParts, i));
+			if(result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+	
+	private static int parseVersionPart(String[] parts, int index) {
+		if(index >= parts.length) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(parts[index]);
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	private Path getServerDirectory() {
+		return getWlpRoot().resolve("usr").resolve("servers").resolve(serverName); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	private Path getMessagesLog() {
+		return getServerDirectory().resolve("logs").resolve("messages.log"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * Checks whether the server holds its {@code workarea/.sLock} file. Liberty keeps an
+	 * exclusive lock on this file for the life of the server process, which is the same check
+	 * the {@code server status} command performs in its own JVM.
+	 * 
+	 * @return {@code true} if the server is running, {@code false} if it is not, or {@code null}
+	 * 		if the lock could not be probed
+	 */
+	private synchronized Boolean probeRunning() {
+		Path lockFile = getServerDirectory().resolve("workarea").resolve(".sLock"); //$NON-NLS-1$ //$NON-NLS-2$
+		if(!Files.isRegularFile(lockFile)) {
+			return false;
+		}
+		try(FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.READ)) {
+			FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+			if(lock == null) {
+				return true;
+			}
+			lock.release();
+			return false;
+		} catch(IOException | OverlappingFileLockException e) {
+			if(log.isLoggable(Level.FINE)) {
+				log.log(Level.FINE, format(Messages.getString("OpenLibertyRuntime.unableToProbeServerLock"), lockFile), e); //$NON-NLS-1$
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads the process ID that Liberty records in {@code usr/servers/.pid} while the server
+	 * is running.
+	 * 
+	 * @return the process ID, or {@code null} if it is not available
+	 */
+	private String readPid() {
+		Path pidFile = getServerDirectory().getParent().resolve(".pid").resolve(serverName + ".pid"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			if(Files.isRegularFile(pidFile)) {
+				return new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim();
+			}
+		} catch(IOException e) {
+			// Treat as unavailable
+		}
+		return null;
+	}
+	
+	/**
+	 * Creates the server directory from the runtime's {@code defaultServer} template, as the
+	 * {@code server create} command does, falling back to the script if the template is missing.
+	 */
+	private void createServer(Path wlp, Path javaHome) throws IOException, InterruptedException {
+		Path template = wlp.resolve("templates").resolve("servers").resolve("defaultServer"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		if(!Files.isDirectory(template)) {
+			sendCommand(wlp, javaHome, "create", serverName).waitFor(); //$NON-NLS-1$
+			return;
+		}
+		
+		long start = System.nanoTime();
+		Path serverDir = getServerDirectory();
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("OpenLibertyRuntime.creatingServerFromTemplate"), serverName, template)); //$NON-NLS-1$
+		}
+		
+		// Build the server in a temporary directory so that a partial copy isn't mistaken for a server
+		Files.createDirectories(serverDir.getParent());
+		Path tempDir = Files.createTempDirectory(serverDir.getParent(), "." + serverName); //$NON-NLS-1$
+		try {
+			try(Stream<Path> paths = Files.walk(template)) {
+				for(Path source : (Iterable<Path>)paths::iterator) {
+					Path dest = tempDir.resolve(template.relativize(source).toString());
+					if(Files.isDirectory(source)) {
+						Files.createDirectories(dest);
+					} else {
+						Files.copy(source, dest, StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+			}
+			Files.createDirectories(tempDir.resolve("apps")); //$NON-NLS-1$
+			Files.createDirectories(tempDir.resolve("dropins")); //$NON-NLS-1$
+			
+			// Match the keystore password that server create generates for the default keystore
+			Path serverEnv = tempDir.resolve("server.env"); //$NON-NLS-1$
+			String env = Files.isRegularFile(serverEnv) ? new String(Files.readAllBytes(serverEnv), StandardCharsets.UTF_8) : ""; //$NON-NLS-1$
+			if(!env.contains("keystore_password=")) { //$NON-NLS-1$
+				try(Writer w = Files.newBufferedWriter(serverEnv, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+					if(!env.isEmpty() && !env.endsWith("\n")) { //$NON-NLS-1$
+						w.write('\n');
+					}
+					w.write("keystore_password=" + generatePassword() + '\n'); //$NON-NLS-1$
+				}
+			}
+			
+			Files.move(tempDir, serverDir, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if(Files.exists(tempDir)) {
+				OpenLibertyUtil.deltree(tempDir);
+			}
+		}
+		logCommandTime("create", start, false); //$NON-NLS-1$
+	}
+	
+	private static String generatePassword() {
+		String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"; //$NON-NLS-1$
+		SecureRandom random = new SecureRandom();
+		StringBuilder result = new StringBuilder(PASSWORD_LENGTH);
+		for(int i = 0; i < PASSWORD_LENGTH; i++) {
+			result.append(chars.charAt(random.nextInt(chars.length())));
+		}
+		return result.toString();
+	}
+	
+	private void logCommandTime(String command, long startNanos, boolean script) {
+		if(log.isLoggable(Level.FINE)) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			String key = script ? "OpenLibertyRuntime.commandCompletedScript" : "OpenLibertyRuntime.commandCompletedInProcess"; //$NON-NLS-1$ //$NON-NLS-2$
+			log.fine(format(Messages.getString(key), command, serverName, elapsed));
+		}
+	}
+	
 	private void deployExtensions(Path wlp) throws IOException {
 		Path lib = wlp.resolve("usr").resolve("extension").resolve("lib"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		Files.createDirectories(lib);
@@ -379,11 +978,26 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 			if(log.isLoggable(Level.FINE)) {
 				OpenLibertyLog.getLog().fine(format(Messages.getString("OpenLibertyRuntime.executingCommand"), pb.command())); //$NON-NLS-1$
 			}
+			long start = System.nanoTime();
 			Process process = pb.start();
 			subprocesses.add(process);
 			
-			DominoThreadFactory.getExecutor().submit(new StreamRedirector(process.getInputStream()));
-			DominoThreadFactory.getExecutor().submit(new StreamRedirector(process.getErrorStream()));
+			// Reap the process when it exits so that the set only tracks in-flight commands
+			DominoThreadFactory.getExecutor(Pool.PROCESS).submit(() -> {
+				try {
+					process.waitFor();
+					logCommandTime(command, start, true);
+				} catch(InterruptedException e) {
+					// Shutting down
+				} finally {
+					if(!process.isAlive()) {
+						subprocesses.remove(process);
+					}
+				}
+			});
+			
+			DominoThreadFactory.getExecutor(Pool.PROCESS).submit(new StreamRedirector(process.getInputStream()));
+			DominoThreadFactory.getExecutor(Pool.PROCESS).submit(new StreamRedirector(process.getErrorStream()));
 			
 			return process;
 		} catch(IOException e) {
@@ -423,33 +1037,102 @@ public class LibertyServerInstance extends AbstractJavaServerInstance<LibertySer
 		}
 	}
 	
-	private void deployAdditionalZip(Path zip) throws IOException {
+	/**
+	 * Streams the provided archives into the server directory in order. The keys of the
+	 * archives and the CRCs of the files extracted from them are recorded in the server
+	 * directory, so that an unchanged set of archives is skipped entirely and unchanged
+	 * files are not rewritten when any archive in the set changes.
+	 * 
+	 * @since 4.0.0
+	 */
+	private void deployAdditionalZips(List<DeploymentArchive> zips) throws IOException {
 		Path serverBase = getWlpRoot().resolve("usr").resolve("servers").resolve(serverName); //$NON-NLS-1$ //$NON-NLS-2$
-		try(InputStream is = Files.newInputStream(zip)) {
-			try(ZipInputStream zis = new ZipInputStream(is)) {
-				ZipEntry entry = zis.getNextEntry();
-				while(entry != null) {
-					String name = entry.getName();
-					
-					if(StringUtil.isNotEmpty(name)) {
-						if(OpenLibertyLog.instance.log.isLoggable(Level.FINE)) {
-							OpenLibertyLog.instance.log.fine(format(Messages.getString("OpenLibertyRuntime.deployingFile"), name)); //$NON-NLS-1$
-						}
-						
-						Path outputPath = serverBase.resolve(name);
-						if(entry.isDirectory()) {
-							Files.createDirectories(outputPath);
-						} else {
-							Files.createDirectories(outputPath.getParent());
-							Files.copy(zis, outputPath, StandardCopyOption.REPLACE_EXISTING);
-						}
-					}
-					
-					zis.closeEntry();
-					entry = zis.getNextEntry();
+		Path manifestFile = serverBase.resolve(DEPLOYMENT_MANIFEST_FILE);
+		
+		Properties manifest = new Properties();
+		if(Files.isRegularFile(manifestFile)) {
+			try(InputStream is = Files.newInputStream(manifestFile)) {
+				manifest.load(is);
+			}
+		}
+		String archiveKeys = zips.stream().map(DeploymentArchive::getKey).collect(Collectors.joining("\n")); //$NON-NLS-1$
+		if(archiveKeys.equals(manifest.getProperty(PROP_ARCHIVES))) {
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("OpenLibertyRuntime.deploymentArchivesUnchanged"), serverName)); //$NON-NLS-1$
+			}
+			return;
+		}
+		
+		Map<String, Long> fileCrcs = new HashMap<>();
+		for(String prop : manifest.stringPropertyNames()) {
+			if(prop.startsWith(PROP_FILE_PREFIX)) {
+				try {
+					fileCrcs.put(prop.substring(PROP_FILE_PREFIX.length()), Long.parseLong(manifest.getProperty(prop), 16));
+				} catch(NumberFormatException e) {
+					// Treat the file as changed
 				}
 			}
 		}
-		Files.deleteIfExists(zip);
+		
+		StreamingZipExtractor extractor = new StreamingZipExtractor(DominoThreadFactory.getExecutor(Pool.PROVISIONING), StreamingZipExtractor.DEFAULT_WRITER_COUNT);
+		for(DeploymentArchive zip : zips) {
+			if(log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("OpenLibertyRuntime.deployingArchive"), zip.getName(), serverName)); //$NON-NLS-1$
+			}
+			zip.read(is -> fileCrcs.putAll(extractor.extract(is, serverBase, fileCrcs)));
+		}
+		
+		Properties result = new Properties();
+		result.setProperty(PROP_ARCHIVES, archiveKeys);
+		fileCrcs.forEach((path, crc) -> result.setProperty(PROP_FILE_PREFIX + path, Long.toHexString(crc)));
+		Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp"); //$NON-NLS-1$
+		try(OutputStream os = Files.newOutputStream(tmp)) {
+			result.store(os, null);
+		}
+		Files.move(tmp, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Identifies a Liberty runtime by the Maven coordinates it is deployed from, with
+	 * unspecified values replaced by their defaults.
+	 * 
+	 * @since 4.0.0
+	 */
+	private static final class RuntimeKey {
+		private final String artifact;
+		private final String version;
+		private final String mavenRepo;
+		
+		public RuntimeKey(LibertyServerConfiguration config) {
+			this.artifact = orDefault(config.getLibertyArtifact(), LibertyRuntimeDeployment.DEFAULT_ARTIFACT);
+			this.version = orDefault(config.getLibertyVersion(), LibertyRuntimeDeployment.DEFAULT_VERSION);
+			this.mavenRepo = orDefault(config.getLibertyMavenRepo(), LibertyRuntimeDeployment.DEFAULT_MAVENREPO);
+		}
+		
+		private static String orDefault(String value, String defaultValue) {
+			return StringUtil.isEmpty(value) ? defaultValue : value;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(artifact, version, mavenRepo);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof RuntimeKey)) {
+				return false;
+			}
+			RuntimeKey other = (RuntimeKey)obj;
+			return artifact.equals(other.artifact) && version.equals(other.version) && mavenRepo.equals(other.mavenRepo);
+		}
+		
+		@Override
+		public String toString() {
+			return artifact + ':' + version + " (" + mavenRepo + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
 	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.openntf.openliberty.domino.util.NotesSessionWorker.SessionTask;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Provides memoized access to values of the Domino environment that do not change while the
+ * server is running, looked up via the {@link NotesSessionWorker}.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum DominoEnvironment {
+	instance;
+	
+	private final Map<String, String> values = new ConcurrentHashMap<>();
+	
+	/**
+	 * @return the path of the active Domino program directory
+	 */
+	public String getProgramDirectory() {
+		return get("NotesProgram", session -> session.getEnvironmentString("NotesProgram", true)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * @return the path of the active Domino data directory
+	 */
+	public String getDataDirectory() {
+		return get("Directory", session -> session.getEnvironmentString("Directory", true)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * @return the canonical name of the running Domino server
+	 */
+	public String getServerName() {
+		return get("$ServerName", session -> session.getUserName()); //$NON-NLS-1$
+	}
+	
+	/**
+	 * @return the version of the running Domino server, as returned by {@code @Version}
+	 */
+	public String getDominoVersion() {
+		return get("$Version", session -> StringUtil.toString(session.evaluate(" @Version ").get(0))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	/**
+	 * Discards all memoized values, so that they are looked up again on next access.
+	 */
+	public void clear() {
+		values.clear();
+	}
+	
+	private String get(String key, SessionTask<String> lookup) {
+		String value = values.get(key);
+		if(value == null) {
+			try {
+				value = StringUtil.toString(NotesSessionWorker.instance.call(lookup));
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+			String existing = values.putIfAbsent(key, value);
+			if(existing != null) {
+				value = existing;
+			}
+		}
+		return value;
+	}
+}
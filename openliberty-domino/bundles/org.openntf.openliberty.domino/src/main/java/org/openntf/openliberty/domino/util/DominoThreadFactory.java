@@ -15,62 +15,249 @@
  */
 package org.openntf.openliberty.domino.util;
 
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.metrics.MetricsWriter;
+import org.openntf.openliberty.domino.runtime.Messages;
 
 import lotus.domino.NotesThread;
 
+/**
+ * Creates {@link NotesThread}s for the runtime and manages the named thread pools that
+ * run on them.
+ * 
+ * <p>Each {@link Pool} is bounded in size and queue length, so that a burst of work of one
+ * kind cannot spawn an unbounded number of Notes threads or starve work of another kind.</p>
+ */
 public class DominoThreadFactory implements ThreadFactory {
-	private static int spawnCount = 0;
-	private static final Object sync = new Object();
+	/** The idle time after which threads above a pool's core size are released */
+	private static final long KEEP_ALIVE_SECONDS = 60;
+	private static final int SCHEDULER_SIZE = 5;
 
-	public static final DominoThreadFactory instance = new DominoThreadFactory();
-
-	private static ExecutorService executor;
-	private static ScheduledExecutorService scheduler;
+	public static final DominoThreadFactory instance = new DominoThreadFactory("DominoThreadFactory Thread"); //$NON-NLS-1$
 	
-	public static synchronized ExecutorService getExecutor() {
-		if(executor == null) {
-			executor = Executors.newCachedThreadPool(instance);
+	/**
+	 * The purpose-specific thread pools available to the runtime.
+	 * 
+	 * @since 4.0.0
+	 */
+	public enum Pool {
+		/** Long-lived runtime tasks, such as the runtime loop and runtime services */
+		RUNTIME("Runtime", 0, 32, 0, false), //$NON-NLS-1$
+		/** Tasks that block for the life of a child process, such as output redirection and log tailing */
+		PROCESS("Process", 0, 128, 0, false), //$NON-NLS-1$
+		/** The single thread used by {@link NotesSessionWorker} */
+		NOTES_SESSION("Notes Session", 1, 1, 256, false), //$NON-NLS-1$
+		/** Parallel downloads and archive extraction */
+		PROVISIONING("Provisioning", 0, 32, 0, false), //$NON-NLS-1$
+		/** Delivery of runtime events to subscribers */
+		EVENTS("Events", 4, 4, 64, true), //$NON-NLS-1$
+		/** Any other asynchronous work */
+		GENERAL("General", 0, 32, 0, true); //$NON-NLS-1$
+		
+		private final String poolName;
+		private final int coreSize;
+		private final int maxSize;
+		private final int queueSize;
+		private final boolean callerRuns;
+		
+		/**
+		 * @param queueSize the number of tasks that may wait for a thread, or {@code 0} to
+		 * 		hand tasks directly to a new thread
+		 * @param callerRuns whether saturated submissions should run on the submitting
+		 * 		thread, rather than being rejected
+		 */
+		private Pool(String poolName, int coreSize, int maxSize, int queueSize, boolean callerRuns) {
+			this.poolName = poolName;
+			this.coreSize = coreSize;
+			this.maxSize = maxSize;
+			this.queueSize = queueSize;
+			this.callerRuns = callerRuns;
+		}
+		
+		public String getPoolName() {
+			return poolName;
 		}
-		return executor;
 	}
+
+	private static final Map<Pool, InstrumentedThreadPool> pools = new EnumMap<>(Pool.class);
+	private static ScheduledThreadPoolExecutor scheduler;
+	
+	static {
+		MetricsRegistry.instance.register(MetricsRegistry.PREFIX + "pool", DominoThreadFactory::collectMetrics); //$NON-NLS-1$
+	}
+	
+	/**
+	 * @return the general-purpose executor
+	 * @see #getExecutor(Pool)
+	 */
+	public static ExecutorService getExecutor() {
+		return getExecutor(Pool.GENERAL);
+	}
+	
+	/**
+	 * Retrieves the executor for the given purpose, creating it if needed.
+	 * 
+	 * @param pool the pool to retrieve
+	 * @return the {@link ExecutorService} for the pool
+	 * @since 4.0.0
+	 */
+	public static synchronized ExecutorService getExecutor(Pool pool) {
+		return pools.computeIfAbsent(pool, InstrumentedThreadPool::new);
+	}
+	
 	public static synchronized ScheduledExecutorService getScheduler() {
 		if(scheduler == null) {
-			scheduler = Executors.newScheduledThreadPool(5, instance);
+			scheduler = new ScheduledThreadPoolExecutor(SCHEDULER_SIZE, new DominoThreadFactory("OpenLiberty Scheduler")); //$NON-NLS-1$
+			scheduler.setRemoveOnCancelPolicy(true);
 		}
 		return scheduler;
 	}
 	
-	public static void term() {
-		if(executor != null) {
-			executor.shutdownNow();
-		}
+	/**
+	 * Retrieves the executor used to dispatch runtime events to subscribers.
+	 * 
+	 * @return the event-dispatch {@link ExecutorService}
+	 * @since 4.0.0
+	 */
+	public static ExecutorService getEventExecutor() {
+		return getExecutor(Pool.EVENTS);
+	}
+	
+	/**
+	 * @return a snapshot of the utilization of each pool that has been created
+	 * @since 4.0.0
+	 */
+	public static synchronized List<PoolStatistics> getStatistics() {
+		List<PoolStatistics> result = new ArrayList<>();
+		pools.forEach((pool, executor) -> result.add(new PoolStatistics(pool.getPoolName(), executor, executor.rejected.get())));
 		if(scheduler != null) {
-			scheduler.shutdownNow();
+			result.add(new PoolStatistics("Scheduler", scheduler, 0)); //$NON-NLS-1$
+		}
+		return Collections.unmodifiableList(result);
+	}
+	
+	/**
+	 * Writes the utilization of each pool as metric families for the {@link MetricsRegistry}.
+	 * 
+	 * @param writer the writer to use
+	 * @since 4.0.0
+	 */
+	private static void collectMetrics(MetricsWriter writer) {
+		List<PoolStatistics> statistics = getStatistics();
+		String prefix = MetricsRegistry.PREFIX + "pool_"; //$NON-NLS-1$
+		writer.family(prefix + "queued_tasks", MetricsWriter.Type.GAUGE, "Tasks waiting for a thread in each pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(pool -> writer.gauge(prefix + "queued_tasks", pool.getQueued(), "pool", pool.getName())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "active_threads", MetricsWriter.Type.GAUGE, "Threads running a task in each pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(pool -> writer.gauge(prefix + "active_threads", pool.getActive(), "pool", pool.getName())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "threads", MetricsWriter.Type.GAUGE, "Threads in each pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(pool -> writer.gauge(prefix + "threads", pool.getPoolSize(), "pool", pool.getName())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "completed_tasks", MetricsWriter.Type.COUNTER, "Tasks completed by each pool"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(pool -> writer.counter(prefix + "completed_tasks", pool.getCompleted(), "pool", pool.getName())); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.family(prefix + "rejected_tasks", MetricsWriter.Type.COUNTER, "Tasks submitted while each pool was saturated, which are run on the submitting thread for the Events and General pools and refused otherwise"); //$NON-NLS-1$ //$NON-NLS-2$
+		statistics.forEach(pool -> writer.counter(prefix + "rejected_tasks", pool.getRejected(), "pool", pool.getName())); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	public static void term() {
+		List<ExecutorService> executors;
+		synchronized(DominoThreadFactory.class) {
+			executors = new ArrayList<>(pools.values());
+			if(scheduler != null) {
+				executors.add(scheduler);
+			}
+			pools.clear();
+			scheduler = null;
 		}
+		executors.forEach(ExecutorService::shutdownNow);
 		try {
-			if(executor != null) {
+			for(ExecutorService executor : executors) {
 				executor.awaitTermination(1, TimeUnit.MINUTES);
 			}
-			if(scheduler != null) {
-				scheduler.awaitTermination(1, TimeUnit.MINUTES);
-			}
 		} catch (InterruptedException e) {
 			// Ignore
 		}
-		executor = null;
-		scheduler = null;
+	}
+	
+	private final String namePrefix;
+	private final AtomicInteger spawnCount = new AtomicInteger();
+	
+	private DominoThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
 	}
 
 	@Override
 	public Thread newThread(final Runnable runnable) {
-		synchronized(sync) {
-			spawnCount++;
+		return new NotesThread(runnable, namePrefix + ' ' + spawnCount.incrementAndGet());
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private static class InstrumentedThreadPool extends ThreadPoolExecutor {
+		private final AtomicLong rejected = new AtomicLong();
+		
+		InstrumentedThreadPool(Pool pool) {
+			super(pool.coreSize, pool.maxSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, createQueue(pool),
+				new DominoThreadFactory("OpenLiberty " + pool.getPoolName())); //$NON-NLS-1$
+			// Single-thread pools may hold thread-confined state, so their thread is kept
+			if(pool.coreSize > 1) {
+				allowCoreThreadTimeOut(true);
+			}
+			setRejectedExecutionHandler(new SaturationHandler(pool, rejected));
+		}
+		
+		private static BlockingQueue<Runnable> createQueue(Pool pool) {
+			return pool.queueSize > 0 ? new ArrayBlockingQueue<>(pool.queueSize) : new SynchronousQueue<>();
+		}
+	}
+	
+	/**
+	 * Counts and logs submissions to a saturated pool before applying the pool's policy.
+	 */
+	private static class SaturationHandler implements RejectedExecutionHandler {
+		private final Pool pool;
+		private final AtomicLong rejected;
+		private final RejectedExecutionHandler delegate;
+		
+		SaturationHandler(Pool pool, AtomicLong rejected) {
+			this.pool = pool;
+			this.rejected = rejected;
+			this.delegate = pool.callerRuns ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy();
+		}
+		
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if(!executor.isShutdown()) {
+				long count = rejected.incrementAndGet();
+				// Avoid flooding the log when a pool is persistently saturated
+				if(Long.bitCount(count) == 1 && OpenLibertyLog.getLog().isLoggable(Level.WARNING)) {
+					String key = pool.callerRuns ? "DominoThreadFactory.poolSaturatedCallerRuns" : "DominoThreadFactory.poolSaturatedRejected"; //$NON-NLS-1$ //$NON-NLS-2$
+					OpenLibertyLog.getLog().warning(format(Messages.getString(key), pool.getPoolName(), executor.getActiveCount(), executor.getQueue().size(), count));
+				}
+			}
+			delegate.rejectedExecution(r, executor);
 		}
-		return new NotesThread(runnable, "DominoThreadFactory Thread " + spawnCount); //$NON-NLS-1$
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import static java.text.MessageFormat.format;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.metrics.Counter;
+import org.openntf.openliberty.domino.metrics.Histogram;
+import org.openntf.openliberty.domino.metrics.MetricsRegistry;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Downloads large files over HTTP, splitting them into {@code Range} requests that are
+ * fetched in parallel when the server supports it.
+ *
+ * <p>Progress is persisted alongside the partial file, so a download interrupted by a dropped
+ * connection or a server restart resumes from the last completed chunk rather than from
+ * the beginning. Failed requests are retried with exponential backoff.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class DownloadEngine {
+	private static final Logger log = OpenLibertyLog.instance.log;
+
+	/** The size of each ranged request */
+	public static final long CHUNK_SIZE = 8 * 1024 * 1024;
+	/** The maximum number of chunks to fetch at once */
+	public static final int MAX_PARALLEL_CHUNKS = 4;
+	/** The maximum number of attempts for each request */
+	public static final int MAX_ATTEMPTS = 5;
+
+	private static final long INITIAL_BACKOFF_MILLIS = 1000;
+	private static final long MAX_BACKOFF_MILLIS = 30 * 1000;
+	private static final int PROGRESS_STEP_PERCENT = 10;
+
+	private static final String PART_EXTENSION = ".part"; //$NON-NLS-1$
+	private static final String STATE_EXTENSION = ".part.state"; //$NON-NLS-1$
+	private static final String PROP_URL = "url"; //$NON-NLS-1$
+	private static final String PROP_LENGTH = "length"; //$NON-NLS-1$
+	private static final String PROP_VALIDATOR = "validator"; //$NON-NLS-1$
+	private static final String PROP_CHUNKSIZE = "chunkSize"; //$NON-NLS-1$
+	private static final String PROP_COMPLETED = "completed"; //$NON-NLS-1$
+
+	private static final Counter BYTES_DOWNLOADED = MetricsRegistry.instance.counter(MetricsRegistry.PREFIX + "download_bytes", "Bytes received by remote downloads"); //$NON-NLS-1$ //$NON-NLS-2$
+	private static final Counter SUCCEEDED = MetricsRegistry.instance.counter(MetricsRegistry.PREFIX + "downloads", "Remote downloads by outcome", "result", "success"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final Counter FAILED = MetricsRegistry.instance.counter(MetricsRegistry.PREFIX + "downloads", "Remote downloads by outcome", "result", "failure"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final Histogram DURATION = MetricsRegistry.instance.histogram(MetricsRegistry.PREFIX + "download_duration_seconds", "Time taken by successful remote downloads, including retries"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	private static final Pattern CONTENT_RANGE = Pattern.compile("^bytes\\s+\\d+-\\d+/(\\d+)$"); //$NON-NLS-1$
+
+	private final URL url;
+	private final String displayName;
+	private final Path target;
+	private final Path partFile;
+	private final Path stateFile;
+
+	private final AtomicLong transferred = new AtomicLong();
+	private volatile int lastReportedPercent;
+
+	private long length;
+	private String validator;
+	private BitSet completed;
+	private int chunkCount;
+
+	/**
+	 * Downloads the given URL to the target path, resuming any earlier interrupted download
+	 * to the same target.
+	 *
+	 * @param url the URL to download
+	 * @param target the destination file, which is only created once the download is complete
+	 * @throws IOException if the download fails after all retry attempts
+	 */
+	public static void download(URL url, Path target) throws IOException {
+		long start = System.nanoTime();
+		try {
+			new DownloadEngine(url, target).run();
+		} catch(IOException | RuntimeException e) {
+			FAILED.increment();
+			throw e;
+		}
+		SUCCEEDED.increment();
+		DURATION.record(System.nanoTime() - start);
+	}
+
+	private DownloadEngine(URL url, Path target) {
+		this.url = url;
+		String path = url.getPath();
+		this.displayName = path.substring(path.lastIndexOf('/')+1);
+		this.target = target;
+		this.partFile = target.resolveSibling(target.getFileName() + PART_EXTENSION);
+		this.stateFile = target.resolveSibling(target.getFileName() + STATE_EXTENSION);
+	}
+
+	private void run() throws IOException {
+		Files.createDirectories(target.getParent());
+
+		RemoteInfo remote = withRetries(this::probe);
+		if(remote.rangeSupported && remote.length > 0) {
+			downloadChunked(remote);
+		} else {
+			if(log.isLoggable(Level.FINE)) {
+				log.fine(format(Messages.getString("DownloadEngine.rangesNotSupported"), url)); //$NON-NLS-1$
+			}
+			withRetries(() -> {
+				downloadSingle();
+				return null;
+			});
+		}
+
+		Files.move(partFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(stateFile);
+	}
+
+	// *******************************************************************************
+	// * Remote probing
+	// *******************************************************************************
+
+	private static class RemoteInfo {
+		private boolean rangeSupported;
+		private long length = -1;
+		private String validator;
+	}
+
+	/**
+	 * Requests the first byte of the resource to determine its size and whether ranged
+	 * requests are supported.
+	 */
+	private RemoteInfo probe() throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		headers.put("Range", "bytes=0-0"); //$NON-NLS-1$ //$NON-NLS-2$
+		HttpURLConnection conn = OpenLibertyUtil.openConnection(url, headers);
+		try {
+			RemoteInfo result = new RemoteInfo();
+			int responseCode = conn.getResponseCode();
+			checkResponseCode(conn, responseCode);
+
+			// If-Range only accepts strong validators, so fall back to the date for weak ETags
+			String etag = conn.getHeaderField("ETag"); //$NON-NLS-1$
+			boolean strong = StringUtil.isNotEmpty(etag) && !etag.startsWith("W/"); //$NON-NLS-1$
+			result.validator = strong ? etag : conn.getHeaderField("Last-Modified"); //$NON-NLS-1$
+			if(responseCode == HttpURLConnection.HTTP_PARTIAL) {
+				Matcher matcher = CONTENT_RANGE.matcher(StringUtil.toString(conn.getHeaderField("Content-Range"))); //$NON-NLS-1$
+				if(matcher.matches()) {
+					result.rangeSupported = true;
+					result.length = Long.parseLong(matcher.group(1));
+				}
+			} else {
+				result.length = conn.getContentLengthLong();
+			}
+			return result;
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	// *******************************************************************************
+	// * Chunked downloads
+	// *******************************************************************************
+
+	private void downloadChunked(RemoteInfo remote) throws IOException {
+		this.length = remote.length;
+		this.validator = remote.validator;
+		this.chunkCount = (int)((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+		loadState();
+
+		try(FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			if(channel.size() > length) {
+				channel.truncate(length);
+			}
+
+			List<Integer> pending = new ArrayList<>();
+			for(int i = 0; i < chunkCount; i++) {
+				if(completed.get(i)) {
+					transferred.addAndGet(getChunkLength(i));
+				} else {
+					pending.add(i);
+				}
+			}
+			if(transferred.get() > 0 && log.isLoggable(Level.INFO)) {
+				log.info(format(Messages.getString("DownloadEngine.resumingDownload"), url, toMegabytes(transferred.get()), toMegabytes(length))); //$NON-NLS-1$
+			}
+
+			if(pending.size() == 1) {
+				fetchChunk(channel, pending.get(0));
+			} else if(!pending.isEmpty()) {
+				fetchChunksInParallel(channel, pending);
+			}
+			channel.force(true);
+		}
+	}
+
+	private void fetchChunksInParallel(FileChannel channel, List<Integer> pending) throws IOException {
+		// Each worker pulls the next pending chunk, which keeps the number of open connections bounded
+		List<Integer> queue = Collections.synchronizedList(new ArrayList<>(pending));
+		int workers = Math.min(MAX_PARALLEL_CHUNKS, pending.size());
+		List<Future<Void>> futures = new ArrayList<>(workers);
+		for(int i = 0; i < workers; i++) {
+			Future<Void> future;
+			try {
+				future = DominoThreadFactory.getExecutor(Pool.PROVISIONING).submit(() -> {
+					while(!Thread.currentThread().isInterrupted()) {
+						Integer chunk;
+						synchronized(queue) {
+							if(queue.isEmpty()) {
+								break;
+							}
+							chunk = queue.remove(0);
+						}
+						fetchChunk(channel, chunk);
+					}
+					return null;
+				});
+			} catch(RejectedExecutionException e) {
+				// The pool is saturated; the workers already running will pick up the remaining chunks
+				if(futures.isEmpty()) {
+					throw new IOException(e);
+				}
+				break;
+			}
+			futures.add(future);
+		}
+
+		try {
+			for(Future<Void> future : futures) {
+				future.get();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for(Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private void fetchChunk(FileChannel channel, int chunk) throws IOException {
+		long start = chunk * CHUNK_SIZE;
+		long end = start + getChunkLength(chunk) - 1;
+		AtomicLong written = new AtomicLong();
+
+		withRetries(() -> {
+			long from = start + written.get();
+			Map<String, String> headers = new HashMap<>();
+			headers.put("Range", "bytes=" + from + '-' + end); //$NON-NLS-1$ //$NON-NLS-2$
+			if(StringUtil.isNotEmpty(validator)) {
+				// Ensure that we don't stitch together different versions of the file
+				headers.put("If-Range", validator); //$NON-NLS-1$
+			}
+			HttpURLConnection conn = OpenLibertyUtil.openConnection(url, headers);
+			try {
+				int responseCode = conn.getResponseCode();
+				checkResponseCode(conn, responseCode);
+				if(responseCode != HttpURLConnection.HTTP_PARTIAL) {
+					throw new IOException(format(Messages.getString("DownloadEngine.remoteChanged"), url)); //$NON-NLS-1$
+				}
+
+				byte[] buffer = new byte[64 * 1024];
+				try(InputStream is = conn.getInputStream()) {
+					int read;
+					while(written.get() < end - start + 1 && (read = is.read(buffer)) != -1) {
+						int toWrite = (int)Math.min(read, end - start + 1 - written.get());
+						ByteBuffer buf = ByteBuffer.wrap(buffer, 0, toWrite);
+						long position = start + written.get();
+						while(buf.hasRemaining()) {
+							position += channel.write(buf, position);
+						}
+						written.addAndGet(toWrite);
+						BYTES_DOWNLOADED.add(toWrite);
+						reportProgress(transferred.addAndGet(toWrite));
+					}
+				}
+				if(written.get() < end - start + 1) {
+					throw new IOException(format(Messages.getString("DownloadEngine.prematureEnd"), url)); //$NON-NLS-1$
+				}
+			} finally {
+				conn.disconnect();
+			}
+			return null;
+		});
+
+		markCompleted(chunk);
+	}
+
+	private long getChunkLength(int chunk) {
+		return Math.min(CHUNK_SIZE, length - chunk * CHUNK_SIZE);
+	}
+
+	// *******************************************************************************
+	// * Single-stream downloads
+	// *******************************************************************************
+
+	private void downloadSingle() throws IOException {
+		HttpURLConnection conn = OpenLibertyUtil.openConnection(url, Collections.emptyMap());
+		try {
+			int responseCode = conn.getResponseCode();
+			checkResponseCode(conn, responseCode);
+			this.length = conn.getContentLengthLong();
+			transferred.set(0);
+
+			byte[] buffer = new byte[64 * 1024];
+			try(
+				InputStream is = conn.getInputStream();
+				OutputStream os = Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+			) {
+				int read;
+				while((read = is.read(buffer)) != -1) {
+					os.write(buffer, 0, read);
+					BYTES_DOWNLOADED.add(read);
+					reportProgress(transferred.addAndGet(read));
+				}
+			}
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	// *******************************************************************************
+	// * Persistent state
+	// *******************************************************************************
+
+	private void loadState() throws IOException {
+		this.completed = new BitSet(chunkCount);
+		if(Files.isRegularFile(stateFile) && Files.isRegularFile(partFile)) {
+			Properties props = new Properties();
+			try(InputStream is = Files.newInputStream(stateFile)) {
+				props.load(is);
+			}
+			boolean matches = url.toString().equals(props.getProperty(PROP_URL))
+				&& String.valueOf(length).equals(props.getProperty(PROP_LENGTH))
+				&& String.valueOf(CHUNK_SIZE).equals(props.getProperty(PROP_CHUNKSIZE))
+				&& StringUtil.toString(validator).equals(props.getProperty(PROP_VALIDATOR, "")); //$NON-NLS-1$
+			if(matches) {
+				for(String chunk : StringUtil.toString(props.getProperty(PROP_COMPLETED)).split(",")) { //$NON-NLS-1$
+					if(StringUtil.isNotEmpty(chunk)) {
+						completed.set(Integer.parseInt(chunk));
+					}
+				}
+				return;
+			}
+		}
+
+		// Otherwise, start over
+		Files.deleteIfExists(partFile);
+		saveState();
+	}
+
+	private synchronized void markCompleted(int chunk) throws IOException {
+		completed.set(chunk);
+		saveState();
+	}
+
+	private synchronized void saveState() throws IOException {
+		Properties props = new Properties();
+		props.setProperty(PROP_URL, url.toString());
+		props.setProperty(PROP_LENGTH, String.valueOf(length));
+		props.setProperty(PROP_CHUNKSIZE, String.valueOf(CHUNK_SIZE));
+		props.setProperty(PROP_VALIDATOR, StringUtil.toString(validator));
+		StringBuilder chunks = new StringBuilder();
+		for(int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i+1)) {
+			if(chunks.length() > 0) {
+				chunks.append(',');
+			}
+			chunks.append(i);
+		}
+		props.setProperty(PROP_COMPLETED, chunks.toString());
+
+		Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp"); //$NON-NLS-1$
+		try(OutputStream os = Files.newOutputStream(tmp)) {
+			props.store(os, null);
+		}
+		Files.move(tmp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	@FunctionalInterface
+	private interface IOCallable<T> {
+		T call() throws IOException;
+	}
+
+	private <T> T withRetries(IOCallable<T> task) throws IOException {
+		long backoff = INITIAL_BACKOFF_MILLIS;
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return task.call();
+			} catch(FileNotFoundException e) {
+				// No sense retrying
+				throw e;
+			} catch(IOException e) {
+				if(attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				if(log.isLoggable(Level.WARNING)) {
+					log.warning(format(Messages.getString("DownloadEngine.retryingRequest"), url, e.getMessage(), attempt, MAX_ATTEMPTS, backoff)); //$NON-NLS-1$
+				}
+				try {
+					TimeUnit.MILLISECONDS.sleep(backoff);
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+			}
+		}
+	}
+
+	private static void checkResponseCode(HttpURLConnection conn, int responseCode) throws IOException {
+		if(responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+			throw new FileNotFoundException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, conn.getURL())); //$NON-NLS-1$
+		}
+		if(responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+			throw new IOException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, conn.getURL())); //$NON-NLS-1$
+		}
+	}
+
+	private void reportProgress(long bytes) {
+		if(length <= 0) {
+			return;
+		}
+		int percent = (int)(bytes * 100 / length);
+		int step = percent / PROGRESS_STEP_PERCENT * PROGRESS_STEP_PERCENT;
+		if(step > lastReportedPercent) {
+			synchronized(this) {
+				if(step > lastReportedPercent) {
+					lastReportedPercent = step;
+					if(log.isLoggable(Level.INFO)) {
+						log.info(format(Messages.getString("DownloadEngine.progress"), displayName, step, toMegabytes(bytes), toMegabytes(length))); //$NON-NLS-1$
+					}
+				}
+			}
+		}
+	}
+
+	private static String toMegabytes(long bytes) {
+		return String.format("%.1f", bytes / 1024d / 1024d); //$NON-NLS-1$
+	}
+}
@@ -35,6 +35,7 @@ import java.util.logging.Logger;
 
 import org.openntf.openliberty.domino.log.OpenLibertyLog;
 import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
 import org.openntf.openliberty.domino.util.commons.ibm.StreamUtil;
 
 /**
@@ -67,7 +68,7 @@ public class LogFileWatcher implements AutoCloseable {
 			}
 		}
 		String consoleLog = logFile.getFileName().toString();
-		watcherThread = DominoThreadFactory.getExecutor().submit(() -> {
+		watcherThread = DominoThreadFactory.getExecutor(Pool.PROCESS).submit(() -> {
 			try(WatchService watchService = FileSystems.getDefault().newWatchService()) {
 				long pos = 0;
 				logs.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY);
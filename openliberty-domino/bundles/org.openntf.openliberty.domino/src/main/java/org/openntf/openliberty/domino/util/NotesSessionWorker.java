@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.DominoThreadFactory.Pool;
+
+import lotus.domino.NotesException;
+import lotus.domino.NotesFactory;
+import lotus.domino.Session;
+
+/**
+ * Runs Notes API tasks on a dedicated thread that holds a long-lived {@link Session},
+ * avoiding the cost of native session setup for each configuration lookup.
+ * 
+ * <p>Tasks run one at a time. A task that itself calls {@link #call(SessionTask)} runs the
+ * nested task inline on the same session. Tasks should recycle the databases and other
+ * objects they open, but the session is also replaced periodically and after any failure
+ * so that leaked handles do not accumulate.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public enum NotesSessionWorker {
+	instance;
+	
+	/** The number of tasks after which the session is recycled and recreated */
+	public static final int MAX_SESSION_USES = 500;
+	
+	/**
+	 * Represents a task to run with the worker's session.
+	 *
+	 * @param <T> the type of value returned by the task
+	 */
+	@FunctionalInterface
+	public interface SessionTask<T> {
+		T call(Session session) throws Exception;
+	}
+	
+	private volatile Thread workerThread;
+	private volatile boolean sessionOpen;
+	// Confined to the worker thread
+	private Session session;
+	private int uses;
+	
+	/**
+	 * Runs the provided task with the worker's session and waits for the result.
+	 * 
+	 * @param <T> the type of value returned by the task
+	 * @param task the task to run
+	 * @return the value returned by {@code task}
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @throws ExecutionException if {@code task} throws an exception
+	 */
+	public <T> T call(SessionTask<T> task) throws InterruptedException, ExecutionException {
+		if(Thread.currentThread() == workerThread) {
+			try {
+				return task.call(session);
+			} catch(Exception e) {
+				throw new ExecutionException(e);
+			}
+		}
+		return DominoThreadFactory.getExecutor(Pool.NOTES_SESSION).submit(() -> run(task)).get();
+	}
+	
+	/**
+	 * Recycles the worker's session, if one is open. This should be called before the runtime's
+	 * thread pools are terminated.
+	 */
+	public void close() {
+		if(sessionOpen) {
+			Future<?> result = DominoThreadFactory.getExecutor(Pool.NOTES_SESSION).submit(this::recycleSession);
+			try {
+				result.get(30, TimeUnit.SECONDS);
+			} catch(InterruptedException | ExecutionException | TimeoutException e) {
+				// Shutting down anyway
+			}
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal implementation
+	// *******************************************************************************
+	
+	private <T> T run(SessionTask<T> task) throws Exception {
+		workerThread = Thread.currentThread();
+		if(session == null) {
+			session = NotesFactory.createSession();
+			sessionOpen = true;
+			uses = 0;
+		}
+		boolean success = false;
+		try {
+			T result = task.call(session);
+			success = true;
+			return result;
+		} finally {
+			if(!success || ++uses >= MAX_SESSION_USES) {
+				recycleSession();
+			}
+		}
+	}
+	
+	private void recycleSession() {
+		if(session != null) {
+			try {
+				session.recycle();
+			} catch(NotesException e) {
+				if(OpenLibertyLog.getLog().isLoggable(Level.FINE)) {
+					OpenLibertyLog.getLog().log(Level.FINE, Messages.getString("NotesSessionWorker.exceptionRecyclingSession"), e); //$NON-NLS-1$
+				}
+			}
+			session = null;
+			sessionOpen = false;
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.openntf.openliberty.domino.util;
 
 import static java.text.MessageFormat.format;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -25,11 +26,13 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -42,9 +45,6 @@ import javax.net.ssl.X509TrustManager;
 import org.openntf.openliberty.domino.runtime.Messages;
 import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
 
-import lotus.domino.NotesFactory;
-import lotus.domino.Session;
-
 public enum OpenLibertyUtil {
 	;
 	
@@ -55,7 +55,16 @@ public enum OpenLibertyUtil {
 		IS_WINDOWS = os.toLowerCase().contains("windows"); //$NON-NLS-1$
 		IS_LINUX = os.toLowerCase().contains("linux"); //$NON-NLS-1$
 	}
+	/**
+	 * The maximum number of HTTP redirects to follow for a single request.
+	 * @since 4.0.0
+	 */
+	public static final int MAX_REDIRECTS = 10;
+	private static final int CONNECT_TIMEOUT = 30 * 1000;
+	private static final int READ_TIMEOUT = 60 * 1000;
+	
 	private static Path tempDirectory;
+	private static SSLSocketFactory trustingSocketFactory;
 	private static final TrustManager[] TRUST_ALL = new TrustManager[] {
 		new X509TrustManager() {
 	        public java.security.cert.X509Certificate[] getAcceptedIssuers() {
@@ -134,6 +143,47 @@ public enum OpenLibertyUtil {
 		T apply(String contentType, InputStream is) throws IOException;
 	}
 	
+	/**
+	 * Opens a connection to the given URL, following up to {@link #MAX_REDIRECTS} redirects.
+	 * As with {@link #withHttpsContext(Callable)}, HTTPS connections use TLS 1.2 and trust all
+	 * certificates, but this is configured per-connection and so is safe to use from multiple
+	 * threads at once.
+	 * 
+	 * @param url the URL to connect to
+	 * @param requestProperties additional request headers to send to each location
+	 * @return a connected {@link HttpURLConnection} for the final location, which the caller
+	 * 		is responsible for disconnecting
+	 * @throws IOException if there is a problem connecting or if the redirect limit is exceeded
+	 * @since 4.0.0
+	 */
+	public static HttpURLConnection openConnection(URL url, Map<String, String> requestProperties) throws IOException {
+		URL current = url;
+		for(int i = 0; i <= MAX_REDIRECTS; i++) {
+			HttpURLConnection conn = (HttpURLConnection)current.openConnection();
+			if(conn instanceof HttpsURLConnection) {
+				((HttpsURLConnection)conn).setSSLSocketFactory(getTrustingSocketFactory());
+			}
+			conn.setInstanceFollowRedirects(false);
+			conn.setConnectTimeout(CONNECT_TIMEOUT);
+			conn.setReadTimeout(READ_TIMEOUT);
+			requestProperties.forEach(conn::setRequestProperty);
+			
+			int responseCode = conn.getResponseCode();
+			if(responseCode >= 300 && responseCode < 400 && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+				String location = conn.getHeaderField("Location"); //$NON-NLS-1$
+				conn.disconnect();
+				if(StringUtil.isEmpty(location)) {
+					throw new IOException(format(Messages.getString("OpenLibertyUtil.redirectWithoutLocation"), responseCode, current)); //$NON-NLS-1$
+				}
+				// Locations may be relative to the requested URL
+				current = new URL(current, location);
+				continue;
+			}
+			return conn;
+		}
+		throw new IOException(format(Messages.getString("OpenLibertyUtil.tooManyRedirects"), MAX_REDIRECTS, url)); //$NON-NLS-1$
+	}
+	
 	/**
 	 * @param <T> the expected return type
 	 * @param url the URL to fetch
@@ -141,42 +191,51 @@ public enum OpenLibertyUtil {
 	 * @return the consumed value
 	 * @throws IOException if there is an unexpected problem downloading the file or if the server
 	 * 		returns any code other than {@link HttpURLConnection#HTTP_OK}
+	 * @throws FileNotFoundException if the server returns {@link HttpURLConnection#HTTP_NOT_FOUND}
 	 * @since 2.0.0
 	 */
 	public static <T> T download(URL url, IOFunction<T> consumer) throws IOException {
-		return withHttpsContext(() -> {
-			HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+		HttpURLConnection conn = openConnection(url, Collections.emptyMap());
+		try {
 			int responseCode = conn.getResponseCode();
-			try {
-				if(responseCode >= 300 && responseCode < 400) {
-					// Passively handle the redirect
-					String location = conn.getHeaderField("Location"); //$NON-NLS-1$
-					return download(new URL(location), consumer);
-				}
-				
-				if(responseCode != HttpURLConnection.HTTP_OK) {
-					throw new IOException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, url)); //$NON-NLS-1$
-				}
-				try(InputStream is = conn.getInputStream()) {
-					String contentType = conn.getHeaderField("Content-Type"); //$NON-NLS-1$
-					if(StringUtil.isEmpty(contentType) || "application/octet-stream".equals(contentType)) { //$NON-NLS-1$
-						// Check for a Content-Disposition header
-						String disp = conn.getHeaderField("Content-Disposition"); //$NON-NLS-1$
-						if(StringUtil.isNotEmpty(disp) && disp.toLowerCase().startsWith("attachment; filename=")) { //$NON-NLS-1$
-							String fileName = disp.substring("attachment; filename=".length()).toLowerCase(); //$NON-NLS-1$
-							if(fileName.endsWith(".zip")) { //$NON-NLS-1$
-								contentType = "application/zip"; //$NON-NLS-1$
-							} else if(fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) { //$NON-NLS-1$ //$NON-NLS-2$
-								contentType = "application/gzip"; //$NON-NLS-1$
-							}
+			if(responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+				throw new FileNotFoundException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, conn.getURL())); //$NON-NLS-1$
+			}
+			if(responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException(format(Messages.getString("OpenLibertyUtil.unexpectedResponseCodeFromUrl"), responseCode, conn.getURL())); //$NON-NLS-1$
+			}
+			try(InputStream is = conn.getInputStream()) {
+				String contentType = conn.getHeaderField("Content-Type"); //$NON-NLS-1$
+				if(StringUtil.isEmpty(contentType) || "application/octet-stream".equals(contentType)) { //$NON-NLS-1$
+					// Check for a Content-Disposition header
+					String disp = conn.getHeaderField("Content-Disposition"); //$NON-NLS-1$
+					if(StringUtil.isNotEmpty(disp) && disp.toLowerCase().startsWith("attachment; filename=")) { //$NON-NLS-1$
+						String fileName = disp.substring("attachment; filename=".length()).toLowerCase(); //$NON-NLS-1$
+						if(fileName.endsWith(".zip")) { //$NON-NLS-1$
+							contentType = "application/zip"; //$NON-NLS-1$
+						} else if(fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) { //$NON-NLS-1$ //$NON-NLS-2$
+							contentType = "application/gzip"; //$NON-NLS-1$
 						}
 					}
-					return consumer.apply(contentType, is);
 				}
-			} finally {
-				conn.disconnect();
+				return consumer.apply(contentType, is);
+			}
+		} finally {
+			conn.disconnect();
+		}
+	}
+	
+	private static synchronized SSLSocketFactory getTrustingSocketFactory() throws IOException {
+		if(trustingSocketFactory == null) {
+			try {
+				SSLContext sc = SSLContext.getInstance("TLSv1.2"); //$NON-NLS-1$
+				sc.init(null, TRUST_ALL, new SecureRandom());
+				trustingSocketFactory = sc.getSocketFactory();
+			} catch(GeneralSecurityException e) {
+				throw new IOException(e);
 			}
-		});
+		}
+		return trustingSocketFactory;
 	}
 	
 	/**
@@ -184,18 +243,7 @@ public enum OpenLibertyUtil {
 	 * @since 3.0.0
 	 */
 	public static String getDominoProgramDirectory() {
-		try {
-			return DominoThreadFactory.getExecutor().submit(() -> {
-				Session s = NotesFactory.createSession();
-				try {
-					return s.getEnvironmentString("NotesProgram", true); //$NON-NLS-1$
-				} finally {
-					s.recycle();
-				}
-			}).get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
-		}
+		return DominoEnvironment.instance.getProgramDirectory();
 	}
 	
 	/**
@@ -203,18 +251,7 @@ public enum OpenLibertyUtil {
 	 * @since 3.0.0
 	 */
 	public static String getDominoDataDirectory() {
-		try {
-			return DominoThreadFactory.getExecutor().submit(() -> {
-				Session s = NotesFactory.createSession();
-				try {
-					return s.getEnvironmentString("Directory", true); //$NON-NLS-1$
-				} finally {
-					s.recycle();
-				}
-			}).get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
-		}
+		return DominoEnvironment.instance.getDataDirectory();
 	}
 	
 	/**
@@ -287,6 +324,7 @@ public enum OpenLibertyUtil {
 	 * @since 2.1.0
 	 */
 	public static void performShutdownCleanup() {
+		NotesSessionWorker.instance.close();
 		DominoThreadFactory.term();
 		if(tempDirectory != null) {
 			try {
@@ -0,0 +1,458 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveEntry;
+import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveInputStream;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Extracts {@code .tar.gz} archives using a pipeline of stages: one thread reading the
+ * compressed source, one inflating it, the calling thread parsing tar entries, and a pool
+ * of workers writing file contents to disk. The stages are connected by bounded queues, so
+ * memory use stays fixed regardless of the size of the archive.
+ *
+ * <p>POSIX permissions and symbolic links are restored from the tar headers when the
+ * destination file system supports them. Symbolic links must point within the destination
+ * and are only created once all other content has been written, so that no entry can be
+ * written through a link to a location outside of it.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class PipelinedTarExtractor {
+	private static final Logger log = OpenLibertyLog.instance.log;
+
+	/** The size of blocks passed between the read and inflate stages */
+	public static final int BLOCK_SIZE = 256 * 1024;
+	/** The default number of threads writing file content */
+	public static final int DEFAULT_WRITER_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/** The maximum number of blocks queued between each stage */
+	private static final int QUEUE_DEPTH = 16;
+	/** The maximum amount of file content held in memory waiting to be written */
+	private static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+	/** Entries larger than this are written directly by the parsing thread rather than buffered */
+	private static final int MAX_BUFFERED_ENTRY = 8 * 1024 * 1024;
+
+	private final ExecutorService executor;
+	private final int writerCount;
+	private final Function<String, String> nameMapper;
+
+	/**
+	 * @param executor the executor to run the pipeline stages on; this must be able to run
+	 * 		{@code writerCount + 2} tasks concurrently
+	 * @param writerCount the number of concurrent file writers
+	 * @param nameMapper a function to map entry names to relative destination paths, returning
+	 * 		an empty value to skip an entry
+	 */
+	public PipelinedTarExtractor(ExecutorService executor, int writerCount, Function<String, String> nameMapper) {
+		this.executor = executor;
+		this.writerCount = writerCount;
+		this.nameMapper = nameMapper;
+	}
+
+	/**
+	 * Extracts the provided gzip-compressed tar stream into the given directory.
+	 *
+	 * @param source the compressed archive data
+	 * @param dest the directory to extract into
+	 * @throws IOException if there is a problem reading the archive or writing its contents
+	 */
+	public void extract(InputStream source, Path dest) throws IOException {
+		boolean posix = dest.getFileSystem().supportedFileAttributeViews().contains("posix"); //$NON-NLS-1$
+		BlockQueue compressed = new BlockQueue();
+		BlockQueue inflated = new BlockQueue();
+		BlockingQueue<WriteTask> writes = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+		Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+		AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+
+		List<Future<?>> stages = new ArrayList<>();
+		boolean success = false;
+		try {
+			stages.add(executor.submit(() -> {
+				try {
+					compressed.transferFrom(source);
+				} catch(Throwable t) {
+					compressed.fail(t);
+					throw t;
+				}
+				return null;
+			}));
+			stages.add(executor.submit(() -> {
+				try(InputStream is = new GZIPInputStream(compressed.inputStream(), BLOCK_SIZE)) {
+					inflated.transferFrom(is);
+				} catch(Throwable t) {
+					inflated.fail(t);
+					throw t;
+				}
+				return null;
+			}));
+			for(int i = 0; i < writerCount; i++) {
+				stages.add(executor.submit(() -> {
+					runWriter(writes, pendingBytes, writeFailure, posix);
+					return null;
+				}));
+			}
+
+			Map<Path, Integer> directories = new LinkedHashMap<>();
+			Map<Path, Path> hardLinks = new LinkedHashMap<>();
+			Map<Path, Path> symbolicLinks = new LinkedHashMap<>();
+			try(TarArchiveInputStream tis = new TarArchiveInputStream(inflated.inputStream())) {
+				parse(tis, dest, posix, writes, pendingBytes, writeFailure, directories, hardLinks, symbolicLinks);
+			}
+			for(int i = 0; i < writerCount; i++) {
+				writes.put(WriteTask.END);
+			}
+			for(Future<?> stage : stages) {
+				stage.get();
+			}
+			if(writeFailure.get() != null) {
+				throw writeFailure.get();
+			}
+
+			// Links and directory permissions are applied once all content is in place, with
+			//   symbolic links last so that nothing is written or copied through them
+			for(Map.Entry<Path, Path> link : hardLinks.entrySet()) {
+				Files.copy(link.getValue(), link.getKey(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+			if(posix) {
+				for(Map.Entry<Path, Integer> dir : directories.entrySet()) {
+					// Always keep directories writable by the owner so that the runtime can be removed later
+					Set<PosixFilePermission> perms = toPermissions(dir.getValue());
+					perms.add(PosixFilePermission.OWNER_WRITE);
+					Files.setPosixFilePermissions(dir.getKey(), perms);
+				}
+			}
+			createSymbolicLinks(dest.toAbsolutePath().normalize(), symbolicLinks);
+			success = true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			throw toIOException(e.getCause());
+		} catch(IOException | RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw toIOException(t);
+		} finally {
+			if(!success) {
+				stages.forEach(stage -> stage.cancel(true));
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+
+	private void parse(TarArchiveInputStream tis, Path dest, boolean posix, BlockingQueue<WriteTask> writes, Semaphore pendingBytes,
+			AtomicReference<Throwable> writeFailure, Map<Path, Integer> directories, Map<Path, Path> hardLinks, Map<Path, Path> symbolicLinks) throws Throwable {
+		Path root = dest.toAbsolutePath().normalize();
+		Set<Path> createdDirs = new HashSet<>();
+		createDirectories(root, createdDirs);
+
+		for(TarArchiveEntry entry = tis.getNextTarEntry(); entry != null; entry = tis.getNextTarEntry()) {
+			if(writeFailure.get() != null) {
+				throw writeFailure.get();
+			}
+
+			String name = nameMapper.apply(entry.getName());
+			if(StringUtil.isEmpty(name)) {
+				continue;
+			}
+			Path path = resolve(root, name);
+
+			if(log.isLoggable(Level.FINER)) {
+				log.finer(format(Messages.getString("JavaRuntimeProvider.deployingFile"), name)); //$NON-NLS-1$
+			}
+
+			if(entry.isDirectory()) {
+				createDirectories(path, createdDirs);
+				directories.put(path, entry.getMode());
+			} else if(entry.isSymbolicLink()) {
+				createDirectories(path.getParent(), createdDirs);
+				symbolicLinks.put(path, checkLinkTarget(root, path, entry.getLinkName()));
+			} else if(entry.isLink()) {
+				createDirectories(path.getParent(), createdDirs);
+				String target = nameMapper.apply(entry.getLinkName());
+				if(StringUtil.isNotEmpty(target)) {
+					hardLinks.put(path, resolve(root, target));
+				}
+			} else {
+				createDirectories(path.getParent(), createdDirs);
+				long size = entry.getSize();
+				if(size > MAX_BUFFERED_ENTRY) {
+					// Stream large entries directly rather than holding them in memory
+					Files.copy(tis, path, StandardCopyOption.REPLACE_EXISTING);
+					if(posix) {
+						Files.setPosixFilePermissions(path, toPermissions(entry.getMode()));
+					}
+				} else {
+					byte[] data = new byte[(int)size];
+					int read = 0;
+					while(read < data.length) {
+						int r = tis.read(data, read, data.length - read);
+						if(r == -1) {
+							throw new IOException(format(Messages.getString("PipelinedTarExtractor.truncatedEntry"), name)); //$NON-NLS-1$
+						}
+						read += r;
+					}
+					pendingBytes.acquire(Math.max(1, data.length));
+					writes.put(new WriteTask(path, data, entry.getMode()));
+				}
+			}
+		}
+	}
+
+	private static void runWriter(BlockingQueue<WriteTask> writes, Semaphore pendingBytes, AtomicReference<Throwable> writeFailure, boolean posix) throws InterruptedException {
+		while(true) {
+			WriteTask task = writes.take();
+			if(task == WriteTask.END) {
+				return;
+			}
+			try {
+				// After a failure, keep draining the queue so that the parser doesn't block
+				if(writeFailure.get() == null) {
+					Files.write(task.path, task.data, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+					if(posix) {
+						Files.setPosixFilePermissions(task.path, toPermissions(task.mode));
+					}
+				}
+			} catch(Throwable t) {
+				writeFailure.compareAndSet(null, t);
+			} finally {
+				pendingBytes.release(Math.max(1, task.data.length));
+			}
+		}
+	}
+
+	static Path resolve(Path root, String name) throws IOException {
+		Path path = root.resolve(name).normalize();
+		if(!path.startsWith(root)) {
+			throw new IOException(format(Messages.getString("PipelinedTarExtractor.entryOutsideTarget"), name)); //$NON-NLS-1$
+		}
+		return path;
+	}
+
+	/**
+	 * Verifies that the target of a symbolic link is relative and resolves within {@code root}.
+	 *
+	 * @return the target as it should be written to the link
+	 */
+	static Path checkLinkTarget(Path root, Path link, String linkName) throws IOException {
+		Path target = Paths.get(linkName);
+		if(target.isAbsolute() || !link.getParent().resolve(target).normalize().startsWith(root)) {
+			throw new IOException(format(Messages.getString("PipelinedTarExtractor.linkOutsideTarget"), root.relativize(link), linkName)); //$NON-NLS-1$
+		}
+		return target;
+	}
+
+	/**
+	 * Creates the provided symbolic links, then verifies that each one whose target exists
+	 * really resolves within {@code root}, which also catches links that only escape by way
+	 * of other links.
+	 */
+	private static void createSymbolicLinks(Path root, Map<Path, Path> symbolicLinks) throws IOException {
+		if(symbolicLinks.isEmpty()) {
+			return;
+		}
+		for(Map.Entry<Path, Path> link : symbolicLinks.entrySet()) {
+			Files.deleteIfExists(link.getKey());
+			try {
+				Files.createSymbolicLink(link.getKey(), link.getValue());
+			} catch(UnsupportedOperationException e) {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("PipelinedTarExtractor.skippingSymbolicLink"), root.relativize(link.getKey()))); //$NON-NLS-1$
+				}
+				return;
+			}
+		}
+		Path realRoot = root.toRealPath();
+		for(Map.Entry<Path, Path> link : symbolicLinks.entrySet()) {
+			if(Files.exists(link.getKey()) && !link.getKey().toRealPath().startsWith(realRoot)) {
+				Files.delete(link.getKey());
+				throw new IOException(format(Messages.getString("PipelinedTarExtractor.linkOutsideTarget"), root.relativize(link.getKey()), link.getValue())); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private static void createDirectories(Path dir, Set<Path> createdDirs) throws IOException {
+		if(createdDirs.add(dir)) {
+			Files.createDirectories(dir);
+		}
+	}
+
+	/**
+	 * Converts the permission bits of a tar mode to a set of {@link PosixFilePermission}s.
+	 *
+	 * @param mode the tar entry mode
+	 * @return a mutable set of the corresponding permissions
+	 */
+	public static Set<PosixFilePermission> toPermissions(int mode) {
+		Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+		// PosixFilePermission is declared in order from OWNER_READ (0400) to OTHERS_EXECUTE (0001)
+		PosixFilePermission[] values = PosixFilePermission.values();
+		for(int i = 0; i < values.length; i++) {
+			if((mode & (1 << (values.length - 1 - i))) != 0) {
+				result.add(values[i]);
+			}
+		}
+		return result;
+	}
+
+	static IOException toIOException(Throwable t) {
+		if(t instanceof IOException) {
+			return (IOException)t;
+		} else if(t instanceof UncheckedIOException) {
+			return ((UncheckedIOException)t).getCause();
+		} else {
+			return new IOException(t);
+		}
+	}
+
+	private static class WriteTask {
+		static final WriteTask END = new WriteTask(null, new byte[0], 0);
+
+		private final Path path;
+		private final byte[] data;
+		private final int mode;
+
+		WriteTask(Path path, byte[] data, int mode) {
+			this.path = path;
+			this.data = data;
+			this.mode = mode;
+		}
+	}
+
+	/**
+	 * A bounded queue of data blocks passed from one pipeline stage to the next.
+	 */
+	private static class BlockQueue {
+		private static final byte[] EOF = new byte[0];
+
+		private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+		private volatile Throwable failure;
+
+		/**
+		 * Reads all data from the provided stream into the queue in full blocks, followed by
+		 * an end-of-stream marker.
+		 */
+		void transferFrom(InputStream is) throws IOException, InterruptedException {
+			while(true) {
+				byte[] buffer = new byte[BLOCK_SIZE];
+				int filled = 0;
+				int read;
+				while(filled < buffer.length && (read = is.read(buffer, filled, buffer.length - filled)) != -1) {
+					filled += read;
+				}
+				if(filled > 0) {
+					queue.put(filled == buffer.length ? buffer : Arrays.copyOf(buffer, filled));
+				}
+				if(filled < buffer.length) {
+					queue.put(EOF);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Signals the consuming stage that the producer has failed. Any queued data is
+		 * discarded, since it can no longer be used.
+		 */
+		void fail(Throwable t) {
+			this.failure = t;
+			queue.clear();
+			queue.offer(EOF);
+		}
+
+		InputStream inputStream() {
+			return new InputStream() {
+				private byte[] current;
+				private int pos;
+
+				@Override
+				public int read() throws IOException {
+					byte[] b = new byte[1];
+					int read = read(b, 0, 1);
+					return read == -1 ? -1 : (b[0] & 0xFF);
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if(len == 0) {
+						return 0;
+					}
+					if(current == null || pos == current.length) {
+						if(current == EOF) {
+							return -1;
+						}
+						try {
+							current = queue.take();
+						} catch(InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException(e);
+						}
+						pos = 0;
+						if(current == EOF) {
+							if(failure != null) {
+								throw toIOException(failure);
+							}
+							return -1;
+						}
+					}
+					int count = Math.min(len, current.length - pos);
+					System.arraycopy(current, pos, b, off, count);
+					pos += count;
+					return count;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import java.text.MessageFormat;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Represents a point-in-time view of the utilization of a thread pool managed by
+ * {@link DominoThreadFactory}.
+ * 
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class PoolStatistics {
+	private final String name;
+	private final int poolSize;
+	private final int largestPoolSize;
+	private final int maxPoolSize;
+	private final int active;
+	private final int queued;
+	private final long completed;
+	private final long rejected;
+	
+	PoolStatistics(String name, ThreadPoolExecutor executor, long rejected) {
+		this.name = name;
+		this.poolSize = executor.getPoolSize();
+		this.largestPoolSize = executor.getLargestPoolSize();
+		this.maxPoolSize = executor.getMaximumPoolSize();
+		this.active = executor.getActiveCount();
+		this.queued = executor.getQueue().size();
+		this.completed = executor.getCompletedTaskCount();
+		this.rejected = rejected;
+	}
+
+	/**
+	 * @return the name of the pool
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the current number of threads in the pool
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @return the largest number of threads that have been in the pool at once
+	 */
+	public int getLargestPoolSize() {
+		return largestPoolSize;
+	}
+
+	/**
+	 * @return the maximum number of threads allowed in the pool
+	 */
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * @return the approximate number of threads running tasks
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a thread
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return the approximate number of tasks that have completed
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return the number of submissions made while the pool was saturated, which were
+	 * 		either run on the submitting thread or rejected
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("PoolStatistics [name={0}, poolSize={1}, largestPoolSize={2}, maxPoolSize={3}, active={4}, queued={5}, completed={6}, rejected={7}]", //$NON-NLS-1$
+			name, poolSize, largestPoolSize, maxPoolSize, active, queued, completed, rejected);
+	}
+}
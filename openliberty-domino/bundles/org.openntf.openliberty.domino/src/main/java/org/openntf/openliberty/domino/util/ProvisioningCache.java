@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A cache of values that are expensive to provision, such as downloaded runtimes, that
+ * allows values for different keys to be loaded concurrently.
+ * 
+ * <p>Each key is associated with a {@link CompletableFuture}. The first caller for a key
+ * runs the loader on its own thread, while concurrent callers for the same key wait on
+ * that result instead of starting a second load. If the loader fails, the entry is removed
+ * before the failure is reported, so that a later call will try again.</p>
+ * 
+ * <p>Loaders must not request their own key from the same cache.</p>
+ * 
+ * @param <K> the key type, which should be immutable
+ * @param <V> the provisioned value type
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class ProvisioningCache<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> values = new ConcurrentHashMap<>();
+	
+	/**
+	 * Retrieves the value for the given key, provisioning it with {@code loader} if it is not
+	 * already present or in progress.
+	 * 
+	 * @param key the key to look up
+	 * @param loader the function used to provision a missing value
+	 * @return the provisioned value
+	 * @throws RuntimeException if {@code loader} failed, either on this thread or for the
+	 * 		concurrent call this one waited on
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		CompletableFuture<V> future = values.get(key);
+		if(future == null) {
+			CompletableFuture<V> created = new CompletableFuture<>();
+			future = values.putIfAbsent(key, created);
+			if(future == null) {
+				future = created;
+				try {
+					created.complete(loader.apply(key));
+				} catch(Throwable t) {
+					// Remove the entry first so that waiters' retries start a new attempt
+					values.remove(key, created);
+					created.completeExceptionally(t);
+				}
+			}
+		}
+		
+		try {
+			return future.join();
+		} catch(CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			} else {
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Removes the value for the given key, so that the next call to {@link #get} provisions
+	 * it again. An in-progress load is unaffected for callers already waiting on it.
+	 * 
+	 * @param key the key to remove
+	 */
+	public void invalidate(K key) {
+		values.remove(key);
+	}
+	
+	/**
+	 * Removes all values from the cache.
+	 */
+	public void clear() {
+		values.clear();
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.util;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.openntf.openliberty.domino.log.OpenLibertyLog;
+import org.openntf.openliberty.domino.runtime.Messages;
+import org.openntf.openliberty.domino.util.commons.ibm.StringUtil;
+
+/**
+ * Extracts ZIP archives directly from a stream, without first copying the archive to disk.
+ * The calling thread parses entries while a pool of workers writes file contents, with the
+ * amount of buffered content bounded so that memory use stays fixed regardless of the size
+ * of the archive.
+ * 
+ * <p>Entries whose CRC and size match those recorded from a previous extraction, and whose
+ * destination file still has that size, are not rewritten.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 4.0.0
+ */
+public class StreamingZipExtractor {
+	private static final Logger log = OpenLibertyLog.instance.log;
+
+	/** The default number of threads writing file content */
+	public static final int DEFAULT_WRITER_COUNT = PipelinedTarExtractor.DEFAULT_WRITER_COUNT;
+
+	/** The maximum number of entries queued for writing */
+	private static final int QUEUE_DEPTH = 16;
+	/** The maximum amount of file content held in memory waiting to be written */
+	private static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+	/** Entries larger than this are written directly by the parsing thread rather than buffered */
+	private static final int MAX_BUFFERED_ENTRY = 8 * 1024 * 1024;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final ExecutorService executor;
+	private final int writerCount;
+
+	/**
+	 * @param executor the executor to run the writers on; this must be able to run
+	 * 		{@code writerCount} tasks concurrently
+	 * @param writerCount the number of concurrent file writers
+	 */
+	public StreamingZipExtractor(ExecutorService executor, int writerCount) {
+		this.executor = executor;
+		this.writerCount = writerCount;
+	}
+
+	/**
+	 * Extracts the provided ZIP stream into the given directory.
+	 *
+	 * @param source the archive data
+	 * @param dest the directory to extract into
+	 * @param previous a map of relative file paths to the CRC-32 values they were last extracted
+	 * 		with, used to skip unchanged entries
+	 * @return a map of the relative paths of all files in the archive to their CRC-32 values
+	 * @throws IOException if there is a problem reading the archive or writing its contents
+	 */
+	public Map<String, Long> extract(InputStream source, Path dest, Map<String, Long> previous) throws IOException {
+		BlockingQueue<WriteTask> writes = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+		Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+		AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+
+		List<Future<?>> writers = new ArrayList<>();
+		boolean success = false;
+		try {
+			for(int i = 0; i < writerCount; i++) {
+				writers.add(executor.submit(() -> {
+					runWriter(writes, pendingBytes, writeFailure);
+					return null;
+				}));
+			}
+
+			Map<String, Long> result;
+			try(ZipInputStream zis = new ZipInputStream(source)) {
+				result = parse(zis, dest, previous, writes, pendingBytes, writeFailure);
+			}
+			for(int i = 0; i < writerCount; i++) {
+				writes.put(WriteTask.END);
+			}
+			for(Future<?> writer : writers) {
+				writer.get();
+			}
+			if(writeFailure.get() != null) {
+				throw writeFailure.get();
+			}
+			success = true;
+			return result;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			throw PipelinedTarExtractor.toIOException(e.getCause());
+		} catch(IOException | RuntimeException | Error e) {
+			throw e;
+		} catch(Throwable t) {
+			throw PipelinedTarExtractor.toIOException(t);
+		} finally {
+			if(!success) {
+				writers.forEach(writer -> writer.cancel(true));
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+
+	private Map<String, Long> parse(ZipInputStream zis, Path dest, Map<String, Long> previous, BlockingQueue<WriteTask> writes,
+			Semaphore pendingBytes, AtomicReference<Throwable> writeFailure) throws Throwable {
+		Path root = dest.toAbsolutePath().normalize();
+		Set<Path> createdDirs = new HashSet<>();
+		createDirectories(root, createdDirs);
+		Map<String, Long> result = new HashMap<>();
+		int written = 0;
+		int skipped = 0;
+
+		for(ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+			if(writeFailure.get() != null) {
+				throw writeFailure.get();
+			}
+
+			String name = entry.getName();
+			if(StringUtil.isEmpty(name)) {
+				continue;
+			}
+			Path path = PipelinedTarExtractor.resolve(root, name);
+			if(entry.isDirectory()) {
+				createDirectories(path, createdDirs);
+				continue;
+			}
+			String relativePath = root.relativize(path).toString().replace('\\', '/');
+			createDirectories(path.getParent(), createdDirs);
+
+			// Stored entries and most tools record the CRC in the local header, which lets large
+			//   unchanged entries be skipped before reading their content
+			if(entry.getSize() > MAX_BUFFERED_ENTRY && isUnchanged(previous, relativePath, entry.getCrc(), entry.getSize(), path)) {
+				result.put(relativePath, entry.getCrc());
+				skipped++;
+				continue;
+			}
+
+			byte[] data = readUpTo(zis, entry.getSize() > MAX_BUFFERED_ENTRY ? 0 : MAX_BUFFERED_ENTRY + 1);
+			if(data.length > MAX_BUFFERED_ENTRY || entry.getSize() > MAX_BUFFERED_ENTRY) {
+				// Stream large entries directly rather than holding them in memory
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("OpenLibertyRuntime.deployingFile"), relativePath)); //$NON-NLS-1$
+				}
+				try(OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					os.write(data);
+					byte[] buffer = new byte[COPY_BUFFER_SIZE];
+					int read;
+					while((read = zis.read(buffer)) != -1) {
+						os.write(buffer, 0, read);
+					}
+				}
+				written++;
+			} else if(isUnchanged(previous, relativePath, entry.getCrc(), data.length, path)) {
+				// The CRC is always known once the entry's content has been read
+				skipped++;
+			} else {
+				if(log.isLoggable(Level.FINE)) {
+					log.fine(format(Messages.getString("OpenLibertyRuntime.deployingFile"), relativePath)); //$NON-NLS-1$
+				}
+				pendingBytes.acquire(Math.max(1, data.length));
+				writes.put(new WriteTask(path, data));
+				written++;
+			}
+			// Reading to the end of the entry ensures that a CRC from a trailing data descriptor is available
+			zis.closeEntry();
+			result.put(relativePath, entry.getCrc());
+		}
+
+		if(log.isLoggable(Level.FINE)) {
+			log.fine(format(Messages.getString("StreamingZipExtractor.extractionSummary"), dest, written, skipped)); //$NON-NLS-1$
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	private static boolean isUnchanged(Map<String, Long> previous, String relativePath, long crc, long size, Path path) throws IOException {
+		if(crc == -1 || previous == null) {
+			return false;
+		}
+		Long previousCrc = previous.get(relativePath);
+		return previousCrc != null && previousCrc == crc && Files.isRegularFile(path) && Files.size(path) == size;
+	}
+
+	/**
+	 * Reads from the current entry until either the end of the entry or {@code limit}
+	 * bytes have been read.
+	 */
+	private static byte[] readUpTo(InputStream is, int limit) throws IOException {
+		byte[] data = new byte[Math.min(limit, COPY_BUFFER_SIZE)];
+		int filled = 0;
+		while(filled < limit) {
+			if(filled == data.length) {
+				data = Arrays.copyOf(data, Math.min(limit, data.length * 2));
+			}
+			int read = is.read(data, filled, data.length - filled);
+			if(read == -1) {
+				break;
+			}
+			filled += read;
+		}
+		return filled == data.length ? data : Arrays.copyOf(data, filled);
+	}
+
+	private static void runWriter(BlockingQueue<WriteTask> writes, Semaphore pendingBytes, AtomicReference<Throwable> writeFailure) throws InterruptedException {
+		while(true) {
+			WriteTask task = writes.take();
+			if(task == WriteTask.END) {
+				return;
+			}
+			try {
+				// After a failure, keep draining the queue so that the parser doesn't block
+				if(writeFailure.get() == null) {
+					Files.write(task.path, task.data, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				}
+			} catch(Throwable t) {
+				writeFailure.compareAndSet(null, t);
+			} finally {
+				pendingBytes.release(Math.max(1, task.data.length));
+			}
+		}
+	}
+
+	private static void createDirectories(Path dir, Set<Path> createdDirs) throws IOException {
+		if(createdDirs.add(dir)) {
+			Files.createDirectories(dir);
+		}
+	}
+
+	private static class WriteTask {
+		static final WriteTask END = new WriteTask(null, new byte[0]);
+
+		private final Path path;
+		private final byte[] data;
+
+		WriteTask(Path path, byte[] data) {
+			this.path = path;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.test;
+
+import org.openntf.openliberty.domino.ext.LoggerPrintStream;
+
+/**
+ * Directs runtime log output to {@link System#out} outside of Domino.
+ */
+public class TestLoggerPrintStream extends LoggerPrintStream {
+	public TestLoggerPrintStream() {
+		super(System.out);
+	}
+
+	@Override
+	protected void _line(String message) {
+		System.out.println(getPrefix() + ": " + message); //$NON-NLS-1$
+	}
+}
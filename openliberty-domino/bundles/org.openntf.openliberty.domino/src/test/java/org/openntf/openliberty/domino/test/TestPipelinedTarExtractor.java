@@ -0,0 +1,371 @@
+/*
+ * Copyright © 2018-2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.openliberty.domino.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.openntf.openliberty.domino.util.OpenLibertyUtil;
+import org.openntf.openliberty.domino.util.PipelinedTarExtractor;
+import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveEntry;
+import org.openntf.openliberty.domino.util.commons.apache.tar.TarArchiveInputStream;
+
+/**
+ * Verifies {@link PipelinedTarExtractor} against a serial {@link GZIPInputStream} and
+ * {@link TarArchiveInputStream} extraction and, optionally, reports the time taken by each.
+ *
+ * <p>By default, this uses a small generated archive shaped like a JDK distribution and
+ * skips the benchmark. Set the {@code tarBenchmark} system property to {@code true} to run
+ * the benchmark against a full-size generated archive, or set {@code tarBenchmark.archive}
+ * to the path of a {@code .tar.gz} file to benchmark against a real archive.</p>
+ */
+public class TestPipelinedTarExtractor {
+	private static final int ITERATIONS = 3;
+	private static final String PROP_ARCHIVE = "tarBenchmark.archive"; //$NON-NLS-1$
+	private static final boolean BENCHMARK = Boolean.getBoolean("tarBenchmark") || System.getProperty(PROP_ARCHIVE) != null; //$NON-NLS-1$
+
+	private static Path tempDir;
+	private static Path archive;
+	private static ExecutorService executor;
+
+	@BeforeAll
+	public static void createArchive() throws IOException {
+		tempDir = Files.createTempDirectory(TestPipelinedTarExtractor.class.getSimpleName());
+		executor = Executors.newCachedThreadPool();
+
+		String existing = System.getProperty(PROP_ARCHIVE);
+		if(existing != null && !existing.isEmpty()) {
+			archive = tempDir.getFileSystem().getPath(existing);
+			return;
+		}
+
+		// Roughly approximate a JDK: a large modules file, some libraries, and many small files,
+		//   scaled down when only verifying the output
+		int modulesSize = BENCHMARK ? 48 * 1024 * 1024 : 2 * 1024 * 1024;
+		int libCount = BENCHMARK ? 60 : 6;
+		int noticeCount = BENCHMARK ? 1500 : 150;
+		archive = tempDir.resolve("synthetic.tar.gz"); //$NON-NLS-1$
+		Random random = new Random(1234);
+		try(
+			OutputStream os = Files.newOutputStream(archive);
+			GZIPOutputStream gzos = new GZIPOutputStream(os, 64 * 1024);
+			TarWriter tar = new TarWriter(gzos)
+		) {
+			tar.directory("jdk/", 0755); //$NON-NLS-1$
+			tar.directory("jdk/bin/", 0755); //$NON-NLS-1$
+			tar.directory("jdk/lib/", 0755); //$NON-NLS-1$
+			tar.directory("jdk/legal/", 0755); //$NON-NLS-1$
+			tar.file("jdk/lib/modules", content(random, modulesSize), 0644); //$NON-NLS-1$
+			for(int i = 0; i < 40; i++) {
+				tar.file("jdk/bin/tool" + i, content(random, 16 * 1024), 0755); //$NON-NLS-1$
+			}
+			for(int i = 0; i < libCount; i++) {
+				tar.file("jdk/lib/lib" + i + ".so", content(random, 64 * 1024 + random.nextInt(2 * 1024 * 1024)), 0755); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			for(int i = 0; i < noticeCount; i++) {
+				tar.file("jdk/legal/notice" + i + ".md", content(random, 512 + random.nextInt(16 * 1024)), 0444); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	@AfterAll
+	public static void cleanUp() throws IOException {
+		executor.shutdownNow();
+		OpenLibertyUtil.deltree(tempDir);
+	}
+
+	@Test
+	public void testMatchesSerialExtraction() throws Exception {
+		Path serial = tempDir.resolve("serial"); //$NON-NLS-1$
+		Path pipelined = tempDir.resolve("pipelined"); //$NON-NLS-1$
+		try {
+			extractSerial(serial);
+			extractPipelined(pipelined);
+
+			Map<String, String> expected = digestTree(serial);
+			Map<String, String> actual = digestTree(pipelined);
+			assertEquals(expected, actual);
+
+			if(pipelined.getFileSystem().supportedFileAttributeViews().contains("posix")) { //$NON-NLS-1$
+				try(Stream<Path> bins = Files.list(pipelined.resolve("bin"))) { //$NON-NLS-1$
+					bins.filter(Files::isRegularFile).findFirst().ifPresent(bin -> {
+						try {
+							assertTrue(Files.getPosixFilePermissions(bin).contains(PosixFilePermission.OWNER_EXECUTE), bin.toString());
+						} catch(IOException e) {
+							throw new RuntimeException(e);
+						}
+					});
+				}
+			}
+		} finally {
+			OpenLibertyUtil.deltree(serial);
+			OpenLibertyUtil.deltree(pipelined);
+		}
+	}
+
+	@Test
+	public void testRejectsEscapingLinks() throws Exception {
+		// Direct, absolute, and by way of another link that points within the archive
+		assertLinkRejected("escapeDirect", true, "jdk/evil", "../outside"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertLinkRejected("escapeAbsolute", true, "jdk/evil", tempDir.toAbsolutePath().toString()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertLinkRejected("escapeChained", false, "jdk/lib/evil", "up/../..", "jdk/lib/up", ".."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	@Test
+	public void benchmark(TestReporter reporter) throws Exception {
+		assumeTrue(BENCHMARK, "Set -DtarBenchmark=true to run the extraction benchmark"); //$NON-NLS-1$
+		
+		// Warm up both paths before measuring
+		Path warmup = tempDir.resolve("warmup"); //$NON-NLS-1$
+		extractSerial(warmup);
+		OpenLibertyUtil.deltree(warmup);
+		extractPipelined(warmup);
+		OpenLibertyUtil.deltree(warmup);
+
+		long serialBest = Long.MAX_VALUE;
+		long pipelinedBest = Long.MAX_VALUE;
+		for(int i = 0; i < ITERATIONS; i++) {
+			Path serial = tempDir.resolve("serial" + i); //$NON-NLS-1$
+			long start = System.nanoTime();
+			extractSerial(serial);
+			serialBest = Math.min(serialBest, System.nanoTime() - start);
+			OpenLibertyUtil.deltree(serial);
+
+			Path pipelined = tempDir.resolve("pipelined" + i); //$NON-NLS-1$
+			start = System.nanoTime();
+			extractPipelined(pipelined);
+			pipelinedBest = Math.min(pipelinedBest, System.nanoTime() - start);
+			OpenLibertyUtil.deltree(pipelined);
+		}
+
+		reporter.publishEntry("archive", archive.getFileName() + " (" + (Files.size(archive) / 1024 / 1024) + " MB compressed)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		reporter.publishEntry("serialMillis", Long.toString(TimeUnit.NANOSECONDS.toMillis(serialBest))); //$NON-NLS-1$
+		reporter.publishEntry("pipelinedMillis", Long.toString(TimeUnit.NANOSECONDS.toMillis(pipelinedBest))); //$NON-NLS-1$
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Builds an archive containing the given symbolic links, optionally followed by a file
+	 * written beneath the first link, and verifies that extracting it fails without writing
+	 * outside the destination or leaving the first link in place.
+	 *
+	 * @param writeThrough whether to add a file beneath the first link
+	 * @param links pairs of link names and targets
+	 */
+	private static void assertLinkRejected(String testName, boolean writeThrough, String... links) throws IOException {
+		Path testDir = tempDir.resolve(testName);
+		Path linkArchive = testDir.resolve("links.tar.gz"); //$NON-NLS-1$
+		Path dest = testDir.resolve("nested").resolve("dest"); //$NON-NLS-1$ //$NON-NLS-2$
+		Files.createDirectories(dest);
+		try {
+			try(
+				OutputStream os = Files.newOutputStream(linkArchive);
+				GZIPOutputStream gzos = new GZIPOutputStream(os);
+				TarWriter tar = new TarWriter(gzos)
+			) {
+				tar.directory("jdk/", 0755); //$NON-NLS-1$
+				tar.directory("jdk/lib/", 0755); //$NON-NLS-1$
+				for(int i = links.length - 2; i >= 0; i -= 2) {
+					tar.symlink(links[i], links[i+1]);
+				}
+				if(writeThrough) {
+					tar.file(links[0] + "/escaped.txt", "escaped".getBytes(StandardCharsets.US_ASCII), 0644); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+
+			PipelinedTarExtractor extractor = new PipelinedTarExtractor(executor, PipelinedTarExtractor.DEFAULT_WRITER_COUNT, TestPipelinedTarExtractor::stripContainer);
+			assertThrows(IOException.class, () -> {
+				try(InputStream is = Files.newInputStream(linkArchive)) {
+					extractor.extract(is, dest);
+				}
+			});
+			assertFalse(Files.isSymbolicLink(dest.resolve(stripContainer(links[0]))), testName);
+			try(Stream<Path> files = Files.walk(tempDir)) {
+				assertFalse(files.anyMatch(file -> file.getFileName().toString().equals("escaped.txt") && !file.toAbsolutePath().normalize().startsWith(dest.toAbsolutePath())), testName); //$NON-NLS-1$
+			}
+		} finally {
+			OpenLibertyUtil.deltree(testDir);
+		}
+	}
+
+	/**
+	 * Extracts the archive the way JVM archives were extracted before the introduction of
+	 * {@link PipelinedTarExtractor}.
+	 */
+	private static void extractSerial(Path dest) throws IOException {
+		try(
+			InputStream is = Files.newInputStream(archive);
+			GZIPInputStream gzis = new GZIPInputStream(is);
+			TarArchiveInputStream tis = new TarArchiveInputStream(gzis)
+		) {
+			for(TarArchiveEntry entry = tis.getNextTarEntry(); entry != null; entry = tis.getNextTarEntry()) {
+				String name = stripContainer(entry.getName());
+				if(name.isEmpty()) {
+					continue;
+				}
+				Path path = dest.resolve(name);
+				if(entry.isDirectory()) {
+					Files.createDirectories(path);
+				} else if(entry.isFile()) {
+					Files.createDirectories(path.getParent());
+					Files.copy(tis, path, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		}
+	}
+
+	private static void extractPipelined(Path dest) throws IOException {
+		PipelinedTarExtractor extractor = new PipelinedTarExtractor(executor, PipelinedTarExtractor.DEFAULT_WRITER_COUNT, TestPipelinedTarExtractor::stripContainer);
+		try(InputStream is = Files.newInputStream(archive)) {
+			extractor.extract(is, dest);
+		}
+	}
+
+	private static String stripContainer(String name) {
+		int slashIndex = name.indexOf('/');
+		return slashIndex > -1 ? name.substring(slashIndex+1) : name;
+	}
+
+	private static Map<String, String> digestTree(Path root) throws Exception {
+		Map<String, String> result = new TreeMap<>();
+		try(Stream<Path> files = Files.walk(root)) {
+			for(Path file : (Iterable<Path>)files::iterator) {
+				if(Files.isRegularFile(file)) {
+					MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+					StringBuilder hex = new StringBuilder();
+					for(byte b : digest.digest(Files.readAllBytes(file))) {
+						hex.append(String.format("%02x", b)); //$NON-NLS-1$
+					}
+					result.put(root.relativize(file).toString(), hex.toString());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Generates moderately-compressible content, similar to binaries and text.
+	 */
+	private static byte[] content(Random random, int size) {
+		byte[] result = new byte[size];
+		byte[] words = "public static final class interface return import package void int long ".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+		for(int i = 0; i < size; i++) {
+			result[i] = random.nextInt(16) == 0 ? (byte)random.nextInt(256) : words[random.nextInt(words.length)];
+		}
+		return result;
+	}
+
+	/**
+	 * Minimal writer for ustar-format archives, sufficient to generate test data.
+	 */
+	private static class TarWriter implements AutoCloseable {
+		private static final int BLOCK = 512;
+		private final OutputStream out;
+
+		TarWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		void directory(String name, int mode) throws IOException {
+			header(name, mode, 0, '5', ""); //$NON-NLS-1$
+		}
+
+		void symlink(String name, String target) throws IOException {
+			header(name, 0777, 0, '2', target);
+		}
+
+		void file(String name, byte[] data, int mode) throws IOException {
+			header(name, mode, data.length, '0', ""); //$NON-NLS-1$
+			out.write(data);
+			int padding = (BLOCK - (data.length % BLOCK)) % BLOCK;
+			out.write(new byte[padding]);
+		}
+
+		private void header(String name, int mode, long size, char type, String linkName) throws IOException {
+			byte[] header = new byte[BLOCK];
+			put(header, 0, 100, name);
+			put(header, 100, 8, octal(mode, 7));
+			put(header, 108, 8, octal(0, 7));
+			put(header, 116, 8, octal(0, 7));
+			put(header, 124, 12, octal(size, 11));
+			put(header, 136, 12, octal(System.currentTimeMillis() / 1000, 11));
+			header[156] = (byte)type;
+			put(header, 157, 100, linkName);
+			put(header, 257, 6, "ustar"); //$NON-NLS-1$
+			put(header, 263, 2, "00"); //$NON-NLS-1$
+
+			// The checksum is computed with its own field filled with spaces
+			for(int i = 148; i < 156; i++) {
+				header[i] = ' ';
+			}
+			long checksum = 0;
+			for(byte b : header) {
+				checksum += b & 0xFF;
+			}
+			put(header, 148, 7, octal(checksum, 6));
+			out.write(header);
+		}
+
+		private static String octal(long value, int digits) {
+			StringBuilder result = new StringBuilder(Long.toOctalString(value));
+			while(result.length() < digits) {
+				result.insert(0, '0');
+			}
+			return result.toString();
+		}
+
+		private static void put(byte[] header, int offset, int length, String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+			System.arraycopy(bytes, 0, header, offset, Math.min(length, bytes.length));
+		}
+
+		@Override
+		public void close() throws IOException {
+			// Two empty blocks mark the end of the archive
+			out.write(new byte[BLOCK * 2]);
+			out.flush();
+		}
+	}
+}